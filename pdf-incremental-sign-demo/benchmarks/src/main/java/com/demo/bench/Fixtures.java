@@ -0,0 +1,147 @@
+package com.demo.bench;
+
+import com.demo.crypto.DemoKeystoreUtil;
+import com.demo.pdf.ElectronicSignatureSigner;
+import com.demo.pdf.NursingRecordSigner;
+import com.demo.pdf.NursingRecordTemplate;
+import com.itextpdf.text.PageSize;
+import com.itextpdf.text.pdf.BaseFont;
+import com.itextpdf.text.pdf.PdfContentByte;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfStamper;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Builds and caches the synthetic charts the benchmarks run against.
+ *
+ * <p>A fixture is the three-row nursing template padded with text-only pages up to the requested page count. It is then
+ * signed {@code revisions} times with {@link ElectronicSignatureSigner}, each signature in its own incremental
+ * revision. Row fields stay unsigned, so {@code signRow} can still be measured on top. Fixtures are written once under
+ * {@link #DIRECTORY_PROPERTY} (default {@code target/bench-fixtures}) and reused by later forks and runs.</p>
+ */
+final class Fixtures {
+
+    static final String DIRECTORY_PROPERTY = "bench.fixtures";
+    /** Optional CJK font for row signing; the signer's bundled font is used when absent. */
+    static final String FONT_PROPERTY = "bench.font";
+    static final String PASSWORD = "123456";
+
+    private Fixtures() {
+    }
+
+    static Path directory() throws IOException {
+        Path dir = Path.of(System.getProperty(DIRECTORY_PROPERTY, "target/bench-fixtures")).toAbsolutePath();
+        Files.createDirectories(dir);
+        return dir;
+    }
+
+    static String font() {
+        String font = System.getProperty(FONT_PROPERTY);
+        return font == null || font.isBlank() ? null : Path.of(font).toAbsolutePath().toString();
+    }
+
+    static synchronized Path keystore() throws Exception {
+        Path p12 = directory().resolve("bench-signer.p12");
+        if (Files.notExists(p12)) {
+            DemoKeystoreUtil.createDemoP12(p12, PASSWORD.toCharArray(), "Bench Nurse");
+        }
+        return p12;
+    }
+
+    /**
+     * Returns a chart with {@code pages} pages and {@code revisions} signed revisions, building it on first use.
+     */
+    static synchronized Path chart(int pages, int revisions) throws Exception {
+        Path target = directory().resolve(String.format("chart-%dp-%dr.pdf", pages, revisions));
+        if (Files.exists(target)) {
+            return target;
+        }
+        Path work = Files.createTempDirectory(directory(), "build-");
+        try {
+            Path template = work.resolve("template.pdf");
+            NursingRecordTemplate.createTemplate(template.toString(), 3);
+            Path current = padPages(template, work.resolve("padded.pdf"), pages);
+            for (int i = 1; i <= revisions; i++) {
+                Path next = work.resolve("rev-" + i + ".pdf");
+                ElectronicSignatureSigner.sign(electronicParams(current, next, "sig_bench_" + i, i));
+                if (!current.equals(template)) {
+                    Files.deleteIfExists(current);
+                }
+                current = next;
+            }
+            Files.move(current, target, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            try (Stream<Path> files = Files.walk(work)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+        return target;
+    }
+
+    static ElectronicSignatureSigner.Params electronicParams(Path source, Path destination, String field, int index)
+            throws Exception {
+        ElectronicSignatureSigner.Params params = new ElectronicSignatureSigner.Params();
+        params.setSource(source.toString());
+        params.setDestination(destination.toString());
+        params.setPkcs12Path(keystore().toString());
+        params.setPassword(PASSWORD);
+        params.setFieldName(field);
+        params.setPage(1);
+        params.setX(40f + (index % 10) * 52f);
+        params.setY(20f + (index / 10 % 10) * 10f);
+        params.setWidth(48f);
+        params.setHeight(8f);
+        params.setSignerName("Bench Nurse");
+        return params;
+    }
+
+    static NursingRecordSigner.SignParams rowParams(Path source, Path destination) throws Exception {
+        NursingRecordSigner.SignParams params = new NursingRecordSigner.SignParams();
+        params.setSource(source.toString());
+        params.setDestination(destination.toString());
+        params.setRow(1);
+        params.setTimeValue("08:00");
+        params.setTextValue("Vital signs stable, IV running");
+        params.setNurse("Bench Nurse");
+        params.setPkcs12Path(keystore().toString());
+        params.setPassword(PASSWORD);
+        params.setCjkFontPath(font());
+        return params;
+    }
+
+    /**
+     * Appends plain text pages after the template page; this is a full rewrite and happens before any signature.
+     */
+    private static Path padPages(Path template, Path destination, int pages) throws Exception {
+        if (pages <= 1) {
+            return template;
+        }
+        PdfReader reader = new PdfReader(template.toString());
+        try (FileOutputStream os = new FileOutputStream(destination.toFile())) {
+            PdfStamper stamper = new PdfStamper(reader, os);
+            BaseFont font = BaseFont.createFont(BaseFont.HELVETICA, BaseFont.WINANSI, BaseFont.NOT_EMBEDDED);
+            for (int page = 2; page <= pages; page++) {
+                stamper.insertPage(page, PageSize.A4);
+                PdfContentByte canvas = stamper.getOverContent(page);
+                canvas.beginText();
+                canvas.setFontAndSize(font, 9);
+                for (int line = 0; line < 60; line++) {
+                    canvas.setTextMatrix(36, 800 - line * 12);
+                    canvas.showText(String.format("Page %d line %d: observation, medication and care notes.", page, line));
+                }
+                canvas.endText();
+            }
+            stamper.close();
+        } finally {
+            reader.close();
+        }
+        return destination;
+    }
+}
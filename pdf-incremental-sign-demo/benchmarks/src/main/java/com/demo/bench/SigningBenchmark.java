@@ -0,0 +1,68 @@
+package com.demo.bench;
+
+import com.demo.pdf.ElectronicSignatureSigner;
+import com.demo.pdf.NursingRecordSigner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends one signed revision to a chart that already carries {@code revisions} signatures.
+ * Each invocation signs the same source into a scratch destination, so the document under test does not grow.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SigningBenchmark {
+
+    @Param({"1", "50", "500"})
+    public int pages;
+
+    @Param({"1", "10", "100"})
+    public int revisions;
+
+    private Path source;
+    private Path scratch;
+    private NursingRecordSigner rowSigner;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        source = Fixtures.chart(pages, revisions);
+        scratch = Files.createTempFile(Fixtures.directory(), "out-", ".pdf");
+        rowSigner = new NursingRecordSigner();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(scratch);
+    }
+
+    @Benchmark
+    public long signRow() throws Exception {
+        rowSigner.signRow(Fixtures.rowParams(source, scratch));
+        return Files.size(scratch);
+    }
+
+    @Benchmark
+    public long signElectronic() throws Exception {
+        ElectronicSignatureSigner.sign(Fixtures.electronicParams(source, scratch, "sig_bench_next", revisions + 1));
+        return Files.size(scratch);
+    }
+}
@@ -0,0 +1,65 @@
+package com.demo.bench;
+
+import com.demo.pdf.PdfStructureDump;
+import com.demo.pdf.PostSignValidator;
+import com.demo.pdf.SignatureVerifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-only paths over a chart with {@code revisions} signatures: full verification, tail location and the
+ * structure dump used for Acrobat diagnostics.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VerificationBenchmark {
+
+    @Param({"1", "50", "500"})
+    public int pages;
+
+    @Param({"1", "10", "100"})
+    public int revisions;
+
+    private Path chart;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        chart = Fixtures.chart(pages, revisions);
+    }
+
+    /**
+     * {@link SignatureVerifier#verify(String)} minus its console output.
+     */
+    @Benchmark
+    public List<SignatureVerifier.Result> verify() throws Exception {
+        return SignatureVerifier.inspect(chart.toString());
+    }
+
+    @Benchmark
+    public PostSignValidator.TailInfo locateTail() throws Exception {
+        return PostSignValidator.locateTail(chart, false);
+    }
+
+    @Benchmark
+    public PdfStructureDump structureDump() throws Exception {
+        return PdfStructureDump.load(chart);
+    }
+}
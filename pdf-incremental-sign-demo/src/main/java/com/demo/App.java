@@ -1,10 +1,21 @@
 package com.demo;
 
+import com.demo.crypto.CertPathCache;
 import com.demo.crypto.DemoKeystoreUtil;
+import com.demo.crypto.SigningProfile;
+import com.demo.ltv.RevocationSources;
+import com.demo.ltv.RevocationStore;
+import com.demo.metrics.Metrics;
+import com.demo.pdf.BatchSigner;
+import com.demo.pdf.DssAppender;
 import com.demo.pdf.ElectronicSignatureSigner;
 import com.demo.pdf.NursingRecordSigner;
 import com.demo.pdf.NursingRecordTemplate;
+import com.demo.pdf.RevisionIndex;
 import com.demo.pdf.SignatureVerifier;
+import com.demo.pdf.TimestampQueue;
+import com.demo.pdf.TreeVerifier;
+import com.demo.server.SigningServer;
 import org.apache.pdfbox.Loader;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationWidget;
@@ -12,31 +23,73 @@ import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
 import org.apache.pdfbox.pdmodel.interactive.form.PDField;
 import picocli.CommandLine;
 
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 
 public class App {
 
     public static void main(String[] args) {
-        int exit = new CommandLine(new Root()).execute(args);
+        Root root = new Root();
+        int exit = new CommandLine(root).execute(args);
+        root.dumpMetrics();
         System.exit(exit);
     }
 
+    private static void configureTruststore(Path truststore, String password) throws Exception {
+        if (truststore != null) {
+            CertPathCache.configure(truststore.toAbsolutePath(), password.toCharArray());
+        }
+    }
+
     @CommandLine.Command(name = "app", mixinStandardHelpOptions = true,
             subcommands = {
                     CreateTemplate.class,
                     SignRow.class,
+                    SignBatch.class,
                     SignElectronic.class,
                     VerifyPdf.class,
+                    VerifyTree.class,
+                    Revisions.class,
+                    AddLtv.class,
+                    TimestampWorker.class,
                     GenDemoP12.class,
-                    ListFields.class
+                    ListFields.class,
+                    Serve.class
             })
     static class Root implements Runnable {
+        @CommandLine.Option(names = "--metrics-json", scope = CommandLine.ScopeType.INHERIT,
+                description = "Write per-phase timings and allocations as JSON to this file ('-' for stdout) on exit")
+        private String metricsJson;
+
         @Override
         public void run() {
             CommandLine.usage(this, System.out);
         }
+
+        void dumpMetrics() {
+            if (metricsJson == null || metricsJson.isBlank()) {
+                return;
+            }
+            try {
+                if ("-".equals(metricsJson)) {
+                    Metrics.registry().writeJson(System.out);
+                    System.out.println();
+                } else {
+                    try (OutputStream out = Files.newOutputStream(Path.of(metricsJson))) {
+                        Metrics.registry().writeJson(out);
+                    }
+                }
+            } catch (Exception e) {
+                System.err.println("Failed to write metrics: " + e.getMessage());
+            }
+        }
     }
 
     @CommandLine.Command(name = "create-template", description = "Create a nursing record template PDF with blank rows")
@@ -90,7 +143,8 @@ public class App {
         @CommandLine.Option(names = "--contact", required = false, defaultValue = "nurse@example.com")
         private String contact;
 
-        @CommandLine.Option(names = "--tsaUrl", required = false, description = "Optional TSA URL")
+        @CommandLine.Option(names = "--tsaUrl", required = false,
+                description = "Optional TSA URL: http(s)://..., or local:[millis] for the in-process test TSA")
         private String tsaUrl;
 
         @CommandLine.Option(names = "--cjk-font", required = false, description = "Optional path to a CJK font")
@@ -160,6 +214,19 @@ public class App {
                 description = "YOffset from the computed row baseline Y to the bottom of the signature rectangle.")
         private float signYOffset;
 
+        @CommandLine.Option(names = "--digest-prefix-check", defaultValue = "false",
+                description = "Check the preserved prefix against a SHA-256 fingerprint taken before signing instead of re-reading the source file.")
+        private boolean digestPrefixCheck;
+
+        @CommandLine.Option(names = "--revidx",
+                description = "Write a revision index next to --dest even if --src has none.")
+        private boolean revisionIndex;
+
+        @CommandLine.Option(names = "--timestamp-queue",
+                description = "Sign without contacting the TSA and queue --dest in this directory for a document "
+                        + "timestamp from --tsaUrl (see timestamp-worker).")
+        private Path timestampQueue;
+
         @Override
         public Integer call() throws Exception {
             NursingRecordSigner.SignParams params = new NursingRecordSigner.SignParams();
@@ -192,12 +259,107 @@ public class App {
             params.setSignWidth(signWidth);
             params.setSignHeight(signHeight);
             params.setSignYOffset(signYOffset);
+            params.setDigestPrefixCheck(digestPrefixCheck);
+            params.setRevisionIndex(revisionIndex);
+            params.setTimestampQueue(timestampQueue != null ? timestampQueue.toAbsolutePath().toString() : null);
             new NursingRecordSigner().signRow(params);
             System.out.println("Signed row " + row + " -> " + destination.toAbsolutePath());
             return 0;
         }
     }
 
+    @CommandLine.Command(name = "sign-batch",
+            description = "Sign many rows as successive incremental revisions in one process")
+    static class SignBatch implements Callable<Integer> {
+        @CommandLine.Option(names = "--src", required = true, description = "Source PDF to sign")
+        private Path source;
+
+        @CommandLine.Option(names = "--dest", required = true, description = "Destination PDF holding every new revision")
+        private Path destination;
+
+        @CommandLine.Option(names = "--jobs", required = true,
+                description = "CSV (with header) or JSON array of row jobs: row,time,text,nurse[,reason,location,contact,signField]")
+        private Path jobs;
+
+        @CommandLine.Option(names = "--pkcs12", required = true, description = "Signer PKCS#12 file")
+        private Path pkcs12;
+
+        @CommandLine.Option(names = "--password", required = true, description = "Password for PKCS#12")
+        private String password;
+
+        @CommandLine.Option(names = "--reason", required = false, defaultValue = "Nursing record approval")
+        private String reason;
+
+        @CommandLine.Option(names = "--location", required = false, defaultValue = "Ward")
+        private String location;
+
+        @CommandLine.Option(names = "--contact", required = false, defaultValue = "nurse@example.com")
+        private String contact;
+
+        @CommandLine.Option(names = "--tsaUrl", required = false,
+                description = "Optional TSA URL: http(s)://..., or local:[millis] for the in-process test TSA")
+        private String tsaUrl;
+
+        @CommandLine.Option(names = "--cjk-font", required = false, description = "Optional path to a CJK font")
+        private Path cjkFont;
+
+        @CommandLine.Option(names = "--font-size", required = false, defaultValue = "10",
+                description = "Font size used for row text and the signature appearance")
+        private float fontSize;
+
+        @CommandLine.Option(names = "--sign-visible", defaultValue = "true",
+                description = "Place visible signatures (true) or create invisible signatures (false).")
+        private boolean signVisible;
+
+        @CommandLine.Option(names = "--sign-field", defaultValue = "sig_row_{row}",
+                description = "Signature field name template used when a job has no signField column.")
+        private String signFieldTemplate;
+
+        @CommandLine.Option(names = "--single-session",
+                description = "Fill every row in the first revision and chain the signatures in memory, "
+                        + "writing the destination once.")
+        private boolean singleSession;
+
+        @CommandLine.Option(names = "--revidx",
+                description = "Write a revision index next to --dest even if --src has none.")
+        private boolean revisionIndex;
+
+        @CommandLine.Option(names = "--timestamp-queue",
+                description = "Sign without contacting the TSA and queue --dest in this directory for a document "
+                        + "timestamp from --tsaUrl (see timestamp-worker).")
+        private Path timestampQueue;
+
+        @Override
+        public Integer call() throws Exception {
+            NursingRecordSigner.SignParams defaults = new NursingRecordSigner.SignParams();
+            defaults.setPkcs12Path(pkcs12.toAbsolutePath().toString());
+            defaults.setPassword(password);
+            defaults.setReason(reason);
+            defaults.setLocation(location);
+            defaults.setContact(contact);
+            defaults.setTsaUrl(tsaUrl);
+            defaults.setCjkFontPath(cjkFont != null ? cjkFont.toAbsolutePath().toString() : null);
+            defaults.setFontSize(fontSize);
+            defaults.setSignVisible(signVisible);
+            defaults.setSignFieldTemplate(signFieldTemplate);
+            defaults.setRevisionIndex(revisionIndex);
+            defaults.setTimestampQueue(timestampQueue != null ? timestampQueue.toAbsolutePath().toString() : null);
+
+            List<NursingRecordSigner.SignParams> rowJobs = BatchSigner.readJobs(jobs.toAbsolutePath(), defaults);
+            List<BatchSigner.RowResult> results = singleSession
+                    ? BatchSigner.signRowsInOneSession(source.toAbsolutePath().toString(),
+                            destination.toAbsolutePath().toString(), rowJobs)
+                    : BatchSigner.signRows(source.toAbsolutePath().toString(),
+                            destination.toAbsolutePath().toString(), rowJobs);
+            for (BatchSigner.RowResult result : results) {
+                System.out.printf("row %d | field=%s | %d ms | +%d B%n",
+                        result.getRow(), result.getFieldName(), result.getMillis(), result.getAppendedBytes());
+            }
+            System.out.println("Signed " + BatchSigner.summarize(results) + " -> " + destination.toAbsolutePath());
+            return 0;
+        }
+    }
+
     @CommandLine.Command(name = "list-fields", description = "List all AcroForm fields in a PDF")
     static class ListFields implements Callable<Integer> {
 
@@ -285,7 +447,8 @@ public class App {
         @CommandLine.Option(names = "--contact", required = false, defaultValue = "signer@example.com")
         private String contact;
 
-        @CommandLine.Option(names = "--tsaUrl", required = false, description = "Optional TSA URL")
+        @CommandLine.Option(names = "--tsaUrl", required = false,
+                description = "Optional TSA URL: http(s)://..., or local:[millis] for the in-process test TSA")
         private String tsaUrl;
 
         @Override
@@ -317,12 +480,147 @@ public class App {
         @CommandLine.Option(names = "--pdf", required = true, description = "PDF to verify")
         private Path pdf;
 
+        @CommandLine.Option(names = "--truststore", required = false,
+                description = "PKCS#12 or JKS truststore; signer certificate paths are validated against it")
+        private Path truststore;
+
+        @CommandLine.Option(names = "--truststore-password", defaultValue = "",
+                description = "Password of --truststore")
+        private String truststorePassword;
+
         @Override
         public Integer call() throws Exception {
+            configureTruststore(truststore, truststorePassword);
             return SignatureVerifier.verify(pdf.toAbsolutePath().toString());
         }
     }
 
+    @CommandLine.Command(name = "verify-tree",
+            description = "Verify every PDF below a directory concurrently and write JSONL results")
+    static class VerifyTree implements Callable<Integer> {
+        @CommandLine.Option(names = "--root", required = true, description = "Directory to scan recursively")
+        private Path root;
+
+        @CommandLine.Option(names = "--out", required = true, description = "JSONL result file, one line per PDF")
+        private Path output;
+
+        @CommandLine.Option(names = "--parallelism", required = false,
+                description = "Verification threads (default: available processors)")
+        private Integer parallelism;
+
+        @CommandLine.Option(names = "--resume", defaultValue = "false",
+                description = "Skip files already recorded in --out and append to it")
+        private boolean resume;
+
+        @CommandLine.Option(names = "--truststore", required = false,
+                description = "PKCS#12 or JKS truststore; signer certificate paths are validated against it")
+        private Path truststore;
+
+        @CommandLine.Option(names = "--truststore-password", defaultValue = "",
+                description = "Password of --truststore")
+        private String truststorePassword;
+
+        @Override
+        public Integer call() throws Exception {
+            configureTruststore(truststore, truststorePassword);
+            TreeVerifier.Params params = new TreeVerifier.Params();
+            params.setRoot(root);
+            params.setOutput(output);
+            params.setResume(resume);
+            if (parallelism != null) {
+                params.setParallelism(parallelism);
+            }
+            TreeVerifier.Summary summary = TreeVerifier.verifyTree(params);
+            System.out.println("verify-tree " + summary + " -> " + output.toAbsolutePath());
+            return summary.isClean() ? 0 : 2;
+        }
+    }
+
+    @CommandLine.Command(name = "revisions",
+            description = "List revisions and signatures, from the revision index when it is current")
+    static class Revisions implements Callable<Integer> {
+        @CommandLine.Option(names = "--pdf", required = true, description = "PDF to inspect")
+        private Path pdf;
+
+        @CommandLine.Option(names = "--write", defaultValue = "false",
+                description = "Rebuild the index from the PDF and write it next to the file")
+        private boolean write;
+
+        @Override
+        public Integer call() throws Exception {
+            Path file = pdf.toAbsolutePath();
+            RevisionIndex index = write ? null : RevisionIndex.load(file);
+            String origin = "index";
+            if (index == null) {
+                index = RevisionIndex.scan(file);
+                origin = "scan";
+                if (write) {
+                    index.write(file);
+                    origin = "scan, written to " + RevisionIndex.sidecar(file);
+                }
+            }
+            System.out.printf("%s | %d bytes | %d revisions (%s)%n", file, index.getLength(),
+                    index.getRevisions().size(), origin);
+            int number = 1;
+            for (RevisionIndex.Revision revision : index.getRevisions()) {
+                System.out.printf("revision %d | bytes [%d, %d) | xref %d | sha256 %s%n", number++,
+                        revision.getStart(), revision.getEnd(), revision.getXref(), revision.getSha256());
+            }
+            for (RevisionIndex.Signature signature : index.getSignatures()) {
+                System.out.printf("signature %s | revision %d | byteRange %s | %s %s%n", signature.getName(),
+                        signature.getRevision(), Arrays.toString(signature.getByteRange()),
+                        signature.getDigestAlgorithm(), signature.getDigest());
+            }
+            return 0;
+        }
+    }
+
+    @CommandLine.Command(name = "add-ltv",
+            description = "Append a DSS with certificates, OCSP responses and CRLs to signed PDFs")
+    static class AddLtv implements Callable<Integer> {
+        @CommandLine.Option(names = "--pdf", required = true, arity = "1..*",
+                description = "Signed PDF(s), updated in place unless --dest is given")
+        private List<Path> pdfs;
+
+        @CommandLine.Option(names = "--dest", required = false,
+                description = "Write the result here instead (only with a single --pdf)")
+        private Path destination;
+
+        @CommandLine.Option(names = "--store", defaultValue = "ltv-store",
+                description = "Revocation store directory, shared between runs")
+        private Path store;
+
+        @CommandLine.Option(names = "--revocation-source", defaultValue = RevocationSources.HTTP,
+                description = "http to fetch from the URLs in the certificates, or dir:<path> for a directory of "
+                        + ".crl and .ocsp files")
+        private String revocationSource;
+
+        @CommandLine.Option(names = "--ttl-hours", defaultValue = "24",
+                description = "Hours stored revocation data is reused, at most until its nextUpdate")
+        private long ttlHours;
+
+        @Override
+        public Integer call() throws Exception {
+            if (destination != null && pdfs.size() != 1) {
+                throw new IllegalArgumentException("--dest needs exactly one --pdf");
+            }
+            RevocationStore revocations = new RevocationStore(store.toAbsolutePath(), Duration.ofHours(ttlHours),
+                    RevocationSources.forSpec(revocationSource));
+            revocations.evict();
+            int exit = 0;
+            for (Path pdf : pdfs) {
+                Path target = destination != null ? destination : pdf;
+                DssAppender.Summary summary = DssAppender.append(pdf, target, revocations);
+                System.out.println(target.toAbsolutePath() + " | " + summary);
+                if (summary.getRevoked() > 0) {
+                    exit = 2;
+                }
+            }
+            System.out.println("Revocation data: " + revocations.stats());
+            return exit;
+        }
+    }
+
     @CommandLine.Command(name = "gen-demo-p12", description = "Generate a demo PKCS#12 file")
     static class GenDemoP12 implements Callable<Integer> {
         @CommandLine.Option(names = "--out", required = true)
@@ -334,13 +632,152 @@ public class App {
         @CommandLine.Option(names = "--cn", required = true)
         private String commonName;
 
+        @CommandLine.Option(names = "--profile", defaultValue = "rsa-2048",
+                description = "Key type: rsa-2048, ecdsa-p256, ecdsa-p384 or ed25519")
+        private String profile;
+
         @Override
         public Integer call() throws Exception {
-            if (Files.notExists(output.getParent())) {
-                Files.createDirectories(output.getParent());
+            SigningProfile signingProfile = SigningProfile.fromId(profile);
+            Path target = output.toAbsolutePath();
+            if (Files.notExists(target.getParent())) {
+                Files.createDirectories(target.getParent());
+            }
+            DemoKeystoreUtil.createDemoP12(target, password.toCharArray(), commonName, signingProfile);
+            System.out.println("Demo keystore (" + signingProfile.getId() + ") written to " + target);
+            return 0;
+        }
+    }
+
+    @CommandLine.Command(name = "timestamp-worker",
+            description = "Append document timestamps to the charts waiting in a timestamp queue")
+    static class TimestampWorker implements Callable<Integer> {
+        @CommandLine.Option(names = "--queue", required = true, description = "Timestamp queue directory")
+        private Path queue;
+
+        @CommandLine.Option(names = "--min-age", defaultValue = "0",
+                description = "Only stamp charts queued at least this many seconds ago")
+        private long minAge;
+
+        @CommandLine.Option(names = "--interval", defaultValue = "5",
+                description = "Seconds between passes over the queue")
+        private long interval;
+
+        @CommandLine.Option(names = "--once", defaultValue = "false",
+                description = "Make a single pass and exit instead of running until interrupted")
+        private boolean once;
+
+        @Override
+        public Integer call() throws Exception {
+            TimestampQueue timestamps = new TimestampQueue(queue.toAbsolutePath());
+            if (once) {
+                timestamps.recover();
+                int stamped = timestamps.drain(Duration.ofSeconds(minAge));
+                int pending = timestamps.pending();
+                System.out.println("Timestamped " + stamped + " chart(s), " + pending + " still queued");
+                return pending == 0 ? 0 : 2;
+            }
+            try (AutoCloseable worker = timestamps.start(Duration.ofSeconds(minAge),
+                    Duration.ofSeconds(Math.max(1L, interval)))) {
+                new CountDownLatch(1).await();
+            }
+            return 0;
+        }
+    }
+
+    @CommandLine.Command(name = "serve",
+            description = "Run a resident signing daemon on loopback HTTP and/or a Unix domain socket")
+    static class Serve implements Callable<Integer> {
+        @CommandLine.Option(names = "--port", defaultValue = "-1",
+                description = "Loopback HTTP port; off by default, requires --token-file")
+        private int port;
+
+        @CommandLine.Option(names = "--token-file", required = false,
+                description = "File holding the bearer token HTTP clients must send")
+        private Path tokenFile;
+
+        @CommandLine.Option(names = "--socket", required = false, description = "Unix domain socket path")
+        private Path socket;
+
+        @CommandLine.Option(names = "--root", defaultValue = ".",
+                description = "Directory request paths are resolved against; requests cannot leave it")
+        private Path root;
+
+        @CommandLine.Option(names = "--workers", required = false,
+                description = "Signing worker threads (default: available processors)")
+        private Integer workers;
+
+        @CommandLine.Option(names = "--queue", defaultValue = "64",
+                description = "Maximum number of requests waiting for a worker before 503 is returned")
+        private int queue;
+
+        @CommandLine.Option(names = "--timeout", defaultValue = "60", description = "Per-request timeout in seconds")
+        private long timeoutSeconds;
+
+        @CommandLine.Option(names = "--pkcs12", required = false,
+                description = "Signer PKCS#12 used for every request")
+        private Path pkcs12;
+
+        @CommandLine.Option(names = "--password", required = false, description = "Password for the default PKCS#12")
+        private String password;
+
+        @CommandLine.Option(names = "--cjk-font", required = false, description = "Default CJK font for row signing")
+        private Path cjkFont;
+
+        @CommandLine.Option(names = "--warmup", defaultValue = "3",
+                description = "Throwaway row signatures performed at startup to warm up the JIT")
+        private int warmup;
+
+        @CommandLine.Option(names = "--timestamp-queue", required = false,
+                description = "Sign rows that name a TSA without it, queue them here and append document "
+                        + "timestamps in the background")
+        private Path timestampQueue;
+
+        @CommandLine.Option(names = "--timestamp-delay", defaultValue = "30",
+                description = "Seconds a queued chart waits so later rows share its timestamp")
+        private long timestampDelay;
+
+        @CommandLine.Option(names = "--truststore", required = false,
+                description = "PKCS#12 or JKS truststore; signer certificate paths are validated against it")
+        private Path truststore;
+
+        @CommandLine.Option(names = "--truststore-password", defaultValue = "",
+                description = "Password of --truststore")
+        private String truststorePassword;
+
+        @Override
+        public Integer call() throws Exception {
+            configureTruststore(truststore, truststorePassword);
+            SigningServer.Params params = new SigningServer.Params();
+            params.setHttpPort(port);
+            if (tokenFile != null) {
+                params.setHttpToken(Files.readString(tokenFile, StandardCharsets.UTF_8).trim());
+            }
+            params.setSocketPath(socket != null ? socket.toAbsolutePath() : null);
+            params.setDataRoot(root.toAbsolutePath());
+            if (workers != null) {
+                params.setWorkers(workers);
+            }
+            params.setQueueCapacity(queue);
+            params.setRequestTimeoutSeconds(timeoutSeconds);
+            params.setPkcs12Path(pkcs12 != null ? pkcs12.toAbsolutePath().toString() : null);
+            params.setPassword(password);
+            params.setCjkFontPath(cjkFont != null ? cjkFont.toAbsolutePath().toString() : null);
+            params.setWarmupRounds(warmup);
+            params.setTimestampQueue(timestampQueue != null ? timestampQueue.toAbsolutePath() : null);
+            params.setTimestampDelaySeconds(timestampDelay);
+
+            SigningServer server = new SigningServer(params);
+            Runtime.getRuntime().addShutdownHook(new Thread(server::close, "sign-shutdown"));
+            server.start();
+            if (server.getHttpAddress() != null) {
+                System.out.println("Serving on http://" + server.getHttpAddress().getHostString() + ":"
+                        + server.getHttpAddress().getPort());
+            }
+            if (params.getSocketPath() != null) {
+                System.out.println("Serving on unix:" + params.getSocketPath());
             }
-            DemoKeystoreUtil.createDemoP12(output.toAbsolutePath(), password.toCharArray(), commonName);
-            System.out.println("Demo keystore written to " + output.toAbsolutePath());
+            server.awaitShutdown();
             return 0;
         }
     }
@@ -0,0 +1,329 @@
+package com.demo.crypto;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.security.auth.x500.X500Principal;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.cert.CertPathBuilder;
+import java.security.cert.CertPathBuilderException;
+import java.security.cert.CertStore;
+import java.security.cert.Certificate;
+import java.security.cert.CollectionCertStoreParameters;
+import java.security.cert.PKIXBuilderParameters;
+import java.security.cert.PKIXCertPathBuilderResult;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509CertSelector;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide cache of certificate path validations against a configured truststore.
+ *
+ * <p>Trust anchors are read once from the truststore given to {@link #configure} (or through
+ * {@link #TRUSTSTORE_PROPERTY} and {@link #TRUSTSTORE_PASSWORD_PROPERTY}). Each signer certificate's path is then
+ * built with the JDK's PKIX {@link CertPathBuilder}, using the certificates of the signature as intermediates, and the
+ * outcome is kept under the certificate's issuer and serial number and a digest of the intermediates it was offered,
+ * for {@link #TTL_PROPERTY} seconds (default 3600) but never past the certificate's expiry. Whether a path can be built
+ * depends on those intermediates, so a signature that carries a different set gets its own build, and a failure for
+ * a signature that omitted its CA never answers for one that includes it. Concurrent lookups of one certificate and
+ * set wait for a single build, so verifying many signatures by the same few signers builds each path once.</p>
+ *
+ * <p>Paths are checked at the current time and without revocation checking; revocation data is the business of
+ * {@code add-ltv}.</p>
+ */
+public final class CertPathCache {
+
+    public static final String TRUSTSTORE_PROPERTY = "demo.truststore";
+    public static final String TRUSTSTORE_PASSWORD_PROPERTY = "demo.truststore.password";
+    public static final String TTL_PROPERTY = "demo.certpath.ttlSeconds";
+
+    private static final Logger log = LoggerFactory.getLogger(CertPathCache.class);
+
+    private static final long DEFAULT_TTL_SECONDS = 3600L;
+    private static final Map<CacheKey, Holder> CACHE = new ConcurrentHashMap<>();
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    private static volatile Anchors anchors;
+    private static volatile boolean propertiesChecked;
+
+    private CertPathCache() {
+    }
+
+    /**
+     * Outcome of validating one certificate's path.
+     */
+    public static final class Validation {
+        private final boolean trusted;
+        private final String anchor;
+        private final int length;
+        private final String problem;
+
+        private Validation(boolean trusted, String anchor, int length, String problem) {
+            this.trusted = trusted;
+            this.anchor = anchor;
+            this.length = length;
+            this.problem = problem;
+        }
+
+        public boolean isTrusted() {
+            return trusted;
+        }
+
+        /**
+         * Subject of the trust anchor the path ends at; null when no path was found.
+         */
+        public String getAnchor() {
+            return anchor;
+        }
+
+        /**
+         * Certificates in the path below the anchor; 0 when the certificate is itself an anchor.
+         */
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * Why no path was found; null when the certificate is trusted.
+         */
+        public String getProblem() {
+            return problem;
+        }
+
+        @Override
+        public String toString() {
+            return trusted ? "trusted (" + anchor + ")" : "untrusted (" + problem + ")";
+        }
+    }
+
+    /**
+     * Loads the trust anchors from {@code truststore} (PKCS#12 or JKS) and drops every cached validation.
+     */
+    public static void configure(Path truststore, char[] password) throws Exception {
+        Objects.requireNonNull(truststore, "truststore");
+        Path path = truststore.toAbsolutePath().normalize();
+        String type = path.toString().toLowerCase(Locale.ROOT).endsWith(".jks") ? "JKS" : "PKCS12";
+        KeyStore ks = KeyStore.getInstance(type);
+        try (InputStream in = Files.newInputStream(path)) {
+            ks.load(in, password);
+        }
+        Set<TrustAnchor> trusted = new HashSet<>();
+        for (String alias : Collections.list(ks.aliases())) {
+            Certificate cert = ks.getCertificate(alias);
+            if (cert instanceof X509Certificate x509) {
+                trusted.add(new TrustAnchor(x509, null));
+            }
+        }
+        if (trusted.isEmpty()) {
+            throw new IllegalArgumentException("Truststore " + path + " holds no certificates");
+        }
+        anchors = new Anchors(trusted);
+        propertiesChecked = true;
+        CACHE.clear();
+        log.info("[certpath] {} trust anchor(s) from {}", trusted.size(), path);
+    }
+
+    /**
+     * Whether a truststore is configured, loading it from the system properties on first use.
+     */
+    public static boolean isConfigured() {
+        return anchors() != null;
+    }
+
+    /**
+     * Validates the path of {@code cert}, or returns {@code null} when no truststore is configured.
+     * {@code intermediates} are the other certificates the signature carries.
+     */
+    public static Validation validate(X509Certificate cert, Collection<X509Certificate> intermediates) {
+        Anchors current = anchors();
+        if (current == null || cert == null) {
+            return null;
+        }
+        evictExpired();
+        CacheKey key;
+        try {
+            key = new CacheKey(cert.getIssuerX500Principal(), cert.getSerialNumber(),
+                    intermediatesDigest(cert, intermediates));
+        } catch (GeneralSecurityException e) {
+            MISSES.incrementAndGet();
+            return build(current, cert, intermediates);
+        }
+        Holder holder = CACHE.computeIfAbsent(key, k -> new Holder(cert));
+        if (!holder.cert.equals(cert)) {
+            // Same issuer name and serial, different certificate: never answer for one with the other's result.
+            MISSES.incrementAndGet();
+            return build(current, cert, intermediates);
+        }
+        return holder.get(() -> build(current, cert, intermediates));
+    }
+
+    /**
+     * Drops every entry past its expiry.
+     */
+    public static void evictExpired() {
+        long now = System.currentTimeMillis();
+        CACHE.values().removeIf(holder -> holder.expires <= now);
+    }
+
+    public static void clear() {
+        CACHE.clear();
+    }
+
+    public static int size() {
+        return CACHE.size();
+    }
+
+    public static long hits() {
+        return HITS.get();
+    }
+
+    public static long misses() {
+        return MISSES.get();
+    }
+
+    private static Validation build(Anchors current, X509Certificate cert, Collection<X509Certificate> intermediates) {
+        long started = System.nanoTime();
+        try {
+            X509CertSelector target = new X509CertSelector();
+            target.setCertificate(cert);
+            PKIXBuilderParameters params = new PKIXBuilderParameters(current.trusted, target);
+            params.setRevocationEnabled(false);
+            List<Certificate> pool = new ArrayList<>(intermediates != null ? intermediates : List.of());
+            pool.add(cert);
+            params.addCertStore(CertStore.getInstance("Collection", new CollectionCertStoreParameters(pool)));
+            PKIXCertPathBuilderResult result = (PKIXCertPathBuilderResult) CertPathBuilder.getInstance("PKIX")
+                    .build(params);
+            X509Certificate anchorCert = result.getTrustAnchor().getTrustedCert();
+            String anchor = anchorCert != null ? anchorCert.getSubjectX500Principal().getName()
+                    : result.getTrustAnchor().getCAName();
+            Validation validation = new Validation(true, anchor, result.getCertPath().getCertificates().size(), null);
+            log.info("[certpath] {} -> {} in {} ms", cert.getSubjectX500Principal().getName(), validation,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+            return validation;
+        } catch (CertPathBuilderException e) {
+            String problem = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            log.info("[certpath] {} -> untrusted: {}", cert.getSubjectX500Principal().getName(), problem);
+            return new Validation(false, null, 0, problem);
+        } catch (Exception e) {
+            log.warn("[certpath] cannot validate {}: {}", cert.getSubjectX500Principal().getName(), e.toString());
+            return new Validation(false, null, 0, e.toString());
+        }
+    }
+
+    /**
+     * SHA-256 over the sorted fingerprints of {@code intermediates}, ignoring {@code cert} itself, duplicates and
+     * order.
+     */
+    private static String intermediatesDigest(X509Certificate cert, Collection<X509Certificate> intermediates)
+            throws GeneralSecurityException {
+        Set<String> fingerprints = new TreeSet<>();
+        if (intermediates != null) {
+            for (X509Certificate intermediate : intermediates) {
+                if (intermediate != null && !intermediate.equals(cert)) {
+                    fingerprints.add(HexFormat.of().formatHex(
+                            MessageDigest.getInstance("SHA-256").digest(intermediate.getEncoded())));
+                }
+            }
+        }
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        for (String fingerprint : fingerprints) {
+            digest.update(fingerprint.getBytes(StandardCharsets.US_ASCII));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static Anchors anchors() {
+        Anchors current = anchors;
+        if (current != null || propertiesChecked) {
+            return current;
+        }
+        synchronized (CertPathCache.class) {
+            if (!propertiesChecked) {
+                propertiesChecked = true;
+                String path = System.getProperty(TRUSTSTORE_PROPERTY);
+                if (path != null && !path.isBlank()) {
+                    String password = System.getProperty(TRUSTSTORE_PASSWORD_PROPERTY, "");
+                    try {
+                        configure(Path.of(path), password.toCharArray());
+                    } catch (Exception e) {
+                        throw new IllegalStateException("Cannot load truststore " + path + ": " + e.getMessage(), e);
+                    }
+                }
+            }
+            return anchors;
+        }
+    }
+
+    private static long ttlMillis() {
+        String raw = System.getProperty(TTL_PROPERTY);
+        if (raw == null || raw.isBlank()) {
+            return TimeUnit.SECONDS.toMillis(DEFAULT_TTL_SECONDS);
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0L, Long.parseLong(raw.trim())));
+        } catch (NumberFormatException e) {
+            return TimeUnit.SECONDS.toMillis(DEFAULT_TTL_SECONDS);
+        }
+    }
+
+    private interface Builder {
+        Validation build();
+    }
+
+    private static final class Holder {
+        private final X509Certificate cert;
+        private volatile Validation validation;
+        private volatile long expires = Long.MAX_VALUE;
+
+        Holder(X509Certificate cert) {
+            this.cert = cert;
+        }
+
+        Validation get(Builder builder) {
+            Validation current = validation;
+            if (current != null) {
+                HITS.incrementAndGet();
+                return current;
+            }
+            synchronized (this) {
+                if (validation == null) {
+                    MISSES.incrementAndGet();
+                    Validation built = builder.build();
+                    expires = Math.min(System.currentTimeMillis() + ttlMillis(), cert.getNotAfter().getTime());
+                    validation = built;
+                } else {
+                    HITS.incrementAndGet();
+                }
+                return validation;
+            }
+        }
+    }
+
+    private record Anchors(Set<TrustAnchor> trusted) {
+    }
+
+    private record CacheKey(X500Principal issuer, BigInteger serial, String intermediates) {
+    }
+}
@@ -37,10 +37,16 @@ public final class DemoKeystoreUtil {
     }
 
     public static void createDemoP12(Path target, char[] password, String commonName) throws Exception {
+        createDemoP12(target, password, commonName, SigningProfile.RSA_2048);
+    }
+
+    /**
+     * Writes a self-signed identity whose key and certificate signature follow {@code profile}.
+     */
+    public static void createDemoP12(Path target, char[] password, String commonName, SigningProfile profile)
+            throws Exception {
         ensureProvider();
-        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
-        kpg.initialize(2048);
-        KeyPair kp = kpg.generateKeyPair();
+        KeyPair kp = profile.generateKeyPair();
 
         X500Name subject = new X500Name("CN=" + commonName);
         BigInteger serial = BigInteger.valueOf(System.currentTimeMillis());
@@ -55,7 +61,7 @@ public final class DemoKeystoreUtil {
                 subject,
                 kp.getPublic());
 
-        ContentSigner signer = new JcaContentSignerBuilder("SHA256withRSA")
+        ContentSigner signer = new JcaContentSignerBuilder(profile.getSignatureAlgorithm())
                 .setProvider(BouncyCastleProvider.PROVIDER_NAME)
                 .build(kp.getPrivate());
         X509CertificateHolder holder = certBuilder.build(signer);
@@ -0,0 +1,201 @@
+package com.demo.crypto;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.cert.Certificate;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide cache of decrypted PKCS#12 key material.
+ *
+ * <p>Entries are keyed by the keystore's absolute path, its last-modified time and an HMAC fingerprint of the
+ * password, so a replaced keystore or a different password never hits a stale entry. The password itself is never
+ * stored. Entries that have not been used for {@link #IDLE_TIMEOUT_PROPERTY} seconds (default 600) are dropped on the
+ * next access or by {@link #evictIdle()}.</p>
+ */
+public final class KeyMaterialCache {
+
+    public static final String IDLE_TIMEOUT_PROPERTY = "demo.keycache.idleSeconds";
+
+    private static final long DEFAULT_IDLE_SECONDS = 600L;
+    private static final byte[] FINGERPRINT_SALT = newSalt();
+    private static final Map<CacheKey, Holder> CACHE = new ConcurrentHashMap<>();
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    private static volatile Holder demoHolder;
+
+    private KeyMaterialCache() {
+    }
+
+    /**
+     * Returns the first private key entry of the keystore, decrypting it only when no live entry exists. The caller
+     * keeps ownership of {@code password} and should clear it once done (see {@link #zeroize(char[])}).
+     */
+    public static KeyMaterial get(String pkcs12Path, char[] password) throws Exception {
+        Objects.requireNonNull(pkcs12Path, "pkcs12Path");
+        char[] pwd = password != null ? password : new char[0];
+        evictIdle();
+
+        Path path = Path.of(pkcs12Path).toAbsolutePath().normalize();
+        long modified = Files.getLastModifiedTime(path).toMillis();
+        CacheKey key = new CacheKey(path, modified, fingerprint(pwd));
+        Holder holder = CACHE.computeIfAbsent(key, k -> new Holder());
+        return holder.get(() -> {
+            dropOtherVersions(key);
+            KeyStore ks = DemoKeystoreUtil.loadKeyStore(path.toString(), pwd);
+            KeyStore.PrivateKeyEntry entry = DemoKeystoreUtil.firstPrivateKey(ks, pwd);
+            return new KeyMaterial(entry.getPrivateKey(), entry.getCertificateChain());
+        });
+    }
+
+    /**
+     * Returns a throwaway demo identity. It is generated once per process instead of once per signature.
+     */
+    public static KeyMaterial demo() throws Exception {
+        Holder holder = demoHolder;
+        if (holder == null) {
+            synchronized (KeyMaterialCache.class) {
+                if (demoHolder == null) {
+                    demoHolder = new Holder();
+                }
+                holder = demoHolder;
+            }
+        }
+        return holder.get(() -> {
+            Path tmp = DemoKeystoreUtil.createDemoP12();
+            char[] demoPassword = "123456".toCharArray();
+            try {
+                KeyStore ks = DemoKeystoreUtil.loadKeyStore(tmp.toString(), demoPassword);
+                KeyStore.PrivateKeyEntry entry = DemoKeystoreUtil.firstPrivateKey(ks, demoPassword);
+                return new KeyMaterial(entry.getPrivateKey(), entry.getCertificateChain());
+            } finally {
+                zeroize(demoPassword);
+                Files.deleteIfExists(tmp);
+            }
+        });
+    }
+
+    /**
+     * Drops every entry idle for longer than the configured timeout.
+     */
+    public static void evictIdle() {
+        long cutoff = System.nanoTime() - TimeUnit.SECONDS.toNanos(idleTimeoutSeconds());
+        CACHE.entrySet().removeIf(e -> e.getValue().lastAccess < cutoff);
+    }
+
+    public static void clear() {
+        CACHE.clear();
+        demoHolder = null;
+    }
+
+    public static int size() {
+        return CACHE.size();
+    }
+
+    public static long hits() {
+        return HITS.get();
+    }
+
+    public static long misses() {
+        return MISSES.get();
+    }
+
+    public static void zeroize(char[] password) {
+        if (password != null) {
+            Arrays.fill(password, '\0');
+        }
+    }
+
+    private static void dropOtherVersions(CacheKey current) {
+        CACHE.keySet().removeIf(k -> k.path.equals(current.path) && k.modified != current.modified);
+    }
+
+    private static long idleTimeoutSeconds() {
+        String raw = System.getProperty(IDLE_TIMEOUT_PROPERTY);
+        if (raw == null || raw.isBlank()) {
+            return DEFAULT_IDLE_SECONDS;
+        }
+        try {
+            return Math.max(0L, Long.parseLong(raw.trim()));
+        } catch (NumberFormatException e) {
+            return DEFAULT_IDLE_SECONDS;
+        }
+    }
+
+    private static String fingerprint(char[] password) throws Exception {
+        ByteBuffer encoded = StandardCharsets.UTF_8.encode(CharBuffer.wrap(password));
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(FINGERPRINT_SALT, "HmacSHA256"));
+            byte[] digest = mac.doFinal(bytes);
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } finally {
+            Arrays.fill(bytes, (byte) 0);
+            if (encoded.hasArray()) {
+                Arrays.fill(encoded.array(), (byte) 0);
+            }
+        }
+    }
+
+    private static byte[] newSalt() {
+        byte[] salt = new byte[32];
+        new SecureRandom().nextBytes(salt);
+        return salt;
+    }
+
+    /**
+     * Decrypted signing identity shared by all signers.
+     */
+    public record KeyMaterial(PrivateKey privateKey, Certificate[] chain) {
+    }
+
+    private interface Loader {
+        KeyMaterial load() throws Exception;
+    }
+
+    private static final class Holder {
+        private volatile KeyMaterial material;
+        private volatile long lastAccess = System.nanoTime();
+
+        KeyMaterial get(Loader loader) throws Exception {
+            lastAccess = System.nanoTime();
+            KeyMaterial current = material;
+            if (current != null) {
+                HITS.incrementAndGet();
+                return current;
+            }
+            synchronized (this) {
+                if (material == null) {
+                    MISSES.incrementAndGet();
+                    material = loader.load();
+                } else {
+                    HITS.incrementAndGet();
+                }
+                return material;
+            }
+        }
+    }
+
+    private record CacheKey(Path path, long modified, String passwordFingerprint) {
+    }
+}
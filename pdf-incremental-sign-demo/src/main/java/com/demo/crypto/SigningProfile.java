@@ -0,0 +1,119 @@
+package com.demo.crypto;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Key type and matching digest used for a signature.
+ *
+ * <p>A signer's profile is determined by its key (see {@link #forKey(Key)}), so choosing a profile means generating the
+ * keystore with it. ECDSA keys sign an order of magnitude faster than RSA-2048 and produce smaller containers. Ed25519
+ * is faster still. iText 5's PKCS#7 encoder cannot express it, so Ed25519 containers are built with BouncyCastle
+ * directly and some older viewers cannot validate them.</p>
+ */
+public enum SigningProfile {
+
+    RSA_2048("rsa-2048", "RSA", "SHA256", "SHA256withRSA"),
+    ECDSA_P256("ecdsa-p256", "EC", "SHA256", "SHA256withECDSA"),
+    ECDSA_P384("ecdsa-p384", "EC", "SHA384", "SHA384withECDSA"),
+    ED25519("ed25519", "Ed25519", "SHA512", "Ed25519");
+
+    private final String id;
+    private final String keyAlgorithm;
+    private final String digestAlgorithm;
+    private final String signatureAlgorithm;
+
+    SigningProfile(String id, String keyAlgorithm, String digestAlgorithm, String signatureAlgorithm) {
+        this.id = id;
+        this.keyAlgorithm = keyAlgorithm;
+        this.digestAlgorithm = digestAlgorithm;
+        this.signatureAlgorithm = signatureAlgorithm;
+    }
+
+    /**
+     * Name used on the command line, e.g. {@code ecdsa-p256}.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Digest in iText's naming ({@code SHA256}, ...), used for the ByteRange and the signed attributes.
+     */
+    public String getDigestAlgorithm() {
+        return digestAlgorithm;
+    }
+
+    /**
+     * JCA signature algorithm, e.g. {@code SHA256withECDSA}.
+     */
+    public String getSignatureAlgorithm() {
+        return signatureAlgorithm;
+    }
+
+    /**
+     * Whether iText 5's {@code PdfPKCS7} can build the container; false only for Ed25519.
+     */
+    public boolean isPkcs7Supported() {
+        return this != ED25519;
+    }
+
+    public KeyPair generateKeyPair() throws GeneralSecurityException {
+        DemoKeystoreUtil.ensureProvider();
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance(keyAlgorithm, BouncyCastleProvider.PROVIDER_NAME);
+        switch (this) {
+            case RSA_2048:
+                kpg.initialize(2048);
+                break;
+            case ECDSA_P256:
+                kpg.initialize(new ECGenParameterSpec("secp256r1"));
+                break;
+            case ECDSA_P384:
+                kpg.initialize(new ECGenParameterSpec("secp384r1"));
+                break;
+            default:
+                break;
+        }
+        return kpg.generateKeyPair();
+    }
+
+    public static SigningProfile fromId(String id) {
+        if (id != null) {
+            String normalized = id.trim().toLowerCase(Locale.ROOT);
+            for (SigningProfile profile : values()) {
+                if (profile.id.equals(normalized)) {
+                    return profile;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Unknown signing profile '" + id + "'; expected one of "
+                + Arrays.stream(values()).map(SigningProfile::getId).collect(Collectors.joining(", ")));
+    }
+
+    /**
+     * Profile matching a private or public key. RSA keys of any size use {@link #RSA_2048}'s SHA-256; EC keys use
+     * SHA-384 from 384-bit curves upwards and SHA-256 below.
+     */
+    public static SigningProfile forKey(Key key) {
+        String algorithm = key.getAlgorithm();
+        if ("RSA".equalsIgnoreCase(algorithm)) {
+            return RSA_2048;
+        }
+        if (("EC".equalsIgnoreCase(algorithm) || "ECDSA".equalsIgnoreCase(algorithm)) && key instanceof ECKey ec) {
+            return ec.getParams().getCurve().getField().getFieldSize() >= 384 ? ECDSA_P384 : ECDSA_P256;
+        }
+        if ("Ed25519".equalsIgnoreCase(algorithm) || "EdDSA".equalsIgnoreCase(algorithm)) {
+            return ED25519;
+        }
+        throw new IllegalArgumentException("Unsupported signing key algorithm: " + algorithm);
+    }
+}
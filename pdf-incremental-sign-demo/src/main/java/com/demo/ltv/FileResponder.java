@@ -0,0 +1,106 @@
+package com.demo.ltv;
+
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.SingleResp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Answers from a directory of {@code *.crl} files (DER or PEM) and {@code *.ocsp} files (DER {@code OCSPResponse}),
+ * selected with the revocation source {@code dir:<path>}.
+ *
+ * <p>CRLs are matched by issuer name and signature, OCSP responses by the certificate ID of their single responses,
+ * so certificates without distribution point URLs, such as the self-signed demo identities, can be covered too. Meant
+ * for tests and for archives that receive revocation data out of band. The directory is read once, when the responder
+ * is created.</p>
+ */
+final class FileResponder implements RevocationSource {
+
+    private static final Logger log = LoggerFactory.getLogger(FileResponder.class);
+
+    private final Path directory;
+    private final List<X509CRL> crls = new ArrayList<>();
+    private final List<OCSPResp> responses = new ArrayList<>();
+
+    FileResponder(Path directory) throws IOException {
+        this.directory = directory;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+                try {
+                    if (name.endsWith(".crl")) {
+                        try (InputStream in = Files.newInputStream(file)) {
+                            crls.add((X509CRL) CertificateFactory.getInstance("X.509").generateCRL(in));
+                        }
+                    } else if (name.endsWith(".ocsp")) {
+                        responses.add(new OCSPResp(Files.readAllBytes(file)));
+                    }
+                } catch (Exception e) {
+                    log.warn("[ltv] skipping unreadable {}: {}", file, e.toString());
+                }
+            }
+        }
+        log.info("[ltv] file responder {}: {} CRL(s), {} OCSP response(s)", directory, crls.size(), responses.size());
+    }
+
+    @Override
+    public byte[] ocsp(X509Certificate cert, X509Certificate issuer) throws IOException {
+        for (OCSPResp response : responses) {
+            if (response.getStatus() != OCSPResp.SUCCESSFUL) {
+                continue;
+            }
+            try {
+                BasicOCSPResp basic = (BasicOCSPResp) response.getResponseObject();
+                for (SingleResp single : basic.getResponses()) {
+                    if (RevocationStore.matches(single, cert, issuer)) {
+                        return response.getEncoded();
+                    }
+                }
+            } catch (Exception e) {
+                log.debug("[ltv] OCSP response not usable: {}", e.toString());
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public byte[] crl(X509Certificate cert, X509Certificate issuer) throws IOException {
+        X509CRL latest = null;
+        for (X509CRL crl : crls) {
+            if (!crl.getIssuerX500Principal().equals(issuer.getSubjectX500Principal())) {
+                continue;
+            }
+            try {
+                crl.verify(issuer.getPublicKey());
+            } catch (Exception e) {
+                continue;
+            }
+            if (latest == null || crl.getThisUpdate().after(latest.getThisUpdate())) {
+                latest = crl;
+            }
+        }
+        try {
+            return latest != null ? latest.getEncoded() : null;
+        } catch (Exception e) {
+            throw new IOException("CRL of " + issuer.getSubjectX500Principal() + " does not encode", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FileResponder[" + directory + "]";
+    }
+}
@@ -0,0 +1,123 @@
+package com.demo.ltv;
+
+import com.itextpdf.text.pdf.security.CertificateUtil;
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPReqBuilder;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Fetches OCSP responses and CRLs from the URLs in the certificates' Authority Information Access and CRL
+ * Distribution Points extensions, over one shared keep-alive {@link HttpClient}. Requests carry no nonce, so the
+ * responses can be kept by {@link RevocationStore}. Every request is bounded by {@link #TIMEOUT_PROPERTY}.
+ */
+final class HttpRevocationSource implements RevocationSource {
+
+    public static final String TIMEOUT_PROPERTY = "demo.ltv.timeoutMillis";
+
+    static final HttpRevocationSource INSTANCE = new HttpRevocationSource();
+
+    private static final Logger log = LoggerFactory.getLogger(HttpRevocationSource.class);
+
+    private final Duration timeout = Duration.ofMillis(Long.getLong(TIMEOUT_PROPERTY, 10_000L));
+    private final HttpClient http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(timeout)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+
+    private HttpRevocationSource() {
+    }
+
+    @Override
+    public byte[] ocsp(X509Certificate cert, X509Certificate issuer) throws IOException {
+        String url = httpUrl(CertificateUtil.getOCSPURL(cert));
+        if (url == null) {
+            return null;
+        }
+        try {
+            OCSPReq request = new OCSPReqBuilder()
+                    .addRequest(RevocationStore.certificateId(cert, issuer))
+                    .build();
+            byte[] body = exchange(HttpRequest.newBuilder(URI.create(url))
+                    .header("Content-Type", "application/ocsp-request")
+                    .header("Accept", "application/ocsp-response")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(request.getEncoded())), url);
+            OCSPResp response = new OCSPResp(body);
+            if (response.getStatus() != OCSPResp.SUCCESSFUL) {
+                log.warn("[ltv] OCSP responder {} answered status {} for serial {}", url, response.getStatus(),
+                        cert.getSerialNumber().toString(16));
+                return null;
+            }
+            return response.getEncoded();
+        } catch (OCSPException e) {
+            throw new IOException("OCSP request to " + url + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public byte[] crl(X509Certificate cert, X509Certificate issuer) throws IOException {
+        String url;
+        try {
+            url = httpUrl(CertificateUtil.getCRLURL(cert));
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Unreadable CRL distribution points in " + cert.getSubjectX500Principal(), e);
+        }
+        if (url == null) {
+            return null;
+        }
+        byte[] body = exchange(HttpRequest.newBuilder(URI.create(url)).GET(), url);
+        try {
+            CertificateFactory.getInstance("X.509").generateCRL(new ByteArrayInputStream(body));
+        } catch (GeneralSecurityException e) {
+            throw new IOException("CRL from " + url + " does not parse: " + e.getMessage(), e);
+        }
+        return body;
+    }
+
+    private byte[] exchange(HttpRequest.Builder request, String url) throws IOException {
+        HttpResponse<byte[]> response;
+        try {
+            response = http.send(request.timeout(timeout).build(), HttpResponse.BodyHandlers.ofByteArray());
+        } catch (HttpTimeoutException e) {
+            throw new IOException(url + " did not answer within " + timeout.toMillis() + " ms", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching " + url, e);
+        } catch (IOException e) {
+            throw new IOException(url + " is unreachable: " + e, e);
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException(url + " answered HTTP " + response.statusCode());
+        }
+        return response.body();
+    }
+
+    private static String httpUrl(String url) {
+        if (url == null) {
+            return null;
+        }
+        String lower = url.toLowerCase(Locale.ROOT);
+        return lower.startsWith("http://") || lower.startsWith("https://") ? url : null;
+    }
+
+    @Override
+    public String toString() {
+        return "HttpRevocationSource";
+    }
+}
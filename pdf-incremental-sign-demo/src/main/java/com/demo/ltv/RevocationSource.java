@@ -0,0 +1,23 @@
+package com.demo.ltv;
+
+import java.io.IOException;
+import java.security.cert.X509Certificate;
+
+/**
+ * Where {@link RevocationStore} gets revocation data it does not hold yet.
+ *
+ * <p>Both methods return DER bytes, or {@code null} when the source has nothing for the certificate. Implementations
+ * must be safe to call from several threads.</p>
+ */
+public interface RevocationSource {
+
+    /**
+     * An encoded {@code OCSPResponse} with a successful status for {@code cert}, or {@code null}.
+     */
+    byte[] ocsp(X509Certificate cert, X509Certificate issuer) throws IOException;
+
+    /**
+     * An encoded CRL from {@code issuer} that covers {@code cert}, or {@code null}.
+     */
+    byte[] crl(X509Certificate cert, X509Certificate issuer) throws IOException;
+}
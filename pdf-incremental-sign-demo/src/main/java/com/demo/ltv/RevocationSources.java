@@ -0,0 +1,36 @@
+package com.demo.ltv;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Resolves the {@code --revocation-source} of {@code add-ltv} to a {@link RevocationSource}.
+ *
+ * <p>{@code http} fetches from the OCSP and CRL distribution point URLs in the certificates; {@code dir:<path>} answers
+ * from the {@code .crl} and {@code .ocsp} files in a directory through a {@link FileResponder}.</p>
+ */
+public final class RevocationSources {
+
+    public static final String HTTP = "http";
+    public static final String DIR_SCHEME = "dir:";
+
+    private RevocationSources() {
+    }
+
+    public static RevocationSource forSpec(String spec) throws IOException {
+        if (spec == null || spec.isBlank() || spec.trim().equalsIgnoreCase(HTTP)) {
+            return HttpRevocationSource.INSTANCE;
+        }
+        String trimmed = spec.trim();
+        if (trimmed.toLowerCase(Locale.ROOT).startsWith(DIR_SCHEME)) {
+            Path dir = Path.of(trimmed.substring(DIR_SCHEME.length())).toAbsolutePath();
+            if (!Files.isDirectory(dir)) {
+                throw new IllegalArgumentException("Revocation directory " + dir + " does not exist");
+            }
+            return new FileResponder(dir);
+        }
+        throw new IllegalArgumentException("Unsupported revocation source " + spec + " (expected http or dir:<path>)");
+    }
+}
@@ -0,0 +1,441 @@
+package com.demo.ltv;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.itextpdf.text.pdf.security.CertificateUtil;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.SingleResp;
+import org.bouncycastle.operator.DigestCalculatorProvider;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Disk-backed cache of OCSP responses and CRLs in front of a {@link RevocationSource}.
+ *
+ * <p>Lookups are keyed by what the data covers: an OCSP response by issuer key and serial number, a CRL by its
+ * distribution point URL, or by its issuer when the certificate names none. All certificates from one CA therefore
+ * share a single CRL fetch. The encoded data is stored once per SHA-256 under {@code blobs/}, and each key has a small
+ * JSON entry under {@code index/} that points at its blob and records when it expires: after the store's TTL or at
+ * the data's {@code nextUpdate}, whichever comes first. {@link #evict()} removes expired entries and blobs nothing
+ * refers to any more. Files are written through a temporary file and an atomic move, so several processes can share
+ * one store.</p>
+ *
+ * <p>Nothing is stored or served until {@link RevocationVerifier} has checked it against the issuer: a CRL must carry
+ * the issuer's signature, and an OCSP response must be signed by the issuer or by a responder it authorised. A fetched
+ * answer that fails the check is logged and treated as "nothing available" without being remembered, so an OCSP
+ * lookup falls back to the CRL. A stored blob that fails it is fetched again.</p>
+ *
+ * <p>Within one process each key is resolved once: concurrent lookups of the same key wait for the first one, and
+ * answers, including "nothing available", are kept in memory until they expire.</p>
+ */
+public final class RevocationStore {
+
+    public static final Duration DEFAULT_TTL = Duration.ofHours(24);
+
+    private static final Logger log = LoggerFactory.getLogger(RevocationStore.class);
+
+    private static final String INDEX = "index";
+    private static final String BLOBS = "blobs";
+    /** Blobs younger than this are kept by {@link #evict()}, as another process may be about to index them. */
+    private static final long BLOB_GRACE_MILLIS = 60_000L;
+
+    /**
+     * Kind of revocation data.
+     */
+    public enum Kind {
+        OCSP, CRL
+    }
+
+    /**
+     * One OCSP response or CRL, identified by the SHA-256 of its encoding.
+     */
+    public static final class Material {
+        private final Kind kind;
+        private final byte[] encoded;
+        private final String sha256;
+        private final long expires;
+
+        Material(Kind kind, byte[] encoded, long expires) {
+            this.kind = kind;
+            this.encoded = encoded;
+            this.sha256 = sha256Hex(encoded);
+            this.expires = expires;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * DER {@code OCSPResponse} or CRL. Not copied; callers must not modify it.
+         */
+        public byte[] getEncoded() {
+            return encoded;
+        }
+
+        public String getSha256() {
+            return sha256;
+        }
+
+        /**
+         * Milliseconds since the epoch after which the store fetches this data again.
+         */
+        public long getExpires() {
+            return expires;
+        }
+
+        /**
+         * Whether this data reports {@code cert} as revoked. Data that cannot be read, or an OCSP response that does
+         * not mention {@code cert}, is an error rather than a "good" answer.
+         */
+        public boolean isRevoked(X509Certificate cert, X509Certificate issuer) throws IOException {
+            if (kind == Kind.CRL) {
+                try {
+                    return crl(encoded).isRevoked(cert);
+                } catch (GeneralSecurityException e) {
+                    throw new IOException("Cannot read CRL " + sha256, e);
+                }
+            }
+            BasicOCSPResp basic;
+            try {
+                basic = (BasicOCSPResp) new OCSPResp(encoded).getResponseObject();
+            } catch (OCSPException | ClassCastException e) {
+                throw new IOException("Cannot read OCSP response " + sha256, e);
+            }
+            if (basic == null) {
+                throw new IOException("OCSP response " + sha256 + " carries no basic response");
+            }
+            for (SingleResp single : basic.getResponses()) {
+                if (matches(single, cert, issuer)) {
+                    return single.getCertStatus() != null;
+                }
+            }
+            throw new IOException("OCSP response " + sha256 + " does not report on serial "
+                    + cert.getSerialNumber().toString(16));
+        }
+    }
+
+    private final Path directory;
+    private final Duration ttl;
+    private final RevocationSource source;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ConcurrentHashMap<String, CompletableFuture<Cached>> memory = new ConcurrentHashMap<>();
+
+    private final AtomicInteger memoryHits = new AtomicInteger();
+    private final AtomicInteger diskHits = new AtomicInteger();
+    private final AtomicInteger fetches = new AtomicInteger();
+
+    public RevocationStore(Path directory, Duration ttl, RevocationSource source) throws IOException {
+        this.directory = Objects.requireNonNull(directory, "directory").toAbsolutePath();
+        this.ttl = Objects.requireNonNull(ttl, "ttl");
+        this.source = Objects.requireNonNull(source, "source");
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("Revocation store TTL must be positive");
+        }
+        Files.createDirectories(this.directory.resolve(INDEX));
+        Files.createDirectories(this.directory.resolve(BLOBS));
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Revocation data for {@code cert}: an OCSP response when the source has one, otherwise a CRL, or {@code null}
+     * when neither is available.
+     */
+    public Material lookup(X509Certificate cert, X509Certificate issuer) throws IOException {
+        Material ocsp = resolve(ocspKey(cert, issuer), Kind.OCSP, cert, issuer, () -> source.ocsp(cert, issuer));
+        if (ocsp != null) {
+            return ocsp;
+        }
+        return resolve(crlKey(cert, issuer), Kind.CRL, cert, issuer, () -> source.crl(cert, issuer));
+    }
+
+    /**
+     * Deletes expired and unreadable index entries, then the blobs no remaining entry refers to, and returns the
+     * number of files removed.
+     */
+    public int evict() throws IOException {
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        Set<String> referenced = new HashSet<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory.resolve(INDEX), "*.json")) {
+            for (Path entry : entries) {
+                JsonNode node = readEntry(entry);
+                if (node == null || node.path("expires").asLong(0L) <= now) {
+                    removed += Files.deleteIfExists(entry) ? 1 : 0;
+                } else {
+                    referenced.add(node.path("sha256").asText());
+                }
+            }
+        }
+        try (DirectoryStream<Path> blobs = Files.newDirectoryStream(directory.resolve(BLOBS), "*.der")) {
+            for (Path blob : blobs) {
+                String name = blob.getFileName().toString();
+                if (!referenced.contains(name.substring(0, name.length() - 4))
+                        && now - Files.getLastModifiedTime(blob).toMillis() > BLOB_GRACE_MILLIS) {
+                    removed += Files.deleteIfExists(blob) ? 1 : 0;
+                }
+            }
+        }
+        memory.values().removeIf(future -> future.isDone() && !future.isCompletedExceptionally()
+                && future.join().expires <= now);
+        if (removed > 0) {
+            log.info("[ltv] evicted {} file(s) from {}", removed, directory);
+        }
+        return removed;
+    }
+
+    /**
+     * Lookups answered from memory, from disk, and by the source.
+     */
+    public String stats() {
+        return String.format("%d memory hit(s), %d store hit(s), %d fetch(es)", memoryHits.get(), diskHits.get(),
+                fetches.get());
+    }
+
+    public int getFetches() {
+        return fetches.get();
+    }
+
+    private Material resolve(String key, Kind kind, X509Certificate cert, X509Certificate issuer, Fetch fetch)
+            throws IOException {
+        while (true) {
+            CompletableFuture<Cached> mine = new CompletableFuture<>();
+            CompletableFuture<Cached> existing = memory.putIfAbsent(key, mine);
+            if (existing != null) {
+                Cached cached = await(existing);
+                if (cached.expires > System.currentTimeMillis()) {
+                    memoryHits.incrementAndGet();
+                    return cached.material;
+                }
+                memory.remove(key, existing);
+                continue;
+            }
+            try {
+                Cached cached = load(key, kind, cert, issuer, fetch);
+                mine.complete(cached);
+                return cached.material;
+            } catch (IOException | RuntimeException e) {
+                memory.remove(key, mine);
+                mine.completeExceptionally(e);
+                throw e;
+            }
+        }
+    }
+
+    private Cached load(String key, Kind kind, X509Certificate cert, X509Certificate issuer, Fetch fetch)
+            throws IOException {
+        long now = System.currentTimeMillis();
+        Path entry = directory.resolve(INDEX).resolve(sha256Hex(key.getBytes(StandardCharsets.UTF_8)) + ".json");
+        JsonNode node = readEntry(entry);
+        if (node != null && node.path("expires").asLong(0L) > now) {
+            Path blob = blob(node.path("sha256").asText());
+            if (Files.isRegularFile(blob)) {
+                byte[] stored = Files.readAllBytes(blob);
+                try {
+                    RevocationVerifier.verify(kind, stored, cert, issuer);
+                    diskHits.incrementAndGet();
+                    long expires = node.path("expires").asLong();
+                    return new Cached(new Material(kind, stored, expires), expires);
+                } catch (IOException e) {
+                    log.warn("[ltv] stored {} for {} is rejected, fetching again: {}", kind, key, e.getMessage());
+                }
+            }
+        }
+        byte[] encoded = fetch.fetch();
+        fetches.incrementAndGet();
+        if (encoded == null) {
+            return new Cached(null, now + ttl.toMillis());
+        }
+        try {
+            RevocationVerifier.verify(kind, encoded, cert, issuer);
+        } catch (IOException e) {
+            log.warn("[ltv] rejected {} for {}: {}", kind, key, e.getMessage());
+            return new Cached(null, now);
+        }
+        long expires = now + ttl.toMillis();
+        Date nextUpdate = nextUpdate(kind, encoded);
+        if (nextUpdate != null && nextUpdate.getTime() < expires) {
+            if (nextUpdate.getTime() > now) {
+                expires = nextUpdate.getTime();
+            } else {
+                log.warn("[ltv] {} for {} was due for renewal at {}", kind, key, nextUpdate);
+            }
+        }
+        Material material = new Material(kind, encoded, expires);
+        Path blob = blob(material.sha256);
+        if (!Files.exists(blob)) {
+            write(blob, encoded);
+        }
+        ObjectNode index = mapper.createObjectNode();
+        index.put("key", key);
+        index.put("kind", kind.name());
+        index.put("sha256", material.sha256);
+        index.put("fetched", now);
+        index.put("expires", expires);
+        write(entry, mapper.writeValueAsBytes(index));
+        log.info("[ltv] stored {} for {} ({} bytes, sha256 {})", kind, key, encoded.length, material.sha256);
+        return new Cached(material, expires);
+    }
+
+    private JsonNode readEntry(Path entry) {
+        try {
+            return Files.isRegularFile(entry) ? mapper.readTree(entry.toFile()) : null;
+        } catch (IOException e) {
+            log.warn("[ltv] unreadable store entry {}: {}", entry.getFileName(), e.toString());
+            return null;
+        }
+    }
+
+    private void write(Path target, byte[] bytes) throws IOException {
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".part");
+        try {
+            Files.write(temp, bytes);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Path blob(String sha256) {
+        return directory.resolve(BLOBS).resolve(sha256 + ".der");
+    }
+
+    private static Cached await(CompletableFuture<Cached> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for revocation data", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static String ocspKey(X509Certificate cert, X509Certificate issuer) {
+        return "ocsp:" + sha256Hex(issuer.getPublicKey().getEncoded()) + ":" + cert.getSerialNumber().toString(16);
+    }
+
+    private static String crlKey(X509Certificate cert, X509Certificate issuer) throws IOException {
+        try {
+            String url = CertificateUtil.getCRLURL(cert);
+            if (url != null) {
+                return "crl:" + url;
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Unreadable CRL distribution points in " + cert.getSubjectX500Principal(), e);
+        }
+        return "crl:issuer:" + sha256Hex(issuer.getSubjectX500Principal().getEncoded());
+    }
+
+    private static Date nextUpdate(Kind kind, byte[] encoded) {
+        try {
+            if (kind == Kind.CRL) {
+                return crl(encoded).getNextUpdate();
+            }
+            Date earliest = null;
+            BasicOCSPResp basic = (BasicOCSPResp) new OCSPResp(encoded).getResponseObject();
+            for (SingleResp single : basic.getResponses()) {
+                Date next = single.getNextUpdate();
+                if (next != null && (earliest == null || next.before(earliest))) {
+                    earliest = next;
+                }
+            }
+            return earliest;
+        } catch (Exception e) {
+            log.debug("[ltv] no nextUpdate in {} data: {}", kind, e.toString());
+            return null;
+        }
+    }
+
+    private static X509CRL crl(byte[] encoded) throws GeneralSecurityException {
+        return (X509CRL) CertificateFactory.getInstance("X.509").generateCRL(new ByteArrayInputStream(encoded));
+    }
+
+    /**
+     * The SHA-1 OCSP certificate ID of {@code cert}, as sent in requests.
+     */
+    static CertificateID certificateId(X509Certificate cert, X509Certificate issuer) throws IOException {
+        try {
+            return new CertificateID(digests().get(CertificateID.HASH_SHA1), new JcaX509CertificateHolder(issuer),
+                    cert.getSerialNumber());
+        } catch (OperatorCreationException | OCSPException | CertificateEncodingException e) {
+            throw new IOException("Cannot build the OCSP certificate ID of " + cert.getSubjectX500Principal(), e);
+        }
+    }
+
+    /**
+     * Whether {@code single} is about {@code cert}, whatever hash algorithm its certificate ID uses.
+     */
+    static boolean matches(SingleResp single, X509Certificate cert, X509Certificate issuer) throws IOException {
+        CertificateID id = single.getCertID();
+        if (!id.getSerialNumber().equals(cert.getSerialNumber())) {
+            return false;
+        }
+        try {
+            return id.matchesIssuer(new JcaX509CertificateHolder(issuer), digests());
+        } catch (OperatorCreationException | OCSPException | CertificateEncodingException e) {
+            throw new IOException("Cannot match the OCSP certificate ID of " + cert.getSubjectX500Principal(), e);
+        }
+    }
+
+    private static DigestCalculatorProvider digests() throws OperatorCreationException {
+        return new JcaDigestCalculatorProviderBuilder().build();
+    }
+
+    static String sha256Hex(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Fetch {
+        byte[] fetch() throws IOException;
+    }
+
+    private record Cached(Material material, long expires) {
+    }
+}
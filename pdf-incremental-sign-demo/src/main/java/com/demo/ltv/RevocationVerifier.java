@@ -0,0 +1,151 @@
+package com.demo.ltv;
+
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.cert.CertException;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.SingleResp;
+import org.bouncycastle.operator.ContentVerifierProvider;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Checks that revocation data was issued by the CA it claims to come from, before {@link RevocationStore} keeps it.
+ *
+ * <p>A CRL must name {@code issuer} and carry its signature. Indirect CRLs are not accepted. An OCSP response must be
+ * successful, report on {@code cert}, and be signed either by {@code issuer} itself or by a responder certificate that
+ * {@code issuer} signed for {@code id-kp-OCSPSigning} and that was valid when the response was produced. Data that
+ * arrives over plain HTTP is only as good as these checks.</p>
+ */
+final class RevocationVerifier {
+
+    private RevocationVerifier() {
+    }
+
+    /**
+     * Throws when {@code encoded} is not genuine {@code kind} data about {@code cert} from {@code issuer}.
+     */
+    static void verify(RevocationStore.Kind kind, byte[] encoded, X509Certificate cert, X509Certificate issuer)
+            throws IOException {
+        if (kind == RevocationStore.Kind.CRL) {
+            verifyCrl(encoded, issuer);
+        } else {
+            verifyOcsp(encoded, cert, issuer);
+        }
+    }
+
+    private static void verifyCrl(byte[] encoded, X509Certificate issuer) throws IOException {
+        X509CRL crl;
+        try {
+            crl = (X509CRL) CertificateFactory.getInstance("X.509").generateCRL(new ByteArrayInputStream(encoded));
+        } catch (GeneralSecurityException e) {
+            throw new IOException("CRL does not parse: " + e.getMessage(), e);
+        }
+        if (!crl.getIssuerX500Principal().equals(issuer.getSubjectX500Principal())) {
+            throw new IOException("CRL is issued by " + crl.getIssuerX500Principal() + ", not by "
+                    + issuer.getSubjectX500Principal());
+        }
+        try {
+            crl.verify(issuer.getPublicKey());
+        } catch (GeneralSecurityException e) {
+            throw new IOException("CRL signature does not verify with the key of " + issuer.getSubjectX500Principal(),
+                    e);
+        }
+    }
+
+    private static void verifyOcsp(byte[] encoded, X509Certificate cert, X509Certificate issuer) throws IOException {
+        BasicOCSPResp basic;
+        try {
+            OCSPResp response = new OCSPResp(encoded);
+            if (response.getStatus() != OCSPResp.SUCCESSFUL) {
+                throw new IOException("OCSP response has status " + response.getStatus());
+            }
+            basic = (BasicOCSPResp) response.getResponseObject();
+        } catch (OCSPException | ClassCastException e) {
+            throw new IOException("OCSP response does not parse: " + e.getMessage(), e);
+        }
+        if (basic == null) {
+            throw new IOException("OCSP response carries no basic response");
+        }
+        boolean covered = false;
+        for (SingleResp single : basic.getResponses()) {
+            covered |= RevocationStore.matches(single, cert, issuer);
+        }
+        if (!covered) {
+            throw new IOException("OCSP response does not report on serial " + cert.getSerialNumber().toString(16));
+        }
+        for (X509CertificateHolder responder : authorizedResponders(basic, issuer)) {
+            try {
+                if (basic.isSignatureValid(verifierFor(responder))) {
+                    return;
+                }
+            } catch (OCSPException e) {
+                // Not this responder's key; try the next one.
+            }
+        }
+        throw new IOException("OCSP response is not signed by " + issuer.getSubjectX500Principal()
+                + " or a responder it authorised");
+    }
+
+    /**
+     * {@code issuer} itself, followed by every certificate in the response that {@code issuer} signed for OCSP signing
+     * and that was valid when the response was produced.
+     */
+    private static List<X509CertificateHolder> authorizedResponders(BasicOCSPResp basic, X509Certificate issuer)
+            throws IOException {
+        List<X509CertificateHolder> responders = new ArrayList<>();
+        X509CertificateHolder issuerHolder;
+        ContentVerifierProvider issuerKey;
+        try {
+            issuerHolder = new JcaX509CertificateHolder(issuer);
+            issuerKey = verifierFor(issuerHolder);
+        } catch (CertificateEncodingException e) {
+            throw new IOException("Cannot encode " + issuer.getSubjectX500Principal(), e);
+        }
+        responders.add(issuerHolder);
+        Date produced = basic.getProducedAt();
+        for (X509CertificateHolder candidate : basic.getCerts()) {
+            if (!candidate.getIssuer().equals(issuerHolder.getSubject())
+                    || (produced != null && !candidate.isValidOn(produced))
+                    || !hasOcspSigningUsage(candidate)) {
+                continue;
+            }
+            try {
+                if (candidate.isSignatureValid(issuerKey)) {
+                    responders.add(candidate);
+                }
+            } catch (CertException e) {
+                // Signed with another key; not authorised by this issuer.
+            }
+        }
+        return responders;
+    }
+
+    private static boolean hasOcspSigningUsage(X509CertificateHolder holder) {
+        ExtendedKeyUsage usage = ExtendedKeyUsage.fromExtensions(holder.getExtensions());
+        return usage != null && usage.hasKeyPurposeId(KeyPurposeId.id_kp_OCSPSigning);
+    }
+
+    private static ContentVerifierProvider verifierFor(X509CertificateHolder holder) throws IOException {
+        try {
+            return new JcaContentVerifierProviderBuilder().build(holder);
+        } catch (OperatorCreationException | GeneralSecurityException e) {
+            throw new IOException("Unusable key in " + holder.getSubject(), e);
+        }
+    }
+}
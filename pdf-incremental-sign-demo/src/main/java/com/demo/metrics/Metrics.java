@@ -0,0 +1,200 @@
+package com.demo.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Entry point for hot-path instrumentation.
+ *
+ * <p>One {@link Operation} covers a whole sign or verify call and each step inside it runs as a phase:</p>
+ * <pre>
+ * try (Metrics.Operation op = Metrics.start(Metrics.SIGN_ROW)) {
+ *     try (Metrics.Phase ignored = op.phase(Metrics.DIGEST)) {
+ *         ...
+ *     }
+ *     op.succeeded();
+ * }
+ * </pre>
+ * <p>A phase measures wall time and, when the JVM supports it, the bytes allocated by the current thread. A phase that
+ * runs several times within one operation is summed, so the registry sees each phase at most once per operation.
+ * Closing the operation records its total and its outcome.</p>
+ */
+public final class Metrics {
+
+    public static final String SIGN_ROW = "sign-row";
+    public static final String SIGN_ROWS = "sign-rows";
+    public static final String SIGN_ELECTRONIC = "sign-electronic";
+    public static final String PREPARE_ROW = "prepare-row";
+    public static final String COMPLETE = "complete";
+    public static final String BATCH_SIGN = "batch-sign";
+    public static final String VERIFY = "verify";
+    /** A document timestamp appended by the timestamp queue. */
+    public static final String DOC_TIMESTAMP = "doc-timestamp";
+    /** One timestamp token request, recorded by the TSA clients apart from the signature that needs it. */
+    public static final String TSA_REQUEST = "tsa-request";
+    /** Certificates and revocation data appended as a DSS revision. */
+    public static final String ADD_LTV = "add-ltv";
+
+    public static final String PARSE = "parse";
+    public static final String DOCMDP_CHECK = "docmdp_check";
+    public static final String FIELD_UPDATE = "field_update";
+    public static final String APPEARANCE = "appearance";
+    public static final String KEY_LOAD = "key_load";
+    /** Private-key operations alone, without building the CMS container. */
+    public static final String KEY_SIGN = "key_sign";
+    public static final String DIGEST = "digest";
+    public static final String PKCS7 = "pkcs7";
+    public static final String TSA = "tsa";
+    /** A timestamp request refused at once because the TSA's circuit breaker is open. */
+    public static final String CIRCUIT_OPEN = "circuit_open";
+    /** OCSP and CRL lookups, from the revocation store or its source. */
+    public static final String REVOCATION = "revocation";
+    public static final String WRITE = "write";
+    public static final String PREFIX_CHECK = "prefix_check";
+    public static final String POST_VALIDATE = "post_validate";
+    /** Signature listings and structure logging that only feed the log. */
+    public static final String DIAGNOSTICS = "diagnostics";
+    public static final String TOTAL = "total";
+
+    private static final com.sun.management.ThreadMXBean THREADS = allocationBean();
+
+    private static final Operation UNTRACKED = new Operation("untracked", false);
+
+    private static volatile MetricsRegistry registry = new SimpleMetricsRegistry();
+
+    private Metrics() {
+    }
+
+    public static MetricsRegistry registry() {
+        return registry;
+    }
+
+    public static void setRegistry(MetricsRegistry replacement) {
+        registry = Objects.requireNonNull(replacement, "registry");
+    }
+
+    /**
+     * Starts an operation that records into the current registry when closed.
+     */
+    public static Operation start(String operation) {
+        return new Operation(operation, true);
+    }
+
+    /**
+     * Returns an operation that records nothing, for work nested inside another operation.
+     */
+    public static Operation untracked() {
+        return UNTRACKED;
+    }
+
+    /**
+     * Heap bytes allocated so far by the current thread, or -1 when unsupported.
+     */
+    public static long allocatedBytes() {
+        if (THREADS == null) {
+            return -1L;
+        }
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        try {
+            if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                    && bean.isThreadAllocatedMemorySupported()) {
+                if (!bean.isThreadAllocatedMemoryEnabled()) {
+                    bean.setThreadAllocatedMemoryEnabled(true);
+                }
+                return bean;
+            }
+        } catch (RuntimeException ignore) {
+        }
+        return null;
+    }
+
+    /**
+     * One sign or verify call. Phases may be added from any thread; the operation itself is closed once.
+     */
+    public static final class Operation implements AutoCloseable {
+        private final String name;
+        private final boolean recording;
+        private final Phase total;
+        private final Map<String, long[]> phases = new LinkedHashMap<>();
+        private volatile boolean success;
+        private boolean closed;
+
+        private Operation(String name, boolean recording) {
+            this.name = name;
+            this.recording = recording;
+            this.total = recording ? new Phase(this, TOTAL) : null;
+        }
+
+        public Phase phase(String phase) {
+            return new Phase(this, phase);
+        }
+
+        /**
+         * Adds a phase measured by the caller, for example time spent inside a callback.
+         */
+        public void add(String phase, long nanos, long allocatedBytes) {
+            if (!recording) {
+                return;
+            }
+            synchronized (phases) {
+                long[] sums = phases.computeIfAbsent(phase, k -> new long[]{0L, 0L});
+                sums[0] += nanos;
+                sums[1] = sums[1] < 0 || allocatedBytes < 0 ? -1L : sums[1] + allocatedBytes;
+            }
+        }
+
+        public void succeeded() {
+            success = true;
+        }
+
+        @Override
+        public void close() {
+            if (!recording || closed) {
+                return;
+            }
+            closed = true;
+            total.close();
+            MetricsRegistry target = registry;
+            synchronized (phases) {
+                for (Map.Entry<String, long[]> e : phases.entrySet()) {
+                    target.recordPhase(name, e.getKey(), e.getValue()[0], e.getValue()[1]);
+                }
+            }
+            target.recordOutcome(name, success);
+        }
+    }
+
+    /**
+     * One running phase measurement; opened and closed on the same thread.
+     */
+    public static final class Phase implements AutoCloseable {
+        private final Operation owner;
+        private final String phase;
+        private final long startNanos;
+        private final long startAllocated;
+        private boolean closed;
+
+        private Phase(Operation owner, String phase) {
+            this.owner = owner;
+            this.phase = phase;
+            this.startAllocated = allocatedBytes();
+            this.startNanos = System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            long nanos = System.nanoTime() - startNanos;
+            long allocated = startAllocated >= 0 ? allocatedBytes() - startAllocated : -1L;
+            owner.add(phase, nanos, allocated);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.demo.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Sink for signing and verification metrics.
+ *
+ * <p>The default is {@link SimpleMetricsRegistry}. An adapter to another metrics library can be installed with
+ * {@link Metrics#setRegistry(MetricsRegistry)}. Implementations must be thread-safe; phases are recorded concurrently
+ * from worker threads.</p>
+ */
+public interface MetricsRegistry {
+
+    /**
+     * Records one completed phase of {@code operation}. {@code allocatedBytes} is the heap allocated by the recording
+     * thread during the phase, or -1 when the JVM cannot report it.
+     */
+    void recordPhase(String operation, String phase, long nanos, long allocatedBytes);
+
+    /**
+     * Counts one finished {@code operation}.
+     */
+    void recordOutcome(String operation, boolean success);
+
+    /**
+     * Writes the current values in the Prometheus text exposition format (version 0.0.4).
+     */
+    void writePrometheus(Writer out) throws IOException;
+
+    /**
+     * Writes the current values as one JSON document. {@code out} is left open.
+     */
+    void writeJson(OutputStream out) throws IOException;
+}
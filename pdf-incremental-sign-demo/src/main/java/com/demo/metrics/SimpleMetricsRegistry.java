@@ -0,0 +1,168 @@
+package com.demo.metrics;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory {@link MetricsRegistry} with lock-free accumulation.
+ *
+ * <p>Each (operation, phase) pair keeps a count, total and maximum time, and total and last allocation. Each operation
+ * keeps success and failure counters. Nothing is ever reset, so Prometheus can compute rates from the counters.</p>
+ */
+public final class SimpleMetricsRegistry implements MetricsRegistry {
+
+    private static final String PREFIX = "pdfsign_";
+
+    private final Map<String, Map<String, PhaseStats>> phases = new ConcurrentHashMap<>();
+    private final Map<String, Outcomes> outcomes = new ConcurrentHashMap<>();
+    private final Instant started = Instant.now();
+
+    @Override
+    public void recordPhase(String operation, String phase, long nanos, long allocatedBytes) {
+        phases.computeIfAbsent(operation, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(phase, k -> new PhaseStats())
+                .add(nanos, allocatedBytes);
+    }
+
+    @Override
+    public void recordOutcome(String operation, boolean success) {
+        Outcomes counts = outcomes.computeIfAbsent(operation, k -> new Outcomes());
+        (success ? counts.success : counts.failure).increment();
+    }
+
+    @Override
+    public void writePrometheus(Writer out) throws IOException {
+        Map<String, Map<String, PhaseStats>> sorted = sortedPhases();
+
+        out.write("# HELP " + PREFIX + "phase_seconds Wall time per signing or verification phase.\n");
+        out.write("# TYPE " + PREFIX + "phase_seconds summary\n");
+        for (Map.Entry<String, Map<String, PhaseStats>> op : sorted.entrySet()) {
+            for (Map.Entry<String, PhaseStats> ph : op.getValue().entrySet()) {
+                String labels = labels(op.getKey(), ph.getKey());
+                out.write(PREFIX + "phase_seconds_count" + labels + " " + ph.getValue().count.sum() + "\n");
+                out.write(PREFIX + "phase_seconds_sum" + labels + " " + seconds(ph.getValue().nanos.sum()) + "\n");
+            }
+        }
+        out.write("# HELP " + PREFIX + "phase_seconds_max Longest single occurrence of the phase.\n");
+        out.write("# TYPE " + PREFIX + "phase_seconds_max gauge\n");
+        for (Map.Entry<String, Map<String, PhaseStats>> op : sorted.entrySet()) {
+            for (Map.Entry<String, PhaseStats> ph : op.getValue().entrySet()) {
+                out.write(PREFIX + "phase_seconds_max" + labels(op.getKey(), ph.getKey()) + " "
+                        + seconds(ph.getValue().maxNanos.get()) + "\n");
+            }
+        }
+        out.write("# HELP " + PREFIX + "phase_allocated_bytes_total Heap allocated by the thread running the phase.\n");
+        out.write("# TYPE " + PREFIX + "phase_allocated_bytes_total counter\n");
+        for (Map.Entry<String, Map<String, PhaseStats>> op : sorted.entrySet()) {
+            for (Map.Entry<String, PhaseStats> ph : op.getValue().entrySet()) {
+                out.write(PREFIX + "phase_allocated_bytes_total" + labels(op.getKey(), ph.getKey()) + " "
+                        + ph.getValue().allocated.sum() + "\n");
+            }
+        }
+        out.write("# HELP " + PREFIX + "phase_allocated_bytes_last Allocation of the most recent occurrence.\n");
+        out.write("# TYPE " + PREFIX + "phase_allocated_bytes_last gauge\n");
+        for (Map.Entry<String, Map<String, PhaseStats>> op : sorted.entrySet()) {
+            for (Map.Entry<String, PhaseStats> ph : op.getValue().entrySet()) {
+                out.write(PREFIX + "phase_allocated_bytes_last" + labels(op.getKey(), ph.getKey()) + " "
+                        + ph.getValue().lastAllocated.get() + "\n");
+            }
+        }
+        out.write("# HELP " + PREFIX + "operations_total Finished operations by outcome.\n");
+        out.write("# TYPE " + PREFIX + "operations_total counter\n");
+        for (Map.Entry<String, Outcomes> op : new TreeMap<>(outcomes).entrySet()) {
+            out.write(PREFIX + "operations_total{operation=\"" + escape(op.getKey()) + "\",outcome=\"success\"} "
+                    + op.getValue().success.sum() + "\n");
+            out.write(PREFIX + "operations_total{operation=\"" + escape(op.getKey()) + "\",outcome=\"failure\"} "
+                    + op.getValue().failure.sum() + "\n");
+        }
+        out.flush();
+    }
+
+    @Override
+    public void writeJson(OutputStream out) throws IOException {
+        ObjectMapper mapper = new ObjectMapper().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        ObjectNode root = mapper.createObjectNode();
+        root.put("since", started.toString());
+        ObjectNode operations = root.putObject("operations");
+        Map<String, Map<String, PhaseStats>> sorted = sortedPhases();
+        for (String operation : new TreeMap<>(outcomes).keySet()) {
+            sorted.putIfAbsent(operation, Map.of());
+        }
+        for (Map.Entry<String, Map<String, PhaseStats>> op : sorted.entrySet()) {
+            ObjectNode node = operations.putObject(op.getKey());
+            Outcomes counts = outcomes.get(op.getKey());
+            node.put("success", counts != null ? counts.success.sum() : 0L);
+            node.put("failure", counts != null ? counts.failure.sum() : 0L);
+            ObjectNode phaseNodes = node.putObject("phases");
+            for (Map.Entry<String, PhaseStats> ph : op.getValue().entrySet()) {
+                PhaseStats stats = ph.getValue();
+                long count = stats.count.sum();
+                ObjectNode p = phaseNodes.putObject(ph.getKey());
+                p.put("count", count);
+                p.put("totalMillis", millis(stats.nanos.sum()));
+                p.put("meanMillis", count > 0 ? millis(stats.nanos.sum() / count) : 0d);
+                p.put("maxMillis", millis(stats.maxNanos.get()));
+                p.put("allocatedBytes", stats.allocated.sum());
+                p.put("meanAllocatedBytes", count > 0 ? stats.allocated.sum() / count : 0L);
+            }
+        }
+        mapper.writerWithDefaultPrettyPrinter().writeValue(out, root);
+    }
+
+    private Map<String, Map<String, PhaseStats>> sortedPhases() {
+        Map<String, Map<String, PhaseStats>> sorted = new TreeMap<>();
+        phases.forEach((op, byPhase) -> sorted.put(op, new TreeMap<>(byPhase)));
+        return sorted;
+    }
+
+    private static String labels(String operation, String phase) {
+        return "{operation=\"" + escape(operation) + "\",phase=\"" + escape(phase) + "\"}";
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1e3) / 1e3;
+    }
+
+    private static final class PhaseStats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final LongAdder allocated = new LongAdder();
+        private final AtomicLong lastAllocated = new AtomicLong();
+
+        void add(long elapsed, long allocatedBytes) {
+            count.increment();
+            nanos.add(elapsed);
+            maxNanos.accumulateAndGet(elapsed, Math::max);
+            if (allocatedBytes >= 0) {
+                allocated.add(allocatedBytes);
+                lastAllocated.set(allocatedBytes);
+            }
+        }
+    }
+
+    private static final class Outcomes {
+        private final LongAdder success = new LongAdder();
+        private final LongAdder failure = new LongAdder();
+    }
+}
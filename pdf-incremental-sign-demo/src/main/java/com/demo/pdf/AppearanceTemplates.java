@@ -0,0 +1,175 @@
+package com.demo.pdf;
+
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Element;
+import com.itextpdf.text.Font;
+import com.itextpdf.text.Phrase;
+import com.itextpdf.text.Rectangle;
+import com.itextpdf.text.pdf.BaseFont;
+import com.itextpdf.text.pdf.ColumnText;
+import com.itextpdf.text.pdf.PdfArray;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfIndirectReference;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfObject;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfSignatureAppearance;
+import com.itextpdf.text.pdf.PdfStamper;
+import com.itextpdf.text.pdf.PdfTemplate;
+import com.itextpdf.text.pdf.PRIndirectReference;
+import com.itextpdf.text.pdf.PRStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+
+/**
+ * Visible row-signature appearances split into a shared static part and a per-signature text stream.
+ *
+ * <p>The nurse line depends only on the nurse, the widget size and the font. It is drawn once into a Form XObject and
+ * registered in the AcroForm's {@code /DR /XObject} dictionary, under a name derived from those values. A later
+ * revision that finds the name references the existing indirect object instead of laying out and embedding the line
+ * again. Only the time and the note are written into each signature's layer 2. The document is the cache: nothing is
+ * kept in the JVM, and a chart signed by different processes still shares its templates.</p>
+ */
+final class AppearanceTemplates {
+
+    private static final Logger log = LoggerFactory.getLogger(AppearanceTemplates.class);
+
+    private static final float MARGIN = 2f;
+    private static final String NAME_PREFIX = "SigTpl";
+    /** Tolerance when comparing an existing template's BBox with the widget size. */
+    private static final float BBOX_EPSILON = 0.01f;
+
+    private AppearanceTemplates() {
+    }
+
+    /**
+     * Builds layer 2 of {@code appearance}: the shared nurse template followed by {@code variableText}. Call after
+     * {@link PdfSignatureAppearance#setVisibleSignature}, because the layer takes the widget's size.
+     */
+    static void render(PdfStamper stamper, PdfSignatureAppearance appearance, BaseFont baseFont, float fontSize,
+            String nurse, String variableText) throws DocumentException {
+        Rectangle box = appearance.getRect();
+        float width = box.getWidth();
+        float height = box.getHeight();
+        Font font = new Font(baseFont, fontSize);
+        PdfName name = templateName(nurse, width, height, baseFont, fontSize);
+
+        PdfDictionary xObjects = sharedXObjects(stamper);
+        PdfTemplate layer = appearance.getLayer(2);
+        PRIndirectReference shared = reusable(stamper.getReader(), xObjects.get(name), width, height);
+        if (shared != null) {
+            layer.addTemplate(new SharedTemplate(shared, width, height), 0, 0);
+            log.info("[appearance] reusing template {} ({} 0 R)", name, shared.getNumber());
+        } else {
+            PdfTemplate template = PdfTemplate.createTemplate(stamper.getWriter(), width, height);
+            column(template, nurse, font, width, height - MARGIN).go();
+            layer.addTemplate(template, 0, 0);
+            xObjects.put(name, template.getIndirectReference());
+            log.info("[appearance] created template {} for nurse='{}' size={}x{}", name, nurse, width, height);
+        }
+
+        float top = nurseBaseline(nurse, font, width, height);
+        column(layer, variableText, font, width, top).go();
+    }
+
+    /**
+     * Returns where the nurse line ends, by simulating its layout; the shared template may come from an earlier
+     * revision, so the position is recomputed rather than stored.
+     */
+    private static float nurseBaseline(String nurse, Font font, float width, float height) throws DocumentException {
+        ColumnText simulation = column(null, nurse, font, width, height - MARGIN);
+        simulation.go(true);
+        return simulation.getYLine();
+    }
+
+    private static ColumnText column(PdfTemplate canvas, String text, Font font, float width, float top) {
+        ColumnText ct = new ColumnText(canvas);
+        ct.setSimpleColumn(new Phrase(text, font), MARGIN, MARGIN, width - MARGIN, top, font.getSize(),
+                Element.ALIGN_LEFT);
+        return ct;
+    }
+
+    /**
+     * Returns the AcroForm's {@code /DR /XObject} dictionary, creating it when needed, with every level marked for
+     * the incremental update.
+     */
+    private static PdfDictionary sharedXObjects(PdfStamper stamper) {
+        PdfDictionary catalog = stamper.getReader().getCatalog();
+        PdfDictionary acro = catalog.getAsDict(PdfName.ACROFORM);
+        if (acro == null) {
+            acro = new PdfDictionary();
+            catalog.put(PdfName.ACROFORM, acro);
+            stamper.markUsed(catalog);
+        }
+        PdfDictionary dr = acro.getAsDict(PdfName.DR);
+        if (dr == null) {
+            dr = new PdfDictionary();
+            acro.put(PdfName.DR, dr);
+        }
+        PdfDictionary xObjects = dr.getAsDict(PdfName.XOBJECT);
+        if (xObjects == null) {
+            xObjects = new PdfDictionary();
+            dr.put(PdfName.XOBJECT, xObjects);
+        }
+        stamper.markUsed(acro);
+        stamper.markUsed(acro.get(PdfName.DR));
+        stamper.markUsed(dr.get(PdfName.XOBJECT));
+        return xObjects;
+    }
+
+    /**
+     * Returns {@code entry} when it points to a Form XObject of an earlier revision with the expected size.
+     */
+    private static PRIndirectReference reusable(PdfReader reader, PdfObject entry, float width, float height) {
+        if (!(entry instanceof PRIndirectReference ref) || ref.getReader() != reader) {
+            return null;
+        }
+        PdfObject target = PdfReader.getPdfObjectRelease(ref);
+        if (!(target instanceof PRStream stream) || !PdfName.FORM.equals(stream.getAsName(PdfName.SUBTYPE))) {
+            return null;
+        }
+        PdfArray bbox = stream.getAsArray(PdfName.BBOX);
+        if (bbox == null || bbox.size() != 4) {
+            return null;
+        }
+        float w = bbox.getAsNumber(2).floatValue() - bbox.getAsNumber(0).floatValue();
+        float h = bbox.getAsNumber(3).floatValue() - bbox.getAsNumber(1).floatValue();
+        return Math.abs(w - width) < BBOX_EPSILON && Math.abs(h - height) < BBOX_EPSILON ? ref : null;
+    }
+
+    static PdfName templateName(String nurse, float width, float height, BaseFont font, float fontSize) {
+        String key = String.format(Locale.ROOT, "%s\u0000%.2fx%.2f\u0000%s\u0000%.2f",
+                nurse, width, height, SharedFontSubsets.baseName(font.getPostscriptFontName()), fontSize);
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return new PdfName(NAME_PREFIX + HexFormat.of().formatHex(digest, 0, 8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+
+    /**
+     * A template standing for a Form XObject already in the file. {@code PdfWriter} does not write templates whose
+     * reference belongs to the reader, so only the {@code Do} operator and the resource entry are added.
+     */
+    private static final class SharedTemplate extends PdfTemplate {
+        private final PRIndirectReference reference;
+
+        SharedTemplate(PRIndirectReference reference, float width, float height) {
+            this.reference = reference;
+            setWidth(width);
+            setHeight(height);
+        }
+
+        @Override
+        public PdfIndirectReference getIndirectReference() {
+            return reference;
+        }
+    }
+}
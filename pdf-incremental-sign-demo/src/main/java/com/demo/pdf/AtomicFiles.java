@@ -0,0 +1,45 @@
+package com.demo.pdf;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Replaces output files in one step, so readers never see a partly written PDF or sidecar.
+ */
+final class AtomicFiles {
+
+    private AtomicFiles() {
+    }
+
+    /**
+     * Gives {@code temp} the permissions its output should end up with: those of {@code target} when it already
+     * exists, otherwise those of {@code source}. {@link Files#createTempFile} creates owner-only files, which
+     * {@link #moveIntoPlace} would otherwise carry over to every signed chart. Does nothing on file systems without
+     * POSIX permissions.
+     */
+    static void matchPermissions(Path temp, Path target, Path source) throws IOException {
+        Path model = Files.exists(target) ? target : source;
+        if (model == null || !Files.exists(model)) {
+            return;
+        }
+        try {
+            Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(model));
+        } catch (UnsupportedOperationException ignore) {
+        }
+    }
+
+    /**
+     * Moves {@code from} over {@code to}, atomically where the file system supports it and as a plain replace where
+     * it does not (for example across file stores).
+     */
+    static void moveIntoPlace(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.demo.pdf;
+
+import com.demo.crypto.DemoKeystoreUtil;
+import com.demo.metrics.Metrics;
+import com.itextpdf.text.pdf.security.DigestAlgorithms;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Signs many prepared row digests with one private key.
+ *
+ * <p>{@code PrivateKeySignature} looks up and initialises a new {@link Signature} for every call. A batch here is
+ * split into one task per thread, and each task initialises a single {@code Signature} for all of its items. After
+ * {@code sign()} a {@code Signature} is ready for the next message, so each further item costs only the key operation.
+ * Every batch runs on its own executor of at most one thread per core, shut down before the batch returns, so neither
+ * the initialised key nor a TSA call of {@link DeferredSigner#encode} is left on a shared pool.</p>
+ */
+public final class BatchCmsSigner implements DeferredSigner.HashSigner {
+
+    private static final AtomicInteger BATCHES = new AtomicInteger();
+
+    private final PrivateKey key;
+    private final String algorithm;
+
+    public BatchCmsSigner(PrivateKey key, String hashAlgorithm) {
+        this.key = Objects.requireNonNull(key, "key");
+        DemoKeystoreUtil.ensureProvider();
+        String digest = DigestAlgorithms.getDigest(DigestAlgorithms.getAllowedDigests(
+                Objects.requireNonNull(hashAlgorithm, "hashAlgorithm")));
+        String keyAlgorithm = key.getAlgorithm();
+        this.algorithm = digest + "with" + ("EC".equalsIgnoreCase(keyAlgorithm) ? "ECDSA" : keyAlgorithm);
+        // Fail on an unusable key or algorithm here rather than inside a batch.
+        try {
+            newSignature();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot initialise " + algorithm + " signer", e);
+        }
+    }
+
+    /**
+     * Signs each element of {@code dataToSign} (DER signed attributes) and returns the raw signature values in the
+     * same order.
+     */
+    @Override
+    public List<byte[]> sign(List<byte[]> dataToSign) throws Exception {
+        Objects.requireNonNull(dataToSign, "dataToSign");
+        byte[][] out = new byte[dataToSign.size()][];
+        int tasks = threadsFor(out.length);
+        List<Callable<Void>> chunks = new ArrayList<>(tasks);
+        for (int t = 0; t < tasks; t++) {
+            int first = t;
+            chunks.add(() -> {
+                Signature signature = newSignature();
+                for (int i = first; i < out.length; i += tasks) {
+                    signature.update(dataToSign.get(i));
+                    out[i] = signature.sign();
+                }
+                return null;
+            });
+        }
+        runAll(chunks, tasks);
+        return Arrays.asList(out);
+    }
+
+    /**
+     * Signs every placeholder and returns the CMS containers, ready for
+     * {@link DeferredSigner#inject(DeferredSigner.Prepared, byte[], String)}.
+     */
+    public List<byte[]> containers(List<DeferredSigner.Prepared> prepared) throws Exception {
+        Objects.requireNonNull(prepared, "prepared");
+        try (Metrics.Operation op = Metrics.start(Metrics.BATCH_SIGN)) {
+            List<byte[]> data = new ArrayList<>(prepared.size());
+            for (DeferredSigner.Prepared p : prepared) {
+                data.add(p.getDataToSign());
+            }
+            List<byte[]> signatures;
+            try (Metrics.Phase ignored = op.phase(Metrics.KEY_SIGN)) {
+                signatures = sign(data);
+            }
+            byte[][] cms = new byte[prepared.size()][];
+            List<Callable<Void>> encodes = new ArrayList<>(cms.length);
+            for (int i = 0; i < cms.length; i++) {
+                int index = i;
+                encodes.add(() -> {
+                    cms[index] = DeferredSigner.encode(prepared.get(index), signatures.get(index), op);
+                    return null;
+                });
+            }
+            runAll(encodes, threadsFor(cms.length));
+            op.succeeded();
+            return Arrays.asList(cms);
+        }
+    }
+
+    /**
+     * Signs and injects every placeholder in place.
+     */
+    public void completeAll(List<DeferredSigner.Prepared> prepared) throws Exception {
+        List<byte[]> cms = containers(prepared);
+        for (int i = 0; i < cms.size(); i++) {
+            DeferredSigner.inject(prepared.get(i), cms.get(i), prepared.get(i).getPlaceholder());
+        }
+    }
+
+    private Signature newSignature() throws GeneralSecurityException {
+        Signature signature = Signature.getInstance(algorithm, BouncyCastleProvider.PROVIDER_NAME);
+        signature.initSign(key);
+        return signature;
+    }
+
+    private static int threadsFor(int items) {
+        return Math.max(1, Math.min(items, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Runs {@code tasks} on a fresh pool of {@code threads} threads and rethrows the first failure. The pool is shut
+     * down before this returns, also when a task failed.
+     */
+    private static void runAll(List<Callable<Void>> tasks, int threads) throws Exception {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads, batchThreads());
+        try {
+            List<Future<Void>> futures = new ArrayList<>(tasks.size());
+            for (Callable<Void> task : tasks) {
+                futures.add(pool.submit(task));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception cause) {
+                        throw cause;
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static ThreadFactory batchThreads() {
+        String prefix = "cms-batch-" + BATCHES.incrementAndGet() + "-";
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
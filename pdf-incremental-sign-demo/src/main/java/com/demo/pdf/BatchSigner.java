@@ -0,0 +1,304 @@
+package com.demo.pdf;
+
+import com.demo.crypto.DemoKeystoreUtil;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Applies many row jobs to one chart as successive incremental revisions inside a single JVM.
+ *
+ * <p>Every revision goes through {@link NursingRecordSigner#signRow(NursingRecordSigner.SignParams)}, so the usual
+ * DocMDP guard, prefix check and post-validation still run per row. Key material, fonts and the BouncyCastle provider
+ * are loaded once and shared through {@link com.demo.crypto.KeyMaterialCache} and {@link FontRegistry}.
+ * Intermediate revisions are written next to the destination, each one deleted as soon as the next has been signed and
+ * checked, and the last one is moved into place only after every row has been signed.</p>
+ */
+public final class BatchSigner {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchSigner.class);
+
+    private BatchSigner() {
+    }
+
+    /**
+     * Timing and size of one signed row.
+     */
+    public static final class RowResult {
+        private final int row;
+        private final String fieldName;
+        private final long millis;
+        private final long appendedBytes;
+
+        RowResult(int row, String fieldName, long millis, long appendedBytes) {
+            this.row = row;
+            this.fieldName = fieldName;
+            this.millis = millis;
+            this.appendedBytes = appendedBytes;
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        public String getFieldName() {
+            return fieldName;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        public long getAppendedBytes() {
+            return appendedBytes;
+        }
+    }
+
+    /**
+     * Signs {@code jobs} in order, chaining each revision onto the previous one.
+     */
+    public static List<RowResult> signRows(String source, String destination,
+                                           List<NursingRecordSigner.SignParams> jobs) throws Exception {
+        Objects.requireNonNull(source, "source");
+        Objects.requireNonNull(destination, "destination");
+        if (jobs == null || jobs.isEmpty()) {
+            throw new IllegalArgumentException("At least one row job is required");
+        }
+        DemoKeystoreUtil.ensureProvider();
+
+        Path destPath = Path.of(destination).toAbsolutePath();
+        Path workDir = destPath.getParent() != null ? destPath.getParent() : Path.of(".").toAbsolutePath();
+        Files.createDirectories(workDir);
+
+        NursingRecordSigner signer = new NursingRecordSigner();
+        List<RowResult> results = new ArrayList<>(jobs.size());
+        // Only the newest intermediate is kept: the batch never needs more than one extra copy of the chart on disk.
+        Path previous = null;
+        Path next = null;
+        String current = Path.of(source).toAbsolutePath().toString();
+        try {
+            for (int i = 0; i < jobs.size(); i++) {
+                NursingRecordSigner.SignParams job = jobs.get(i).copy();
+                next = Files.createTempFile(workDir, destPath.getFileName() + ".rev" + (i + 1) + "-", ".pdf");
+                // signRow keeps the permissions of the file it replaces, so set the ones the destination should end
+                // up with here; the last intermediate is moved into place as it is.
+                AtomicFiles.matchPermissions(next, destPath, Path.of(source));
+                job.setSource(current);
+                job.setDestination(next.toString());
+
+                long before = Files.size(Path.of(current));
+                long started = System.nanoTime();
+                signer.signRow(job, false);
+                long millis = (System.nanoTime() - started) / 1_000_000L;
+                long appended = Files.size(next) - before;
+
+                String field = NursingRecordSigner.resolveSignatureFieldName(job);
+                results.add(new RowResult(job.getRow(), field, millis, appended));
+                log.info("[sign-batch] row={} field='{}' {}ms +{}B", job.getRow(), field, millis, appended);
+                // signRow has validated the new revision, so the one it was appended to is no longer needed.
+                if (previous != null) {
+                    Files.deleteIfExists(previous);
+                }
+                previous = next;
+                next = null;
+                current = previous.toString();
+            }
+
+            AtomicFiles.moveIntoPlace(previous, destPath);
+            previous = null;
+            NursingRecordSigner.destinationWritten(Path.of(source), destPath, jobs.get(0));
+        } finally {
+            if (next != null) {
+                Files.deleteIfExists(next);
+            }
+            if (previous != null) {
+                Files.deleteIfExists(previous);
+            }
+        }
+        return Collections.unmodifiableList(results);
+    }
+
+    /**
+     * Signs {@code jobs} with {@link NursingRecordSigner#signRows}: every row is filled in the first revision and
+     * each signature gets a minimal revision, chained in memory and written to {@code destination} once. All jobs
+     * must use the same key material.
+     */
+    public static List<RowResult> signRowsInOneSession(String source, String destination,
+                                                       List<NursingRecordSigner.SignParams> jobs) throws Exception {
+        Objects.requireNonNull(source, "source");
+        Objects.requireNonNull(destination, "destination");
+        if (jobs == null || jobs.isEmpty()) {
+            throw new IllegalArgumentException("At least one row job is required");
+        }
+        DemoKeystoreUtil.ensureProvider();
+        List<NursingRecordSigner.SignParams> rows = new ArrayList<>(jobs.size());
+        for (NursingRecordSigner.SignParams job : jobs) {
+            rows.add(job.copy());
+        }
+        return Collections.unmodifiableList(new NursingRecordSigner().signRows(
+                Path.of(source).toAbsolutePath().toString(), Path.of(destination).toAbsolutePath().toString(), rows));
+    }
+
+    /**
+     * Reads row jobs from a JSON array of objects or from a CSV file with a header line. Recognised columns are
+     * {@code row}, {@code time}, {@code text}, {@code nurse}, {@code reason}, {@code location}, {@code contact} and
+     * {@code signField}; anything not given falls back to {@code defaults}.
+     */
+    public static List<NursingRecordSigner.SignParams> readJobs(Path jobsFile,
+                                                                NursingRecordSigner.SignParams defaults)
+            throws IOException {
+        Objects.requireNonNull(jobsFile, "jobsFile");
+        Objects.requireNonNull(defaults, "defaults");
+        String content = Files.readString(jobsFile, StandardCharsets.UTF_8);
+        if (!content.isEmpty() && content.charAt(0) == '\uFEFF') {
+            content = content.substring(1);
+        }
+        List<Map<String, String>> rows = content.stripLeading().startsWith("[")
+                ? readJson(content)
+                : readCsv(content);
+        List<NursingRecordSigner.SignParams> jobs = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            jobs.add(toJob(rows.get(i), defaults, i + 1));
+        }
+        if (jobs.isEmpty()) {
+            throw new IllegalArgumentException("No row jobs found in " + jobsFile);
+        }
+        return jobs;
+    }
+
+    private static NursingRecordSigner.SignParams toJob(Map<String, String> values,
+                                                        NursingRecordSigner.SignParams defaults, int index) {
+        String rowText = values.get("row");
+        if (rowText == null || rowText.isBlank()) {
+            throw new IllegalArgumentException("Job " + index + " has no row number");
+        }
+        NursingRecordSigner.SignParams job = defaults.copy();
+        try {
+            job.setRow(Integer.parseInt(rowText.trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Job " + index + " has an invalid row number: '" + rowText + "'");
+        }
+        job.setTimeValue(values.getOrDefault("time", defaults.getTimeValue()));
+        job.setTextValue(values.getOrDefault("text", defaults.getTextValue()));
+        job.setNurse(values.getOrDefault("nurse", defaults.getNurse()));
+        job.setReason(values.getOrDefault("reason", defaults.getReason()));
+        job.setLocation(values.getOrDefault("location", defaults.getLocation()));
+        job.setContact(values.getOrDefault("contact", defaults.getContact()));
+        String signField = values.get("signField");
+        if (signField != null && !signField.isBlank()) {
+            job.setSignFieldTemplate(signField);
+        }
+        return job;
+    }
+
+    private static List<Map<String, String>> readJson(String content) throws IOException {
+        List<Map<String, Object>> raw = new ObjectMapper().readValue(content,
+                new TypeReference<List<Map<String, Object>>>() {
+                });
+        List<Map<String, String>> rows = new ArrayList<>(raw.size());
+        for (Map<String, Object> entry : raw) {
+            Map<String, String> row = new HashMap<>();
+            for (Map.Entry<String, Object> e : entry.entrySet()) {
+                if (e.getValue() != null) {
+                    row.put(e.getKey(), String.valueOf(e.getValue()));
+                }
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static List<Map<String, String>> readCsv(String content) {
+        List<List<String>> records = parseCsv(content);
+        if (records.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> header = new ArrayList<>();
+        for (String name : records.get(0)) {
+            header.add(name.trim());
+        }
+        if (!header.contains("row")) {
+            throw new IllegalArgumentException("CSV header must contain a 'row' column");
+        }
+        List<Map<String, String>> rows = new ArrayList<>();
+        for (int i = 1; i < records.size(); i++) {
+            List<String> record = records.get(i);
+            if (record.size() == 1 && record.get(0).isBlank()) {
+                continue;
+            }
+            Map<String, String> row = new HashMap<>();
+            for (int c = 0; c < header.size() && c < record.size(); c++) {
+                row.put(header.get(c), record.get(c));
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * Minimal RFC 4180 reader: quoted fields may contain commas, line breaks and doubled quotes.
+     */
+    private static List<List<String>> parseCsv(String content) {
+        List<List<String>> records = new ArrayList<>();
+        List<String> record = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < content.length() && content.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                record.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == '\r') {
+                if (c == '\r' && i + 1 < content.length() && content.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                record.add(field.toString());
+                field.setLength(0);
+                records.add(record);
+                record = new ArrayList<>();
+            } else {
+                field.append(c);
+            }
+        }
+        if (field.length() > 0 || !record.isEmpty()) {
+            record.add(field.toString());
+            records.add(record);
+        }
+        return records;
+    }
+
+    public static String summarize(List<RowResult> results) {
+        long total = 0;
+        for (RowResult r : results) {
+            total += r.getMillis();
+        }
+        return String.format(Locale.ROOT, "rows=%d totalMs=%d avgMs=%d", results.size(), total,
+                results.isEmpty() ? 0 : total / results.size());
+    }
+}
@@ -0,0 +1,99 @@
+package com.demo.pdf;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * ByteRange hashing for the signers and verifiers, close to memory or disk bandwidth.
+ *
+ * <p>iText hashes a ByteRange by reading an {@code InputStream} over its {@code RandomAccessSource} 8 KB at a time
+ * into BouncyCastle's pure-Java digests. Here, file segments are read through a {@link FileChannel}: segments of at
+ * least {@link #MAP_THRESHOLD} are memory-mapped in {@link #WINDOW}-sized slices, smaller ones are read with
+ * positional reads. Digests come from the first installed provider that has the algorithm, normally the JDK's, whose
+ * SHA-2 implementations use the CPU's SHA instructions; BouncyCastle only serves algorithms the JDK lacks. The digest
+ * values are the same either way.</p>
+ *
+ * <p>Bytes reach the digest from a per-thread heap array, never as a direct or mapped {@code ByteBuffer}:
+ * {@code MessageDigestSpi} copies those through a scratch array that clones of one digest share, so clones updated on
+ * different threads would corrupt each other. {@link RevisionDigestVerifier} does exactly that.</p>
+ */
+final class ByteRangeDigest {
+
+    /** Segments at least this long are mapped rather than read. */
+    static final long MAP_THRESHOLD = 16L << 20;
+    private static final long WINDOW = 64L << 20;
+    private static final int BUFFER = 1 << 20;
+    private static final ThreadLocal<byte[]> BUFFERS = ThreadLocal.withInitial(() -> new byte[BUFFER]);
+
+    private ByteRangeDigest() {
+    }
+
+    /**
+     * Returns a digest for {@code algorithm}, given in iText's ({@code SHA256}) or JCA naming, or as an OID.
+     */
+    static MessageDigest newDigest(String algorithm) throws GeneralSecurityException {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            return MessageDigest.getInstance(algorithm, BouncyCastleProvider.PROVIDER_NAME);
+        }
+    }
+
+    /**
+     * Hashes {@code length} bytes of {@code channel} from {@code position} into {@code md}. Only positional reads are
+     * used, so one channel can serve several threads.
+     */
+    static void update(MessageDigest md, FileChannel channel, long position, long length) throws IOException {
+        if (position < 0 || length < 0 || position + length > channel.size()) {
+            throw new EOFException(String.format("Segment [%d, +%d) exceeds the %d byte file",
+                    position, length, channel.size()));
+        }
+        byte[] array = BUFFERS.get();
+        if (length >= MAP_THRESHOLD) {
+            for (long pos = position, end = position + length; pos < end; pos += WINDOW) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(WINDOW, end - pos));
+                while (window.hasRemaining()) {
+                    int n = Math.min(array.length, window.remaining());
+                    window.get(array, 0, n);
+                    md.update(array, 0, n);
+                }
+            }
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(array);
+        long pos = position;
+        long remaining = length;
+        while (remaining > 0) {
+            buffer.clear().limit((int) Math.min(array.length, remaining));
+            int n = channel.read(buffer, pos);
+            if (n < 0) {
+                throw new EOFException(String.format("File ended %d bytes before the end of the segment", remaining));
+            }
+            md.update(array, 0, n);
+            pos += n;
+            remaining -= n;
+        }
+    }
+
+    /**
+     * Hashes what remains of {@code range}, for ByteRanges that iText only exposes as a stream, such as the revision
+     * it is still holding in memory while signing.
+     */
+    static byte[] digest(InputStream range, MessageDigest md) throws IOException {
+        byte[] buffer = BUFFERS.get();
+        int n;
+        while ((n = range.read(buffer)) > 0) {
+            md.update(buffer, 0, n);
+        }
+        return md.digest();
+    }
+}
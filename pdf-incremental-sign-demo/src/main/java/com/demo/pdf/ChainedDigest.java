@@ -0,0 +1,93 @@
+package com.demo.pdf;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+/**
+ * ByteRange digests for a chain of revisions built in one run, hashing every byte of the chain once.
+ *
+ * <p>The ByteRange of a new signature starts with every byte of the revision it appends to. The digest state after
+ * those bytes is kept between revisions: the first signature hashes the source and keeps the state, and each later
+ * signature clones it and hashes only its own appended section around the {@code /Contents} hole. Once a revision is
+ * complete, {@link #append} adds its appended bytes, hole included, to the kept state.</p>
+ */
+final class ChainedDigest {
+
+    private static final int BUFFER = 64 << 10;
+
+    private final String algorithm;
+    private MessageDigest prefix;
+    private long length;
+
+    /**
+     * @param sourceLength length of the revision the first signature appends to
+     */
+    ChainedDigest(String algorithm, long sourceLength) {
+        this.algorithm = algorithm;
+        this.length = sourceLength;
+    }
+
+    String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Returns the digest of {@code range}, a ByteRange stream that starts with every byte of the previous revision.
+     */
+    byte[] digest(InputStream range) throws IOException, GeneralSecurityException {
+        byte[] buffer = new byte[BUFFER];
+        if (prefix == null) {
+            prefix = ByteRangeDigest.newDigest(algorithm);
+            transfer(range, prefix, length, buffer);
+        } else {
+            transfer(range, null, length, buffer);
+        }
+        MessageDigest md;
+        try {
+            md = (MessageDigest) prefix.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new GeneralSecurityException(algorithm + " digest state cannot be cloned", e);
+        }
+        int n;
+        while ((n = range.read(buffer)) > 0) {
+            md.update(buffer, 0, n);
+        }
+        return md.digest();
+    }
+
+    /**
+     * Records the completed revision {@code document}; the bytes from the previous length on are its appended section.
+     */
+    void append(byte[] document) {
+        if (prefix == null) {
+            throw new IllegalStateException("No revision has been hashed yet");
+        }
+        if (document.length < length) {
+            throw new IllegalStateException(String.format("Revision of %d bytes is shorter than the %d byte prefix",
+                    document.length, length));
+        }
+        prefix.update(document, (int) length, document.length - (int) length);
+        length = document.length;
+    }
+
+    /**
+     * Reads exactly {@code count} bytes, hashing them into {@code md} unless it is {@code null}.
+     */
+    private static void transfer(InputStream in, MessageDigest md, long count, byte[] buffer) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (n < 0) {
+                throw new EOFException(String.format("ByteRange ended %d bytes before the end of the previous revision",
+                        remaining));
+            }
+            if (md != null) {
+                md.update(buffer, 0, n);
+            }
+            remaining -= n;
+        }
+    }
+}
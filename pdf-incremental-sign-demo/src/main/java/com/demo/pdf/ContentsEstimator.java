@@ -0,0 +1,160 @@
+package com.demo.pdf;
+
+import com.demo.crypto.SigningProfile;
+import com.itextpdf.text.pdf.security.BouncyCastleDigest;
+import com.itextpdf.text.pdf.security.DigestAlgorithms;
+import com.itextpdf.text.pdf.security.MakeSignature;
+import com.itextpdf.text.pdf.security.PdfPKCS7;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.edec.EdECObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.cms.CMSException;
+import org.bouncycastle.cms.CMSProcessableByteArray;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.cert.Certificate;
+import java.security.interfaces.DSAKey;
+import java.security.interfaces.ECKey;
+import java.security.interfaces.RSAKey;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sizes the {@code /Contents} placeholder to the CMS container that will actually be written.
+ *
+ * <p>iText's default reserves 8 KB whatever the signer, and every reserved byte costs two hex digits in each
+ * revision. Instead, a container is encoded once per chain, digest and TSA estimate, using a zero signature value of
+ * the largest length the key can produce. Its length is an upper bound for every real signature from the same key and
+ * is cached, so later signings pay only a map lookup. The timestamp token is the one part that cannot be predicted.
+ * For it the TSA client's own estimate is added, plus {@link #TSA_OVERHEAD} for the unsigned attribute that wraps
+ * it.</p>
+ */
+final class ContentsEstimator {
+
+    private static final Logger log = LoggerFactory.getLogger(ContentsEstimator.class);
+
+    /** Attribute, set and length-of-length headers around a timestamp token; same allowance as iText's. */
+    static final int TSA_OVERHEAD = 96;
+    /** Entries kept before the cache is dropped; one per signer chain and digest in practice. */
+    private static final int MAX_ENTRIES = 256;
+
+    private static final Map<Key, Integer> CACHE = new ConcurrentHashMap<>();
+
+    private ContentsEstimator() {
+    }
+
+    private record Key(List<Certificate> chain, String hashAlgorithm) {
+    }
+
+    /**
+     * Returns the number of bytes to reserve for a CMS container signed by {@code chain[0]} over
+     * {@code hashAlgorithm}. Pass a {@code tsaTokenEstimate} of 0 when no timestamp is requested.
+     */
+    static int estimate(Certificate[] chain, String hashAlgorithm, int tsaTokenEstimate)
+            throws IOException, GeneralSecurityException {
+        Key key = new Key(List.of(chain), DigestAlgorithms.getDigest(DigestAlgorithms.getAllowedDigests(hashAlgorithm)));
+        Integer size = CACHE.get(key);
+        if (size == null) {
+            size = encodedLength(chain, key.hashAlgorithm());
+            if (CACHE.size() >= MAX_ENTRIES) {
+                CACHE.clear();
+            }
+            CACHE.put(key, size);
+            log.debug("[contents] {} byte CMS for {} with {}", size,
+                    chain[0].getPublicKey().getAlgorithm(), key.hashAlgorithm());
+        }
+        int reserved = tsaTokenEstimate > 0 ? size + tsaTokenEstimate + TSA_OVERHEAD : size;
+        // Keep the hole an even number of bytes; the post-sign checks expect that of /Contents.
+        return (reserved + 1) & ~1;
+    }
+
+    private static int encodedLength(Certificate[] chain, String hashAlgorithm)
+            throws IOException, GeneralSecurityException {
+        PublicKey publicKey = chain[0].getPublicKey();
+        SigningProfile profile = SigningProfile.forKey(publicKey);
+        byte[] signature = new byte[maxSignatureLength(publicKey)];
+        if (!profile.isPkcs7Supported()) {
+            CMSProcessableByteArray content = new CMSProcessableByteArray(new byte[0]);
+            try {
+                return DetachedCmsSigner.generateCms(new FixedSigner(signature), chain, content)
+                        .getEncoded(ASN1Encoding.DER).length;
+            } catch (OperatorCreationException | CMSException e) {
+                throw new GeneralSecurityException("Cannot size the CMS container", e);
+            }
+        }
+        BouncyCastleDigest digest = new BouncyCastleDigest();
+        byte[] hash = new byte[digest.getMessageDigest(hashAlgorithm).getDigestLength()];
+        PdfPKCS7 sgn = new PdfPKCS7(null, chain, hashAlgorithm, null, digest, false);
+        sgn.setExternalDigest(signature, null, DeferredSigner.encryptionAlgorithm(chain[0]));
+        return sgn.getEncodedPKCS7(hash, null, null, null, MakeSignature.CryptoStandard.CMS).length;
+    }
+
+    /**
+     * Largest signature value the key can produce. RSA values are exactly the modulus length. (EC)DSA values are a DER
+     * sequence of two integers of at most the order's length plus a sign byte each.
+     */
+    static int maxSignatureLength(PublicKey key) {
+        if (key instanceof RSAKey rsa) {
+            return (rsa.getModulus().bitLength() + 7) / 8;
+        }
+        if (key instanceof ECKey ec) {
+            return derSignatureLength((ec.getParams().getOrder().bitLength() + 7) / 8);
+        }
+        if (key instanceof DSAKey dsa) {
+            return derSignatureLength((dsa.getParams().getQ().bitLength() + 7) / 8);
+        }
+        if (SigningProfile.forKey(key) == SigningProfile.ED25519) {
+            return 64;
+        }
+        throw new IllegalArgumentException("Unsupported signing key algorithm: " + key.getAlgorithm());
+    }
+
+    private static int derSignatureLength(int integerBytes) {
+        int integer = derLength(integerBytes + 1);
+        return derLength(2 * integer);
+    }
+
+    /**
+     * Length of a DER TLV with {@code contentLength} content bytes.
+     */
+    private static int derLength(int contentLength) {
+        int header = contentLength < 0x80 ? 2 : contentLength < 0x100 ? 3 : 4;
+        return header + contentLength;
+    }
+
+    /**
+     * An Ed25519 signer returning a preset value, so the BouncyCastle container can be encoded without the key.
+     */
+    private static final class FixedSigner implements ContentSigner {
+        private final byte[] signature;
+        private final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+
+        FixedSigner(byte[] signature) {
+            this.signature = signature;
+        }
+
+        @Override
+        public AlgorithmIdentifier getAlgorithmIdentifier() {
+            return new AlgorithmIdentifier(EdECObjectIdentifiers.id_Ed25519);
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return sink;
+        }
+
+        @Override
+        public byte[] getSignature() {
+            return signature.clone();
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package com.demo.pdf;
+
+import com.demo.crypto.DemoKeystoreUtil;
+import com.demo.crypto.SigningProfile;
+import com.demo.metrics.Metrics;
+import com.demo.tsa.TsaClients;
+import com.itextpdf.text.pdf.AcroFields;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfSignatureAppearance;
+import com.itextpdf.text.pdf.security.BouncyCastleDigest;
+import com.itextpdf.text.pdf.security.ExternalSignatureContainer;
+import com.itextpdf.text.pdf.security.MakeSignature;
+import com.itextpdf.text.pdf.security.PdfPKCS7;
+import com.itextpdf.text.pdf.security.TSAClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Two-phase row signing for signers that are slow or remote.
+ *
+ * <p>{@link #prepareRow} fills the row and writes the signature field with an empty {@code /Contents} hole. It then
+ * closes the document and returns a {@link Prepared} placeholder, which holds the ByteRange digest and the signed
+ * attributes to be signed. Nothing stays open while the signature is produced, so placeholders for many documents can
+ * be prepared in parallel and their {@link Prepared#getDataToSign()} sent to one signing service as a batch.
+ * {@link #complete} then builds the CMS container around the returned signature value and writes it into the hole
+ * with {@link MakeSignature#signDeferred}, so the bytes of the revision stay exactly as prepared.</p>
+ */
+public final class DeferredSigner {
+
+    private static final Logger log = LoggerFactory.getLogger(DeferredSigner.class);
+
+    private DeferredSigner() {
+    }
+
+    /**
+     * Signs a batch of {@link Prepared#getDataToSign()} values; the result must keep the input order.
+     */
+    public interface HashSigner {
+        List<byte[]> sign(List<byte[]> dataToSign) throws Exception;
+    }
+
+    /**
+     * A row revision waiting for its signature value.
+     */
+    public static final class Prepared {
+        private final String placeholder;
+        private final String fieldName;
+        private final String hashAlgorithm;
+        private final byte[] documentDigest;
+        private final byte[] dataToSign;
+        private final Certificate[] chain;
+        private final String tsaUrl;
+
+        Prepared(String placeholder, String fieldName, String hashAlgorithm, byte[] documentDigest,
+                byte[] dataToSign, Certificate[] chain, String tsaUrl) {
+            this.placeholder = placeholder;
+            this.fieldName = fieldName;
+            this.hashAlgorithm = hashAlgorithm;
+            this.documentDigest = documentDigest;
+            this.dataToSign = dataToSign;
+            this.chain = chain;
+            this.tsaUrl = tsaUrl;
+        }
+
+        /**
+         * The prepared revision on disk, with a zero-filled {@code /Contents}.
+         */
+        public String getPlaceholder() {
+            return placeholder;
+        }
+
+        public String getFieldName() {
+            return fieldName;
+        }
+
+        public String getHashAlgorithm() {
+            return hashAlgorithm;
+        }
+
+        /**
+         * Digest of the signature's ByteRange.
+         */
+        public byte[] getDocumentDigest() {
+            return documentDigest.clone();
+        }
+
+        /**
+         * DER-encoded signed attributes. This is what the private key signs, for example with
+         * {@code SHA256withRSA}.
+         */
+        public byte[] getDataToSign() {
+            return dataToSign.clone();
+        }
+
+        /**
+         * Hash of {@link #getDataToSign()}, for signing services that accept a precomputed hash.
+         */
+        public byte[] getDataToSignHash() throws GeneralSecurityException {
+            return new BouncyCastleDigest().getMessageDigest(hashAlgorithm).digest(dataToSign);
+        }
+
+        public Certificate[] getChain() {
+            return chain.clone();
+        }
+    }
+
+    /**
+     * Prepares one row; see {@link NursingRecordSigner#signRow} for the row parameters. {@code pkcs12Path} and
+     * {@code password} are ignored; {@code destination} receives the placeholder. The digest follows the
+     * {@link SigningProfile} of {@code chain[0]}. Ed25519 is rejected because its container cannot be assembled from a
+     * detached signature value by {@code PdfPKCS7}.
+     */
+    public static Prepared prepareRow(NursingRecordSigner.SignParams params, Certificate[] chain) throws Exception {
+        if (chain == null || chain.length == 0) {
+            throw new IllegalArgumentException("Certificate chain is required");
+        }
+        if (!SigningProfile.forKey(chain[0].getPublicKey()).isPkcs7Supported()) {
+            throw new IllegalArgumentException("Deferred signing does not support "
+                    + chain[0].getPublicKey().getAlgorithm() + " keys");
+        }
+        return new NursingRecordSigner().prepareRow(params, chain);
+    }
+
+    /**
+     * Prepares rows of different documents concurrently. Rows of the same document must be prepared one after the
+     * other, each from the previous placeholder's completed file.
+     */
+    public static List<Prepared> prepareRows(List<NursingRecordSigner.SignParams> rows, Certificate[] chain,
+            int parallelism) throws Exception {
+        Objects.requireNonNull(rows, "rows");
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, rows.size())));
+        try {
+            List<Future<Prepared>> futures = new ArrayList<>(rows.size());
+            for (NursingRecordSigner.SignParams row : rows) {
+                futures.add(pool.submit(() -> prepareRow(row, chain)));
+            }
+            List<Prepared> prepared = new ArrayList<>(rows.size());
+            for (Future<Prepared> future : futures) {
+                prepared.add(await(future));
+            }
+            return prepared;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Injects the CMS container built from {@code signatureValue} into the placeholder and writes the result to
+     * {@code destination}, which may be the placeholder itself. The completed signature is verified before the file
+     * is moved into place.
+     */
+    public static void complete(Prepared prepared, byte[] signatureValue, String destination) throws Exception {
+        Objects.requireNonNull(prepared, "prepared");
+        Objects.requireNonNull(signatureValue, "signatureValue");
+        try (Metrics.Operation op = Metrics.start(Metrics.COMPLETE)) {
+            inject(prepared, encode(prepared, signatureValue, op), destination, op);
+            op.succeeded();
+        }
+    }
+
+    /**
+     * Like {@link #complete} for a CMS container that was already built, for example by {@link BatchCmsSigner}.
+     */
+    public static void inject(Prepared prepared, byte[] cms, String destination) throws Exception {
+        Objects.requireNonNull(prepared, "prepared");
+        Objects.requireNonNull(cms, "cms");
+        try (Metrics.Operation op = Metrics.start(Metrics.COMPLETE)) {
+            inject(prepared, cms, destination, op);
+            op.succeeded();
+        }
+    }
+
+    /**
+     * Builds the detached CMS container for {@code prepared} around a signature over its signed attributes.
+     */
+    static byte[] encode(Prepared prepared, byte[] signatureValue, Metrics.Operation op) throws Exception {
+        DemoKeystoreUtil.ensureProvider();
+        long start = System.nanoTime();
+        long allocated = Metrics.allocatedBytes();
+        long tsaNanos = 0L;
+        try {
+            PdfPKCS7 sgn = new PdfPKCS7(null, prepared.chain, prepared.hashAlgorithm, null,
+                    new BouncyCastleDigest(), false);
+            sgn.setExternalDigest(signatureValue, null, encryptionAlgorithm(prepared.chain[0]));
+            TSAClient tsa = TsaClients.forUrl(prepared.tsaUrl);
+            long tsaStart = System.nanoTime();
+            byte[] cms = sgn.getEncodedPKCS7(prepared.documentDigest, tsa, null, null,
+                    MakeSignature.CryptoStandard.CMS);
+            if (tsa != null) {
+                tsaNanos = System.nanoTime() - tsaStart;
+                op.add(Metrics.TSA, tsaNanos, -1L);
+            }
+            return cms;
+        } finally {
+            op.add(Metrics.PKCS7, System.nanoTime() - start - tsaNanos,
+                    allocated >= 0 ? Metrics.allocatedBytes() - allocated : -1L);
+        }
+    }
+
+    private static void inject(Prepared prepared, byte[] cms, String destination, Metrics.Operation op)
+            throws Exception {
+        Objects.requireNonNull(destination, "destination");
+        DemoKeystoreUtil.ensureProvider();
+        Path target = Path.of(destination).toAbsolutePath();
+        Path parent = target.getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = Files.createTempFile(parent, target.getFileName().toString(), ".part");
+        try {
+            try {
+                Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(Path.of(prepared.placeholder)));
+            } catch (UnsupportedOperationException ignore) {
+            }
+            try (Metrics.Phase ignored = op.phase(Metrics.WRITE)) {
+                PdfReader reader = new PdfReader(prepared.placeholder);
+                try (OutputStream os = Files.newOutputStream(temp)) {
+                    MakeSignature.signDeferred(reader, prepared.fieldName, os, new FixedContainer(cms));
+                } finally {
+                    reader.close();
+                }
+            }
+            try (Metrics.Phase ignored = op.phase(Metrics.POST_VALIDATE)) {
+                requireValid(temp, prepared.fieldName);
+            }
+            AtomicFiles.moveIntoPlace(temp, target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        log.info("[deferred] completed field='{}' dest='{}' cms={}B", prepared.fieldName, target, cms.length);
+    }
+
+    /**
+     * Sends every placeholder's signed attributes to {@code signer} in one call and completes them. Each placeholder
+     * is completed in place.
+     */
+    public static void completeAll(List<Prepared> prepared, HashSigner signer) throws Exception {
+        List<byte[]> data = new ArrayList<>(prepared.size());
+        for (Prepared p : prepared) {
+            data.add(p.dataToSign.clone());
+        }
+        List<byte[]> signatures = signer.sign(data);
+        if (signatures == null || signatures.size() != prepared.size()) {
+            throw new IllegalStateException("Signer returned " + (signatures == null ? 0 : signatures.size())
+                    + " signatures for " + prepared.size() + " placeholders");
+        }
+        for (int i = 0; i < prepared.size(); i++) {
+            complete(prepared.get(i), signatures.get(i), prepared.get(i).placeholder);
+        }
+    }
+
+    /**
+     * A {@link HashSigner} backed by a local key, using the digest of the key's {@link SigningProfile}.
+     */
+    public static HashSigner localSigner(PrivateKey key) {
+        return new BatchCmsSigner(key, SigningProfile.forKey(key).getDigestAlgorithm());
+    }
+
+    /**
+     * Writes the signature dictionary with an empty {@code /Contents} hole, closes the revision and returns the
+     * digest to sign.
+     */
+    static Prepared reserve(Metrics.Operation op, PdfSignatureAppearance appearance, Certificate[] chain,
+            String hashAlgorithm, String placeholder, String fieldName, String tsaUrl) throws Exception {
+        int reserved = ContentsEstimator.estimate(chain, hashAlgorithm,
+                tsaUrl != null && !tsaUrl.isBlank() ? TsaClients.forUrl(tsaUrl).getTokenSizeEstimate() : 0);
+        appearance.setCertificate(chain[0]);
+        DigestingContainer container = new DigestingContainer(hashAlgorithm);
+        long start = System.nanoTime();
+        long allocated = Metrics.allocatedBytes();
+        try {
+            MakeSignature.signExternalContainer(appearance, container, reserved);
+        } finally {
+            // The container hashes the ByteRange while iText writes the revision around it.
+            op.add(Metrics.DIGEST, container.nanos, -1L);
+            op.add(Metrics.WRITE, System.nanoTime() - start - container.nanos,
+                    allocated >= 0 ? Metrics.allocatedBytes() - allocated : -1L);
+        }
+
+        byte[] dataToSign;
+        try (Metrics.Phase ignored = op.phase(Metrics.PKCS7)) {
+            PdfPKCS7 sgn = new PdfPKCS7(null, chain, hashAlgorithm, null, new BouncyCastleDigest(), false);
+            dataToSign = sgn.getAuthenticatedAttributeBytes(container.digest, null, null,
+                    MakeSignature.CryptoStandard.CMS);
+        }
+        log.info("[deferred] prepared field='{}' placeholder='{}' reserved={}B", fieldName, placeholder, reserved);
+        return new Prepared(placeholder, fieldName, hashAlgorithm, container.digest, dataToSign, chain.clone(),
+                tsaUrl);
+    }
+
+    private static void requireValid(Path file, String fieldName) throws Exception {
+        PdfReader reader = new PdfReader(file.toString());
+        try {
+            AcroFields fields = reader.getAcroFields();
+            List<SignatureVerifier.Result> results = RevisionDigestVerifier.verify(file, reader, fields,
+                    List.of(fieldName), Metrics.untracked());
+            if (results.isEmpty() || !results.get(0).isValid()) {
+                throw new IllegalStateException("Signature value does not verify for field '" + fieldName
+                        + "'; the placeholder was left unchanged");
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    static String encryptionAlgorithm(Certificate cert) {
+        String algorithm = cert.getPublicKey().getAlgorithm();
+        return "EC".equalsIgnoreCase(algorithm) ? "ECDSA" : algorithm;
+    }
+
+    /**
+     * Marks the dictionary as a detached PKCS#7 signature and hashes the ByteRange; contributes no bytes.
+     */
+    private static final class DigestingContainer implements ExternalSignatureContainer {
+        private final String hashAlgorithm;
+        private byte[] digest;
+        private long nanos;
+
+        DigestingContainer(String hashAlgorithm) {
+            this.hashAlgorithm = hashAlgorithm;
+        }
+
+        @Override
+        public byte[] sign(InputStream data) throws GeneralSecurityException {
+            long start = System.nanoTime();
+            try {
+                digest = ByteRangeDigest.digest(data, ByteRangeDigest.newDigest(hashAlgorithm));
+            } catch (IOException e) {
+                throw new GeneralSecurityException("Failed to hash ByteRange", e);
+            } finally {
+                nanos = System.nanoTime() - start;
+            }
+            return new byte[0];
+        }
+
+        @Override
+        public void modifySigningDictionary(PdfDictionary signDic) {
+            signDic.put(PdfName.FILTER, PdfName.ADOBE_PPKLITE);
+            signDic.put(PdfName.SUBFILTER, PdfName.ADBE_PKCS7_DETACHED);
+        }
+    }
+
+    /**
+     * Returns an already encoded CMS container.
+     */
+    private static final class FixedContainer implements ExternalSignatureContainer {
+        private final byte[] cms;
+
+        FixedContainer(byte[] cms) {
+            this.cms = cms;
+        }
+
+        @Override
+        public byte[] sign(InputStream data) {
+            return cms;
+        }
+
+        @Override
+        public void modifySigningDictionary(PdfDictionary signDic) {
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.demo.pdf;
+
+import com.demo.crypto.SigningProfile;
+import com.demo.metrics.Metrics;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.pdf.PdfDate;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfSignature;
+import com.itextpdf.text.pdf.PdfSignatureAppearance;
+import com.itextpdf.text.pdf.PdfString;
+import com.itextpdf.text.pdf.security.BouncyCastleDigest;
+import com.itextpdf.text.pdf.security.ExternalDigest;
+import com.itextpdf.text.pdf.security.ExternalSignature;
+import com.itextpdf.text.pdf.security.MakeSignature;
+import com.itextpdf.text.pdf.security.PdfPKCS7;
+import com.itextpdf.text.pdf.security.PrivateKeySignature;
+import com.itextpdf.text.pdf.security.TSAClient;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.DERSet;
+import org.bouncycastle.asn1.cms.Attribute;
+import org.bouncycastle.asn1.cms.AttributeTable;
+import org.bouncycastle.asn1.cms.CMSObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.cert.jcajce.JcaCertStore;
+import org.bouncycastle.cms.CMSException;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.CMSSignedDataGenerator;
+import org.bouncycastle.cms.CMSTypedData;
+import org.bouncycastle.cms.SignerInformation;
+import org.bouncycastle.cms.SignerInformationStore;
+import org.bouncycastle.cms.jcajce.JcaSignerInfoGeneratorBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Detached CMS signing with per-phase metrics.
+ *
+ * <p>Performs the same steps as {@link MakeSignature#signDetached} for the CMS case without CRL or OCSP. The steps are
+ * spelled out so that writing the revision, hashing the ByteRange, building the PKCS#7 container and the TSA round
+ * trip are each timed on their own. Ed25519 keys, which {@link PdfPKCS7} cannot encode, get an equivalent container
+ * from BouncyCastle's CMS generator.</p>
+ */
+final class DetachedCmsSigner {
+
+    private DetachedCmsSigner() {
+    }
+
+    /**
+     * Signs with {@code key}, using the digest of its {@link SigningProfile}. Ed25519 keys go through
+     * {@link #ed25519Container} because {@code PdfPKCS7} only encodes RSA, DSA and ECDSA.
+     */
+    static void sign(Metrics.Operation op, PdfSignatureAppearance sap, PrivateKey key, Certificate[] chain,
+            TSAClient tsaClient) throws IOException, DocumentException, GeneralSecurityException {
+        sign(op, sap, key, chain, tsaClient, null);
+    }
+
+    /**
+     * Like {@link #sign(Metrics.Operation, PdfSignatureAppearance, PrivateKey, Certificate[], TSAClient)}, with the
+     * ByteRange hashed through {@code chained} when it is given. The caller records the completed revision with
+     * {@link ChainedDigest#append}. Ed25519 keys hash inside the CMS generator and cannot be chained.
+     */
+    static void sign(Metrics.Operation op, PdfSignatureAppearance sap, PrivateKey key, Certificate[] chain,
+            TSAClient tsaClient, ChainedDigest chained)
+            throws IOException, DocumentException, GeneralSecurityException {
+        SigningProfile profile = SigningProfile.forKey(key);
+        if (chained != null && (!profile.isPkcs7Supported()
+                || !chained.getAlgorithm().equals(profile.getDigestAlgorithm()))) {
+            throw new IllegalArgumentException("A chained " + chained.getAlgorithm() + " digest cannot sign with "
+                    + profile.getId() + " keys");
+        }
+        TimedTsaClient timedTsa = tsaClient != null ? new TimedTsaClient(op, tsaClient) : null;
+        int estimatedSize = ContentsEstimator.estimate(chain, profile.getDigestAlgorithm(),
+                tsaClient != null ? tsaClient.getTokenSizeEstimate() : 0);
+
+        sap.setCertificate(chain[0]);
+        PdfSignature dic = new PdfSignature(PdfName.ADOBE_PPKLITE, PdfName.ADBE_PKCS7_DETACHED);
+        dic.setReason(sap.getReason());
+        dic.setLocation(sap.getLocation());
+        dic.setSignatureCreator(sap.getSignatureCreator());
+        dic.setContact(sap.getContact());
+        dic.setDate(new PdfDate(sap.getSignDate()));
+        sap.setCryptoDictionary(dic);
+
+        HashMap<PdfName, Integer> exclusions = new HashMap<>();
+        exclusions.put(PdfName.CONTENTS, estimatedSize * 2 + 2);
+        // preClose writes everything but /Contents and close patches it in; both count as one write phase.
+        long writeStart = System.nanoTime();
+        long writeAllocated = Metrics.allocatedBytes();
+        sap.preClose(exclusions);
+        long writeNanos = System.nanoTime() - writeStart;
+        long writeBytes = writeAllocated >= 0 ? Metrics.allocatedBytes() - writeAllocated : -1L;
+
+        byte[] encoded = profile.isPkcs7Supported()
+                ? pkcs7Container(op, sap, key, profile, chain, timedTsa, chained)
+                : ed25519Container(op, sap, key, chain, timedTsa);
+        if (encoded.length > estimatedSize) {
+            throw new IOException(String.format("CMS container of %d bytes exceeds the %d byte /Contents placeholder",
+                    encoded.length, estimatedSize));
+        }
+
+        byte[] padded = new byte[estimatedSize];
+        System.arraycopy(encoded, 0, padded, 0, encoded.length);
+        PdfDictionary update = new PdfDictionary();
+        update.put(PdfName.CONTENTS, new PdfString(padded).setHexWriting(true));
+        writeStart = System.nanoTime();
+        writeAllocated = Metrics.allocatedBytes();
+        try {
+            sap.close(update);
+        } finally {
+            writeNanos += System.nanoTime() - writeStart;
+            if (writeBytes >= 0) {
+                writeBytes += Metrics.allocatedBytes() - writeAllocated;
+            }
+            op.add(Metrics.WRITE, writeNanos, writeBytes);
+        }
+    }
+
+    private static byte[] pkcs7Container(Metrics.Operation op, PdfSignatureAppearance sap, PrivateKey key,
+            SigningProfile profile, Certificate[] chain, TimedTsaClient timedTsa, ChainedDigest chained)
+            throws IOException, GeneralSecurityException {
+        ExternalDigest externalDigest = new BouncyCastleDigest();
+        ExternalSignature externalSignature = new PrivateKeySignature(key, profile.getDigestAlgorithm(),
+                BouncyCastleProvider.PROVIDER_NAME);
+        String hashAlgorithm = externalSignature.getHashAlgorithm();
+        byte[] hash;
+        try (Metrics.Phase ignored = op.phase(Metrics.DIGEST);
+             InputStream data = sap.getRangeStream()) {
+            hash = chained != null
+                    ? chained.digest(data)
+                    : ByteRangeDigest.digest(data, ByteRangeDigest.newDigest(hashAlgorithm));
+        }
+
+        long pkcs7Start = System.nanoTime();
+        long pkcs7Allocated = Metrics.allocatedBytes();
+        try {
+            PdfPKCS7 sgn = new PdfPKCS7(null, chain, hashAlgorithm, null, externalDigest, false);
+            byte[] attributes = sgn.getAuthenticatedAttributeBytes(hash, null, null, MakeSignature.CryptoStandard.CMS);
+            byte[] signature = externalSignature.sign(attributes);
+            sgn.setExternalDigest(signature, null, externalSignature.getEncryptionAlgorithm());
+            return sgn.getEncodedPKCS7(hash, timedTsa, null, null, MakeSignature.CryptoStandard.CMS);
+        } finally {
+            long tsaNanos = timedTsa != null ? timedTsa.nanos : 0L;
+            long allocated = pkcs7Allocated >= 0 ? Metrics.allocatedBytes() - pkcs7Allocated : -1L;
+            op.add(Metrics.PKCS7, System.nanoTime() - pkcs7Start - tsaNanos, allocated);
+        }
+    }
+
+    /**
+     * Builds the detached CMS container with BouncyCastle for Ed25519. The signed attributes carry a SHA-512 message
+     * digest (RFC 8419), and a timestamp token, when requested, is added as the unsigned
+     * {@code signatureTimeStampToken} attribute as {@code PdfPKCS7} does. The ByteRange is hashed inside
+     * {@code generate}, so its streaming is booked to the digest phase.
+     */
+    private static byte[] ed25519Container(Metrics.Operation op, PdfSignatureAppearance sap, PrivateKey key,
+            Certificate[] chain, TimedTsaClient timedTsa) throws IOException, GeneralSecurityException {
+        long start = System.nanoTime();
+        long allocated = Metrics.allocatedBytes();
+        RangeContent content = new RangeContent(op, sap);
+        try {
+            ContentSigner signer = new JcaContentSignerBuilder(SigningProfile.ED25519.getSignatureAlgorithm())
+                    .setProvider(BouncyCastleProvider.PROVIDER_NAME)
+                    .build(bouncyCastleKey(key));
+            CMSSignedData signed = generateCms(signer, chain, content);
+            if (timedTsa != null) {
+                signed = addTimestamp(signed, timedTsa);
+            }
+            return signed.getEncoded(ASN1Encoding.DER);
+        } catch (OperatorCreationException | CMSException e) {
+            throw new GeneralSecurityException("Ed25519 CMS signing failed", e);
+        } finally {
+            long tsaNanos = timedTsa != null ? timedTsa.nanos : 0L;
+            long bytes = allocated >= 0 ? Metrics.allocatedBytes() - allocated : -1L;
+            op.add(Metrics.PKCS7, System.nanoTime() - start - tsaNanos - content.nanos, bytes);
+        }
+    }
+
+    /**
+     * Generates the detached container for {@code signer}; shared with {@link ContentsEstimator} so the estimate sees
+     * the same attributes. The content digest comes from the default provider, as in {@link ByteRangeDigest}.
+     */
+    static CMSSignedData generateCms(ContentSigner signer, Certificate[] chain, CMSTypedData content)
+            throws OperatorCreationException, CMSException, GeneralSecurityException {
+        CMSSignedDataGenerator generator = new CMSSignedDataGenerator();
+        generator.addSignerInfoGenerator(new JcaSignerInfoGeneratorBuilder(
+                new JcaDigestCalculatorProviderBuilder().build())
+                .build(signer, (X509Certificate) chain[0]));
+        generator.addCertificates(new JcaCertStore(Arrays.asList(chain)));
+        return generator.generate(content, false);
+    }
+
+    /**
+     * Re-imports a JDK {@code EdDSA} key (as read from PKCS#12) into BouncyCastle, whose signer does not accept it.
+     */
+    private static PrivateKey bouncyCastleKey(PrivateKey key) throws GeneralSecurityException {
+        if (key.getClass().getName().startsWith("org.bouncycastle.")) {
+            return key;
+        }
+        return KeyFactory.getInstance(SigningProfile.ED25519.getSignatureAlgorithm(), BouncyCastleProvider.PROVIDER_NAME)
+                .generatePrivate(new PKCS8EncodedKeySpec(key.getEncoded()));
+    }
+
+    private static CMSSignedData addTimestamp(CMSSignedData signed, TSAClient tsa) throws GeneralSecurityException {
+        SignerInformation signer = signed.getSignerInfos().getSigners().iterator().next();
+        byte[] token;
+        try {
+            token = tsa.getTimeStampToken(tsa.getMessageDigest().digest(signer.getSignature()));
+        } catch (GeneralSecurityException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new GeneralSecurityException("Timestamp request failed", e);
+        }
+        Attribute attribute;
+        try {
+            attribute = new Attribute(PKCSObjectIdentifiers.id_aa_signatureTimeStampToken,
+                    new DERSet(ASN1Primitive.fromByteArray(token)));
+        } catch (IOException e) {
+            throw new GeneralSecurityException("Malformed timestamp token", e);
+        }
+        SignerInformation stamped = SignerInformation.replaceUnsignedAttributes(signer,
+                new AttributeTable(attribute));
+        return CMSSignedData.replaceSigners(signed, new SignerInformationStore(stamped));
+    }
+
+    /**
+     * Streams the ByteRange into the CMS generator's digest and books the time to {@link Metrics#DIGEST}.
+     */
+    private static final class RangeContent implements CMSTypedData {
+        private final Metrics.Operation op;
+        private final PdfSignatureAppearance sap;
+        private long nanos;
+
+        RangeContent(Metrics.Operation op, PdfSignatureAppearance sap) {
+            this.op = op;
+            this.sap = sap;
+        }
+
+        @Override
+        public ASN1ObjectIdentifier getContentType() {
+            return CMSObjectIdentifiers.data;
+        }
+
+        @Override
+        public void write(OutputStream out) throws IOException {
+            long start = System.nanoTime();
+            try (Metrics.Phase ignored = op.phase(Metrics.DIGEST);
+                 InputStream data = sap.getRangeStream()) {
+                data.transferTo(out);
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public Object getContent() {
+            return sap;
+        }
+    }
+
+    /**
+     * Times the token request. The elapsed time is also kept so it can be taken out of the PKCS#7 phase, which
+     * contains the call.
+     */
+    private static final class TimedTsaClient implements TSAClient {
+        private final Metrics.Operation op;
+        private final TSAClient delegate;
+        private long nanos;
+
+        TimedTsaClient(Metrics.Operation op, TSAClient delegate) {
+            this.op = op;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int getTokenSizeEstimate() {
+            return delegate.getTokenSizeEstimate();
+        }
+
+        @Override
+        public MessageDigest getMessageDigest() throws GeneralSecurityException {
+            return delegate.getMessageDigest();
+        }
+
+        @Override
+        public byte[] getTimeStampToken(byte[] imprint) throws Exception {
+            long start = System.nanoTime();
+            try (Metrics.Phase ignored = op.phase(Metrics.TSA)) {
+                return delegate.getTimeStampToken(imprint);
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package com.demo.pdf;
+
+import com.demo.crypto.DemoKeystoreUtil;
+import com.demo.ltv.RevocationStore;
+import com.demo.metrics.Metrics;
+import com.itextpdf.text.pdf.AcroFields;
+import com.itextpdf.text.pdf.PRStream;
+import com.itextpdf.text.pdf.PdfArray;
+import com.itextpdf.text.pdf.PdfDeveloperExtension;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfIndirectReference;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfObject;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfStamper;
+import com.itextpdf.text.pdf.PdfStream;
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1InputStream;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.cms.Attribute;
+import org.bouncycastle.asn1.cms.AttributeTable;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.SignerInformation;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Appends a Document Security Store (PAdES-LTV {@code /DSS}) to a signed PDF as one incremental update.
+ *
+ * <p>For every signature and document timestamp without a {@code /VRI} entry yet, the certificates of its CMS
+ * container and of its signature timestamp token are collected, and revocation data for each of them is looked up
+ * in a {@link RevocationStore}. Certificates, OCSP responses and CRLs are embedded once per document, identified by
+ * the SHA-256 of their encoding: data already in an earlier DSS is referenced again instead of being copied, and a CRL
+ * that covers many signers is written once. Self-signed CA certificates are trust anchors and get no revocation
+ * data.</p>
+ *
+ * <p>The update is written to a temporary file next to the destination, checked to keep every earlier byte, and then
+ * moved into place, so {@code source} and {@code destination} may be the same file. A document whose signatures all
+ * have VRI entries already is left as it is.</p>
+ */
+public final class DssAppender {
+
+    private static final Logger log = LoggerFactory.getLogger(DssAppender.class);
+
+    private DssAppender() {
+    }
+
+    /**
+     * What one {@link #append} call added.
+     */
+    public static final class Summary {
+        private int signatures;
+        private int alreadyCovered;
+        private int certs;
+        private int ocsps;
+        private int crls;
+        private int reused;
+        private int revoked;
+
+        /** Signatures that received a VRI entry. */
+        public int getSignatures() {
+            return signatures;
+        }
+
+        /** Signatures skipped because an earlier DSS has their VRI entry. */
+        public int getAlreadyCovered() {
+            return alreadyCovered;
+        }
+
+        public int getCerts() {
+            return certs;
+        }
+
+        public int getOcsps() {
+            return ocsps;
+        }
+
+        public int getCrls() {
+            return crls;
+        }
+
+        /** References to data that was already embedded, by an earlier DSS or by another signature. */
+        public int getReused() {
+            return reused;
+        }
+
+        /** Certificates the embedded revocation data reports as revoked. */
+        public int getRevoked() {
+            return revoked;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d signature(s) (%d already covered), %d cert(s), %d OCSP, %d CRL, %d reused%s",
+                    signatures, alreadyCovered, certs, ocsps, crls, reused,
+                    revoked > 0 ? ", " + revoked + " REVOKED" : "");
+        }
+    }
+
+    public static Summary append(Path source, Path destination, RevocationStore store) throws Exception {
+        Objects.requireNonNull(store, "store");
+        DemoKeystoreUtil.ensureProvider();
+        Path src = source.toAbsolutePath();
+        Path dest = destination.toAbsolutePath();
+        try (Metrics.Operation op = Metrics.start(Metrics.ADD_LTV)) {
+            long length = Files.size(src);
+            Path temp = Files.createTempFile(dest.getParent(), dest.getFileName().toString(), ".ltv");
+            Summary summary;
+            try {
+                summary = write(src, temp, store, op);
+                if (summary.signatures == 0) {
+                    if (!src.equals(dest)) {
+                        Files.copy(src, dest, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    log.info("[ltv] {}: nothing to add, {} signature(s) already covered", src,
+                            summary.alreadyCovered);
+                } else {
+                    try (Metrics.Phase ignored = op.phase(Metrics.PREFIX_CHECK)) {
+                        RevisionPrefixCheck.assertUnchanged(src.toFile(), temp.toFile(), length);
+                    }
+                    try (Metrics.Phase ignored = op.phase(Metrics.WRITE)) {
+                        AtomicFiles.moveIntoPlace(temp, dest);
+                    }
+                    log.info("[ltv] {} -> {}: {} (+{}B)", src, dest, summary, Files.size(dest) - length);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            RevisionIndex.maintain(src, dest, false);
+            op.succeeded();
+            return summary;
+        }
+    }
+
+    private static Summary write(Path source, Path target, RevocationStore store, Metrics.Operation op)
+            throws Exception {
+        Summary summary = new Summary();
+        PdfReader reader;
+        try (Metrics.Phase ignored = op.phase(Metrics.PARSE)) {
+            reader = new PdfReader(source.toString());
+        }
+        try (OutputStream os = Files.newOutputStream(target)) {
+            AcroFields fields = reader.getAcroFields();
+            List<String> names = fields.getSignatureNames();
+            if (names.isEmpty()) {
+                throw new IllegalArgumentException("No signatures in " + source);
+            }
+            PdfDictionary catalog = reader.getCatalog();
+            PdfDictionary oldDss = catalog.getAsDict(PdfName.DSS);
+            PdfDictionary oldVri = oldDss != null ? oldDss.getAsDict(PdfName.VRI) : null;
+
+            Map<PdfName, Validation> pending = new LinkedHashMap<>();
+            try (Metrics.Phase ignored = op.phase(Metrics.REVOCATION)) {
+                for (String name : names) {
+                    PdfDictionary sig = fields.getSignatureDictionary(name);
+                    if (sig == null || sig.getAsString(PdfName.CONTENTS) == null) {
+                        throw new IllegalStateException("Signature '" + name + "' has no /Contents");
+                    }
+                    PdfName key = vriKey(sig);
+                    if (oldVri != null && oldVri.contains(key)) {
+                        summary.alreadyCovered++;
+                        continue;
+                    }
+                    pending.put(key, validate(name, sig, store, summary));
+                }
+            }
+            if (pending.isEmpty()) {
+                return summary;
+            }
+
+            try (Metrics.Phase ignored = op.phase(Metrics.FIELD_UPDATE)) {
+                PdfStamper stamper = new PdfStamper(reader, os, '\0', true);
+                Embedded certs = new Embedded(stamper, oldDss, PdfName.CERTS);
+                Embedded ocsps = new Embedded(stamper, oldDss, PdfName.OCSPS);
+                Embedded crls = new Embedded(stamper, oldDss, PdfName.CRLS);
+
+                PdfDictionary vri = new PdfDictionary();
+                if (oldVri != null) {
+                    vri.merge(oldVri);
+                }
+                for (Map.Entry<PdfName, Validation> entry : pending.entrySet()) {
+                    Validation validation = entry.getValue();
+                    PdfDictionary signatureVri = new PdfDictionary();
+                    putNonEmpty(signatureVri, PdfName.CERT, certs.refs(validation.certs, summary));
+                    putNonEmpty(signatureVri, PdfName.OCSP, ocsps.refs(validation.ocsps, summary));
+                    putNonEmpty(signatureVri, PdfName.CRL, crls.refs(validation.crls, summary));
+                    vri.put(entry.getKey(), stamper.getWriter().addToBody(signatureVri, false)
+                            .getIndirectReference());
+                    summary.signatures++;
+                }
+                summary.certs = certs.added;
+                summary.ocsps = ocsps.added;
+                summary.crls = crls.added;
+
+                PdfDictionary dss = new PdfDictionary();
+                putNonEmpty(dss, PdfName.CERTS, certs.all);
+                putNonEmpty(dss, PdfName.OCSPS, ocsps.all);
+                putNonEmpty(dss, PdfName.CRLS, crls.all);
+                dss.put(PdfName.VRI, stamper.getWriter().addToBody(vri, false).getIndirectReference());
+                catalog.put(PdfName.DSS, stamper.getWriter().addToBody(dss, false).getIndirectReference());
+                stamper.getWriter().addDeveloperExtension(PdfDeveloperExtension.ESIC_1_7_EXTENSIONLEVEL5);
+                stamper.markUsed(catalog);
+                stamper.close();
+            }
+            return summary;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Collects the certificates of one signature and the revocation data that covers them.
+     */
+    private static Validation validate(String name, PdfDictionary sig, RevocationStore store, Summary summary)
+            throws Exception {
+        List<X509Certificate> certs = new ArrayList<>();
+        collectCertificates(new CMSSignedData(sig.getAsString(PdfName.CONTENTS).getOriginalBytes()), certs);
+
+        Validation validation = new Validation();
+        validation.certs.addAll(certs);
+        for (X509Certificate cert : certs) {
+            X509Certificate issuer = issuerOf(cert, certs);
+            if (issuer == null) {
+                log.warn("[ltv] '{}': issuer of {} is not in the signature, no revocation data", name,
+                        cert.getSubjectX500Principal());
+                continue;
+            }
+            if (issuer == cert && cert.getBasicConstraints() >= 0) {
+                continue;
+            }
+            RevocationStore.Material material = store.lookup(cert, issuer);
+            if (material == null) {
+                log.warn("[ltv] '{}': no revocation data for {}", name, cert.getSubjectX500Principal());
+                continue;
+            }
+            if (material.isRevoked(cert, issuer)) {
+                summary.revoked++;
+                log.warn("[ltv] '{}': {} is REVOKED according to its {}", name, cert.getSubjectX500Principal(),
+                        material.getKind());
+            }
+            if (material.getKind() == RevocationStore.Kind.OCSP) {
+                validation.ocsps.add(material.getEncoded());
+                BasicOCSPResp basic = (BasicOCSPResp) new OCSPResp(material.getEncoded()).getResponseObject();
+                for (X509CertificateHolder responder : basic.getCerts()) {
+                    validation.certs.add(toCertificate(responder));
+                }
+            } else {
+                validation.crls.add(material.getEncoded());
+            }
+        }
+        return validation;
+    }
+
+    private static void collectCertificates(CMSSignedData signedData, List<X509Certificate> into) throws Exception {
+        for (X509CertificateHolder holder : signedData.getCertificates().getMatches(null)) {
+            into.add(toCertificate(holder));
+        }
+        for (SignerInformation signer : signedData.getSignerInfos().getSigners()) {
+            AttributeTable unsigned = signer.getUnsignedAttributes();
+            Attribute token = unsigned != null
+                    ? unsigned.get(PKCSObjectIdentifiers.id_aa_signatureTimeStampToken) : null;
+            if (token != null && token.getAttrValues().size() > 0) {
+                ASN1Encodable value = token.getAttrValues().getObjectAt(0);
+                collectCertificates(new CMSSignedData(value.toASN1Primitive().getEncoded()), into);
+            }
+        }
+    }
+
+    private static X509Certificate issuerOf(X509Certificate cert, List<X509Certificate> candidates) {
+        if (!cert.getIssuerX500Principal().equals(cert.getSubjectX500Principal()) || !signedBy(cert, cert)) {
+            for (X509Certificate candidate : candidates) {
+                if (candidate != cert && cert.getIssuerX500Principal().equals(candidate.getSubjectX500Principal())
+                        && signedBy(cert, candidate)) {
+                    return candidate;
+                }
+            }
+            return null;
+        }
+        return cert;
+    }
+
+    private static boolean signedBy(X509Certificate cert, X509Certificate issuer) {
+        try {
+            cert.verify(issuer.getPublicKey());
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static X509Certificate toCertificate(X509CertificateHolder holder) throws Exception {
+        return new JcaX509CertificateConverter().setProvider(BouncyCastleProvider.PROVIDER_NAME)
+                .getCertificate(holder);
+    }
+
+    /**
+     * The VRI key of a signature: upper-case hex SHA-1 of its {@code /Contents}, computed like iText's
+     * {@code LtvVerification} so that both agree on existing entries.
+     */
+    private static PdfName vriKey(PdfDictionary sig) throws Exception {
+        byte[] contents = sig.getAsString(PdfName.CONTENTS).getOriginalBytes();
+        if (PdfName.ETSI_RFC3161.equals(sig.getAsName(PdfName.SUBFILTER))) {
+            contents = ASN1Primitive.fromByteArray(trimmed(contents)).getEncoded();
+        }
+        byte[] sha1 = MessageDigest.getInstance("SHA-1").digest(contents);
+        return new PdfName(HexFormat.of().formatHex(sha1).toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * The DER object at the start of a zero-padded {@code /Contents}.
+     */
+    private static byte[] trimmed(byte[] contents) throws IOException {
+        try (ASN1InputStream in = new ASN1InputStream(contents)) {
+            return in.readObject().getEncoded();
+        }
+    }
+
+    private static void putNonEmpty(PdfDictionary dict, PdfName key, PdfArray array) {
+        if (array.size() > 0) {
+            dict.put(key, array);
+        }
+    }
+
+    /**
+     * What one signature's VRI entry will list, before deduplication.
+     */
+    private static final class Validation {
+        final List<X509Certificate> certs = new ArrayList<>();
+        final List<byte[]> ocsps = new ArrayList<>();
+        final List<byte[]> crls = new ArrayList<>();
+    }
+
+    /**
+     * One DSS array (certificates, OCSP responses or CRLs), keyed by the SHA-256 of each entry, starting from the
+     * entries of the previous DSS.
+     */
+    private static final class Embedded {
+        final PdfStamper stamper;
+        final PdfArray all = new PdfArray();
+        final Map<String, PdfIndirectReference> byHash = new LinkedHashMap<>();
+        int added;
+
+        Embedded(PdfStamper stamper, PdfDictionary oldDss, PdfName key) throws IOException {
+            this.stamper = stamper;
+            PdfArray old = oldDss != null ? oldDss.getAsArray(key) : null;
+            if (old == null) {
+                return;
+            }
+            for (int i = 0; i < old.size(); i++) {
+                PdfObject item = old.getPdfObject(i);
+                all.add(item);
+                if (item instanceof PdfIndirectReference ref
+                        && PdfReader.getPdfObject(ref) instanceof PRStream stream) {
+                    byHash.putIfAbsent(hash(PdfReader.getStreamBytes(stream)), ref);
+                }
+            }
+        }
+
+        PdfArray refs(List<?> items, Summary summary) throws Exception {
+            PdfArray refs = new PdfArray();
+            Map<String, PdfIndirectReference> seen = new LinkedHashMap<>();
+            for (Object item : items) {
+                byte[] der = item instanceof X509Certificate cert ? cert.getEncoded() : (byte[]) item;
+                String hash = hash(der);
+                if (seen.containsKey(hash)) {
+                    continue;
+                }
+                PdfIndirectReference ref = byHash.get(hash);
+                if (ref != null) {
+                    summary.reused++;
+                } else {
+                    PdfStream stream = new PdfStream(der);
+                    stream.flateCompress();
+                    ref = stamper.getWriter().addToBody(stream, false).getIndirectReference();
+                    byHash.put(hash, ref);
+                    all.add(ref);
+                    added++;
+                }
+                seen.put(hash, ref);
+                refs.add(ref);
+            }
+            return refs;
+        }
+
+        private static String hash(byte[] der) {
+            try {
+                return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(der));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -1,16 +1,12 @@
 package com.demo.pdf;
 
 import com.demo.crypto.DemoKeystoreUtil;
+import com.demo.metrics.Metrics;
+import com.demo.tsa.TsaClients;
 import com.itextpdf.text.Rectangle;
 import com.itextpdf.text.pdf.PdfReader;
 import com.itextpdf.text.pdf.PdfStamper;
-import com.itextpdf.text.pdf.security.BouncyCastleDigest;
-import com.itextpdf.text.pdf.security.ExternalDigest;
-import com.itextpdf.text.pdf.security.ExternalSignature;
-import com.itextpdf.text.pdf.security.MakeSignature;
 import com.itextpdf.text.pdf.PdfSignatureAppearance;
-import com.itextpdf.text.pdf.security.PrivateKeySignature;
-import com.itextpdf.text.pdf.security.TSAClientBouncyCastle;
 import com.itextpdf.text.pdf.security.TSAClient;
 
 import java.io.FileOutputStream;
@@ -20,7 +16,6 @@ import java.security.cert.Certificate;
 import java.util.Calendar;
 import java.util.Objects;
 
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
 /**
  * Visible signature helper based on iText 5.
@@ -177,10 +172,16 @@ public final class ElectronicSignatureSigner {
     }
 
     public static void sign(Params params) throws Exception {
+        try (Metrics.Operation op = Metrics.start(Metrics.SIGN_ELECTRONIC)) {
+            sign(params, op);
+            RevisionIndex.maintain(Path.of(params.getSource()), Path.of(params.getDestination()), false);
+            op.succeeded();
+        }
+    }
+
+    private static void sign(Params params, Metrics.Operation op) throws Exception {
         Objects.requireNonNull(params, "params");
         DemoKeystoreUtil.ensureProvider();
-        SigningSupport.SigningContext ctx = SigningSupport.resolve(params.getPkcs12Path(), params.getPassword());
-
         if (params.getSource() == null || params.getDestination() == null) {
             throw new IllegalArgumentException("Source and destination must be provided");
         }
@@ -191,8 +192,41 @@ public final class ElectronicSignatureSigner {
         Path destinationPath = Path.of(params.getDestination()).toAbsolutePath();
         ensureParentDir(destinationPath);
 
-        PdfReader reader = new PdfReader(sourcePath.toString());
-        try (FileOutputStream os = new FileOutputStream(destinationPath.toString())) {
+        // The key is decrypted while the source is parsed.
+        JobScope.Subtask<SigningSupport.SigningContext> keyMaterial;
+        PdfReader reader;
+        try (JobScope scope = JobScope.open()) {
+            keyMaterial = scope.fork(() -> {
+                try (Metrics.Phase ignored = op.phase(Metrics.KEY_LOAD)) {
+                    return SigningSupport.resolve(params.getPkcs12Path(), params.getPassword());
+                }
+            });
+            try (Metrics.Phase ignored = op.phase(Metrics.PARSE)) {
+                reader = new PdfReader(sourcePath.toString());
+            }
+            try {
+                scope.join();
+            } catch (Exception e) {
+                reader.close();
+                throw e;
+            }
+        }
+        SigningSupport.SigningContext ctx = keyMaterial.get();
+        // Written next to the destination and moved into place once signed, so a failure leaves no partial file.
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(destinationPath.getParent(), destinationPath.getFileName().toString(),
+                    ".part");
+            AtomicFiles.matchPermissions(temp, destinationPath, sourcePath);
+        } catch (Exception e) {
+            if (temp != null) {
+                Files.deleteIfExists(temp);
+            }
+            reader.close();
+            throw e;
+        }
+        try (FileOutputStream os = new FileOutputStream(temp.toFile())) {
+            Metrics.Phase appearancePhase = op.phase(Metrics.APPEARANCE);
             PdfStamper stamper = PdfStamper.createSignature(reader, os, '\0', null, true);
             PdfSignatureAppearance appearance = stamper.getSignatureAppearance();
             appearance.setReason(params.getReason());
@@ -209,19 +243,23 @@ public final class ElectronicSignatureSigner {
             }
             layerText.append("签署时间: ").append(signTime.getTime());
             appearance.setLayer2Text(layerText.toString());
+            appearancePhase.close();
 
-            ExternalDigest digest = new BouncyCastleDigest();
-            ExternalSignature signature = new PrivateKeySignature(ctx.privateKey(), "SHA256", BouncyCastleProvider.PROVIDER_NAME);
             Certificate[] chain = ctx.chain();
-            TSAClient tsaClient = null;
-            if (params.getTsaUrl() != null && !params.getTsaUrl().isBlank()) {
-                tsaClient = new TSAClientBouncyCastle(params.getTsaUrl());
-            }
-            MakeSignature.signDetached(appearance, digest, signature, chain, null, null, tsaClient, 0, MakeSignature.CryptoStandard.CMS);
+            TSAClient tsaClient = TsaClients.forUrl(params.getTsaUrl());
+            DetachedCmsSigner.sign(op, appearance, ctx.privateKey(), chain, tsaClient);
             stamper.close();
+        } catch (Exception e) {
+            Files.deleteIfExists(temp);
+            throw e;
         } finally {
             reader.close();
         }
+        try {
+            AtomicFiles.moveIntoPlace(temp, destinationPath);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
     }
 
     private static void ensureParentDir(Path dest) throws Exception {
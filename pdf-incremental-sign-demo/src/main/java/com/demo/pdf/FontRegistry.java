@@ -0,0 +1,118 @@
+package com.demo.pdf;
+
+import com.itextpdf.text.pdf.BaseFont;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JVM-wide registry of parsed embedded fonts.
+ *
+ * <p>Each font program is read and parsed once, from the file or the classpath resource. iText 5 only accepts a font
+ * program as a byte array, so the resulting {@link BaseFont} is always backed by an in-memory copy. iText reads that
+ * array through independent views when it writes a subset, so one instance can be shared by concurrent
+ * {@code PdfStamper}s. Used-glyph tracking lives in each
+ * writer's font details, not in the {@code BaseFont}.</p>
+ */
+public final class FontRegistry {
+
+    private static final Map<String, Entry> FONTS = new ConcurrentHashMap<>();
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    private FontRegistry() {
+    }
+
+    /**
+     * Returns the embedded Identity-H font parsed from {@code path}. The entry is refreshed when the file changes.
+     */
+    public static BaseFont fromFile(Path path) throws Exception {
+        Path absolute = path.toAbsolutePath().normalize();
+        long modified = Files.getLastModifiedTime(absolute).toMillis();
+        String base = "file:" + absolute + "@";
+        String key = base + modified;
+        FONTS.keySet().removeIf(k -> k.startsWith(base) && !k.equals(key));
+        return lookup(key, () -> create(absolute.getFileName().toString(), Files.readAllBytes(absolute)));
+    }
+
+    /**
+     * Returns the embedded Identity-H font bundled on the classpath, or {@code null} when the resource is absent.
+     */
+    public static BaseFont fromResource(String resourceName) throws Exception {
+        String name = resourceName.startsWith("/") ? resourceName.substring(1) : resourceName;
+        String key = "resource:" + name;
+        Entry cached = FONTS.get(key);
+        if (cached == null && FontRegistry.class.getResource("/" + name) == null) {
+            return null;
+        }
+        return lookup(key, () -> create(name, readResource(name)));
+    }
+
+    public static long hits() {
+        return HITS.get();
+    }
+
+    public static long misses() {
+        return MISSES.get();
+    }
+
+    public static double hitRate() {
+        long hits = HITS.get();
+        long total = hits + MISSES.get();
+        return total == 0 ? 0d : (double) hits / total;
+    }
+
+    public static String describeStats() {
+        return String.format(Locale.ROOT, "fonts=%d hits=%d misses=%d hitRate=%.2f",
+                FONTS.size(), HITS.get(), MISSES.get(), hitRate());
+    }
+
+    public static void clear() {
+        FONTS.clear();
+    }
+
+    private static BaseFont lookup(String key, Loader loader) throws Exception {
+        Entry entry = FONTS.computeIfAbsent(key, k -> new Entry());
+        BaseFont font = entry.font;
+        if (font != null) {
+            HITS.incrementAndGet();
+            return font;
+        }
+        synchronized (entry) {
+            if (entry.font == null) {
+                MISSES.incrementAndGet();
+                entry.font = loader.load();
+            } else {
+                HITS.incrementAndGet();
+            }
+            return entry.font;
+        }
+    }
+
+    private static BaseFont create(String name, byte[] program) throws Exception {
+        return BaseFont.createFont(name, BaseFont.IDENTITY_H, BaseFont.EMBEDDED, false, program, null, false, false);
+    }
+
+    private static byte[] readResource(String name) throws IOException {
+        try (InputStream in = FontRegistry.class.getResourceAsStream("/" + name)) {
+            if (in == null) {
+                throw new IOException("Font resource not found: " + name);
+            }
+            return in.readAllBytes();
+        }
+    }
+
+    private interface Loader {
+        BaseFont load() throws Exception;
+    }
+
+    private static final class Entry {
+        private volatile BaseFont font;
+    }
+}
@@ -0,0 +1,215 @@
+package com.demo.pdf;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the independent steps of one signing or verification job side by side.
+ *
+ * <p>A scope follows the shape of {@code StructuredTaskScope.ShutdownOnFailure}: steps are {@link #fork forked},
+ * {@link #join()} waits for all of them and rethrows the first failure, and {@link #close()} does not return while a
+ * forked step is still running, so no step outlives the job that started it. Once a step has failed, steps that have
+ * not started yet are skipped.</p>
+ *
+ * <p>Steps run on {@link #executor()}, which starts one virtual thread per step on Java 21 and later. The project
+ * targets Java 17, where virtual threads do not exist, so they are looked up reflectively and a cached pool of daemon
+ * platform threads is used instead. Steps mostly wait on disk, key decryption or the network, so either kind of thread
+ * is cheap enough to start one per step.</p>
+ */
+public final class JobScope implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(JobScope.class);
+
+    private static final boolean VIRTUAL = virtualFactory("probe-") != null;
+    private static final ExecutorService EXECUTOR = newExecutor("job-");
+
+    private final Object lock = new Object();
+    private int running;
+    private Throwable failure;
+
+    private JobScope() {
+    }
+
+    public static JobScope open() {
+        return new JobScope();
+    }
+
+    /**
+     * Whether {@link #executor()} and {@link #threadFactory} start virtual threads on this runtime.
+     */
+    public static boolean isVirtual() {
+        return VIRTUAL;
+    }
+
+    /**
+     * The shared executor forked steps run on. Unbounded; callers that need a limit must enforce it themselves.
+     */
+    public static ExecutorService executor() {
+        return EXECUTOR;
+    }
+
+    /**
+     * Returns a factory for daemon threads named {@code prefix} plus a counter: virtual threads where the runtime has
+     * them, platform threads otherwise.
+     */
+    public static ThreadFactory threadFactory(String prefix) {
+        ThreadFactory virtual = virtualFactory(prefix);
+        if (virtual != null) {
+            return virtual;
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Starts {@code task} and returns a handle to its result, available once {@link #join()} has returned.
+     */
+    public <T> Subtask<T> fork(Callable<T> task) {
+        Subtask<T> subtask = new Subtask<>();
+        synchronized (lock) {
+            running++;
+        }
+        try {
+            EXECUTOR.execute(() -> run(task, subtask));
+        } catch (RuntimeException e) {
+            finished(e);
+            throw e;
+        }
+        return subtask;
+    }
+
+    /**
+     * Waits until every forked step has finished or one has failed, and rethrows that failure.
+     */
+    public void join() throws Exception {
+        synchronized (lock) {
+            while (running > 0 && failure == null) {
+                lock.wait();
+            }
+            if (failure instanceof Exception e) {
+                throw e;
+            }
+            if (failure instanceof Error e) {
+                throw e;
+            }
+            if (failure != null) {
+                throw new IllegalStateException(failure);
+            }
+        }
+    }
+
+    /**
+     * Waits for steps that are still running, for example after {@link #join()} has thrown. Interrupts are deferred
+     * until they have finished.
+     */
+    @Override
+    public void close() {
+        boolean interrupted = false;
+        synchronized (lock) {
+            while (running > 0) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> void run(Callable<T> task, Subtask<T> subtask) {
+        synchronized (lock) {
+            if (failure != null) {
+                running--;
+                lock.notifyAll();
+                return;
+            }
+        }
+        Throwable error = null;
+        try {
+            subtask.set(task.call());
+        } catch (Throwable t) {
+            error = t;
+        }
+        finished(error);
+    }
+
+    private void finished(Throwable error) {
+        synchronized (lock) {
+            running--;
+            if (error != null && failure == null) {
+                failure = error;
+            } else if (error != null) {
+                failure.addSuppressed(error);
+            }
+            lock.notifyAll();
+        }
+    }
+
+    private static ExecutorService newExecutor(String prefix) {
+        ThreadFactory virtual = virtualFactory(prefix);
+        if (virtual != null) {
+            try {
+                Method perTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+                log.info("[job] steps run on virtual threads");
+                return (ExecutorService) perTask.invoke(null, virtual);
+            } catch (ReflectiveOperationException e) {
+                log.debug("[job] thread-per-task executor unavailable: {}", e.toString());
+            }
+        }
+        return Executors.newCachedThreadPool(threadFactory(prefix));
+    }
+
+    /**
+     * {@code Thread.ofVirtual().name(prefix, 1).factory()} on runtimes that have it, otherwise {@code null}.
+     */
+    private static ThreadFactory virtualFactory(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 1L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * The result of a forked step.
+     */
+    public static final class Subtask<T> {
+        private volatile T value;
+        private volatile boolean done;
+
+        private Subtask() {
+        }
+
+        private void set(T value) {
+            this.value = value;
+            this.done = true;
+        }
+
+        /**
+         * Returns the step's result; only valid after {@link JobScope#join()} has returned normally.
+         */
+        public T get() {
+            if (!done) {
+                throw new IllegalStateException("Subtask has not completed");
+            }
+            return value;
+        }
+    }
+}
@@ -1,8 +1,13 @@
 package com.demo.pdf;
 
+import com.demo.crypto.DemoKeystoreUtil;
+import com.demo.crypto.SigningProfile;
+import com.demo.metrics.Metrics;
+import com.demo.tsa.TsaClients;
 import com.itextpdf.text.Element;
 import com.itextpdf.text.Font;
 import com.itextpdf.text.Rectangle;
+import com.itextpdf.text.io.RandomAccessSourceFactory;
 import com.itextpdf.text.pdf.AcroFields;
 import com.itextpdf.text.pdf.BaseFont;
 import com.itextpdf.text.pdf.PdfAnnotation;
@@ -18,37 +23,28 @@ import com.itextpdf.text.pdf.PdfSignatureAppearance;
 import com.itextpdf.text.pdf.PdfStamper;
 import com.itextpdf.text.pdf.PdfString;
 import com.itextpdf.text.pdf.PdfWriter;
+import com.itextpdf.text.pdf.RandomAccessFileOrArray;
 import com.itextpdf.text.pdf.TextField;
-import com.itextpdf.text.pdf.security.BouncyCastleDigest;
-import com.itextpdf.text.pdf.security.DigestAlgorithms;
-import com.itextpdf.text.pdf.security.ExternalDigest;
-import com.itextpdf.text.pdf.security.ExternalSignature;
-import com.itextpdf.text.pdf.security.MakeSignature;
 import com.itextpdf.text.pdf.security.PdfSigLockDictionary;
-import com.itextpdf.text.pdf.security.PrivateKeySignature;
 import com.itextpdf.text.pdf.security.TSAClient;
-import com.itextpdf.text.pdf.security.TSAClientBouncyCastle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
 import java.io.ByteArrayOutputStream;
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.lang.reflect.Method;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.GeneralSecurityException;
-import java.security.KeyStore;
 import java.security.PrivateKey;
-import java.security.Security;
 import java.security.cert.Certificate;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.List;
 import java.util.Objects;
 
 import com.itextpdf.text.DocumentException;
@@ -111,6 +107,9 @@ public final class NursingRecordSigner {
         private float signWidth = 120f;
         private float signHeight = 18f;
         private float signYOffset = -12f;
+        private boolean digestPrefixCheck;
+        private boolean revisionIndex;
+        private String timestampQueue;
 
         public String getSource() {
             return source;
@@ -349,22 +348,328 @@ public final class NursingRecordSigner {
         public void setSignYOffset(float signYOffset) {
             this.signYOffset = signYOffset;
         }
+
+        /**
+         * When set, the source prefix is fingerprinted before signing and the new revision is checked against the
+         * fingerprint instead of the source file, so the check does not depend on the source staying in place.
+         */
+        public boolean isDigestPrefixCheck() {
+            return digestPrefixCheck;
+        }
+
+        public void setDigestPrefixCheck(boolean digestPrefixCheck) {
+            this.digestPrefixCheck = digestPrefixCheck;
+        }
+
+        /**
+         * When set, a {@link RevisionIndex} is written next to the destination even if the source has none.
+         */
+        public boolean isRevisionIndex() {
+            return revisionIndex;
+        }
+
+        public void setRevisionIndex(boolean revisionIndex) {
+            this.revisionIndex = revisionIndex;
+        }
+
+        /**
+         * Directory of a {@link TimestampQueue}. When set, rows are signed without contacting the TSA and the
+         * destination is queued for a document timestamp from {@link #getTsaUrl()} instead.
+         */
+        public String getTimestampQueue() {
+            return timestampQueue;
+        }
+
+        public void setTimestampQueue(String timestampQueue) {
+            this.timestampQueue = timestampQueue;
+        }
+
+        /**
+         * Returns a field-by-field copy, used to derive per-row jobs from shared batch defaults.
+         */
+        public SignParams copy() {
+            SignParams copy = new SignParams();
+            copy.source = source;
+            copy.destination = destination;
+            copy.row = row;
+            copy.timeValue = timeValue;
+            copy.textValue = textValue;
+            copy.nurse = nurse;
+            copy.pkcs12Path = pkcs12Path;
+            copy.password = password;
+            copy.reason = reason;
+            copy.location = location;
+            copy.contact = contact;
+            copy.tsaUrl = tsaUrl;
+            copy.cjkFontPath = cjkFontPath;
+            copy.fallbackDraw = fallbackDraw;
+            copy.pageIndex = pageIndex;
+            copy.tableTopY = tableTopY;
+            copy.rowHeight = rowHeight;
+            copy.timeX = timeX;
+            copy.textX = textX;
+            copy.nurseX = nurseX;
+            copy.fontPath = fontPath;
+            copy.fontSize = fontSize;
+            copy.textMaxWidth = textMaxWidth;
+            copy.signVisible = signVisible;
+            copy.signFieldTemplate = signFieldTemplate;
+            copy.signX = signX;
+            copy.signWidth = signWidth;
+            copy.signHeight = signHeight;
+            copy.signYOffset = signYOffset;
+            copy.digestPrefixCheck = digestPrefixCheck;
+            copy.revisionIndex = revisionIndex;
+            copy.timestampQueue = timestampQueue;
+            return copy;
+        }
     }
 
     public NursingRecordSigner() {
     }
 
     public void signRow(SignParams params) throws Exception {
+        signRow(params, true);
+    }
+
+    /**
+     * Signs one row; {@code kept} is false for intermediate revisions that are not kept, so no {@link RevisionIndex}
+     * is written and no timestamp is queued for them.
+     */
+    void signRow(SignParams params, boolean kept) throws Exception {
+        try (Metrics.Operation op = Metrics.start(Metrics.SIGN_ROW)) {
+            signRow(params, op, null);
+            if (kept) {
+                destinationWritten(Path.of(params.getSource()), Path.of(params.getDestination()), params);
+            }
+            op.succeeded();
+        }
+    }
+
+    /**
+     * Brings the sidecars of a kept destination up to date: its {@link RevisionIndex} and, with a timestamp queue, its
+     * queue entry, which takes over a pending entry of the source. A failure to queue is thrown, as the destination
+     * would otherwise never be timestamped.
+     */
+    static void destinationWritten(Path source, Path destination, SignParams params) throws IOException {
+        RevisionIndex.maintain(source, destination, params.isRevisionIndex());
+        if (params.getTimestampQueue() != null) {
+            new TimestampQueue(Path.of(params.getTimestampQueue())).enqueue(source, destination, params.getTsaUrl());
+        }
+    }
+
+    /**
+     * Runs the row signing pipeline up to the signature itself: the row is filled, the signature field is written
+     * with an empty {@code /Contents} hole and the revision is checked. The CMS container is added later by
+     * {@link DeferredSigner#complete}.
+     */
+    DeferredSigner.Prepared prepareRow(SignParams params, Certificate[] chain) throws Exception {
+        if (chain == null || chain.length == 0) {
+            throw new IllegalArgumentException("Signer certificate chain must be provided");
+        }
+        try (Metrics.Operation op = Metrics.start(Metrics.PREPARE_ROW)) {
+            DeferredSigner.Prepared prepared = signRow(params, op, chain);
+            op.succeeded();
+            return prepared;
+        }
+    }
+
+    /**
+     * Signs several rows of one chart in one session, for example when a backlog is entered after downtime.
+     *
+     * <p>The first revision fills the fields of every row and carries the first row's signature. Each further row
+     * adds a minimal revision that holds only its signature field. The chain is built in memory: each stamper reads the
+     * previous revision from the buffer it was written to, and each ByteRange digest continues from the previous one
+     * through {@link ChainedDigest}, so every byte is hashed once rather than once per row. {@code destination} is
+     * written once, after the prefix check and the verification of every new signature. All rows must use the same
+     * key material; fonts are taken from the first row.</p>
+     */
+    public List<BatchSigner.RowResult> signRows(String source, String destination, List<SignParams> rows)
+            throws Exception {
+        Objects.requireNonNull(source, "source");
+        Objects.requireNonNull(destination, "destination");
+        if (rows == null || rows.isEmpty()) {
+            throw new IllegalArgumentException("At least one row is required");
+        }
+        SignParams first = rows.get(0);
+        if (first.getPkcs12Path() == null || first.getPassword() == null) {
+            throw new IllegalArgumentException("PKCS12 path and password must be provided");
+        }
+        requireTsaForQueue(first);
+        for (SignParams params : rows) {
+            if (params.getRow() < 1) {
+                throw new IllegalArgumentException("Row index must be >= 1");
+            }
+            if (!first.getPkcs12Path().equals(params.getPkcs12Path())
+                    || !first.getPassword().equals(params.getPassword())) {
+                throw new IllegalArgumentException("All rows of one session must use the same PKCS12 file and password");
+            }
+        }
+        try (Metrics.Operation op = Metrics.start(Metrics.SIGN_ROWS)) {
+            List<BatchSigner.RowResult> results = signRows(source, destination, rows, op);
+            destinationWritten(Path.of(source), Path.of(destination), first);
+            op.succeeded();
+            return results;
+        }
+    }
+
+    private List<BatchSigner.RowResult> signRows(String source, String destination, List<SignParams> rows,
+            Metrics.Operation op) throws Exception {
+        SignParams first = rows.get(0);
+        log.info("[sign-rows] src={}, dest={}, rows={}", source, destination, rows.size());
+
+        Inputs inputs = openInputs(first, source, true, op);
+        BaseFont formFont = inputs.formFont();
+        BaseFont appearanceBaseFont = inputs.appearanceFont();
+        SigningSupport.SigningContext keyMaterial = inputs.keyMaterial();
+        try (SigningSession session = inputs.session()) {
+            SigningProfile profile = SigningProfile.forKey(keyMaterial.privateKey());
+            PdfReader reader = session.getSourceReader();
+            try (Metrics.Phase ignored = op.phase(Metrics.DOCMDP_CHECK)) {
+                requireApprovalOnly(reader);
+            }
+            try (Metrics.Phase ignored = op.phase(Metrics.DIAGNOSTICS)) {
+                logPreSigningState(reader, session.getSourceFile());
+            }
+            StringBuilder allText = new StringBuilder();
+            for (SignParams params : rows) {
+                Rectangle pageRect = requirePageRectangle(reader, params.getPageIndex());
+                if (params.isSignVisible()) {
+                    validateRectangle(computeSignatureRectangle(params, rowBaseY(params)), pageRect, "signature");
+                }
+                allText.append(rowText(params));
+            }
+
+            // Ed25519 hashes inside the CMS generator, so its rows hash the full ByteRange.
+            ChainedDigest digest = profile.isPkcs7Supported()
+                    ? new ChainedDigest(profile.getDigestAlgorithm(), session.getSourceLength())
+                    : null;
+            List<BatchSigner.RowResult> results = new ArrayList<>(rows.size());
+            byte[] document = null;
+            long length = session.getSourceLength();
+            for (int i = 0; i < rows.size(); i++) {
+                SignParams params = rows.get(i);
+                long started = System.nanoTime();
+                PdfReader current = document == null
+                        ? reader
+                        : new PdfReader(new RandomAccessFileOrArray(
+                                new RandomAccessSourceFactory().createSource(document)), null);
+                byte[] next;
+                try {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream(
+                            (int) Math.min(Integer.MAX_VALUE - 8, length + (64 << 10)));
+                    PdfStamper stamper;
+                    BaseFont rowAppearanceFont;
+                    try (Metrics.Phase ignored = op.phase(Metrics.FIELD_UPDATE)) {
+                        stamper = PdfStamper.createSignature(current, out, '\0', null, true);
+                        String text = i == 0 ? allText.toString() : rowText(params);
+                        BaseFont rowFormFont = SharedFontSubsets.select(stamper, formFont, text);
+                        rowAppearanceFont = appearanceBaseFont == formFont
+                                ? rowFormFont
+                                : SharedFontSubsets.select(stamper, appearanceBaseFont, text);
+                        if (i == 0) {
+                            ensureAcroFormIText5(current, stamper, rowFormFont);
+                            ensureAcroFormSigFlags(stamper);
+                            stamper.getAcroFields().addSubstitutionFont(rowFormFont);
+                            for (SignParams each : rows) {
+                                fillRow(stamper, each, rowFormFont, rowAppearanceFont);
+                            }
+                        }
+                    }
+                    PdfSignatureAppearance appearance;
+                    try (Metrics.Phase ignored = op.phase(Metrics.APPEARANCE)) {
+                        appearance = prepareAppearance(stamper, params, rowAppearanceFont);
+                    }
+                    DetachedCmsSigner.sign(op, appearance, keyMaterial.privateKey(), keyMaterial.chain(),
+                            buildTsaClient(params), digest);
+                    next = out.toByteArray();
+                } finally {
+                    if (current != reader) {
+                        current.close();
+                    }
+                }
+                if (document != null) {
+                    try (Metrics.Phase ignored = op.phase(Metrics.PREFIX_CHECK)) {
+                        RevisionPrefixCheck.assertUnchanged(document, next);
+                    }
+                }
+                if (digest != null) {
+                    digest.append(next);
+                }
+                String field = resolveSignatureFieldName(params);
+                long millis = (System.nanoTime() - started) / 1_000_000L;
+                results.add(new BatchSigner.RowResult(params.getRow(), field, millis, next.length - length));
+                log.info("[sign-rows] row={} field='{}' {}ms +{}B", params.getRow(), field, millis,
+                        next.length - length);
+                document = next;
+                length = next.length;
+            }
+
+            writeChain(session, rows, document, Path.of(destination).toAbsolutePath(), op);
+            return results;
+        }
+    }
+
+    /**
+     * Writes the finished chain next to {@code target}, checks it against the source and verifies the new signatures,
+     * then moves it into place.
+     */
+    private void writeChain(SigningSession session, List<SignParams> rows, byte[] document, Path target,
+            Metrics.Operation op) throws Exception {
+        Path parent = target.getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = Files.createTempFile(parent, target.getFileName().toString(), ".part");
+        try {
+            AtomicFiles.matchPermissions(temp, target, session.getSourceFile().toPath());
+            try (Metrics.Phase ignored = op.phase(Metrics.WRITE)) {
+                Files.write(temp, document);
+            }
+            try (Metrics.Phase ignored = op.phase(Metrics.PREFIX_CHECK)) {
+                RevisionPrefixCheck.assertUnchanged(session.getSourceFile(), temp.toFile(), session.getSourceLength());
+            }
+            try (Metrics.Phase ignored = op.phase(Metrics.POST_VALIDATE)) {
+                PdfReader signed = session.openSignedRevision(temp.toString());
+                List<String> fields = new ArrayList<>(rows.size());
+                for (SignParams params : rows) {
+                    String field = resolveSignatureFieldName(params);
+                    validateSignedDocument(signed, temp.toString(), field, params.getPageIndex());
+                    fields.add(field);
+                }
+                for (SignatureVerifier.Result result : RevisionDigestVerifier.verify(temp, signed,
+                        signed.getAcroFields(), fields, Metrics.untracked())) {
+                    if (!result.isValid()) {
+                        throw new IllegalStateException("Signature '" + result.getName() + "' does not verify; "
+                                + target + " was left unchanged");
+                    }
+                }
+            }
+            AtomicFiles.moveIntoPlace(temp, target);
+            log.info("[sign-rows] wrote {} rows to '{}' ({}B)", rows.size(), target, document.length);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Signs one row. With a {@code deferredChain} no private key is used and the prepared placeholder is returned;
+     * otherwise the row is signed in place and {@code null} is returned.
+     */
+    private DeferredSigner.Prepared signRow(SignParams params, Metrics.Operation op, Certificate[] deferredChain)
+            throws Exception {
         Objects.requireNonNull(params, "params");
+        boolean deferred = deferredChain != null;
         if (params.getRow() < 1) {
             throw new IllegalArgumentException("Row index must be >= 1");
         }
         if (params.getSource() == null || params.getDestination() == null) {
             throw new IllegalArgumentException("Source and destination must be provided");
         }
-        if (params.getPkcs12Path() == null || params.getPassword() == null) {
+        if (!deferred && (params.getPkcs12Path() == null || params.getPassword() == null)) {
             throw new IllegalArgumentException("PKCS12 path and password must be provided");
         }
+        requireTsaForQueue(params);
 
         log.info("[sign-row] src={}, dest={}, row={}, time='{}', nurse='{}'",
                 params.getSource(), params.getDestination(), params.getRow(), params.getTimeValue(),
@@ -374,190 +679,327 @@ public final class NursingRecordSigner {
                 params.getTimeX(), params.getTextX(), params.getNurseX(), params.getTextMaxWidth(),
                 params.getFontSize());
 
-        int row = params.getRow();
         int pageIndex = params.getPageIndex();
-        float yBase = params.getTableTopY() - (row - 1) * params.getRowHeight();
         String signFieldName = resolveSignatureFieldName(params);
-        Rectangle signatureRect = computeSignatureRectangle(params, yBase);
-
-        dumpSignatures("BEFORE", params.getSource());
+        Rectangle signatureRect = computeSignatureRectangle(params, rowBaseY(params));
 
-        BaseFont formFont = resolveBaseFont(params.getCjkFontPath());
+        Inputs inputs = openInputs(params, params.getSource(), !deferred, op);
+        BaseFont formFont = inputs.formFont();
+        BaseFont appearanceBaseFont = inputs.appearanceFont();
         log.info("[sign-row] Using font for text artifacts: {}", formFont.getPostscriptFontName());
-        BaseFont appearanceBaseFont = resolveCjkBaseFont(firstNonBlank(params.getFontPath(), params.getCjkFontPath()),
-                "NotoSansCJKsc-Regular.otf");
-        Font appearanceFont = new Font(appearanceBaseFont, params.getFontSize());
-
-        File prevFile = new File(params.getSource());
-        File destFile = new File(params.getDestination());
-        PdfReader reader = null;
-        FileOutputStream os = null;
-        PdfStamper stamper = null;
-        boolean signDetachedCalled = false;
-        boolean signCompleted = false;
+        log.info("[sign-row] font registry {}", FontRegistry.describeStats());
 
+        // The revision is written next to the destination and moved into place only once it has been checked, so a
+        // failed signature (e.g. a CMS container larger than its placeholder) never leaves a truncated destination.
+        Path target = Path.of(params.getDestination()).toAbsolutePath();
+        Path temp;
         try {
-            reader = new PdfReader(params.getSource());
-            PdfDictionary perms = reader.getCatalog().getAsDict(PdfName.PERMS);
-            PdfDictionary docMdpDict = perms != null ? perms.getAsDict(PdfName.DOCMDP) : null;
-            Integer docMdpPerm = getDocMdpPermission(reader);
-            if (docMdpDict != null || docMdpPerm != null) {
-                String permText = docMdpPerm == null ? "unknown" : docMdpPerm.toString();
-                throw new IllegalStateException(String.format(
-                        "Document is certified with DocMDP permission P=%s. Route A requires approval signatures only.",
-                        permText));
+            temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".part");
+        } catch (IOException e) {
+            inputs.session().close();
+            throw e;
+        }
+        try {
+            AtomicFiles.matchPermissions(temp, target, Path.of(params.getSource()));
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            inputs.session().close();
+            throw e;
+        }
+        File destFile = temp.toFile();
+        DeferredSigner.Prepared prepared = null;
+        try (SigningSession session = inputs.session()) {
+            PdfReader reader = session.getSourceReader();
+            try (Metrics.Phase ignored = op.phase(Metrics.DIAGNOSTICS)) {
+                dumpSignatures("BEFORE", reader, params.getSource(), Path.of(params.getSource()), null);
             }
-            logPreSigningState(reader, prevFile);
-
-            Rectangle pageRect = requirePageRectangle(reader, pageIndex);
-            if (params.isSignVisible()) {
-                validateRectangle(signatureRect, pageRect, "signature");
+            RevisionPrefixCheck.Fingerprint sourceFingerprint = null;
+            if (params.isDigestPrefixCheck()) {
+                try (Metrics.Phase ignored = op.phase(Metrics.PREFIX_CHECK)) {
+                    sourceFingerprint = RevisionPrefixCheck.fingerprint(session.getSourceFile(),
+                            session.getSourceLength());
+                }
             }
 
-            os = new FileOutputStream(params.getDestination());
-            stamper = PdfStamper.createSignature(reader, os, '\0', null, true);
-            log.info("[sign-row] createSignature append=true");
+            FileOutputStream os = null;
+            PdfStamper stamper = null;
+            boolean signDetachedCalled = false;
 
-            ensureAcroFormIText5(reader, stamper, formFont);
-            ensureAcroFormSigFlags(stamper);
+            try {
+                try (Metrics.Phase ignored = op.phase(Metrics.DOCMDP_CHECK)) {
+                    requireApprovalOnly(reader);
+                }
+                try (Metrics.Phase ignored = op.phase(Metrics.DIAGNOSTICS)) {
+                    logPreSigningState(reader, session.getSourceFile());
+                }
 
-            AcroFields acroFields = stamper.getAcroFields();
-            acroFields.addSubstitutionFont(formFont);
+                Rectangle pageRect = requirePageRectangle(reader, pageIndex);
+                if (params.isSignVisible()) {
+                    validateRectangle(signatureRect, pageRect, "signature");
+                }
 
-            String timeValue = safe(params.getTimeValue());
-            String textValue = safe(params.getTextValue());
-            String nurseValue = safe(params.getNurse());
+                os = new FileOutputStream(destFile);
+                try (Metrics.Phase ignored = op.phase(Metrics.FIELD_UPDATE)) {
+                    stamper = PdfStamper.createSignature(reader, os, '\0', null, true);
+                    log.info("[sign-row] createSignature append=true");
 
-            if (params.isFallbackDraw()) {
-                drawRowTextsOnPage(stamper, pageIndex, row, yBase,
-                        params.getTimeX(), params.getTextX(), params.getNurseX(), params.getFontSize(),
-                        timeValue, textValue, nurseValue, appearanceBaseFont);
-            } else {
-                ensureOrUpdateRowTextFields(stamper, pageIndex, row, yBase,
-                        params.getTimeX(), params.getTextX(), params.getNurseX(), params.getFontSize(),
-                        timeValue, textValue, nurseValue, formFont);
-            }
+                    String revisionText = rowText(params);
+                    BaseFont shared = SharedFontSubsets.select(stamper, formFont, revisionText);
+                    appearanceBaseFont = appearanceBaseFont == formFont
+                            ? shared
+                            : SharedFontSubsets.select(stamper, appearanceBaseFont, revisionText);
+                    formFont = shared;
 
-            PdfSignatureAppearance appearance = stamper.getSignatureAppearance();
-            appearance.setReason(firstNonBlank(params.getReason(), "Nursing record approval"));
-            appearance.setLocation(firstNonBlank(params.getLocation(), "Ward"));
-            if (params.getContact() != null && !params.getContact().isBlank()) {
-                appearance.setContact(params.getContact());
-            }
-            appearance.setSignDate(Calendar.getInstance());
-            appearance.setRenderingMode(PdfSignatureAppearance.RenderingMode.DESCRIPTION);
-            appearance.setLayer2Font(appearanceFont);
-            appearance.setLayer2Text(buildLayer2Text(params));
+                    ensureAcroFormIText5(reader, stamper, formFont);
+                    ensureAcroFormSigFlags(stamper);
 
-            Rectangle widgetRect = params.isSignVisible()
-                    ? signatureRect
-                    : new Rectangle(0, 0, 0, 0);
-            appearance.setVisibleSignature(widgetRect, pageIndex, signFieldName);
-            if (params.isSignVisible()) {
-                log.info("[sign-row] setVisibleSignature field='{}' page={} rect={} fallbackDraw={}",
-                        signFieldName, pageIndex, describeRect(signatureRect), params.isFallbackDraw());
-            } else {
-                log.info("[sign-row] setVisibleSignature (invisible) field='{}' page={} fallbackDraw={}",
-                        signFieldName, pageIndex, params.isFallbackDraw());
-            }
+                    AcroFields acroFields = stamper.getAcroFields();
+                    acroFields.addSubstitutionFont(formFont);
 
-            if (!params.isFallbackDraw()) {
-                attachRowFieldLock(appearance, row);
-            }
-
-            KeyMaterial keyMaterial = loadKeyMaterial(params);
-            TSAClient tsaClient = buildTsaClient(params);
+                    fillRow(stamper, params, formFont, appearanceBaseFont);
+                }
 
-            signDetachedCalled = true;
-            signDetachedWithBC(appearance, keyMaterial.privateKey, keyMaterial.chain, tsaClient);
-            signCompleted = true;
-        } catch (Exception e) {
-            try {
-                if (!signDetachedCalled && stamper != null) {
-                    stamper.close();
+                PdfSignatureAppearance appearance;
+                try (Metrics.Phase ignored = op.phase(Metrics.APPEARANCE)) {
+                    appearance = prepareAppearance(stamper, params, appearanceBaseFont);
                 }
-            } catch (Exception ignore) {
-            }
-            try {
-                if (os != null) {
-                    os.close();
+
+                if (deferred) {
+                    signDetachedCalled = true;
+                    prepared = DeferredSigner.reserve(op, appearance, deferredChain,
+                            SigningProfile.forKey(deferredChain[0].getPublicKey()).getDigestAlgorithm(),
+                            params.getDestination(), signFieldName, params.getTsaUrl());
+                } else {
+                    SigningSupport.SigningContext keyMaterial = inputs.keyMaterial();
+                    TSAClient tsaClient = buildTsaClient(params);
+
+                    signDetachedCalled = true;
+                    signDetachedWithBC(op, appearance, keyMaterial.privateKey(), keyMaterial.chain(), tsaClient);
                 }
-            } catch (Exception ignore) {
-            }
-            try {
-                if (reader != null) {
-                    reader.close();
+            } catch (Exception e) {
+                try {
+                    if (!signDetachedCalled && stamper != null) {
+                        stamper.close();
+                    }
+                } catch (Exception ignore) {
                 }
-            } catch (Exception ignore) {
-            }
-            if (!signDetachedCalled) {
                 try {
-                    new File(params.getDestination()).delete();
+                    if (os != null) {
+                        os.close();
+                    }
                 } catch (Exception ignore) {
                 }
+                throw e;
             }
-            throw e;
-        } finally {
-            try {
-                if (reader != null) {
-                    reader.close();
+
+            File prevFile = session.getSourceFile();
+            long prefixLen = session.getSourceLength();
+            PdfReader signed;
+            try (Metrics.Phase ignored = op.phase(Metrics.POST_VALIDATE)) {
+                signed = session.openSignedRevision(temp.toString());
+            }
+            if (!deferred) {
+                try (Metrics.Phase ignored = op.phase(Metrics.DIAGNOSTICS)) {
+                    dumpSignatures("AFTER", signed, target.toString(), temp, signFieldName);
                 }
-            } catch (Exception ignore) {
             }
-        }
-
-        if (signCompleted) {
-            dumpSignatures("AFTER", params.getDestination());
-            try {
-                long prefixLen = computePrevRevisionLength(prevFile, destFile);
+            try (Metrics.Phase ignored = op.phase(Metrics.PREFIX_CHECK)) {
                 log.info("[sign-row] prev='{}' ({}B) curr='{}' ({}B) prefixLen={}B", prevFile.getAbsolutePath(),
                         prevFile.exists() ? prevFile.length() : -1,
-                        destFile.getAbsolutePath(), destFile.exists() ? destFile.length() : -1, prefixLen);
-                assertPrefixUnchanged(prevFile, destFile, prefixLen, log);
+                        target, destFile.exists() ? destFile.length() : -1, prefixLen);
+                if (sourceFingerprint != null) {
+                    RevisionPrefixCheck.assertUnchanged(sourceFingerprint, destFile);
+                } else {
+                    RevisionPrefixCheck.assertUnchanged(prevFile, destFile, prefixLen);
+                }
+                log.info("[INCREMENTAL-CHECK] OK ({} mode). New file keeps first {} bytes identical to previous revision.",
+                        sourceFingerprint != null ? "digest" : "byte", prefixLen);
             } catch (IOException ioException) {
                 throw new IllegalStateException("Failed to validate incremental prefix", ioException);
             }
-            validateSignedDocument(params.getDestination(), signFieldName, pageIndex);
+            try (Metrics.Phase ignored = op.phase(Metrics.POST_VALIDATE)) {
+                validateSignedDocument(signed, temp.toString(), signFieldName, pageIndex);
+            }
+        } catch (Exception e) {
+            Files.deleteIfExists(temp);
+            throw e;
         }
+        // Moved after the session has closed the signed revision, which some platforms cannot move while open.
+        try (Metrics.Phase ignored = op.phase(Metrics.WRITE)) {
+            AtomicFiles.moveIntoPlace(temp, target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return prepared;
     }
 
-    private void signDetachedWithBC(PdfSignatureAppearance appearance, PrivateKey privateKey,
+    /**
+     * Writes the row's time, note and nurse into its text fields or, with fallback drawing, onto the page.
+     */
+    private void fillRow(PdfStamper stamper, SignParams params, BaseFont formFont, BaseFont drawFont)
+            throws Exception {
+        int row = params.getRow();
+        String timeValue = safe(params.getTimeValue());
+        String textValue = safe(params.getTextValue());
+        String nurseValue = safe(params.getNurse());
+        if (params.isFallbackDraw()) {
+            drawRowTextsOnPage(stamper, params.getPageIndex(), row, rowBaseY(params),
+                    params.getTimeX(), params.getTextX(), params.getNurseX(), params.getFontSize(),
+                    timeValue, textValue, nurseValue, drawFont);
+        } else {
+            ensureOrUpdateRowTextFields(stamper, params.getPageIndex(), row, rowBaseY(params),
+                    params.getTimeX(), params.getTextX(), params.getNurseX(), params.getFontSize(),
+                    timeValue, textValue, nurseValue, formFont);
+        }
+    }
+
+    /**
+     * Sets the signature dictionary entries, places the row's signature widget with its appearance and locks the
+     * row's fields.
+     */
+    private PdfSignatureAppearance prepareAppearance(PdfStamper stamper, SignParams params,
+            BaseFont appearanceBaseFont) throws DocumentException {
+        int pageIndex = params.getPageIndex();
+        String signFieldName = resolveSignatureFieldName(params);
+        Rectangle signatureRect = computeSignatureRectangle(params, rowBaseY(params));
+        PdfSignatureAppearance appearance = stamper.getSignatureAppearance();
+        appearance.setReason(firstNonBlank(params.getReason(), "Nursing record approval"));
+        appearance.setLocation(firstNonBlank(params.getLocation(), "Ward"));
+        if (params.getContact() != null && !params.getContact().isBlank()) {
+            appearance.setContact(params.getContact());
+        }
+        appearance.setSignDate(Calendar.getInstance());
+        boolean sharedAppearance = params.isSignVisible() && params.getFontSize() > 0;
+        if (!sharedAppearance) {
+            appearance.setRenderingMode(PdfSignatureAppearance.RenderingMode.DESCRIPTION);
+            appearance.setLayer2Font(new Font(appearanceBaseFont, params.getFontSize()));
+            appearance.setLayer2Text(buildLayer2Text(params));
+        }
+
+        Rectangle widgetRect = params.isSignVisible()
+                ? signatureRect
+                : new Rectangle(0, 0, 0, 0);
+        appearance.setVisibleSignature(widgetRect, pageIndex, signFieldName);
+        if (sharedAppearance) {
+            AppearanceTemplates.render(stamper, appearance, appearanceBaseFont, params.getFontSize(),
+                    safe(params.getNurse()), safe(params.getTimeValue()) + "\n" + safe(params.getTextValue()));
+        }
+        if (params.isSignVisible()) {
+            log.info("[sign-row] setVisibleSignature field='{}' page={} rect={} fallbackDraw={}",
+                    signFieldName, pageIndex, describeRect(signatureRect), params.isFallbackDraw());
+        } else {
+            log.info("[sign-row] setVisibleSignature (invisible) field='{}' page={} fallbackDraw={}",
+                    signFieldName, pageIndex, params.isFallbackDraw());
+        }
+
+        if (!params.isFallbackDraw()) {
+            attachRowFieldLock(appearance, params.getRow());
+        }
+        return appearance;
+    }
+
+    /**
+     * Refuses certified documents: rows are signed with approval signatures only.
+     */
+    private static void requireApprovalOnly(PdfReader reader) {
+        PdfDictionary perms = reader.getCatalog().getAsDict(PdfName.PERMS);
+        PdfDictionary docMdpDict = perms != null ? perms.getAsDict(PdfName.DOCMDP) : null;
+        Integer docMdpPerm = getDocMdpPermission(reader);
+        if (docMdpDict != null || docMdpPerm != null) {
+            String permText = docMdpPerm == null ? "unknown" : docMdpPerm.toString();
+            throw new IllegalStateException(String.format(
+                    "Document is certified with DocMDP permission P=%s. Route A requires approval signatures only.",
+                    permText));
+        }
+    }
+
+    private static float rowBaseY(SignParams params) {
+        return params.getTableTopY() - (params.getRow() - 1) * params.getRowHeight();
+    }
+
+    /**
+     * Every character the row writes, for font subset selection.
+     */
+    private static String rowText(SignParams params) {
+        return safe(params.getTimeValue()) + safe(params.getTextValue()) + safe(params.getNurse());
+    }
+
+    private void signDetachedWithBC(Metrics.Operation op, PdfSignatureAppearance appearance, PrivateKey privateKey,
             Certificate[] chain, TSAClient tsaClient)
             throws GeneralSecurityException, IOException, DocumentException {
-        ExternalDigest digest = new BouncyCastleDigest();
-        ExternalSignature signature = new PrivateKeySignature(privateKey, DigestAlgorithms.SHA256,
-                BouncyCastleProvider.PROVIDER_NAME);
-        MakeSignature.signDetached(appearance, digest, signature, chain, null, null, tsaClient, 0,
-                MakeSignature.CryptoStandard.CMS);
+        DetachedCmsSigner.sign(op, appearance, privateKey, chain, tsaClient);
     }
 
-    private KeyMaterial loadKeyMaterial(SignParams params) throws Exception {
-        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
-            Security.addProvider(new BouncyCastleProvider());
+    /**
+     * Parses {@code source} on the calling thread while the fonts and, with {@code withKey}, the key material are
+     * loaded on a {@link JobScope}; none of the three depends on the others. The caller owns the returned session.
+     */
+    private Inputs openInputs(SignParams params, String source, boolean withKey, Metrics.Operation op)
+            throws Exception {
+        JobScope.Subtask<BaseFont> formFont;
+        JobScope.Subtask<BaseFont> appearanceFont;
+        JobScope.Subtask<SigningSupport.SigningContext> keyMaterial = null;
+        SigningSession session;
+        try (JobScope scope = JobScope.open()) {
+            formFont = scope.fork(() -> {
+                try (Metrics.Phase ignored = op.phase(Metrics.APPEARANCE)) {
+                    return resolveBaseFont(params.getCjkFontPath());
+                }
+            });
+            appearanceFont = scope.fork(() -> {
+                try (Metrics.Phase ignored = op.phase(Metrics.APPEARANCE)) {
+                    return resolveCjkBaseFont(firstNonBlank(params.getFontPath(), params.getCjkFontPath()),
+                            "NotoSansCJKsc-Regular.otf");
+                }
+            });
+            if (withKey) {
+                keyMaterial = scope.fork(() -> {
+                    try (Metrics.Phase ignored = op.phase(Metrics.KEY_LOAD)) {
+                        return loadKeyMaterial(params);
+                    }
+                });
+            }
+            try (Metrics.Phase ignored = op.phase(Metrics.PARSE)) {
+                session = SigningSession.open(source);
+            }
+            try {
+                scope.join();
+            } catch (Exception e) {
+                session.close();
+                throw e;
+            }
         }
-        KeyStore keyStore = KeyStore.getInstance("PKCS12");
-        char[] passwordChars = params.getPassword() == null ? new char[0] : params.getPassword().toCharArray();
-        try (FileInputStream pkcs12Stream = new FileInputStream(params.getPkcs12Path())) {
-            keyStore.load(pkcs12Stream, passwordChars);
+        return new Inputs(formFont.get(), appearanceFont.get(), keyMaterial != null ? keyMaterial.get() : null,
+                session);
+    }
+
+    private record Inputs(BaseFont formFont, BaseFont appearanceFont, SigningSupport.SigningContext keyMaterial,
+            SigningSession session) {
+    }
+
+    private SigningSupport.SigningContext loadKeyMaterial(SignParams params) throws Exception {
+        DemoKeystoreUtil.ensureProvider();
+        return SigningSupport.resolve(params.getPkcs12Path(), params.getPassword());
+    }
+
+    private static void requireTsaForQueue(SignParams params) {
+        if (params.getTimestampQueue() != null && (params.getTsaUrl() == null || params.getTsaUrl().isBlank())) {
+            throw new IllegalArgumentException("A timestamp queue needs a TSA URL");
         }
-        String alias = (String) keyStore.aliases().nextElement();
-        PrivateKey privateKey = (PrivateKey) keyStore.getKey(alias, passwordChars);
-        Certificate[] chain = keyStore.getCertificateChain(alias);
-        return new KeyMaterial(privateKey, chain);
     }
 
     private TSAClient buildTsaClient(SignParams params) {
-        if (params.getTsaUrl() != null && !params.getTsaUrl().isBlank()) {
-            return new TSAClientBouncyCastle(params.getTsaUrl());
+        if (params.getTimestampQueue() != null) {
+            return null;
         }
-        return null;
+        return TsaClients.forUrl(params.getTsaUrl());
     }
 
     private static String dumpFieldNames(AcroFields af) {
         return String.valueOf(af.getFields().keySet());
     }
 
-    private static String resolveSignatureFieldName(SignParams params) {
+    static String resolveSignatureFieldName(SignParams params) {
         String template = params.getSignFieldTemplate();
         if (template != null && !template.isBlank()) {
             if (template.contains("%")) {
@@ -740,7 +1182,8 @@ public final class NursingRecordSigner {
         cb.restoreState();
     }
 
-    private void validateSignedDocument(String path, String sigFieldName, int pageIndex) throws Exception {
+    private void validateSignedDocument(PdfReader reader, String path, String sigFieldName, int pageIndex)
+            throws Exception {
         File signedFile = new File(path);
         if (!signedFile.exists()) {
             throw new IllegalStateException("Signed file not found: " + path);
@@ -753,90 +1196,78 @@ public final class NursingRecordSigner {
             }
         }
 
-        PdfReader reader = new PdfReader(path);
-        try {
-            AcroFields af = reader.getAcroFields();
-            if (af.getFieldItem(sigFieldName) == null) {
-                throw new IllegalStateException("Signature field '" + sigFieldName + "' missing after signing");
-            }
-            if (af.getFieldType(sigFieldName) != AcroFields.FIELD_TYPE_SIGNATURE) {
-                throw new IllegalStateException("Field '" + sigFieldName + "' is not a signature field");
-            }
+        AcroFields af = reader.getAcroFields();
+        if (af.getFieldItem(sigFieldName) == null) {
+            throw new IllegalStateException("Signature field '" + sigFieldName + "' missing after signing");
+        }
+        if (af.getFieldType(sigFieldName) != AcroFields.FIELD_TYPE_SIGNATURE) {
+            throw new IllegalStateException("Field '" + sigFieldName + "' is not a signature field");
+        }
 
-            PdfDictionary sigDict = af.getSignatureDictionary(sigFieldName);
-            if (sigDict == null) {
-                throw new IllegalStateException("Signature dictionary missing for field '" + sigFieldName + "'");
-            }
-            if (!PdfName.ADOBE_PPKLITE.equals(sigDict.getAsName(PdfName.FILTER))) {
-                throw new IllegalStateException("Unexpected signature filter in field '" + sigFieldName + "'");
-            }
-            if (!PdfName.ADBE_PKCS7_DETACHED.equals(sigDict.getAsName(PdfName.SUBFILTER))) {
-                throw new IllegalStateException("Unexpected signature subfilter in field '" + sigFieldName + "'");
-            }
+        PdfDictionary sigDict = af.getSignatureDictionary(sigFieldName);
+        if (sigDict == null) {
+            throw new IllegalStateException("Signature dictionary missing for field '" + sigFieldName + "'");
+        }
+        if (!PdfName.ADOBE_PPKLITE.equals(sigDict.getAsName(PdfName.FILTER))) {
+            throw new IllegalStateException("Unexpected signature filter in field '" + sigFieldName + "'");
+        }
+        if (!PdfName.ADBE_PKCS7_DETACHED.equals(sigDict.getAsName(PdfName.SUBFILTER))) {
+            throw new IllegalStateException("Unexpected signature subfilter in field '" + sigFieldName + "'");
+        }
 
-            PdfArray byteRange = sigDict.getAsArray(PdfName.BYTERANGE);
-            if (byteRange == null || byteRange.size() != 4) {
-                throw new IllegalStateException("Invalid ByteRange for signature field '" + sigFieldName + "'");
-            }
-            if (byteRange.getAsNumber(0).longValue() != 0) {
-                throw new IllegalStateException("ByteRange must start at 0 for field '" + sigFieldName + "'");
-            }
-            long len1 = byteRange.getAsNumber(1).longValue();
-            long start2 = byteRange.getAsNumber(2).longValue();
-            long len2 = byteRange.getAsNumber(3).longValue();
-            if (len1 < 0 || start2 < len1) {
-                throw new IllegalStateException("ByteRange discontinuity for field '" + sigFieldName + "'");
-            }
-            if (len2 < 0) {
-                throw new IllegalStateException("Negative ByteRange length for field '" + sigFieldName + "'");
-            }
-            long fileLength = reader.getFileLength();
-            if (start2 + len2 > fileLength) {
-                throw new IllegalStateException("ByteRange extends beyond file length for field '" + sigFieldName + "'");
-            }
+        PdfArray byteRange = sigDict.getAsArray(PdfName.BYTERANGE);
+        if (byteRange == null || byteRange.size() != 4) {
+            throw new IllegalStateException("Invalid ByteRange for signature field '" + sigFieldName + "'");
+        }
+        if (byteRange.getAsNumber(0).longValue() != 0) {
+            throw new IllegalStateException("ByteRange must start at 0 for field '" + sigFieldName + "'");
+        }
+        long len1 = byteRange.getAsNumber(1).longValue();
+        long start2 = byteRange.getAsNumber(2).longValue();
+        long len2 = byteRange.getAsNumber(3).longValue();
+        if (len1 < 0 || start2 < len1) {
+            throw new IllegalStateException("ByteRange discontinuity for field '" + sigFieldName + "'");
+        }
+        if (len2 < 0) {
+            throw new IllegalStateException("Negative ByteRange length for field '" + sigFieldName + "'");
+        }
+        long fileLength = reader.getFileLength();
+        if (start2 + len2 > fileLength) {
+            throw new IllegalStateException("ByteRange extends beyond file length for field '" + sigFieldName + "'");
+        }
 
-            PdfString contents = sigDict.getAsString(PdfName.CONTENTS);
-            if (contents == null) {
-                throw new IllegalStateException("Signature Contents missing for field '" + sigFieldName + "'");
-            }
-            if (contents.getOriginalBytes().length % 2 != 0) {
-                throw new IllegalStateException("Signature Contents length must be even hex for field '" + sigFieldName + "'");
-            }
+        PdfString contents = sigDict.getAsString(PdfName.CONTENTS);
+        if (contents == null) {
+            throw new IllegalStateException("Signature Contents missing for field '" + sigFieldName + "'");
+        }
+        if (contents.getOriginalBytes().length % 2 != 0) {
+            throw new IllegalStateException("Signature Contents length must be even hex for field '" + sigFieldName + "'");
+        }
 
-            AcroFields.Item item = af.getFieldItem(sigFieldName);
-            PdfDictionary widget = item.getWidget(0);
-            PdfNumber widgetFlags = widget.getAsNumber(PdfName.F);
-            if (widgetFlags == null || (widgetFlags.intValue() & PdfAnnotation.FLAGS_PRINT) == 0) {
-                throw new IllegalStateException("Signature widget for field '" + sigFieldName + "' lacks PRINT flag");
-            }
+        AcroFields.Item item = af.getFieldItem(sigFieldName);
+        PdfDictionary widget = item.getWidget(0);
+        PdfNumber widgetFlags = widget.getAsNumber(PdfName.F);
+        if (widgetFlags == null || (widgetFlags.intValue() & PdfAnnotation.FLAGS_PRINT) == 0) {
+            throw new IllegalStateException("Signature widget for field '" + sigFieldName + "' lacks PRINT flag");
+        }
 
-            PdfDictionary pageDict = reader.getPageN(pageIndex);
-            PdfArray annots = pageDict != null ? pageDict.getAsArray(PdfName.ANNOTS) : null;
-            boolean widgetFound = false;
-            if (annots != null) {
-                for (int i = 0; i < annots.size(); i++) {
-                    PdfIndirectReference ref = annots.getAsIndirectObject(i);
-                    if (ref != null && ref.equals(item.getWidgetRef(0))) {
-                        widgetFound = true;
-                        break;
-                    }
+        PdfDictionary pageDict = reader.getPageN(pageIndex);
+        PdfArray annots = pageDict != null ? pageDict.getAsArray(PdfName.ANNOTS) : null;
+        PdfIndirectReference widgetRef = item.getWidgetRef(0);
+        boolean widgetFound = false;
+        if (annots != null && widgetRef != null) {
+            for (int i = 0; i < annots.size(); i++) {
+                PdfIndirectReference ref = annots.getAsIndirectObject(i);
+                // A partial-read reader hands out distinct reference instances, so compare by object id.
+                if (ref != null && ref.getNumber() == widgetRef.getNumber()
+                        && ref.getGeneration() == widgetRef.getGeneration()) {
+                    widgetFound = true;
+                    break;
                 }
             }
-            if (!widgetFound) {
-                throw new IllegalStateException("Signature widget for field '" + sigFieldName + "' not listed in page annots");
-            }
-        } finally {
-            reader.close();
         }
-    }
-
-    private static final class KeyMaterial {
-        final PrivateKey privateKey;
-        final Certificate[] chain;
-
-        private KeyMaterial(PrivateKey privateKey, Certificate[] chain) {
-            this.privateKey = privateKey;
-            this.chain = chain;
+        if (!widgetFound) {
+            throw new IllegalStateException("Signature widget for field '" + sigFieldName + "' not listed in page annots");
         }
     }
 
@@ -859,6 +1290,10 @@ public final class NursingRecordSigner {
         stamper.markUsed(acro);
     }
 
+    /**
+     * Layer-2 text for iText's own rendering, used where {@link AppearanceTemplates} does not apply: invisible widgets
+     * and automatic font sizing.
+     */
     private static String buildLayer2Text(SignParams params) {
         String nurseLine = safe(params.getNurse());
         String timeLine = safe(params.getTimeValue());
@@ -866,9 +1301,15 @@ public final class NursingRecordSigner {
         return nurseLine + "\n" + timeLine + "\n" + textLine;
     }
 
-    private static void dumpSignatures(String tag, String path) {
+    /**
+     * Logs the signatures of an already parsed revision. All selected signatures are verified with one shared hashing
+     * pass over {@code file}, which is logged as {@code path} (a revision still being written has a temporary name).
+     * When {@code onlyField} is set, only that signature is verified; the earlier ones are covered by the prefix
+     * check and were already reported before signing.
+     */
+    private static void dumpSignatures(String tag, com.itextpdf.text.pdf.PdfReader r, String path, Path file,
+            String onlyField) {
         try {
-            com.itextpdf.text.pdf.PdfReader r = new com.itextpdf.text.pdf.PdfReader(path);
             com.itextpdf.text.pdf.AcroFields af = r.getAcroFields();
             java.util.List<String> names = af.getSignatureNames();
 
@@ -880,32 +1321,46 @@ public final class NursingRecordSigner {
                     : "P=" + p)));
 
             log.info("[{}][dump] file='{}' size={}B, signatures={}, DocMDP={}",
-                    tag, path, new java.io.File(path).length(), names.size(), pText);
+                    tag, path, r.getFileLength(), names.size(), pText);
 
-            int total = af.getTotalRevisions();
+            java.util.List<String> selected = new java.util.ArrayList<>();
             for (String name : names) {
+                if (onlyField == null || onlyField.equals(name)) {
+                    selected.add(name);
+                }
+            }
+            java.util.List<SignatureVerifier.Result> verified = RevisionDigestVerifier.verify(
+                    file, r, af, selected, Metrics.untracked());
+
+            int total = af.getTotalRevisions();
+            for (SignatureVerifier.Result result : verified) {
+                String name = result.getName();
                 com.itextpdf.text.pdf.PdfDictionary sigDict = af.getSignatureDictionary(name);
                 com.itextpdf.text.pdf.PdfArray br = sigDict.getAsArray(com.itextpdf.text.pdf.PdfName.BYTERANGE);
-                com.itextpdf.text.pdf.security.PdfPKCS7 pkcs7 = af.verifySignature(name);
                 int rev = af.getRevision(name);
-                boolean covers = af.signatureCoversWholeDocument(name);
                 String subFilter = String.valueOf(sigDict.get(com.itextpdf.text.pdf.PdfName.SUBFILTER));
-                String reason = pkcs7.getReason();
-                String location = pkcs7.getLocation();
-                java.util.Calendar cal = pkcs7.getSignDate();
+                String reason = dictText(sigDict, com.itextpdf.text.pdf.PdfName.REASON);
+                String location = dictText(sigDict, com.itextpdf.text.pdf.PdfName.LOCATION);
+                String m = dictText(sigDict, com.itextpdf.text.pdf.PdfName.M);
+                java.util.Calendar cal = (m == null) ? null : com.itextpdf.text.pdf.PdfDate.decode(m);
                 String when = (cal == null) ? "n/a" : new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ssZ").format(cal.getTime());
                 String brStr = (br == null) ? "n/a" : String.format("[%s, %s, %s, %s]",
                         br.getAsNumber(0), br.getAsNumber(1), br.getAsNumber(2), br.getAsNumber(3));
 
-                log.info("[{}][sig] name='{}' rev={}/{} coversWholeDoc={} subFilter={} time={} reason='{}' location='{}' byteRange={}",
-                        tag, name, rev, total, covers, subFilter, when, reason, location, brStr);
+                log.info("[{}][sig] name='{}' rev={}/{} valid={} coversWholeDoc={} subFilter={} time={} reason='{}' location='{}' byteRange={}",
+                        tag, name, rev, total, result.isValid(), result.isCoversWholeDocument(), subFilter, when,
+                        reason, location, brStr);
             }
-            r.close();
         } catch (Exception e) {
             log.warn("[{}][dump] fail for {}: {}", tag, path, e.toString());
         }
     }
 
+    private static String dictText(com.itextpdf.text.pdf.PdfDictionary dict, com.itextpdf.text.pdf.PdfName key) {
+        com.itextpdf.text.pdf.PdfString value = dict.getAsString(key);
+        return value == null ? null : value.toUnicodeString();
+    }
+
     private static Integer getDocMdpPermission(com.itextpdf.text.pdf.PdfReader r) {
         com.itextpdf.text.pdf.PdfDictionary catalog = r.getCatalog();
         if (catalog == null) return null;
@@ -949,77 +1404,6 @@ public final class NursingRecordSigner {
                 br.getAsNumber(0), br.getAsNumber(1), br.getAsNumber(2), br.getAsNumber(3));
     }
 
-    private static long computePrevRevisionLength(File prev, File curr) throws IOException {
-        if (prev != null && prev.exists()) {
-            return prev.length();
-        }
-        if (curr == null || !curr.exists()) {
-            throw new IOException("Current file not found while computing previous revision length: " + curr);
-        }
-        com.itextpdf.text.pdf.PdfReader r = null;
-        try {
-            r = new com.itextpdf.text.pdf.PdfReader(curr.getAbsolutePath());
-            com.itextpdf.text.pdf.AcroFields af = r.getAcroFields();
-            java.util.List<String> names = af.getSignatureNames();
-            if (names.isEmpty()) {
-                throw new IOException("No signatures found in current document; cannot determine previous revision boundary.");
-            }
-            long minEnd = Long.MAX_VALUE;
-            for (String name : names) {
-                com.itextpdf.text.pdf.PdfDictionary sig = af.getSignatureDictionary(name);
-                if (sig == null) {
-                    continue;
-                }
-                com.itextpdf.text.pdf.PdfArray br = sig.getAsArray(com.itextpdf.text.pdf.PdfName.BYTERANGE);
-                if (br == null || br.size() != 4) {
-                    continue;
-                }
-                long start2 = br.getAsNumber(2).longValue();
-                long len2 = br.getAsNumber(3).longValue();
-                long end = start2 + len2;
-                if (end < minEnd) {
-                    minEnd = end;
-                }
-            }
-            if (minEnd == Long.MAX_VALUE) {
-                throw new IOException("Unable to compute previous revision length from signatures.");
-            }
-            return minEnd;
-        } finally {
-            if (r != null) {
-                r.close();
-            }
-        }
-    }
-
-    private static void assertPrefixUnchanged(File prev, File curr, long prefixLen, Logger log) throws IOException {
-        if (prefixLen < 0) {
-            throw new IllegalArgumentException("Prefix length must be >= 0");
-        }
-        if (prev == null || !prev.exists()) {
-            throw new IOException("Previous revision file missing for incremental check: " + prev);
-        }
-        if (curr == null || !curr.exists()) {
-            throw new IOException("Current file missing for incremental check: " + curr);
-        }
-        try (BufferedInputStream in1 = new BufferedInputStream(new FileInputStream(prev));
-             BufferedInputStream in2 = new BufferedInputStream(new FileInputStream(curr))) {
-            long pos = 0;
-            while (pos < prefixLen) {
-                int b1 = in1.read();
-                int b2 = in2.read();
-                if (b1 != b2) {
-                    throw new IllegalStateException(
-                            String.format("NON-INCREMENTAL CHANGE DETECTED at offset %d: prev=0x%02X, curr=0x%02X. "
-                                            + "Your second signing rewrote earlier bytes. Remove any full-save/flatten/compression and keep all ops in a single iText append-mode signing session.",
-                                    pos, b1, b2));
-                }
-                pos++;
-            }
-        }
-        log.info("[INCREMENTAL-CHECK] OK. New file keeps first {} bytes identical to previous revision.", prefixLen);
-    }
-
     private static String safe(String value) {
         return value == null ? "" : value.strip();
     }
@@ -1036,47 +1420,34 @@ public final class NursingRecordSigner {
         if (fontPath != null && !fontPath.isEmpty()) {
             Path path = Paths.get(fontPath);
             if (Files.exists(path)) {
-                return BaseFont.createFont(path.toString(), BaseFont.IDENTITY_H, BaseFont.EMBEDDED);
+                return FontRegistry.fromFile(path);
             }
             log.warn("[sign-row] CJK font not found at {}; falling back to bundled font", path);
         }
-        try (InputStream in = NursingRecordSigner.class.getResourceAsStream("/" + bundledName)) {
-            if (in == null) {
-                return BaseFont.createFont("STSongStd-Light", "UniGB-UCS2-H", BaseFont.NOT_EMBEDDED);
-            }
-            byte[] bytes = toBytes(in);
-            return BaseFont.createFont(bundledName, BaseFont.IDENTITY_H, BaseFont.EMBEDDED, false, bytes, null);
+        BaseFont bundled = FontRegistry.fromResource(bundledName);
+        if (bundled == null) {
+            return BaseFont.createFont("STSongStd-Light", "UniGB-UCS2-H", BaseFont.NOT_EMBEDDED);
         }
-    }
-
-    private static byte[] toBytes(InputStream in) throws IOException {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        byte[] buf = new byte[8192];
-        int n;
-        while ((n = in.read(buf)) >= 0) {
-            bos.write(buf, 0, n);
-        }
-        return bos.toByteArray();
+        return bundled;
     }
 
     private BaseFont resolveBaseFont(String cjkFontPath) throws Exception {
         if (cjkFontPath != null && !cjkFontPath.isBlank()) {
             Path path = Paths.get(cjkFontPath);
             if (Files.exists(path)) {
-                return BaseFont.createFont(path.toString(), BaseFont.IDENTITY_H, BaseFont.EMBEDDED);
+                return FontRegistry.fromFile(path);
             } else {
                 log.warn("[sign-row] CJK font not found at {}, falling back to defaults", path);
             }
         }
         Path bundled = Paths.get("src/main/resources/NotoSansCJKsc-Regular.otf");
         if (Files.exists(bundled)) {
-            return BaseFont.createFont(bundled.toString(), BaseFont.IDENTITY_H, BaseFont.EMBEDDED);
+            return FontRegistry.fromFile(bundled);
         }
         try {
-            byte[] resource = readResourceFont();
+            BaseFont resource = FontRegistry.fromResource("NotoSansCJKsc-Regular.otf");
             if (resource != null) {
-                return BaseFont.createFont("NotoSansCJKsc-Regular.otf", BaseFont.IDENTITY_H, BaseFont.EMBEDDED,
-                        false, resource, null, false, false);
+                return resource;
             }
         } catch (IOException e) {
             log.warn("[sign-row] Failed to load embedded CJK font, falling back to Helvetica: {}", e.getMessage());
@@ -1084,15 +1455,6 @@ public final class NursingRecordSigner {
         return BaseFont.createFont(BaseFont.HELVETICA, BaseFont.WINANSI, BaseFont.NOT_EMBEDDED);
     }
 
-    private static byte[] readResourceFont() throws IOException {
-        try (InputStream stream = NursingRecordSigner.class.getResourceAsStream("/NotoSansCJKsc-Regular.otf")) {
-            if (stream == null) {
-                return null;
-            }
-            return stream.readAllBytes();
-        }
-    }
-
     private static void validateRectangle(Rectangle rect, Rectangle pageRect, String fieldName) {
         if (rect == null) {
             throw new IllegalStateException("Rectangle not computed for field " + fieldName);
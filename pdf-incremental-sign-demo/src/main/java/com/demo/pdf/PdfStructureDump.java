@@ -18,7 +18,6 @@ import com.itextpdf.kernel.pdf.annot.PdfAnnotation;
 import com.itextpdf.kernel.pdf.annot.PdfWidgetAnnotation;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Comparator;
@@ -34,6 +33,8 @@ import java.util.TreeSet;
  */
 public final class PdfStructureDump {
 
+    private static final int MAX_HOLE_BYTES = 16 * 1024 * 1024;
+
     private final Path source;
     private final SortedSet<String> facts = new TreeSet<>();
     private final List<String> blockers = new ArrayList<>();
@@ -64,15 +65,15 @@ public final class PdfStructureDump {
     }
 
     private void collect() throws Exception {
-        byte[] bytes = Files.readAllBytes(source);
-        facts.add(format("File.size=%d", bytes.length));
-        try (PdfDocument pdf = new PdfDocument(new PdfReader(source.toString()))) {
-            analyzeAcroForm(pdf, bytes);
+        try (TailLocator file = TailLocator.open(source);
+             PdfDocument pdf = new PdfDocument(new PdfReader(source.toString()))) {
+            facts.add(format("File.size=%d", file.size()));
+            analyzeAcroForm(pdf, file);
         }
         analyzeTail();
     }
 
-    private void analyzeAcroForm(PdfDocument pdf, byte[] bytes) {
+    private void analyzeAcroForm(PdfDocument pdf, TailLocator file) {
         PdfAcroForm acro = PdfAcroForm.getAcroForm(pdf, false);
         if (acro == null) {
             facts.add("Catalog.AcroForm.present=false");
@@ -146,7 +147,7 @@ public final class PdfStructureDump {
         for (Map.Entry<String, PdfFormField> entry : fields.entrySet()) {
             String fieldName = entry.getKey();
             PdfFormField field = entry.getValue();
-            analyzeField(pdf, fieldName, field, bytes);
+            analyzeField(pdf, fieldName, field, file);
         }
     }
 
@@ -169,7 +170,7 @@ public final class PdfStructureDump {
         }
     }
 
-    private void analyzeField(PdfDocument pdf, String fieldName, PdfFormField field, byte[] bytes) {
+    private void analyzeField(PdfDocument pdf, String fieldName, PdfFormField field, TailLocator file) {
         PdfDictionary dict = field.getPdfObject();
         PdfName ft = dict.getAsName(PdfName.FT);
         facts.add(format("Field.%s.FT=%s", fieldName, ft != null ? ft.getValue() : "null"));
@@ -177,12 +178,12 @@ public final class PdfStructureDump {
         facts.add(format("Field.%s.hasParent=%s", fieldName, dict.containsKey(PdfName.Parent)));
 
         if (field instanceof PdfSignatureFormField) {
-            analyzeSignatureField(pdf, fieldName, (PdfSignatureFormField) field, bytes);
+            analyzeSignatureField(pdf, fieldName, (PdfSignatureFormField) field, file);
         }
     }
 
     private void analyzeSignatureField(PdfDocument pdf, String fieldName,
-                                       PdfSignatureFormField field, byte[] bytes) {
+                                       PdfSignatureFormField field, TailLocator file) {
         PdfDictionary dict = field.getPdfObject();
         if (!PdfName.Sig.equals(dict.getAsName(PdfName.FT))) {
             blockers.add("Signature field " + fieldName + " is not /FT /Sig");
@@ -237,7 +238,7 @@ public final class PdfStructureDump {
                 if (b0 < 0 || b1 < 0 || b2 < 0 || b3 < 0) {
                     blockers.add("Signature " + fieldName + " ByteRange contains negative values");
                 }
-                ByteRangeInfo info = analyzeByteRange(bytes, byteRange, sigDict.getAsString(PdfName.Contents));
+                ByteRangeInfo info = analyzeByteRange(file, byteRange, sigDict.getAsString(PdfName.Contents));
                 facts.add(format("Signature.%s.ByteRangeHoleMatchesContents=%s", fieldName, info.matches));
                 if (!info.matches) {
                     blockers.add("Signature " + fieldName + " ByteRange hole mismatch: " + info.message);
@@ -383,7 +384,11 @@ public final class PdfStructureDump {
         return false;
     }
 
-    private ByteRangeInfo analyzeByteRange(byte[] bytes, PdfArray byteRange, PdfString contents) {
+    /**
+     * Checks that the ByteRange hole is exactly the hex-encoded /Contents string. Only the hole itself is read from
+     * disk, so the check costs the size of the signature container rather than the size of the file.
+     */
+    private ByteRangeInfo analyzeByteRange(TailLocator file, PdfArray byteRange, PdfString contents) {
         if (byteRange == null || byteRange.size() != 4) {
             return ByteRangeInfo.failure("ByteRange absent or malformed");
         }
@@ -397,18 +402,27 @@ public final class PdfStructureDump {
 
         long holeStart = start0 + len0;
         long holeEnd = start1;
-        if (holeStart < 0 || holeEnd < holeStart || holeEnd > bytes.length) {
+        if (holeStart < 0 || holeEnd < holeStart || holeEnd > file.size()) {
             return ByteRangeInfo.failure("Computed hole outside file bounds");
         }
         if (start0 != 0) {
             return ByteRangeInfo.failure("ByteRange[0] not zero");
         }
-        if (start1 + len1 > bytes.length) {
+        if (start1 + len1 > file.size()) {
             return ByteRangeInfo.failure("ByteRange extends past EOF");
         }
+        if (holeEnd - holeStart > MAX_HOLE_BYTES) {
+            return ByteRangeInfo.failure("ByteRange hole larger than " + MAX_HOLE_BYTES + " bytes");
+        }
 
-        int ltIndex = indexOf(bytes, (byte) '<', (int) holeStart, (int) holeEnd);
-        int gtIndex = lastIndexOf(bytes, (byte) '>', (int) holeStart, (int) holeEnd);
+        byte[] hole;
+        try {
+            hole = file.read(holeStart, (int) (holeEnd - holeStart));
+        } catch (IOException e) {
+            return ByteRangeInfo.failure("Unable to read ByteRange hole: " + e.getMessage());
+        }
+        int ltIndex = indexOf(hole, (byte) '<', 0, hole.length);
+        int gtIndex = lastIndexOf(hole, (byte) '>', 0, hole.length);
         if (ltIndex < 0 || gtIndex < 0 || gtIndex <= ltIndex) {
             return ByteRangeInfo.failure("Unable to locate <...> contents span");
         }
@@ -418,11 +432,11 @@ public final class PdfStructureDump {
             return ByteRangeInfo.failure("Hex length mismatch: actual=" + actualHexLength
                     + " expected=" + expectedHexLength);
         }
-        if (ltIndex != holeStart) {
-            return ByteRangeInfo.failure("ByteRange hole start " + holeStart + " != < position " + ltIndex);
+        if (ltIndex != 0) {
+            return ByteRangeInfo.failure("ByteRange hole start " + holeStart + " != < position " + (holeStart + ltIndex));
         }
-        if (gtIndex + 1 != holeEnd) {
-            return ByteRangeInfo.failure("ByteRange hole end " + holeEnd + " != > position+1 " + (gtIndex + 1));
+        if (gtIndex + 1 != hole.length) {
+            return ByteRangeInfo.failure("ByteRange hole end " + holeEnd + " != > position+1 " + (holeStart + gtIndex + 1));
         }
 
         boolean hexEven = actualHexLength % 2 == 0;
@@ -431,7 +445,7 @@ public final class PdfStructureDump {
         }
         // Ensure the hex string contains only hex characters.
         for (int i = ltIndex + 1; i < gtIndex; i++) {
-            byte b = bytes[i];
+            byte b = hole[i];
             if (!isHexDigit(b)) {
                 return ByteRangeInfo.failure("Non-hex digit in Contents span");
             }
@@ -8,7 +8,6 @@ import com.itextpdf.signatures.SignatureUtil;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 
@@ -17,6 +16,12 @@ import java.util.List;
  */
 public final class PostSignValidator {
 
+    private static final byte[] EOF_MARKER = "%%EOF".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] STARTXREF = "startxref".getBytes(StandardCharsets.US_ASCII);
+    private static final int STARTXREF_WINDOW = 128;
+    private static final int DECLARED_LOOKBACK = 64 * 1024;
+    private static final int SCAN_WINDOW = 128 * 1024;
+
     private PostSignValidator() {
     }
 
@@ -99,36 +104,37 @@ public final class PostSignValidator {
         if (pdf == null) {
             throw new IllegalArgumentException("PDF path must not be null");
         }
-        byte[] all = Files.readAllBytes(pdf);
-        if (all.length < 16) {
-            throw new IllegalStateException("PDF too small.");
+        try (TailLocator tail = TailLocator.open(pdf)) {
+            if (tail.size() < 16) {
+                throw new IllegalStateException("PDF too small.");
+            }
+            TailInfo info = locateTailInternal(tail, strict);
+            ensureNoGarbageAfterEof(tail, info.getEofOffset());
+            return info;
         }
-
-        TailInfo info = locateTailInternal(pdf, all, strict);
-        ensureNoGarbageAfterEof(all, info.getEofOffset());
-        return info;
     }
 
     public static TailInfo locateTail(Path pdf, boolean strict) throws IOException {
         if (pdf == null) {
             throw new IllegalArgumentException("PDF path must not be null");
         }
-        byte[] all = Files.readAllBytes(pdf);
-        if (all.length < 16) {
-            throw new IllegalStateException("PDF too small.");
+        try (TailLocator tail = TailLocator.open(pdf)) {
+            if (tail.size() < 16) {
+                throw new IllegalStateException("PDF too small.");
+            }
+            return locateTailInternal(tail, strict);
         }
-        return locateTailInternal(pdf, all, strict);
     }
 
-    private static TailInfo locateTailInternal(Path pdf, byte[] data, boolean strict) throws IOException {
-        int eofIndex = locateEof(data);
-        long declaredOffset = parseStartxref(data, eofIndex);
-        TailInfo declared = tryParseTailAt(data, declaredOffset, eofIndex);
+    private static TailInfo locateTailInternal(TailLocator tail, boolean strict) throws IOException {
+        long eofIndex = locateEof(tail);
+        long declaredOffset = parseStartxref(tail, eofIndex);
+        TailInfo declared = tryParseTailAt(tail, declaredOffset, eofIndex);
         if (declared.isOk()) {
             return declared;
         }
 
-        TailInfo scanned = scanForLastXrefOrXrefStream(data, eofIndex);
+        TailInfo scanned = scanForLastXrefOrXrefStream(tail, eofIndex);
         if (scanned.isOk()) {
             if (strict) {
                 throw new IllegalStateException("startxref does not point to xref/xref-stream at declared offset "
@@ -143,34 +149,29 @@ public final class PostSignValidator {
         throw new IllegalStateException("startxref does not point to xref/xref-stream. Got: '" + probe + "'");
     }
 
-    private static void ensureNoGarbageAfterEof(byte[] data, int eofIndex) {
-        byte[] eofBytes = "%%EOF".getBytes(StandardCharsets.US_ASCII);
-        int eofEnd = eofIndex + eofBytes.length;
-        for (int i = eofEnd; i < data.length; i++) {
-            byte b = data[i];
-            if (b != '\r' && b != '\n') {
-                throw new IllegalStateException("Extra bytes found after %%EOF at offset " + (eofIndex + eofBytes.length));
-            }
+    private static void ensureNoGarbageAfterEof(TailLocator tail, long eofIndex) throws IOException {
+        long eofEnd = eofIndex + EOF_MARKER.length;
+        if (tail.firstNonEol(eofEnd) >= 0) {
+            throw new IllegalStateException("Extra bytes found after %%EOF at offset " + eofEnd);
         }
     }
 
-    private static int locateEof(byte[] data) {
-        byte[] eofBytes = "%%EOF".getBytes(StandardCharsets.US_ASCII);
-        int eofIndex = lastIndexOf(data, eofBytes);
+    private static long locateEof(TailLocator tail) throws IOException {
+        long eofIndex = tail.lastIndexOf(EOF_MARKER, tail.size());
         if (eofIndex < 0) {
             throw new IllegalStateException("No %%EOF at tail.");
         }
         return eofIndex;
     }
 
-    private static long parseStartxref(byte[] data, int eofIndex) {
-        byte[] startxrefBytes = "startxref".getBytes(StandardCharsets.US_ASCII);
-        int startxrefIndex = lastIndexOf(data, startxrefBytes, eofIndex);
+    private static long parseStartxref(TailLocator tail, long eofIndex) throws IOException {
+        long startxrefIndex = tail.lastIndexOf(STARTXREF, eofIndex);
         if (startxrefIndex < 0) {
             throw new IllegalStateException("startxref not found before %%EOF.");
         }
 
-        int startLineEnd = findEol(data, startxrefIndex);
+        byte[] data = tail.read(startxrefIndex, STARTXREF_WINDOW);
+        int startLineEnd = findEol(data, 0);
         if (startLineEnd < 0) {
             throw new IllegalStateException("Malformed startxref (no newline).");
         }
@@ -189,43 +190,59 @@ public final class PostSignValidator {
             throw new IllegalStateException("startxref offset is not a number: '" + numStr + "'");
         }
 
-        if (offset <= 0 || offset >= data.length) {
+        if (offset <= 0 || offset >= tail.size()) {
             throw new IllegalStateException("startxref offset out of range: " + offset);
         }
         return offset;
     }
 
-    private static TailInfo tryParseTailAt(byte[] data, long offset, int eofIndex) {
-        if (offset <= 0 || offset >= data.length) {
+    /**
+     * Identifies the section at the declared offset from a small window starting one byte before it. Only when that
+     * fails is a wider window read, for the backward object-header scan.
+     */
+    private static TailInfo tryParseTailAt(TailLocator tail, long offset, long eofIndex) throws IOException {
+        if (offset <= 0 || offset >= tail.size()) {
             return TailInfo.failure(offset, eofIndex, null, "offset-out-of-range");
         }
-        int pos = (int) offset;
+        TailInfo info = tryParseTailAt(tail, offset, eofIndex, Math.max(0, offset - 1), TailLocator.CHUNK);
+        if (info.isOk()) {
+            return info;
+        }
+        long base = Math.max(0, offset - DECLARED_LOOKBACK);
+        return tryParseTailAt(tail, offset, eofIndex, base, (int) (offset - base) + DECLARED_LOOKBACK);
+    }
+
+    private static TailInfo tryParseTailAt(TailLocator tail, long offset, long eofIndex, long base, int length)
+            throws IOException {
+        byte[] data = tail.read(base, length);
+        int pos = (int) (offset - base);
         int adjusted = skipWhitespaceForward(data, pos, data.length);
         if (adjusted >= 0) {
             pos = adjusted;
         }
         TailType type = identifyTailType(data, pos);
         if (type == null) {
-            return TailInfo.failure(offset, eofIndex, null, extractProbe(data, offset));
+            return TailInfo.failure(offset, eofIndex, null, extractProbe(data, offset - base));
         }
-        return TailInfo.success(offset, eofIndex, pos, type, extractProbe(data, pos));
+        return TailInfo.success(offset, eofIndex, base + pos, type, extractProbe(data, pos));
     }
 
-    private static TailInfo scanForLastXrefOrXrefStream(byte[] data, int eofIndex) {
-        final int window = 128 * 1024;
-        int start = Math.max(0, data.length - window);
-        int xrefTable = findLastXrefKeyword(data, start, data.length);
-        int xrefStream = findLastXrefStreamObjectStart(data, start, data.length);
+    private static TailInfo scanForLastXrefOrXrefStream(TailLocator tail, long eofIndex) throws IOException {
+        long base = Math.max(0, tail.size() - SCAN_WINDOW);
+        byte[] data = tail.read(base, SCAN_WINDOW);
+        int xrefTable = findLastXrefKeyword(data, 0, data.length);
+        int xrefStream = findLastXrefStreamObjectStart(data, 0, data.length);
 
         if (xrefTable < 0 && xrefStream < 0) {
             return TailInfo.failure(-1L, eofIndex, null, "<none>");
         }
 
         if (xrefStream > xrefTable) {
-            return TailInfo.success(-1L, eofIndex, xrefStream, TailType.XREF_STREAM, extractProbe(data, xrefStream));
+            return TailInfo.success(-1L, eofIndex, base + xrefStream, TailType.XREF_STREAM,
+                    extractProbe(data, xrefStream));
         }
 
-        return TailInfo.success(-1L, eofIndex, xrefTable, TailType.XREF_TABLE, extractProbe(data, xrefTable));
+        return TailInfo.success(-1L, eofIndex, base + xrefTable, TailType.XREF_TABLE, extractProbe(data, xrefTable));
     }
 
     private static TailType identifyTailType(byte[] data, int pos) {
@@ -238,7 +255,7 @@ public final class PostSignValidator {
                 return TailType.XREF_TABLE;
             }
         }
-        int headerStart = findObjectHeaderStart(data, pos);
+        int headerStart = isObjectHeaderAt(data, pos) ? pos : findObjectHeaderStart(data, pos);
         if (headerStart >= 0) {
             String dict = extractDictionarySnippet(data, headerStart);
             if (dict != null) {
@@ -264,6 +281,36 @@ public final class PostSignValidator {
         return true;
     }
 
+    /**
+     * True when {@code pos} starts an {@code N G obj} header, which is where startxref points for an xref stream.
+     */
+    private static boolean isObjectHeaderAt(byte[] data, int pos) {
+        int i = pos;
+        int digits = 0;
+        while (i < data.length && Character.isDigit((char) data[i])) {
+            i++;
+            digits++;
+        }
+        if (digits == 0 || i >= data.length || !isWhitespace(data[i])) {
+            return false;
+        }
+        while (i < data.length && isWhitespace(data[i])) {
+            i++;
+        }
+        digits = 0;
+        while (i < data.length && Character.isDigit((char) data[i])) {
+            i++;
+            digits++;
+        }
+        if (digits == 0 || i >= data.length || !isWhitespace(data[i])) {
+            return false;
+        }
+        while (i < data.length && isWhitespace(data[i])) {
+            i++;
+        }
+        return matchesKeyword(data, i, "obj");
+    }
+
     private static int findObjectHeaderStart(byte[] data, int startPos) {
         for (int i = startPos; i >= 0; i--) {
             if (matchesKeyword(data, i, "obj")) {
@@ -406,37 +453,6 @@ public final class PostSignValidator {
         return -1;
     }
 
-    private static int lastIndexOf(byte[] haystack, byte[] needle) {
-        for (int i = haystack.length - needle.length; i >= 0; i--) {
-            if (matchesAt(haystack, needle, i)) {
-                return i;
-            }
-        }
-        return -1;
-    }
-
-    private static int lastIndexOf(byte[] haystack, byte[] needle, int before) {
-        int start = Math.min(before, haystack.length) - needle.length;
-        for (int i = start; i >= 0; i--) {
-            if (matchesAt(haystack, needle, i)) {
-                return i;
-            }
-        }
-        return -1;
-    }
-
-    private static boolean matchesAt(byte[] haystack, byte[] needle, int pos) {
-        if (pos < 0 || pos + needle.length > haystack.length) {
-            return false;
-        }
-        for (int i = 0; i < needle.length; i++) {
-            if (haystack[pos + i] != needle[i]) {
-                return false;
-            }
-        }
-        return true;
-    }
-
     private static int findEol(byte[] data, int from) {
         for (int i = from; i < data.length; i++) {
             byte b = data[i];
@@ -469,10 +485,10 @@ public final class PostSignValidator {
         private final long actualOffset;
         private final TailType type;
         private final String probeSnippet;
-        private final int eofOffset;
+        private final long eofOffset;
 
         private TailInfo(boolean ok, long declaredOffset, long actualOffset,
-                         TailType type, String probeSnippet, int eofOffset) {
+                         TailType type, String probeSnippet, long eofOffset) {
             this.ok = ok;
             this.declaredOffset = declaredOffset;
             this.actualOffset = actualOffset;
@@ -481,12 +497,12 @@ public final class PostSignValidator {
             this.eofOffset = eofOffset;
         }
 
-        static TailInfo success(long declaredOffset, int eofOffset, long actualOffset,
+        static TailInfo success(long declaredOffset, long eofOffset, long actualOffset,
                                 TailType type, String probeSnippet) {
             return new TailInfo(true, declaredOffset, actualOffset, type, probeSnippet, eofOffset);
         }
 
-        static TailInfo failure(long declaredOffset, int eofOffset, TailType type, String probeSnippet) {
+        static TailInfo failure(long declaredOffset, long eofOffset, TailType type, String probeSnippet) {
             return new TailInfo(false, declaredOffset, declaredOffset, type, probeSnippet, eofOffset);
         }
 
@@ -514,7 +530,7 @@ public final class PostSignValidator {
             return probeSnippet;
         }
 
-        public int getEofOffset() {
+        public long getEofOffset() {
             return eofOffset;
         }
     }
@@ -0,0 +1,379 @@
+package com.demo.pdf;
+
+import com.demo.crypto.CertPathCache;
+import com.demo.crypto.DemoKeystoreUtil;
+import com.demo.metrics.Metrics;
+import com.itextpdf.text.pdf.AcroFields;
+import com.itextpdf.text.pdf.PdfArray;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfString;
+import com.itextpdf.text.pdf.RandomAccessFileOrArray;
+import com.itextpdf.text.pdf.security.PdfPKCS7;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.edec.EdECObjectIdentifiers;
+import org.bouncycastle.asn1.x9.X9ObjectIdentifiers;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cms.CMSSignatureAlgorithmNameGenerator;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.DefaultCMSSignatureAlgorithmNameGenerator;
+import org.bouncycastle.cms.SignerInformation;
+import org.bouncycastle.cms.SignerInformationVerifier;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.DefaultAlgorithmNameFinder;
+import org.bouncycastle.operator.DefaultSignatureAlgorithmIdentifierFinder;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.bouncycastle.tsp.TSPUtil;
+import org.bouncycastle.tsp.TSPValidationException;
+import org.bouncycastle.tsp.TimeStampToken;
+import org.bouncycastle.util.Store;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Verifies all signatures of one document with a single streaming hash pass.
+ *
+ * <p>Incremental signatures use ByteRanges of the form {@code [0, a, b, c]}, and every later revision starts after the
+ * end of the earlier ones. Each signature's signed content is therefore the file prefix {@code [0, a)} followed by a
+ * short tail {@code [b, b + c)}. One running digest reads the file once. It is cloned when it reaches each signature's
+ * {@code a}, and each clone then hashes only its own tail. Total hashing is O(file) instead of O(file &times;
+ * signatures). The CMS checks then run concurrently, using BouncyCastle with the precomputed content digests. When the
+ * file's path is known, both passes read it through {@link ByteRangeDigest}. Document timestamps
+ * ({@code ETSI.RFC3161}) share the same pass: their digest is compared with the token's message imprint and the
+ * token's own signature is checked. Their signer must also carry the critical {@code id-kp-timeStamping} extended key
+ * usage that RFC 3161 requires of a TSA certificate.</p>
+ *
+ * <p>Signatures that do not fit this shape fall back to {@link AcroFields#verifySignature(String)}: other
+ * sub-filters, and ByteRanges that do not start at zero.</p>
+ */
+final class RevisionDigestVerifier {
+
+    private static final int CHUNK = 64 * 1024;
+    private static final PdfName ETSI_CADES_DETACHED = new PdfName("ETSI.CAdES.detached");
+    private static final DefaultAlgorithmNameFinder ALGORITHM_NAMES = new DefaultAlgorithmNameFinder();
+    private static final CMSSignatureAlgorithmNameGenerator SIGNATURE_NAMES = new SignatureNames();
+
+    private RevisionDigestVerifier() {
+    }
+
+    /**
+     * Verifies {@code names} and returns one result per name, in the given order. Hashing and CMS checks are recorded
+     * as phases of {@code op}. {@code file} is the file {@code reader} was opened on; when it is {@code null}, the
+     * ByteRanges are read through the reader.
+     */
+    static List<SignatureVerifier.Result> verify(Path file, PdfReader reader, AcroFields fields,
+            Collection<String> names, Metrics.Operation op) throws Exception {
+        DemoKeystoreUtil.ensureProvider();
+        if (file == null) {
+            return verify((md, position, length) -> hash(reader, md, position, length), reader, fields, names, op);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return verify((md, position, length) -> ByteRangeDigest.update(md, channel, position, length), reader,
+                    fields, names, op);
+        }
+    }
+
+    private static List<SignatureVerifier.Result> verify(Source source, PdfReader reader, AcroFields fields,
+            Collection<String> names, Metrics.Operation op) throws Exception {
+        Map<String, SignatureVerifier.Result> fallback = new HashMap<>();
+        List<Pending> pending = new ArrayList<>();
+        for (String name : names) {
+            Pending p = prepare(fields, name, reader.getFileLength());
+            if (p == null) {
+                PdfPKCS7 pkcs7 = fields.verifySignature(name);
+                X509Certificate signing = pkcs7.getSigningCertificate();
+                fallback.put(name, new SignatureVerifier.Result(name, pkcs7.verify(),
+                        fields.signatureCoversWholeDocument(name), subjectOf(signing), pkcs7.getDigestAlgorithm(),
+                        CertPathCache.validate(signing, x509(pkcs7.getCertificates()))));
+            } else {
+                pending.add(p);
+            }
+        }
+
+        try (Metrics.Phase ignored = op.phase(Metrics.DIGEST)) {
+            hashSharedPrefixes(source, pending);
+        }
+
+        // Tail hashing and the CMS checks run together on the common pool; allocation is only seen for this thread.
+        Map<String, SignatureVerifier.Result> verified = new HashMap<>();
+        try (Metrics.Phase ignored = op.phase(Metrics.PKCS7)) {
+            pending.parallelStream()
+                    .map(p -> p.finish(source))
+                    .forEachOrdered(r -> verified.put(r.getName(), r));
+        }
+
+        List<SignatureVerifier.Result> results = new ArrayList<>(names.size());
+        for (String name : names) {
+            SignatureVerifier.Result r = verified.get(name);
+            results.add(r != null ? r : fallback.get(name));
+        }
+        return results;
+    }
+
+    private static Pending prepare(AcroFields fields, String name, long fileLength) {
+        PdfDictionary sigDict = fields.getSignatureDictionary(name);
+        if (sigDict == null) {
+            return null;
+        }
+        PdfName subFilter = sigDict.getAsName(PdfName.SUBFILTER);
+        boolean timestamp = PdfName.ETSI_RFC3161.equals(subFilter);
+        if (!PdfName.ADBE_PKCS7_DETACHED.equals(subFilter) && !ETSI_CADES_DETACHED.equals(subFilter) && !timestamp) {
+            return null;
+        }
+        PdfArray byteRange = sigDict.getAsArray(PdfName.BYTERANGE);
+        PdfString contents = sigDict.getAsString(PdfName.CONTENTS);
+        if (byteRange == null || byteRange.size() != 4 || contents == null) {
+            return null;
+        }
+        long start = byteRange.getAsNumber(0).longValue();
+        long prefixEnd = byteRange.getAsNumber(1).longValue();
+        long tailStart = byteRange.getAsNumber(2).longValue();
+        long tailLength = byteRange.getAsNumber(3).longValue();
+        if (start != 0 || prefixEnd < 0 || tailStart < prefixEnd || tailLength < 0
+                || tailStart + tailLength > fileLength) {
+            return null;
+        }
+        try {
+            byte[] cms = contents.getOriginalBytes();
+            CMSSignedData signedData = new CMSSignedData(cms);
+            Iterator<SignerInformation> signers = signedData.getSignerInfos().getSigners().iterator();
+            if (!signers.hasNext()) {
+                return null;
+            }
+            SignerInformation signer = signers.next();
+            TimeStampToken token = timestamp ? new TimeStampToken(signedData) : null;
+            return new Pending(name, fields.signatureCoversWholeDocument(name), cms, signedData, signer, token,
+                    prefixEnd, tailStart, tailLength);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Streams the file once per digest algorithm in use and hands each signature a copy of the digest taken exactly at
+     * the end of its prefix.
+     */
+    private static void hashSharedPrefixes(Source source, List<Pending> pending) throws Exception {
+        Map<String, List<Pending>> byAlgorithm = new LinkedHashMap<>();
+        for (Pending p : pending) {
+            byAlgorithm.computeIfAbsent(p.digestOid(), k -> new ArrayList<>()).add(p);
+        }
+        for (Map.Entry<String, List<Pending>> group : byAlgorithm.entrySet()) {
+            List<Pending> members = new ArrayList<>(group.getValue());
+            members.sort(Comparator.comparingLong(p -> p.prefixEnd));
+            MessageDigest running = ByteRangeDigest.newDigest(group.getKey());
+            long position = 0;
+            for (Pending p : members) {
+                source.hash(running, position, p.prefixEnd - position);
+                position = p.prefixEnd;
+                p.digest = (MessageDigest) running.clone();
+            }
+        }
+    }
+
+    /**
+     * Hashes a section of the file behind {@code reader}, for callers that do not know its path.
+     */
+    private static void hash(PdfReader reader, MessageDigest md, long position, long length) throws IOException {
+        RandomAccessFileOrArray file = reader.getSafeFile();
+        try {
+            byte[] buffer = new byte[(int) Math.min(CHUNK, Math.max(1, length))];
+            file.seek(position);
+            long remaining = length;
+            while (remaining > 0) {
+                int n = (int) Math.min(buffer.length, remaining);
+                file.readFully(buffer, 0, n);
+                md.update(buffer, 0, n);
+                remaining -= n;
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Like {@code JcaSimpleSignerInfoVerifierBuilder}, but also accepts {@code id-ecPublicKey} as the signature
+     * algorithm of an ECDSA signer. iText 5's {@code PdfPKCS7} writes that OID instead of {@code ecdsa-with-SHA*}.
+     */
+    private static SignerInformationVerifier verifierFor(PublicKey key) throws OperatorCreationException {
+        return new SignerInformationVerifier(SIGNATURE_NAMES, new DefaultSignatureAlgorithmIdentifierFinder(),
+                new JcaContentVerifierProviderBuilder().setProvider(BouncyCastleProvider.PROVIDER_NAME).build(key),
+                new JcaDigestCalculatorProviderBuilder().setProvider(BouncyCastleProvider.PROVIDER_NAME).build());
+    }
+
+    /**
+     * Whether {@code holder} may sign timestamps: its critical extended key usage holds only
+     * {@code id-kp-timeStamping}.
+     */
+    private static boolean isTimeStampingCertificate(X509CertificateHolder holder) {
+        try {
+            TSPUtil.validateCertificate(holder);
+            return true;
+        } catch (TSPValidationException e) {
+            return false;
+        }
+    }
+
+    private static String subjectOf(X509Certificate cert) {
+        return cert != null ? cert.getSubjectDN().toString() : "<unknown>";
+    }
+
+    private static List<X509Certificate> x509(Certificate[] certs) {
+        List<X509Certificate> x509 = new ArrayList<>();
+        if (certs != null) {
+            for (Certificate cert : certs) {
+                if (cert instanceof X509Certificate c) {
+                    x509.add(c);
+                }
+            }
+        }
+        return x509;
+    }
+
+    /**
+     * Names the signer's algorithm the way {@link PdfPKCS7#getDigestAlgorithm()} does, e.g. {@code SHA256withRSA}.
+     * EdDSA and OIDs that already name the digest, such as {@code ecdsa-with-SHA256}, are reported without a digest
+     * prefix.
+     */
+    private static String algorithmOf(SignerInformation signer) {
+        ASN1ObjectIdentifier encryptionOid = new ASN1ObjectIdentifier(signer.getEncryptionAlgOID());
+        if (EdECObjectIdentifiers.id_Ed25519.equals(encryptionOid)) {
+            return "Ed25519";
+        }
+        if (EdECObjectIdentifiers.id_Ed448.equals(encryptionOid)) {
+            return "Ed448";
+        }
+        String encryption = X9ObjectIdentifiers.id_ecPublicKey.equals(encryptionOid)
+                ? "ECDSA" : ALGORITHM_NAMES.getAlgorithmName(encryptionOid);
+        if (encryption.toUpperCase(Locale.ROOT).contains("WITH")) {
+            return encryption.replace("WITH", "with");
+        }
+        String digest = ALGORITHM_NAMES.getAlgorithmName(new ASN1ObjectIdentifier(signer.getDigestAlgOID()));
+        return digest.replace("-", "") + "with" + encryption;
+    }
+
+    private static final class Pending {
+        private final String name;
+        private final boolean coversWholeDocument;
+        private final byte[] cms;
+        private final CMSSignedData signedData;
+        private final SignerInformation signer;
+        /** The token of a document timestamp, whose imprint stands in for the signed content digest. */
+        private final TimeStampToken token;
+        private final long prefixEnd;
+        private final long tailStart;
+        private final long tailLength;
+        private MessageDigest digest;
+
+        Pending(String name, boolean coversWholeDocument, byte[] cms, CMSSignedData signedData,
+                SignerInformation signer, TimeStampToken token, long prefixEnd, long tailStart, long tailLength) {
+            this.name = name;
+            this.coversWholeDocument = coversWholeDocument;
+            this.cms = cms;
+            this.signedData = signedData;
+            this.signer = signer;
+            this.token = token;
+            this.prefixEnd = prefixEnd;
+            this.tailStart = tailStart;
+            this.tailLength = tailLength;
+        }
+
+        String digestOid() {
+            return token != null ? token.getTimeStampInfo().getMessageImprintAlgOID().getId()
+                    : signer.getDigestAlgOID();
+        }
+
+        /**
+         * Hashes this signature's tail into its prefix digest and checks the CMS signer against the result.
+         */
+        SignatureVerifier.Result finish(Source source) {
+            X509Certificate cert = null;
+            boolean valid;
+            try {
+                source.hash(digest, tailStart, tailLength);
+                X509CertificateHolder holder = signerHolder();
+                cert = holder != null ? new JcaX509CertificateConverter()
+                        .setProvider(BouncyCastleProvider.PROVIDER_NAME).getCertificate(holder) : null;
+                if (token != null) {
+                    // The token signs its TSTInfo, which is encapsulated; the document is bound by the imprint.
+                    byte[] imprint = token.getTimeStampInfo().getMessageImprintDigest();
+                    valid = cert != null && isTimeStampingCertificate(holder)
+                            && MessageDigest.isEqual(digest.digest(), imprint)
+                            && signer.verify(verifierFor(cert.getPublicKey()));
+                    return new SignatureVerifier.Result(name, valid, coversWholeDocument, subjectOf(cert),
+                            algorithmOf(signer), chainOf(cert));
+                }
+                Map<String, byte[]> hashes = Map.of(signer.getDigestAlgOID(), digest.digest());
+                SignerInformation detached = new CMSSignedData(hashes, cms).getSignerInfos().get(signer.getSID());
+                // Verify with the bare public key: like PdfPKCS7#verify, this does not reject a certificate that was
+                // outside its validity period at the claimed signing time.
+                valid = cert != null && detached != null && detached.verify(verifierFor(cert.getPublicKey()));
+            } catch (Exception e) {
+                valid = false;
+            }
+            return new SignatureVerifier.Result(name, valid, coversWholeDocument, subjectOf(cert), algorithmOf(signer),
+                    chainOf(cert));
+        }
+
+        /**
+         * Path validation of the signer certificate, with the container's other certificates as intermediates.
+         */
+        private CertPathCache.Validation chainOf(X509Certificate cert) {
+            if (cert == null || !CertPathCache.isConfigured()) {
+                return null;
+            }
+            List<X509Certificate> intermediates = new ArrayList<>();
+            try {
+                JcaX509CertificateConverter converter = new JcaX509CertificateConverter()
+                        .setProvider(BouncyCastleProvider.PROVIDER_NAME);
+                for (X509CertificateHolder holder : signedData.getCertificates().getMatches(null)) {
+                    intermediates.add(converter.getCertificate(holder));
+                }
+            } catch (Exception e) {
+                intermediates.clear();
+            }
+            return CertPathCache.validate(cert, intermediates);
+        }
+
+        @SuppressWarnings("unchecked")
+        private X509CertificateHolder signerHolder() {
+            Store<X509CertificateHolder> store = signedData.getCertificates();
+            Collection<X509CertificateHolder> matches = store.getMatches(signer.getSID());
+            return matches.isEmpty() ? null : matches.iterator().next();
+        }
+    }
+
+    /**
+     * Feeds a section of the signed file into a digest.
+     */
+    @FunctionalInterface
+    private interface Source {
+        void hash(MessageDigest md, long position, long length) throws IOException;
+    }
+
+    private static final class SignatureNames extends DefaultCMSSignatureAlgorithmNameGenerator {
+        SignatureNames() {
+            setSigningEncryptionAlgorithmMapping(X9ObjectIdentifiers.id_ecPublicKey, "ECDSA");
+        }
+    }
+}
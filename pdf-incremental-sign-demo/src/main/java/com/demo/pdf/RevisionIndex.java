@@ -0,0 +1,523 @@
+package com.demo.pdf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.itextpdf.text.io.RandomAccessSourceFactory;
+import com.itextpdf.text.pdf.AcroFields;
+import com.itextpdf.text.pdf.PdfArray;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfString;
+import com.itextpdf.text.pdf.RandomAccessFileOrArray;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.cms.Attribute;
+import org.bouncycastle.asn1.cms.AttributeTable;
+import org.bouncycastle.asn1.cms.CMSAttributes;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.SignerInformation;
+import org.bouncycastle.operator.DefaultAlgorithmNameFinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Sidecar index of a chart's revisions and signatures, kept next to it as {@code <chart>.revidx}.
+ *
+ * <p>Each revision is listed with its byte span, the offset of its cross-reference section and the SHA-256 of its own
+ * bytes; each signature with its revision, ByteRange and the message digest its signer signed. Revision boundaries
+ * come from the {@code /Prev} chain of the cross-reference sections, so building the index reads only those sections
+ * and the signature dictionaries, plus one pass to hash the revisions. An index is trusted only while the chart has
+ * the recorded length and its newest revision still has the recorded hash, so {@link #load} reads the newest
+ * revision's bytes and nothing else of the PDF.</p>
+ *
+ * <p>Signers maintain the index after each successful signature when the source already has one or when it is asked
+ * for. An existing index is extended by the new revisions instead of being rebuilt. Failing to write it never fails
+ * the signature: it is logged, and a stale index is ignored by {@link #load}.</p>
+ */
+public final class RevisionIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(RevisionIndex.class);
+
+    public static final String SUFFIX = ".revidx";
+    private static final int VERSION = 1;
+    private static final byte[] EOF_MARKER = "%%EOF".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] STARTXREF = "startxref".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRAILER = "trailer".getBytes(StandardCharsets.US_ASCII);
+    /** Bytes read to find a trailer or xref stream dictionary and the number after {@code startxref}. */
+    private static final int DICT_WINDOW = 4096;
+    private static final Pattern PREV = Pattern.compile("/Prev\\s+(\\d+)");
+    private static final Pattern NUMBER = Pattern.compile("\\s*(\\d+)");
+    private static final DefaultAlgorithmNameFinder ALGORITHM_NAMES = new DefaultAlgorithmNameFinder();
+
+    private final long length;
+    private final List<Revision> revisions;
+    private final List<Signature> signatures;
+
+    private RevisionIndex(long length, List<Revision> revisions, List<Signature> signatures) {
+        this.length = length;
+        this.revisions = Collections.unmodifiableList(revisions);
+        this.signatures = Collections.unmodifiableList(signatures);
+    }
+
+    /**
+     * One incremental revision: bytes {@code [start, end)} of the chart.
+     */
+    public static final class Revision {
+        private final long start;
+        private final long end;
+        private final long xref;
+        private final String sha256;
+
+        Revision(long start, long end, long xref, String sha256) {
+            this.start = start;
+            this.end = end;
+            this.xref = xref;
+            this.sha256 = sha256;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * Offset just past this revision's {@code %%EOF} line and its end-of-line marker.
+         */
+        public long getEnd() {
+            return end;
+        }
+
+        /**
+         * Offset of the revision's xref table or xref stream, as given by its {@code startxref}.
+         */
+        public long getXref() {
+            return xref;
+        }
+
+        /**
+         * Hex SHA-256 of bytes {@code [start, end)}.
+         */
+        public String getSha256() {
+            return sha256;
+        }
+    }
+
+    /**
+     * One signature field.
+     */
+    public static final class Signature {
+        private final String name;
+        private final int revision;
+        private final long[] byteRange;
+        private final String subFilter;
+        private final String digestAlgorithm;
+        private final String digest;
+
+        Signature(String name, int revision, long[] byteRange, String subFilter, String digestAlgorithm,
+                String digest) {
+            this.name = name;
+            this.revision = revision;
+            this.byteRange = byteRange;
+            this.subFilter = subFilter;
+            this.digestAlgorithm = digestAlgorithm;
+            this.digest = digest;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * 1-based number of the revision the signature's ByteRange ends with, or 0 when it ends with none of them.
+         */
+        public int getRevision() {
+            return revision;
+        }
+
+        public long[] getByteRange() {
+            return byteRange.clone();
+        }
+
+        public String getSubFilter() {
+            return subFilter;
+        }
+
+        /**
+         * Digest of the signed message-digest attribute, e.g. {@code SHA256}; null when the container has none.
+         */
+        public String getDigestAlgorithm() {
+            return digestAlgorithm;
+        }
+
+        /**
+         * Hex ByteRange digest the signer signed, taken from the container; null when it has none.
+         */
+        public String getDigest() {
+            return digest;
+        }
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public List<Revision> getRevisions() {
+        return revisions;
+    }
+
+    public List<Signature> getSignatures() {
+        return signatures;
+    }
+
+    public static Path sidecar(Path pdf) {
+        return pdf.resolveSibling(pdf.getFileName() + SUFFIX);
+    }
+
+    /**
+     * Returns the index stored next to {@code pdf}, or null when there is none, it cannot be read, or it no longer
+     * describes the file.
+     */
+    public static RevisionIndex load(Path pdf) throws IOException {
+        Path sidecar = sidecar(pdf);
+        if (!Files.isRegularFile(sidecar) || !Files.isRegularFile(pdf)) {
+            return null;
+        }
+        RevisionIndex index;
+        try {
+            index = fromJson(new ObjectMapper().readTree(sidecar.toFile()));
+        } catch (IOException | RuntimeException e) {
+            log.warn("[revidx] ignoring unreadable {}: {}", sidecar, e.toString());
+            return null;
+        }
+        if (index == null || index.revisions.isEmpty()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(pdf, StandardOpenOption.READ)) {
+            Revision newest = index.revisions.get(index.revisions.size() - 1);
+            if (channel.size() != index.length
+                    || !newest.sha256.equals(sha256(channel, newest.start, newest.end))) {
+                log.info("[revidx] {} is stale, ignoring it", sidecar);
+                return null;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Builds the index of {@code pdf} from the file itself.
+     */
+    public static RevisionIndex scan(Path pdf) throws IOException {
+        try (TailLocator tail = TailLocator.open(pdf)) {
+            List<long[]> spans = revisionSpans(tail, 0);
+            if (spans == null || spans.isEmpty()) {
+                throw new IOException("No cross-reference chain found in " + pdf);
+            }
+            return build(pdf, tail.size(), List.of(), spans);
+        }
+    }
+
+    /**
+     * Adds the revisions {@code pdf} has beyond this index, whose bytes it must start with. Falls back to
+     * {@link #scan} when no revision of {@code pdf} ends where this index does.
+     */
+    RevisionIndex extend(Path pdf) throws IOException {
+        try (TailLocator tail = TailLocator.open(pdf)) {
+            List<long[]> spans = revisionSpans(tail, length);
+            if (spans == null) {
+                log.info("[revidx] no revision of {} ends at offset {}; rebuilding the index", pdf, length);
+                return scan(pdf);
+            }
+            return build(pdf, tail.size(), new ArrayList<>(revisions), spans);
+        }
+    }
+
+    /**
+     * Writes the index next to {@code pdf}, replacing any previous one atomically.
+     */
+    public void write(Path pdf) throws IOException {
+        Path target = sidecar(pdf.toAbsolutePath());
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".part");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                new ObjectMapper().writeValue(out, toJson());
+            }
+            AtomicFiles.moveIntoPlace(temp, target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Brings the index of {@code destination}, just signed from {@code source}, up to date when {@code source} has
+     * an index or {@code requested} is set. Never throws.
+     */
+    static void maintain(Path source, Path destination, boolean requested) {
+        if (!requested && !Files.isRegularFile(sidecar(source.toAbsolutePath()))) {
+            return;
+        }
+        try {
+            RevisionIndex base = load(source.toAbsolutePath());
+            RevisionIndex index = base != null ? base.extend(destination) : scan(destination);
+            index.write(destination);
+            log.info("[revidx] {} revisions, {} signatures -> {}", index.revisions.size(), index.signatures.size(),
+                    sidecar(destination.toAbsolutePath()));
+        } catch (Exception e) {
+            log.warn("[revidx] index of {} not updated: {}", destination, e.toString());
+        }
+    }
+
+    private static RevisionIndex build(Path pdf, long size, List<Revision> known, List<long[]> spans)
+            throws IOException {
+        List<Revision> revisions = new ArrayList<>(known);
+        try (FileChannel channel = FileChannel.open(pdf, StandardOpenOption.READ)) {
+            for (long[] span : spans) {
+                revisions.add(new Revision(span[0], span[1], span[2], sha256(channel, span[0], span[1])));
+            }
+        }
+        return new RevisionIndex(size, revisions, readSignatures(pdf, revisions));
+    }
+
+    /**
+     * Returns {@code [start, end, xref]} of each revision that ends after {@code from}, oldest first, following the
+     * {@code /Prev} chain back from the last {@code startxref}. With {@code from > 0}, returns null unless one
+     * revision ends exactly at {@code from}.
+     */
+    private static List<long[]> revisionSpans(TailLocator tail, long from) throws IOException {
+        long eof = tail.lastIndexOf(EOF_MARKER, tail.size());
+        long startxref = eof < 0 ? -1 : tail.lastIndexOf(STARTXREF, eof);
+        Long xref = startxref < 0 ? null : numberAt(tail, startxref + STARTXREF.length);
+        List<long[]> newestFirst = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+        boolean reached = from == 0;
+        while (xref != null && seen.add(xref)) {
+            long end = revisionEnd(tail, xref);
+            if (end >= 0 && end <= from) {
+                reached = end == from;
+                break;
+            }
+            if (end >= 0) {
+                newestFirst.add(new long[] {end, xref});
+            }
+            xref = previousXref(tail, xref);
+        }
+        if (!reached) {
+            return null;
+        }
+        List<long[]> spans = new ArrayList<>(newestFirst.size());
+        long start = from;
+        for (int i = newestFirst.size() - 1; i >= 0; i--) {
+            long[] end = newestFirst.get(i);
+            if (end[0] > start) {
+                spans.add(new long[] {start, end[0], end[1]});
+                start = end[0];
+            }
+        }
+        return spans;
+    }
+
+    /**
+     * Returns the offset just past the {@code %%EOF} line of the section at {@code xref}, found as the first
+     * {@code startxref} after it that names {@code xref}; -1 when there is none, as for the first-page section of a
+     * linearized file.
+     */
+    private static long revisionEnd(TailLocator tail, long xref) throws IOException {
+        long startxref = tail.indexOf(STARTXREF, xref);
+        if (startxref < 0) {
+            return -1;
+        }
+        Long declared = numberAt(tail, startxref + STARTXREF.length);
+        long eof = tail.indexOf(EOF_MARKER, startxref);
+        if (declared == null || declared != xref || eof < 0) {
+            return -1;
+        }
+        long end = eof + EOF_MARKER.length;
+        byte[] eol = tail.read(end, 2);
+        int skip = eol.length > 0 && eol[0] == '\r' ? 1 : 0;
+        if (eol.length > skip && eol[skip] == '\n') {
+            skip++;
+        }
+        return end + skip;
+    }
+
+    private static Long previousXref(TailLocator tail, long xref) throws IOException {
+        byte[] head = tail.read(xref, DICT_WINDOW);
+        long dictAt = xref;
+        if (new String(head, StandardCharsets.US_ASCII).stripLeading().startsWith("xref")) {
+            dictAt = tail.indexOf(TRAILER, xref);
+            if (dictAt < 0) {
+                return null;
+            }
+        }
+        String dict = topDictionary(new String(tail.read(dictAt, DICT_WINDOW), StandardCharsets.ISO_8859_1));
+        Matcher m = dict != null ? PREV.matcher(dict) : null;
+        return m != null && m.find() ? Long.valueOf(m.group(1)) : null;
+    }
+
+    private static String topDictionary(String text) {
+        int start = text.indexOf("<<");
+        if (start < 0) {
+            return null;
+        }
+        int depth = 0;
+        for (int i = start; i < text.length() - 1; i++) {
+            if (text.startsWith("<<", i)) {
+                depth++;
+                i++;
+            } else if (text.startsWith(">>", i)) {
+                depth--;
+                i++;
+                if (depth == 0) {
+                    return text.substring(start, i + 1);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Long numberAt(TailLocator tail, long position) throws IOException {
+        Matcher m = NUMBER.matcher(new String(tail.read(position, 32), StandardCharsets.US_ASCII));
+        return m.lookingAt() ? Long.valueOf(m.group(1)) : null;
+    }
+
+    private static String sha256(FileChannel channel, long start, long end) throws IOException {
+        try {
+            MessageDigest md = ByteRangeDigest.newDigest("SHA-256");
+            ByteRangeDigest.update(md, channel, start, end - start);
+            return HexFormat.of().formatHex(md.digest());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+
+    private static List<Signature> readSignatures(Path pdf, List<Revision> revisions) throws IOException {
+        PdfReader reader = new PdfReader(new RandomAccessFileOrArray(
+                new RandomAccessSourceFactory().createBestSource(pdf.toString())), null);
+        try {
+            AcroFields fields = reader.getAcroFields();
+            List<Signature> signatures = new ArrayList<>();
+            for (String name : fields.getSignatureNames()) {
+                PdfDictionary sigDict = fields.getSignatureDictionary(name);
+                PdfArray array = sigDict.getAsArray(PdfName.BYTERANGE);
+                long[] byteRange = new long[array != null ? array.size() : 0];
+                for (int i = 0; i < byteRange.length; i++) {
+                    byteRange[i] = array.getAsNumber(i).longValue();
+                }
+                int revision = 0;
+                if (byteRange.length >= 2) {
+                    long signedEnd = byteRange[byteRange.length - 2] + byteRange[byteRange.length - 1];
+                    for (int i = 0; i < revisions.size(); i++) {
+                        if (revisions.get(i).end == signedEnd) {
+                            revision = i + 1;
+                        }
+                    }
+                }
+                PdfName subFilter = sigDict.getAsName(PdfName.SUBFILTER);
+                String[] digest = signedDigest(sigDict.getAsString(PdfName.CONTENTS));
+                signatures.add(new Signature(name, revision, byteRange,
+                        subFilter != null ? PdfName.decodeName(subFilter.toString()) : null, digest[0], digest[1]));
+            }
+            return signatures;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Returns the digest algorithm and hex value of the signer's message-digest attribute, or nulls.
+     */
+    private static String[] signedDigest(PdfString contents) {
+        try {
+            CMSSignedData cms = new CMSSignedData(contents.getOriginalBytes());
+            Iterator<SignerInformation> signers = cms.getSignerInfos().getSigners().iterator();
+            SignerInformation signer = signers.hasNext() ? signers.next() : null;
+            AttributeTable attributes = signer != null ? signer.getSignedAttributes() : null;
+            Attribute attribute = attributes != null ? attributes.get(CMSAttributes.messageDigest) : null;
+            if (attribute == null) {
+                return new String[2];
+            }
+            byte[] value = ASN1OctetString.getInstance(attribute.getAttrValues().getObjectAt(0)).getOctets();
+            return new String[] {
+                    ALGORITHM_NAMES.getAlgorithmName(new ASN1ObjectIdentifier(signer.getDigestAlgOID())),
+                    HexFormat.of().formatHex(value)};
+        } catch (Exception e) {
+            return new String[2];
+        }
+    }
+
+    private ObjectNode toJson() {
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode root = mapper.createObjectNode();
+        root.put("version", VERSION);
+        root.put("length", length);
+        ArrayNode revisionArray = root.putArray("revisions");
+        for (Revision revision : revisions) {
+            revisionArray.addObject()
+                    .put("start", revision.start)
+                    .put("end", revision.end)
+                    .put("xref", revision.xref)
+                    .put("sha256", revision.sha256);
+        }
+        ArrayNode signatureArray = root.putArray("signatures");
+        for (Signature signature : signatures) {
+            ObjectNode node = signatureArray.addObject();
+            node.put("name", signature.name);
+            node.put("revision", signature.revision);
+            ArrayNode byteRange = node.putArray("byteRange");
+            for (long value : signature.byteRange) {
+                byteRange.add(value);
+            }
+            node.put("subFilter", signature.subFilter);
+            node.put("digestAlgorithm", signature.digestAlgorithm);
+            node.put("digest", signature.digest);
+        }
+        return root;
+    }
+
+    private static RevisionIndex fromJson(JsonNode root) {
+        if (root.path("version").asInt() != VERSION) {
+            return null;
+        }
+        List<Revision> revisions = new ArrayList<>();
+        for (JsonNode node : root.path("revisions")) {
+            revisions.add(new Revision(node.path("start").asLong(), node.path("end").asLong(),
+                    node.path("xref").asLong(), node.path("sha256").asText()));
+        }
+        List<Signature> signatures = new ArrayList<>();
+        for (JsonNode node : root.path("signatures")) {
+            JsonNode range = node.path("byteRange");
+            long[] byteRange = new long[range.size()];
+            for (int i = 0; i < byteRange.length; i++) {
+                byteRange[i] = range.get(i).asLong();
+            }
+            signatures.add(new Signature(node.path("name").asText(), node.path("revision").asInt(), byteRange,
+                    textOrNull(node.get("subFilter")), textOrNull(node.get("digestAlgorithm")),
+                    textOrNull(node.get("digest"))));
+        }
+        return new RevisionIndex(root.path("length").asLong(), revisions, signatures);
+    }
+
+    private static String textOrNull(JsonNode node) {
+        return node == null || node.isNull() ? null : node.asText();
+    }
+}
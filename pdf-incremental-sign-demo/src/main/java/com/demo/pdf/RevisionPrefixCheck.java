@@ -0,0 +1,168 @@
+package com.demo.pdf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Confirms that a new revision leaves the bytes of the previous revision untouched.
+ *
+ * <p>Both files are memory-mapped in large windows and compared with {@link java.nio.ByteBuffer#mismatch}. That call
+ * compares many bytes per step and still reports the exact first differing offset. When the previous file will no
+ * longer be on disk, take a {@link Fingerprint} of it before signing. The fingerprint holds one SHA-256 per
+ * {@link #FINGERPRINT_CHUNK} bytes, so a mismatch can still be narrowed to a chunk.</p>
+ */
+final class RevisionPrefixCheck {
+
+    static final int FINGERPRINT_CHUNK = 1 << 20;
+
+    /** Mapping window; a multiple of {@link #FINGERPRINT_CHUNK}. */
+    private static final long WINDOW = 64L << 20;
+
+    private RevisionPrefixCheck() {
+    }
+
+    /**
+     * Per-chunk SHA-256 digests of the first {@code length} bytes of a file.
+     */
+    static final class Fingerprint {
+        private final long length;
+        private final byte[][] chunkDigests;
+
+        private Fingerprint(long length, byte[][] chunkDigests) {
+            this.length = length;
+            this.chunkDigests = chunkDigests;
+        }
+
+        long getLength() {
+            return length;
+        }
+    }
+
+    static void assertUnchanged(File prev, File curr, long prefixLen) throws IOException {
+        if (prefixLen < 0) {
+            throw new IllegalArgumentException("Prefix length must be >= 0");
+        }
+        if (prev == null || !prev.exists()) {
+            throw new IOException("Previous revision file missing for incremental check: " + prev);
+        }
+        requireCurrent(curr);
+        try (FileChannel a = FileChannel.open(prev.toPath(), StandardOpenOption.READ);
+             FileChannel b = FileChannel.open(curr.toPath(), StandardOpenOption.READ)) {
+            if (a.size() < prefixLen) {
+                throw new IOException(String.format("Previous revision is %d bytes, shorter than the %d byte prefix",
+                        a.size(), prefixLen));
+            }
+            long comparable = Math.min(prefixLen, b.size());
+            for (long pos = 0; pos < comparable; pos += WINDOW) {
+                long len = Math.min(WINDOW, comparable - pos);
+                MappedByteBuffer left = a.map(FileChannel.MapMode.READ_ONLY, pos, len);
+                MappedByteBuffer right = b.map(FileChannel.MapMode.READ_ONLY, pos, len);
+                int at = left.mismatch(right);
+                if (at >= 0) {
+                    throw nonIncremental(pos + at, hex(left.get(at)), hex(right.get(at)));
+                }
+            }
+            if (comparable < prefixLen) {
+                MappedByteBuffer left = a.map(FileChannel.MapMode.READ_ONLY, comparable, 1);
+                throw nonIncremental(comparable, hex(left.get(0)), "EOF");
+            }
+        }
+    }
+
+    /**
+     * In-memory variant for revisions that are chained without being written to disk.
+     */
+    static void assertUnchanged(byte[] prev, byte[] curr) {
+        int comparable = Math.min(prev.length, curr.length);
+        int at = Arrays.mismatch(prev, 0, comparable, curr, 0, comparable);
+        if (at >= 0) {
+            throw nonIncremental(at, hex(prev[at]), hex(curr[at]));
+        }
+        if (comparable < prev.length) {
+            throw nonIncremental(comparable, hex(prev[comparable]), "EOF");
+        }
+    }
+
+    /**
+     * Fingerprints the first {@code prefixLen} bytes of {@code file}, to be checked later with
+     * {@link #assertUnchanged(Fingerprint, File)}.
+     */
+    static Fingerprint fingerprint(File file, long prefixLen) throws IOException {
+        if (prefixLen < 0) {
+            throw new IllegalArgumentException("Prefix length must be >= 0");
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < prefixLen) {
+                throw new IOException(String.format("%s is %d bytes, shorter than the %d byte prefix",
+                        file, channel.size(), prefixLen));
+            }
+            return new Fingerprint(prefixLen, chunkDigests(channel, prefixLen));
+        }
+    }
+
+    static void assertUnchanged(Fingerprint expected, File curr) throws IOException {
+        requireCurrent(curr);
+        try (FileChannel channel = FileChannel.open(curr.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < expected.length) {
+                throw nonIncremental(channel.size(), "<digest>", "EOF");
+            }
+            byte[][] actual = chunkDigests(channel, expected.length);
+            for (int i = 0; i < actual.length; i++) {
+                if (!MessageDigest.isEqual(expected.chunkDigests[i], actual[i])) {
+                    long start = (long) i * FINGERPRINT_CHUNK;
+                    long end = Math.min(expected.length, start + FINGERPRINT_CHUNK);
+                    throw new IllegalStateException(String.format(
+                            "NON-INCREMENTAL CHANGE DETECTED within bytes [%d, %d): SHA-256 of the previous revision "
+                                    + "does not match. Your second signing rewrote earlier bytes. Remove any "
+                                    + "full-save/flatten/compression and keep all ops in a single iText append-mode "
+                                    + "signing session.", start, end));
+                }
+            }
+        }
+    }
+
+    private static byte[][] chunkDigests(FileChannel channel, long length) throws IOException {
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+        int chunks = (int) ((length + FINGERPRINT_CHUNK - 1) / FINGERPRINT_CHUNK);
+        byte[][] digests = new byte[chunks][];
+        int index = 0;
+        for (long pos = 0; pos < length; pos += WINDOW) {
+            long len = Math.min(WINDOW, length - pos);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, pos, len);
+            for (int off = 0; off < len; off += FINGERPRINT_CHUNK) {
+                int n = (int) Math.min(FINGERPRINT_CHUNK, len - off);
+                sha256.update(window.slice(off, n));
+                digests[index++] = sha256.digest();
+            }
+        }
+        return digests;
+    }
+
+    private static void requireCurrent(File curr) throws IOException {
+        if (curr == null || !curr.exists()) {
+            throw new IOException("Current file missing for incremental check: " + curr);
+        }
+    }
+
+    private static IllegalStateException nonIncremental(long offset, String prev, String curr) {
+        return new IllegalStateException(
+                String.format("NON-INCREMENTAL CHANGE DETECTED at offset %d: prev=%s, curr=%s. "
+                                + "Your second signing rewrote earlier bytes. Remove any full-save/flatten/compression and keep all ops in a single iText append-mode signing session.",
+                        offset, prev, curr));
+    }
+
+    private static String hex(byte b) {
+        return String.format("0x%02X", b & 0xFF);
+    }
+}
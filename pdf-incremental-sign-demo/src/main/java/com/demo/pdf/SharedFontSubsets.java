@@ -0,0 +1,186 @@
+package com.demo.pdf;
+
+import com.itextpdf.text.pdf.AcroFields;
+import com.itextpdf.text.pdf.BaseFont;
+import com.itextpdf.text.pdf.DocumentFont;
+import com.itextpdf.text.pdf.PRIndirectReference;
+import com.itextpdf.text.pdf.PRStream;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfObject;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfStamper;
+import com.itextpdf.text.pdf.PdfWriter;
+import com.itextpdf.text.pdf.fonts.cmaps.CMapParserEx;
+import com.itextpdf.text.pdf.fonts.cmaps.CMapToUnicode;
+import com.itextpdf.text.pdf.fonts.cmaps.CidLocationFromByte;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/**
+ * Keeps a chart from accumulating one partial copy of its CJK font per revision.
+ *
+ * <p>iText embeds a fresh subset of an Identity-H font in every writer, so each signed row carries a few tens of KB of
+ * font program. Before a revision writes text, {@link #select} looks for the newest subset of the same font among the
+ * field appearances of earlier revisions. If that subset already has every glyph the revision needs, the revision
+ * writes its text with a {@link DocumentFont} over the existing object, and no font program is written at all. If it
+ * does not, the regular font is used, but the subset it embeds is widened to include every glyph of the previous one.
+ * The newest subset therefore always covers the earlier ones, and once a chart's vocabulary settles, later revisions
+ * add no font data.</p>
+ *
+ * <p>Growing an existing font object in place is not done: rewriting the font program of an earlier revision would
+ * show up as a change to signed content.</p>
+ */
+final class SharedFontSubsets {
+
+    private static final Logger log = LoggerFactory.getLogger(SharedFontSubsets.class);
+
+    private static final Pattern SUBSET_TAG = Pattern.compile("^[A-Z]{6}\\+");
+
+    /**
+     * Printable ASCII, added to every subset this class embeds. Times, bed numbers and Latin abbreviations then never
+     * force a new subset, and the glyphs cost little next to the tables every subset carries anyway.
+     */
+    private static final String SEED = IntStream.rangeClosed(0x20, 0x7e)
+            .collect(StringBuilder::new, StringBuilder::appendCodePoint, StringBuilder::append).toString();
+
+    private SharedFontSubsets() {
+    }
+
+    /**
+     * Returns the font to write {@code text} with in this revision: an existing subset when it covers the text,
+     * otherwise {@code font}, primed with the glyphs of the newest existing subset and {@link #SEED}. Fonts that iText
+     * does not subset into Identity-H are returned unchanged.
+     */
+    static BaseFont select(PdfStamper stamper, BaseFont font, String text) throws IOException {
+        if (font.getFontType() != BaseFont.FONT_TYPE_TTUNI || !font.isEmbedded() || !font.isSubset()) {
+            return font;
+        }
+        String postscriptName = font.getPostscriptFontName();
+        PRIndirectReference newest = newestSubset(stamper.getReader(), stamper.getAcroFields(), postscriptName);
+        String carried = "";
+        if (newest != null) {
+            DocumentFont existing = (DocumentFont) BaseFont.createFont(newest);
+            int missing = countMissing(existing, text);
+            if (missing == 0) {
+                log.info("[font] reusing embedded subset {} ({} 0 R)", existing.getPostscriptFontName(),
+                        newest.getNumber());
+                return existing;
+            }
+            carried = subsetText(newest);
+            log.info("[font] {} lacks {} character(s); embedding a new {} subset carrying its {} glyph(s)",
+                    existing.getPostscriptFontName(), missing, postscriptName,
+                    carried.codePointCount(0, carried.length()));
+        }
+        prime(stamper, font, carried + SEED);
+        return font;
+    }
+
+    /**
+     * Marks the characters of {@code text} that {@code font} has as used by this writer, so the subset written at close
+     * includes their glyphs. iText keeps that bookkeeping package-private; everything it offers publicly for the same
+     * effect draws the text into a form XObject that the writer then keeps in the file. When the reflective call is
+     * unavailable, the subset simply does not carry the extra glyphs and reuse starts later.
+     */
+    private static void prime(PdfStamper stamper, BaseFont font, String text) {
+        StringBuilder available = new StringBuilder();
+        text.codePoints().filter(font::charExists).forEach(available::appendCodePoint);
+        try {
+            Method addSimple = PdfWriter.class.getDeclaredMethod("addSimple", BaseFont.class);
+            addSimple.setAccessible(true);
+            Object details = addSimple.invoke(stamper.getWriter(), font);
+            Method convert = details.getClass().getDeclaredMethod("convertToBytes", String.class);
+            convert.setAccessible(true);
+            convert.invoke(details, available.toString());
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            log.debug("[font] Unable to carry glyphs into the new subset: {}", ex.toString());
+        }
+    }
+
+    /**
+     * PostScript name without the six-letter subset tag, so a font and its embedded subsets compare equal.
+     */
+    static String baseName(String postscriptName) {
+        return SUBSET_TAG.matcher(postscriptName).replaceFirst("");
+    }
+
+    private static int countMissing(DocumentFont font, String text) {
+        int missing = 0;
+        for (int i = 0; i < text.length(); ) {
+            int cp = text.codePointAt(i);
+            if (cp != '\n' && cp != '\r' && !font.charExists(cp)) {
+                missing++;
+            }
+            i += Character.charCount(cp);
+        }
+        return missing;
+    }
+
+    /**
+     * Finds the most recently written Type0 subset of {@code postscriptName} referenced from a field's normal
+     * appearance. Later revisions get higher object numbers, so the highest number is the newest subset.
+     */
+    private static PRIndirectReference newestSubset(PdfReader reader, AcroFields fields, String postscriptName) {
+        PRIndirectReference newest = null;
+        for (AcroFields.Item item : fields.getFields().values()) {
+            for (int i = 0; i < item.size(); i++) {
+                PdfDictionary resources = appearanceResources(item.getWidget(i));
+                PdfDictionary fonts = resources != null ? resources.getAsDict(PdfName.FONT) : null;
+                if (fonts == null) {
+                    continue;
+                }
+                for (PdfName key : fonts.getKeys()) {
+                    PdfObject entry = fonts.get(key);
+                    if (entry instanceof PRIndirectReference ref && ref.getReader() == reader
+                            && (newest == null || ref.getNumber() > newest.getNumber())
+                            && isSubsetOf(PdfReader.getPdfObjectRelease(ref), postscriptName)) {
+                        newest = ref;
+                    }
+                }
+            }
+        }
+        return newest;
+    }
+
+    private static PdfDictionary appearanceResources(PdfDictionary widget) {
+        PdfDictionary ap = widget != null ? widget.getAsDict(PdfName.AP) : null;
+        PdfObject normal = ap != null ? PdfReader.getPdfObjectRelease(ap.get(PdfName.N)) : null;
+        return normal instanceof PdfDictionary stream ? stream.getAsDict(PdfName.RESOURCES) : null;
+    }
+
+    private static boolean isSubsetOf(PdfObject object, String postscriptName) {
+        if (!(object instanceof PdfDictionary font) || !PdfName.TYPE0.equals(font.getAsName(PdfName.SUBTYPE))) {
+            return false;
+        }
+        PdfName baseFont = font.getAsName(PdfName.BASEFONT);
+        if (baseFont == null) {
+            return false;
+        }
+        String name = PdfName.decodeName(baseFont.toString());
+        return !name.equals(postscriptName) && baseName(name).equals(postscriptName);
+    }
+
+    /**
+     * Returns the characters of an embedded subset, read from its {@code /ToUnicode} map.
+     */
+    private static String subsetText(PRIndirectReference fontRef) throws IOException {
+        PdfDictionary font = (PdfDictionary) PdfReader.getPdfObjectRelease(fontRef);
+        PdfObject toUnicode = PdfReader.getPdfObjectRelease(font.get(PdfName.TOUNICODE));
+        if (!(toUnicode instanceof PRStream stream)) {
+            return "";
+        }
+        CMapToUnicode cmap = new CMapToUnicode();
+        CMapParserEx.parseCid("", cmap, new CidLocationFromByte(PdfReader.getStreamBytes(stream)));
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<Integer, Integer> entry : cmap.createDirectMapping().entrySet()) {
+            text.appendCodePoint(entry.getValue());
+        }
+        return text.toString();
+    }
+}
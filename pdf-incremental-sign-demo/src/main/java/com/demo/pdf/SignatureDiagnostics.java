@@ -1,5 +1,6 @@
 package com.demo.pdf;
 
+import com.demo.crypto.CertPathCache;
 import com.itextpdf.forms.PdfAcroForm;
 import com.itextpdf.forms.fields.PdfFormField;
 import com.itextpdf.kernel.geom.Rectangle;
@@ -228,6 +229,7 @@ public final class SignatureDiagnostics {
         boolean pkcs7Valid = false;
         String pkcs7Error = null;
         String subject = null;
+        CertPathCache.Validation chain = null;
         try {
             PdfPKCS7 pkcs7 = util.readSignatureData(sigName);
             if (pkcs7 != null) {
@@ -244,6 +246,7 @@ public final class SignatureDiagnostics {
                             : pkcs7Error + "; signing certificate missing";
                 } else {
                     subject = extractSubject(signingCert);
+                    chain = CertPathCache.validate(pkcs7.getSigningCertificate(), x509(pkcs7.getCertificates()));
                 }
             } else {
                 pkcs7Error = "SignatureUtil returned null PdfPKCS7";
@@ -279,6 +282,7 @@ public final class SignatureDiagnostics {
                 widgetHasAppearance,
                 acroHasXfa,
                 subject,
+                chain,
                 acroObjNumber,
                 acroFieldsObjNumber,
                 fieldObjNumber,
@@ -385,6 +389,7 @@ public final class SignatureDiagnostics {
         private final boolean widgetHasAppearance;
         private final boolean acroFormHasXfa;
         private final String signingCertificateSubject;
+        private final CertPathCache.Validation chain;
         private final Integer acroFormObjectNumber;
         private final Integer acroFormFieldsObjectNumber;
         private final Integer fieldObjectNumber;
@@ -401,7 +406,7 @@ public final class SignatureDiagnostics {
                               List<String> adobeVisibilityIssues, int pageNumber, Rectangle widgetRect,
                               int widgetFlags, boolean widgetPrintable, boolean widgetHidden,
                               boolean widgetInAnnots, boolean widgetHasAppearance, boolean acroFormHasXfa,
-                              String signingCertificateSubject,
+                              String signingCertificateSubject, CertPathCache.Validation chain,
                               Integer acroFormObjectNumber, Integer acroFormFieldsObjectNumber,
                               Integer fieldObjectNumber, Integer signatureDictionaryObjectNumber,
                               Integer widgetObjectNumber, Integer widgetPageObjectNumber,
@@ -432,6 +437,7 @@ public final class SignatureDiagnostics {
             this.widgetHasAppearance = widgetHasAppearance;
             this.acroFormHasXfa = acroFormHasXfa;
             this.signingCertificateSubject = signingCertificateSubject;
+            this.chain = chain;
             this.acroFormObjectNumber = acroFormObjectNumber;
             this.acroFormFieldsObjectNumber = acroFormFieldsObjectNumber;
             this.fieldObjectNumber = fieldObjectNumber;
@@ -545,6 +551,13 @@ public final class SignatureDiagnostics {
             return signingCertificateSubject;
         }
 
+        /**
+         * Path validation of the signing certificate; null when no truststore is configured.
+         */
+        public CertPathCache.Validation getChain() {
+            return chain;
+        }
+
         public Integer getAcroFormObjectNumber() {
             return acroFormObjectNumber;
         }
@@ -594,6 +607,18 @@ public final class SignatureDiagnostics {
         return certificate != null ? certificate.toString() : null;
     }
 
+    private static List<X509Certificate> x509(Certificate[] certificates) {
+        List<X509Certificate> x509 = new ArrayList<>();
+        if (certificates != null) {
+            for (Certificate certificate : certificates) {
+                if (certificate instanceof X509Certificate) {
+                    x509.add((X509Certificate) certificate);
+                }
+            }
+        }
+        return x509;
+    }
+
     private static Integer getObjectNumber(PdfObject object) {
         if (object == null || object.getIndirectReference() == null) {
             return null;
@@ -1,10 +1,15 @@
 package com.demo.pdf;
 
+import com.demo.crypto.CertPathCache;
 import com.demo.crypto.DemoKeystoreUtil;
+import com.demo.metrics.Metrics;
+import com.itextpdf.text.io.RandomAccessSourceFactory;
 import com.itextpdf.text.pdf.AcroFields;
 import com.itextpdf.text.pdf.PdfReader;
-import com.itextpdf.text.pdf.security.PdfPKCS7;
+import com.itextpdf.text.pdf.RandomAccessFileOrArray;
 
+import java.nio.file.Path;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -15,33 +20,115 @@ public final class SignatureVerifier {
     private SignatureVerifier() {
     }
 
+    /**
+     * Outcome of verifying one signature field.
+     */
+    public static final class Result {
+        private final String name;
+        private final boolean valid;
+        private final boolean coversWholeDocument;
+        private final String subject;
+        private final String algorithm;
+        private final CertPathCache.Validation chain;
+
+        Result(String name, boolean valid, boolean coversWholeDocument, String subject, String algorithm,
+                CertPathCache.Validation chain) {
+            this.name = name;
+            this.valid = valid;
+            this.coversWholeDocument = coversWholeDocument;
+            this.subject = subject;
+            this.algorithm = algorithm;
+            this.chain = chain;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isValid() {
+            return valid;
+        }
+
+        public boolean isCoversWholeDocument() {
+            return coversWholeDocument;
+        }
+
+        public String getSubject() {
+            return subject;
+        }
+
+        /**
+         * Signature algorithm of the signer, e.g. {@code SHA256withRSA}, {@code SHA384withECDSA} or {@code Ed25519};
+         * null when the container could not be parsed.
+         */
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        /**
+         * Path validation of the signer certificate against the configured truststore; null when no truststore is
+         * configured (see {@link CertPathCache}).
+         */
+        public CertPathCache.Validation getChain() {
+            return chain;
+        }
+
+        /**
+         * Valid, and trusted as well when a truststore is configured.
+         */
+        public boolean isAccepted() {
+            return valid && (chain == null || chain.isTrusted());
+        }
+    }
+
     public static int verify(String pdfPath) throws Exception {
+        List<Result> results = inspect(pdfPath);
+        if (results.isEmpty()) {
+            System.out.println("No signature fields found in " + pdfPath);
+            return 1;
+        }
+        int exit = 0;
+        for (Result result : results) {
+            System.out.printf("Signature %s | valid=%s | coversWholeDocument=%s | algorithm=%s | subject=%s%s%n",
+                    result.getName(),
+                    result.isValid(),
+                    result.isCoversWholeDocument(),
+                    result.getAlgorithm(),
+                    result.getSubject(),
+                    result.getChain() != null ? " | chain=" + result.getChain() : "");
+            if (!result.isAccepted()) {
+                exit = 2;
+            }
+        }
+        return exit;
+    }
+
+    /**
+     * Verifies every signature in {@code pdfPath} and returns one result per field, in document order. The file is
+     * opened in partial mode, so only the form, the signature dictionaries and the signed byte ranges are read, and
+     * all signatures share one hashing pass (see {@link RevisionDigestVerifier}).
+     */
+    public static List<Result> inspect(String pdfPath) throws Exception {
         DemoKeystoreUtil.ensureProvider();
-        PdfReader reader = new PdfReader(pdfPath);
-        try {
-            AcroFields fields = reader.getAcroFields();
-            List<String> names = fields.getSignatureNames();
-            if (names.isEmpty()) {
-                System.out.println("No signature fields found in " + pdfPath);
-                return 1;
+        try (Metrics.Operation op = Metrics.start(Metrics.VERIFY)) {
+            PdfReader reader;
+            try (Metrics.Phase ignored = op.phase(Metrics.PARSE)) {
+                reader = new PdfReader(new RandomAccessFileOrArray(
+                        new RandomAccessSourceFactory().createBestSource(pdfPath)), null);
             }
-            int exit = 0;
-            for (String name : names) {
-                PdfPKCS7 pkcs7 = fields.verifySignature(name);
-                boolean coversDocument = fields.signatureCoversWholeDocument(name);
-                boolean valid = pkcs7.verify();
-                System.out.printf("Signature %s | valid=%s | coversWholeDocument=%s | subject=%s%n",
-                        name,
-                        valid,
-                        coversDocument,
-                        pkcs7.getSigningCertificate() != null ? pkcs7.getSigningCertificate().getSubjectDN() : "<unknown>");
-                if (!valid) {
-                    exit = 2;
+            try {
+                AcroFields fields;
+                List<String> names;
+                try (Metrics.Phase ignored = op.phase(Metrics.PARSE)) {
+                    fields = reader.getAcroFields();
+                    names = fields.getSignatureNames();
                 }
+                List<Result> results = RevisionDigestVerifier.verify(Path.of(pdfPath), reader, fields, names, op);
+                op.succeeded();
+                return Collections.unmodifiableList(results);
+            } finally {
+                reader.close();
             }
-            return exit;
-        } finally {
-            reader.close();
         }
     }
 }
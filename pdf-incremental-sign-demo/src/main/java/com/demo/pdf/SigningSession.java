@@ -0,0 +1,84 @@
+package com.demo.pdf;
+
+import com.itextpdf.text.io.RandomAccessSourceFactory;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.RandomAccessFileOrArray;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Holds the single parse of a source revision for one signing run.
+ *
+ * <p>The source is parsed once and the resulting {@link PdfReader} is shared by every pre-sign check and by the
+ * append-mode stamper. After signing, {@link #openSignedRevision(String)} opens the destination in partial mode so
+ * post-validation only materialises the xref chain and the objects touched by the new incremental section.</p>
+ */
+final class SigningSession implements Closeable {
+
+    private final File sourceFile;
+    private final long sourceLength;
+    private final PdfReader sourceReader;
+    private PdfReader signedReader;
+
+    private SigningSession(File sourceFile, PdfReader sourceReader) {
+        this.sourceFile = sourceFile;
+        this.sourceLength = sourceFile.length();
+        this.sourceReader = sourceReader;
+    }
+
+    static SigningSession open(String source) throws IOException {
+        Objects.requireNonNull(source, "source");
+        File file = new File(source);
+        if (!file.isFile()) {
+            throw new IOException("Source PDF not found: " + file.getAbsolutePath());
+        }
+        return new SigningSession(file, new PdfReader(file.getAbsolutePath()));
+    }
+
+    File getSourceFile() {
+        return sourceFile;
+    }
+
+    /**
+     * Length of the source revision captured before signing. This is the byte prefix the destination must keep.
+     */
+    long getSourceLength() {
+        return sourceLength;
+    }
+
+    PdfReader getSourceReader() {
+        return sourceReader;
+    }
+
+    /**
+     * Opens the signed destination with a partial-read {@link PdfReader}. Only the cross-reference sections are parsed
+     * eagerly; objects from earlier revisions are left untouched unless a check dereferences them.
+     */
+    PdfReader openSignedRevision(String destination) throws IOException {
+        if (signedReader != null) {
+            return signedReader;
+        }
+        RandomAccessFileOrArray raf = new RandomAccessFileOrArray(
+                new RandomAccessSourceFactory().createBestSource(destination));
+        signedReader = new PdfReader(raf, null);
+        return signedReader;
+    }
+
+    @Override
+    public void close() {
+        try {
+            sourceReader.close();
+        } catch (Exception ignore) {
+        }
+        if (signedReader != null) {
+            try {
+                signedReader.close();
+            } catch (Exception ignore) {
+            }
+            signedReader = null;
+        }
+    }
+}
@@ -1,9 +1,7 @@
 package com.demo.pdf;
 
-import com.demo.crypto.DemoKeystoreUtil;
+import com.demo.crypto.KeyMaterialCache;
 
-import java.nio.file.Path;
-import java.security.KeyStore;
 import java.security.PrivateKey;
 import java.security.cert.Certificate;
 
@@ -15,15 +13,15 @@ final class SigningSupport {
     static SigningContext resolve(String pkcs12Path, String password) throws Exception {
         if (pkcs12Path != null && !pkcs12Path.isBlank()) {
             char[] pwd = toPassword(password);
-            KeyStore ks = DemoKeystoreUtil.loadKeyStore(pkcs12Path, pwd);
-            KeyStore.PrivateKeyEntry entry = DemoKeystoreUtil.firstPrivateKey(ks, pwd);
-            return new SigningContext(entry.getPrivateKey(), entry.getCertificateChain());
+            try {
+                KeyMaterialCache.KeyMaterial material = KeyMaterialCache.get(pkcs12Path, pwd);
+                return new SigningContext(material.privateKey(), material.chain());
+            } finally {
+                KeyMaterialCache.zeroize(pwd);
+            }
         }
-        Path tmp = DemoKeystoreUtil.createDemoP12();
-        char[] demoPassword = "123456".toCharArray();
-        KeyStore ks = DemoKeystoreUtil.loadKeyStore(tmp.toString(), demoPassword);
-        KeyStore.PrivateKeyEntry entry = DemoKeystoreUtil.firstPrivateKey(ks, demoPassword);
-        return new SigningContext(entry.getPrivateKey(), entry.getCertificateChain());
+        KeyMaterialCache.KeyMaterial demo = KeyMaterialCache.demo();
+        return new SigningContext(demo.privateKey(), demo.chain());
     }
 
     private static char[] toPassword(String password) {
@@ -0,0 +1,136 @@
+package com.demo.pdf;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Positional, bounded-memory access to a PDF file for tail and ByteRange inspection.
+ *
+ * <p>Keywords are searched backwards from a given offset in {@link #CHUNK}-sized positional reads through a
+ * {@link FileChannel}, with a small overlap so matches that straddle a chunk boundary are not missed. In a well-formed
+ * file {@code %%EOF} and {@code startxref} sit in the last chunk, so locating the tail touches only a few KB however
+ * large the file is.</p>
+ */
+final class TailLocator implements Closeable {
+
+    static final int CHUNK = 4096;
+
+    private final FileChannel channel;
+    private final long size;
+
+    private TailLocator(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+    }
+
+    static TailLocator open(Path pdf) throws IOException {
+        return new TailLocator(FileChannel.open(pdf, StandardOpenOption.READ));
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * Returns the offset of the last occurrence of {@code needle} that ends at or before {@code before}, or -1.
+     */
+    long lastIndexOf(byte[] needle, long before) throws IOException {
+        long end = Math.min(before, size);
+        byte[] buf = new byte[CHUNK + needle.length - 1];
+        while (end >= needle.length) {
+            long start = Math.max(0, end - buf.length);
+            int len = (int) (end - start);
+            readFully(start, buf, len);
+            for (int i = len - needle.length; i >= 0; i--) {
+                if (matchesAt(buf, needle, i)) {
+                    return start + i;
+                }
+            }
+            if (start == 0) {
+                break;
+            }
+            // Step back one chunk while keeping needle.length - 1 bytes of overlap.
+            end = start + needle.length - 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the offset of the first occurrence of {@code needle} that starts at or after {@code from}, or -1.
+     */
+    long indexOf(byte[] needle, long from) throws IOException {
+        byte[] buf = new byte[CHUNK + needle.length - 1];
+        long start = Math.max(0, from);
+        while (start + needle.length <= size) {
+            int len = (int) Math.min(buf.length, size - start);
+            readFully(start, buf, len);
+            for (int i = 0; i + needle.length <= len; i++) {
+                if (matchesAt(buf, needle, i)) {
+                    return start + i;
+                }
+            }
+            // Step forward one chunk while keeping needle.length - 1 bytes of overlap.
+            start += len - needle.length + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Reads up to {@code length} bytes from {@code position}, clipped to the end of the file.
+     */
+    byte[] read(long position, int length) throws IOException {
+        long from = Math.max(0, Math.min(position, size));
+        int len = (int) Math.min(length, size - from);
+        byte[] data = new byte[len];
+        readFully(from, data, len);
+        return data;
+    }
+
+    /**
+     * Returns the offset of the first byte in {@code [from, size)} that is not CR or LF, or -1 when there is none.
+     */
+    long firstNonEol(long from) throws IOException {
+        byte[] buf = new byte[CHUNK];
+        for (long pos = Math.max(0, from); pos < size; pos += CHUNK) {
+            int len = (int) Math.min(CHUNK, size - pos);
+            readFully(pos, buf, len);
+            for (int i = 0; i < len; i++) {
+                if (buf[i] != '\r' && buf[i] != '\n') {
+                    return pos + i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void readFully(long position, byte[] buf, int len) throws IOException {
+        ByteBuffer target = ByteBuffer.wrap(buf, 0, len);
+        long pos = position;
+        while (target.hasRemaining()) {
+            int n = channel.read(target, pos);
+            if (n < 0) {
+                throw new EOFException("Unexpected end of file at offset " + pos);
+            }
+            pos += n;
+        }
+    }
+
+    private static boolean matchesAt(byte[] haystack, byte[] needle, int pos) {
+        for (int i = 0; i < needle.length; i++) {
+            if (haystack[pos + i] != needle[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,384 @@
+package com.demo.pdf;
+
+import com.demo.metrics.Metrics;
+import com.demo.tsa.TsaClients;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.itextpdf.text.Rectangle;
+import com.itextpdf.text.pdf.AcroFields;
+import com.itextpdf.text.pdf.PdfDeveloperExtension;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfSignature;
+import com.itextpdf.text.pdf.PdfSignatureAppearance;
+import com.itextpdf.text.pdf.PdfStamper;
+import com.itextpdf.text.pdf.PdfString;
+import com.itextpdf.text.pdf.security.TSAClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable queue of charts waiting for a document timestamp, for signing rows now and timestamping them later.
+ *
+ * <p>Rows signed with a queue are signed without a TSA round trip, and their chart is recorded as one JSON file in the
+ * queue directory, named after the chart's path. A chart that is already queued keeps its entry, so however many rows
+ * are signed on it in the meantime, {@link #drain} appends a single {@code /DocTimeStamp} revision that covers all of
+ * them with one token. When a row is signed from a queued chart into a new file, the entry moves to that file, so
+ * a chain of files is also stamped once, at its end. An entry is claimed by renaming it before the chart is stamped
+ * and is only deleted afterwards, so entries survive a crash and are picked up again by the next worker.</p>
+ *
+ * <p>The timestamp revision is written to a temporary file next to the chart, checked to keep every earlier byte and
+ * to verify, and moved over the chart only if the chart has not changed in the meantime. Otherwise the entry stays
+ * queued for the next round.</p>
+ */
+public final class TimestampQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(TimestampQueue.class);
+
+    private static final String ENTRY = ".json";
+    private static final String CLAIMED = ".claimed";
+
+    private final Path directory;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public TimestampQueue(Path directory) throws IOException {
+        this.directory = Objects.requireNonNull(directory, "directory").toAbsolutePath();
+        Files.createDirectories(this.directory);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Queues {@code chart} for a document timestamp from {@code tsaUrl}, unless it is already queued.
+     */
+    public void enqueue(Path chart, String tsaUrl) throws IOException {
+        requireTsa(tsaUrl);
+        Path absolute = chart.toAbsolutePath().normalize();
+        if (Files.exists(entryFor(absolute))) {
+            log.info("[ts-queue] {} already queued", absolute);
+            return;
+        }
+        write(absolute, tsaUrl, System.currentTimeMillis());
+    }
+
+    /**
+     * Queues {@code destination}, a new revision of {@code source}. A pending entry of {@code source} is moved to
+     * {@code destination} and keeps its age, so rows signed from file to file cost one token for the last file
+     * instead of one per intermediate.
+     */
+    public void enqueue(Path source, Path destination, String tsaUrl) throws IOException {
+        requireTsa(tsaUrl);
+        Path from = source.toAbsolutePath().normalize();
+        Path to = destination.toAbsolutePath().normalize();
+        Path fromEntry = entryFor(from);
+        if (from.equals(to) || !Files.exists(fromEntry)) {
+            enqueue(to, tsaUrl);
+            return;
+        }
+        long enqueued;
+        try {
+            enqueued = read(fromEntry).enqueued;
+        } catch (IOException e) {
+            // Claimed by the worker meanwhile, or unreadable; either way the destination gets its own entry.
+            enqueue(to, tsaUrl);
+            return;
+        }
+        if (!Files.exists(entryFor(to))) {
+            write(to, tsaUrl, enqueued);
+        }
+        // Written before the old entry goes, so a crash in between can only cost an extra token, never a lost one.
+        Files.deleteIfExists(fromEntry);
+        log.info("[ts-queue] moved entry of {} to {}", from, to);
+    }
+
+    private void write(Path chart, String tsaUrl, long enqueued) throws IOException {
+        Path entry = entryFor(chart);
+        ObjectNode node = mapper.createObjectNode();
+        node.put("chart", chart.toString());
+        node.put("tsaUrl", tsaUrl);
+        node.put("enqueued", enqueued);
+        Path temp = Files.createTempFile(directory, entry.getFileName().toString(), ".part");
+        try {
+            Files.write(temp, mapper.writeValueAsBytes(node));
+            Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE);
+            log.info("[ts-queue] queued {} -> {}", chart, entry.getFileName());
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Path entryFor(Path chart) {
+        return directory.resolve(entryName(chart) + ENTRY);
+    }
+
+    private static void requireTsa(String tsaUrl) {
+        if (tsaUrl == null || tsaUrl.isBlank()) {
+            throw new IllegalArgumentException("A TSA URL is required to queue a document timestamp");
+        }
+    }
+
+    /**
+     * Number of charts waiting, claimed ones included.
+     */
+    public int pending() throws IOException {
+        return entries(ENTRY).size() + entries(CLAIMED).size();
+    }
+
+    /**
+     * Timestamps every chart that has been queued for at least {@code minAge} and returns how many were stamped.
+     * Charts that fail stay queued; charts that no longer exist are dropped.
+     */
+    public int drain(Duration minAge) throws IOException {
+        long cutoff = System.currentTimeMillis() - minAge.toMillis();
+        List<Queued> due = new ArrayList<>();
+        for (Path entry : entries(ENTRY)) {
+            try {
+                Queued queued = read(entry);
+                if (queued.enqueued <= cutoff) {
+                    due.add(queued);
+                }
+            } catch (IOException e) {
+                log.warn("[ts-queue] unreadable entry {}: {}", entry.getFileName(), e.toString());
+            }
+        }
+        due.sort(Comparator.comparingLong(q -> q.enqueued));
+        int stamped = 0;
+        for (Queued queued : due) {
+            Path claim = claim(queued.entry);
+            if (claim == null) {
+                continue;
+            }
+            if (!Files.isRegularFile(queued.chart)) {
+                log.warn("[ts-queue] {} no longer exists, dropping its entry", queued.chart);
+                Files.deleteIfExists(claim);
+                continue;
+            }
+            try {
+                timestamp(queued.chart, TsaClients.forUrl(queued.tsaUrl));
+                Files.deleteIfExists(claim);
+                stamped++;
+            } catch (Exception e) {
+                log.warn("[ts-queue] {} not timestamped, keeping it queued: {}", queued.chart, e.toString());
+                release(claim, queued.entry);
+            }
+        }
+        return stamped;
+    }
+
+    /**
+     * Returns claims left behind by a worker that stopped while stamping, so they are processed again.
+     */
+    public void recover() throws IOException {
+        for (Path claim : entries(CLAIMED)) {
+            Path entry = directory.resolve(baseName(claim) + ENTRY);
+            log.info("[ts-queue] recovering {}", entry.getFileName());
+            release(claim, entry);
+        }
+    }
+
+    /**
+     * Recovers old claims and then drains the queue every {@code interval} on a daemon thread until the returned
+     * handle is closed.
+     */
+    public AutoCloseable start(Duration minAge, Duration interval) throws IOException {
+        recover();
+        ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "timestamp-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        worker.scheduleWithFixedDelay(() -> {
+            try {
+                int stamped = drain(minAge);
+                if (stamped > 0) {
+                    log.info("[ts-queue] {} chart(s) timestamped, {} pending", stamped, pending());
+                }
+            } catch (Exception e) {
+                log.warn("[ts-queue] drain failed: {}", e.toString());
+            }
+        }, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+        log.info("[ts-queue] worker on {} every {} s", directory, interval.toSeconds());
+        return worker::shutdownNow;
+    }
+
+    /**
+     * Appends a {@code /DocTimeStamp} revision to {@code chart} in place. The chart is replaced only after the new
+     * revision has passed the prefix check and its token matches the document.
+     */
+    public static void timestamp(Path chart, TSAClient tsa) throws Exception {
+        Objects.requireNonNull(tsa, "tsa");
+        Path file = chart.toAbsolutePath();
+        try (Metrics.Operation op = Metrics.start(Metrics.DOC_TIMESTAMP)) {
+            long length = Files.size(file);
+            FileTime modified = Files.getLastModifiedTime(file);
+            Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".ts");
+            try {
+                String field = appendTimestamp(file, temp, tsa, op);
+                try (Metrics.Phase ignored = op.phase(Metrics.PREFIX_CHECK)) {
+                    RevisionPrefixCheck.assertUnchanged(file.toFile(), temp.toFile(), length);
+                }
+                try (Metrics.Phase ignored = op.phase(Metrics.POST_VALIDATE)) {
+                    requireValid(temp, field);
+                }
+                if (Files.size(file) != length || !Files.getLastModifiedTime(file).equals(modified)) {
+                    throw new IOException(file + " changed while it was being timestamped");
+                }
+                try (Metrics.Phase ignored = op.phase(Metrics.WRITE)) {
+                    AtomicFiles.moveIntoPlace(temp, file);
+                }
+                log.info("[ts-queue] {} timestamped as '{}' (+{}B)", file, field, Files.size(file) - length);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            RevisionIndex.maintain(file, file, false);
+            op.succeeded();
+        }
+    }
+
+    /**
+     * Writes {@code source} plus a document timestamp revision to {@code target}, the way iText's
+     * {@code LtvTimestamp} does, and returns the new field's name.
+     */
+    private static String appendTimestamp(Path source, Path target, TSAClient tsa, Metrics.Operation op)
+            throws Exception {
+        PdfReader reader;
+        try (Metrics.Phase ignored = op.phase(Metrics.PARSE)) {
+            reader = new PdfReader(source.toString());
+        }
+        try (OutputStream os = Files.newOutputStream(target)) {
+            PdfSignatureAppearance sap;
+            int reserved = tsa.getTokenSizeEstimate();
+            try (Metrics.Phase ignored = op.phase(Metrics.FIELD_UPDATE)) {
+                PdfStamper stamper = PdfStamper.createSignature(reader, os, '\0', null, true);
+                sap = stamper.getSignatureAppearance();
+                sap.addDeveloperExtension(PdfDeveloperExtension.ESIC_1_7_EXTENSIONLEVEL5);
+                sap.setVisibleSignature(new Rectangle(0, 0, 0, 0), 1, null);
+                PdfSignature dic = new PdfSignature(PdfName.ADOBE_PPKLITE, PdfName.ETSI_RFC3161);
+                dic.put(PdfName.TYPE, PdfName.DOCTIMESTAMP);
+                sap.setCryptoDictionary(dic);
+                HashMap<PdfName, Integer> exclusions = new HashMap<>();
+                exclusions.put(PdfName.CONTENTS, reserved * 2 + 2);
+                sap.preClose(exclusions);
+            }
+            byte[] imprint;
+            try (Metrics.Phase ignored = op.phase(Metrics.DIGEST);
+                 InputStream range = sap.getRangeStream()) {
+                imprint = ByteRangeDigest.digest(range, tsa.getMessageDigest());
+            }
+            byte[] token;
+            try (Metrics.Phase ignored = op.phase(Metrics.TSA)) {
+                token = tsa.getTimeStampToken(imprint);
+            }
+            if (token.length > reserved) {
+                throw new IOException("Timestamp token of " + token.length + " bytes exceeds the " + reserved
+                        + " bytes reserved");
+            }
+            try (Metrics.Phase ignored = op.phase(Metrics.WRITE)) {
+                PdfDictionary contents = new PdfDictionary();
+                contents.put(PdfName.CONTENTS, new PdfString(Arrays.copyOf(token, reserved)).setHexWriting(true));
+                sap.close(contents);
+            }
+            return sap.getFieldName();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void requireValid(Path pdf, String field) throws Exception {
+        PdfReader reader = new PdfReader(pdf.toString());
+        try {
+            AcroFields fields = reader.getAcroFields();
+            SignatureVerifier.Result result = RevisionDigestVerifier.verify(pdf, reader, fields, List.of(field),
+                    Metrics.untracked()).get(0);
+            if (!result.isValid() || !result.isCoversWholeDocument()) {
+                throw new IllegalStateException("Document timestamp '" + field + "' does not verify");
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private Path claim(Path entry) throws IOException {
+        Path claim = directory.resolve(baseName(entry) + CLAIMED);
+        try {
+            Files.move(entry, claim, StandardCopyOption.ATOMIC_MOVE);
+            return claim;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Puts a claimed entry back, unless the chart has been queued again meanwhile; that newer entry covers it.
+     */
+    private static void release(Path claim, Path entry) throws IOException {
+        if (Files.exists(entry)) {
+            Files.deleteIfExists(claim);
+            return;
+        }
+        Files.move(claim, entry, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Queued read(Path entry) throws IOException {
+        JsonNode node = mapper.readTree(entry.toFile());
+        if (!node.hasNonNull("chart") || !node.hasNonNull("tsaUrl")) {
+            throw new IOException("missing chart or tsaUrl");
+        }
+        return new Queued(entry, Path.of(node.get("chart").asText()), node.get("tsaUrl").asText(),
+                node.path("enqueued").asLong(0L));
+    }
+
+    private List<Path> entries(String suffix) throws IOException {
+        List<Path> found = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + suffix)) {
+            stream.forEach(found::add);
+        }
+        return found;
+    }
+
+    private static String baseName(Path entry) {
+        String name = entry.getFileName().toString();
+        return name.substring(0, name.lastIndexOf('.'));
+    }
+
+    private static String entryName(Path chart) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest(chart.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record Queued(Path entry, Path chart, String tsaUrl, long enqueued) {
+    }
+}
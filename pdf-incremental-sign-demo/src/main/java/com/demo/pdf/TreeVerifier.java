@@ -0,0 +1,382 @@
+package com.demo.pdf;
+
+import com.demo.crypto.DemoKeystoreUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Verifies every PDF below a directory concurrently and records one JSON line per file.
+ *
+ * <p>Files are verified on a {@link ForkJoinPool} of the requested parallelism while the directory walk keeps at most
+ * a few tasks per worker in flight, so memory stays flat however many files the tree holds. The JSONL output doubles as
+ * the checkpoint: with {@link Params#isResume()} the existing lines are read back, a torn last line is cut off, and
+ * every file with a verdict, valid or invalid, is skipped. Files recorded with an {@code error} (unreadable, locked
+ * mid-write, ...) are dropped from the output and verified again, so each file still ends up with one line. Lines are
+ * flushed in small groups, so an interrupted run loses at most a few results and re-verifies only those.</p>
+ */
+public final class TreeVerifier {
+
+    private static final Logger log = LoggerFactory.getLogger(TreeVerifier.class);
+    private static final int FLUSH_EVERY = 64;
+    private static final int PROGRESS_EVERY = 1000;
+    private static final int IN_FLIGHT_PER_WORKER = 4;
+
+    private TreeVerifier() {
+    }
+
+    public static final class Params {
+        private Path root;
+        private Path output;
+        private boolean resume;
+        private int parallelism = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+        public Path getRoot() {
+            return root;
+        }
+
+        public void setRoot(Path root) {
+            this.root = root;
+        }
+
+        public Path getOutput() {
+            return output;
+        }
+
+        public void setOutput(Path output) {
+            this.output = output;
+        }
+
+        public boolean isResume() {
+            return resume;
+        }
+
+        public void setResume(boolean resume) {
+            this.resume = resume;
+        }
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        public void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+    }
+
+    /**
+     * Totals of one run. Files skipped because the checkpoint already lists them are not counted as verified.
+     */
+    public static final class Summary {
+        private final long verified;
+        private final long skipped;
+        private final long invalid;
+        private final long failed;
+        private final long millis;
+
+        Summary(long verified, long skipped, long invalid, long failed, long millis) {
+            this.verified = verified;
+            this.skipped = skipped;
+            this.invalid = invalid;
+            this.failed = failed;
+            this.millis = millis;
+        }
+
+        public long getVerified() {
+            return verified;
+        }
+
+        public long getSkipped() {
+            return skipped;
+        }
+
+        public long getInvalid() {
+            return invalid;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        public boolean isClean() {
+            return invalid == 0 && failed == 0;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = millis / 1000d;
+            return String.format(Locale.ROOT, "verified=%d skipped=%d invalid=%d failed=%d elapsed=%.1fs rate=%.1f files/s",
+                    verified, skipped, invalid, failed, seconds, seconds > 0 ? verified / seconds : 0d);
+        }
+    }
+
+    public static Summary verifyTree(Params params) throws Exception {
+        Objects.requireNonNull(params, "params");
+        Path root = Objects.requireNonNull(params.getRoot(), "root").toAbsolutePath().normalize();
+        Path output = Objects.requireNonNull(params.getOutput(), "output").toAbsolutePath().normalize();
+        if (!Files.isDirectory(root)) {
+            throw new IllegalArgumentException("Not a directory: " + root);
+        }
+        if (params.getParallelism() < 1) {
+            throw new IllegalArgumentException("Parallelism must be >= 1");
+        }
+        DemoKeystoreUtil.ensureProvider();
+
+        Set<String> done = params.isResume() ? loadCheckpoint(output) : new HashSet<>();
+        if (!done.isEmpty()) {
+            log.info("[verify-tree] resuming, {} files already recorded in {}", done.size(), output);
+        }
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+
+        ObjectMapper mapper = new ObjectMapper();
+        long started = System.nanoTime();
+        AtomicLong verified = new AtomicLong();
+        AtomicLong skipped = new AtomicLong();
+        AtomicLong invalid = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        int maxInFlight = params.getParallelism() * IN_FLIGHT_PER_WORKER;
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        ForkJoinPool pool = new ForkJoinPool(params.getParallelism());
+
+        try (BufferedWriter writer = params.isResume()
+                ? Files.newBufferedWriter(output, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+                : Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            ResultSink sink = new ResultSink(writer);
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    if (!attrs.isRegularFile() || !file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".pdf")) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    String relative = relativize(root, file);
+                    if (done.contains(relative)) {
+                        skipped.incrementAndGet();
+                        return FileVisitResult.CONTINUE;
+                    }
+                    inFlight.acquireUninterruptibly();
+                    pool.execute(() -> {
+                        try {
+                            ObjectNode line = verifyOne(mapper, file, relative, attrs.size());
+                            if (line.has("error")) {
+                                failed.incrementAndGet();
+                            } else if (!line.get("valid").asBoolean()) {
+                                invalid.incrementAndGet();
+                            }
+                            sink.write(mapper.writeValueAsString(line));
+                            long count = verified.incrementAndGet();
+                            if (count % PROGRESS_EVERY == 0) {
+                                log.info("[verify-tree] {} files verified", count);
+                            }
+                        } catch (IOException e) {
+                            log.error("[verify-tree] could not record result for {}", relative, e);
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+                    ObjectNode line = mapper.createObjectNode();
+                    line.put("path", relativize(root, file));
+                    line.put("error", "Unreadable: " + exc);
+                    failed.incrementAndGet();
+                    sink.write(mapper.writeValueAsString(line));
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            inFlight.acquireUninterruptibly(maxInFlight);
+            sink.flush();
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        return new Summary(verified.get(), skipped.get(), invalid.get(), failed.get(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    private static ObjectNode verifyOne(ObjectMapper mapper, Path file, String relative, long size) {
+        ObjectNode line = mapper.createObjectNode();
+        line.put("path", relative);
+        line.put("size", size);
+        long started = System.nanoTime();
+        try {
+            boolean allValid = true;
+            ArrayNode signatures = line.putArray("signatures");
+            for (SignatureVerifier.Result result : SignatureVerifier.inspect(file.toString())) {
+                ObjectNode node = signatures.addObject();
+                node.put("name", result.getName());
+                node.put("valid", result.isValid());
+                node.put("coversWholeDocument", result.isCoversWholeDocument());
+                node.put("algorithm", result.getAlgorithm());
+                node.put("subject", result.getSubject());
+                if (result.getChain() != null) {
+                    node.put("trusted", result.getChain().isTrusted());
+                    node.put("chain", result.getChain().toString());
+                }
+                allValid &= result.isAccepted();
+            }
+            line.put("valid", allValid && signatures.size() > 0);
+        } catch (Exception e) {
+            line.remove("signatures");
+            line.put("error", e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+        line.put("millis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return line;
+    }
+
+    /**
+     * Reads the paths already recorded in {@code output} with a verdict, first truncating a last line the previous run
+     * did not finish. Lines that record an error are removed from {@code output}, so those files are retried.
+     */
+    private static Set<String> loadCheckpoint(Path output) throws IOException {
+        Set<String> done = new HashSet<>();
+        if (!Files.isRegularFile(output)) {
+            return done;
+        }
+        truncateTornLine(output);
+        ObjectMapper mapper = new ObjectMapper();
+        int malformed = 0;
+        int errors = 0;
+        try (BufferedReader reader = Files.newBufferedReader(output, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    JsonNode node = mapper.readTree(line);
+                    JsonNode path = node.get("path");
+                    if (node.has("error")) {
+                        errors++;
+                    } else if (path != null) {
+                        done.add(path.asText());
+                    }
+                } catch (IOException e) {
+                    malformed++;
+                }
+            }
+        }
+        if (malformed > 0) {
+            log.warn("[verify-tree] ignored {} malformed checkpoint lines in {}", malformed, output);
+        }
+        if (errors > 0) {
+            dropErrorLines(mapper, output);
+            log.info("[verify-tree] retrying {} files recorded with an error", errors);
+        }
+        return done;
+    }
+
+    /**
+     * Rewrites {@code output} without its error lines, through a temporary file so an interruption keeps the old one.
+     */
+    private static void dropErrorLines(ObjectMapper mapper, Path output) throws IOException {
+        Path temp = Files.createTempFile(output.getParent(), output.getFileName().toString(), ".part");
+        try {
+            AtomicFiles.matchPermissions(temp, output, null);
+            try (BufferedReader reader = Files.newBufferedReader(output, StandardCharsets.UTF_8);
+                 BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isBlank() && !isErrorLine(mapper, line)) {
+                        writer.write(line);
+                        writer.write('\n');
+                    }
+                }
+            }
+            AtomicFiles.moveIntoPlace(temp, output);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static boolean isErrorLine(ObjectMapper mapper, String line) {
+        try {
+            return mapper.readTree(line).has("error");
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void truncateTornLine(Path output) throws IOException {
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            ByteBuffer one = ByteBuffer.allocate(1);
+            long pos = size;
+            while (pos > 0) {
+                one.clear();
+                channel.read(one, pos - 1);
+                if (one.get(0) == '\n') {
+                    break;
+                }
+                pos--;
+            }
+            if (pos < size) {
+                channel.truncate(pos);
+                log.warn("[verify-tree] dropped {} bytes of an unfinished checkpoint line", size - pos);
+            }
+        }
+    }
+
+    private static String relativize(Path root, Path file) {
+        return root.relativize(file.toAbsolutePath().normalize()).toString().replace('\\', '/');
+    }
+
+    /**
+     * Serialises result lines from the worker threads and flushes them in small groups.
+     */
+    private static final class ResultSink {
+        private final BufferedWriter writer;
+        private int pending;
+
+        ResultSink(BufferedWriter writer) {
+            this.writer = writer;
+        }
+
+        synchronized void write(String line) throws IOException {
+            writer.write(line);
+            writer.write('\n');
+            if (++pending >= FLUSH_EVERY) {
+                writer.flush();
+                pending = 0;
+            }
+        }
+
+        synchronized void flush() throws IOException {
+            writer.flush();
+            pending = 0;
+        }
+    }
+}
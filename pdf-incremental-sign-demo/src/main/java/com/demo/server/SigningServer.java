@@ -0,0 +1,405 @@
+package com.demo.server;
+
+import com.demo.crypto.DemoKeystoreUtil;
+import com.demo.crypto.KeyMaterialCache;
+import com.demo.pdf.FontRegistry;
+import com.demo.pdf.JobScope;
+import com.demo.pdf.NursingRecordSigner;
+import com.demo.pdf.NursingRecordTemplate;
+import com.demo.pdf.TimestampQueue;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Resident signing daemon that keeps the JIT, key material and fonts warm between requests.
+ *
+ * <p>Requests arrive over loopback HTTP, a Unix domain socket, or both. Either transport only parses the request and
+ * hands it to {@link SigningService}; the signing itself runs on a fixed pool of {@link Params#getWorkers()} threads
+ * fed by a queue of at most {@link Params#getQueueCapacity()} waiting requests. The Unix socket is restricted to its
+ * owner. HTTP is off by default; when enabled it is bound to the loopback interface only and every request must carry
+ * {@code Authorization: Bearer <token>}, because any local user can reach a loopback port. Request bodies are capped at
+ * {@link SigningService#MAX_BODY_BYTES}, and request paths are confined to {@link Params#getDataRoot()}.</p>
+ */
+public final class SigningServer implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(SigningServer.class);
+    private static final long KEY_SWEEP_SECONDS = 30;
+    private static final SigningService.Response UNAUTHORIZED = new SigningService.Response(401,
+            "{\"status\":\"error\",\"error\":\"Missing or invalid bearer token\"}".getBytes(StandardCharsets.UTF_8));
+    static final SigningService.Response TOO_LARGE = new SigningService.Response(413,
+            ("{\"status\":\"error\",\"error\":\"Request body exceeds " + SigningService.MAX_BODY_BYTES + " bytes\"}")
+                    .getBytes(StandardCharsets.UTF_8));
+
+    private final Params params;
+    private final ThreadPoolExecutor workers;
+    private final ExecutorService io;
+    private final SigningService service;
+    private final ScheduledExecutorService housekeeping =
+            Executors.newSingleThreadScheduledExecutor(daemonThreads("sign-housekeeping"));
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private HttpServer http;
+    private UnixSocketListener unix;
+    private AutoCloseable timestampWorker;
+
+    public static final class Params {
+        private int httpPort = -1;
+        private String httpToken;
+        private Path socketPath;
+        private Path dataRoot;
+        private int workers = Math.max(1, Runtime.getRuntime().availableProcessors());
+        private int queueCapacity = 64;
+        private long requestTimeoutSeconds = 60;
+        private String pkcs12Path;
+        private String password;
+        private String cjkFontPath;
+        private int warmupRounds;
+        private Path timestampQueue;
+        private long timestampDelaySeconds = 30;
+
+        /**
+         * Loopback TCP port, or a negative value to disable HTTP. {@code 0} picks a free port.
+         */
+        public int getHttpPort() {
+            return httpPort;
+        }
+
+        public void setHttpPort(int httpPort) {
+            this.httpPort = httpPort;
+        }
+
+        /**
+         * Bearer token every HTTP request must present. Required when HTTP is enabled.
+         */
+        public String getHttpToken() {
+            return httpToken;
+        }
+
+        public void setHttpToken(String httpToken) {
+            this.httpToken = httpToken;
+        }
+
+        public Path getSocketPath() {
+            return socketPath;
+        }
+
+        public void setSocketPath(Path socketPath) {
+            this.socketPath = socketPath;
+        }
+
+        /**
+         * Directory every request path is resolved against and confined to; {@code null} means the working directory.
+         */
+        public Path getDataRoot() {
+            return dataRoot;
+        }
+
+        public void setDataRoot(Path dataRoot) {
+            this.dataRoot = dataRoot;
+        }
+
+        public int getWorkers() {
+            return workers;
+        }
+
+        public void setWorkers(int workers) {
+            this.workers = workers;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public long getRequestTimeoutSeconds() {
+            return requestTimeoutSeconds;
+        }
+
+        public void setRequestTimeoutSeconds(long requestTimeoutSeconds) {
+            this.requestTimeoutSeconds = requestTimeoutSeconds;
+        }
+
+        /**
+         * Keystore every sign request is signed with; requests cannot name their own.
+         */
+        public String getPkcs12Path() {
+            return pkcs12Path;
+        }
+
+        public void setPkcs12Path(String pkcs12Path) {
+            this.pkcs12Path = pkcs12Path;
+        }
+
+        public String getPassword() {
+            return password;
+        }
+
+        public void setPassword(String password) {
+            this.password = password;
+        }
+
+        public String getCjkFontPath() {
+            return cjkFontPath;
+        }
+
+        public void setCjkFontPath(String cjkFontPath) {
+            this.cjkFontPath = cjkFontPath;
+        }
+
+        /**
+         * Number of throwaway row signatures performed before the listeners open, to get the hot paths compiled.
+         */
+        public int getWarmupRounds() {
+            return warmupRounds;
+        }
+
+        public void setWarmupRounds(int warmupRounds) {
+            this.warmupRounds = warmupRounds;
+        }
+
+        /**
+         * Timestamp queue for row requests that name a TSA: they are signed without it, and a worker inside the daemon
+         * appends document timestamps instead. {@code null} keeps the TSA call in the request.
+         */
+        public Path getTimestampQueue() {
+            return timestampQueue;
+        }
+
+        public void setTimestampQueue(Path timestampQueue) {
+            this.timestampQueue = timestampQueue;
+        }
+
+        /**
+         * How long a queued chart waits before it is timestamped, so that rows signed meanwhile share the token.
+         */
+        public long getTimestampDelaySeconds() {
+            return timestampDelaySeconds;
+        }
+
+        public void setTimestampDelaySeconds(long timestampDelaySeconds) {
+            this.timestampDelaySeconds = timestampDelaySeconds;
+        }
+    }
+
+    public SigningServer(Params params) {
+        this.params = params;
+        if (params.getWorkers() < 1) {
+            throw new IllegalArgumentException("At least one worker is required");
+        }
+        if (params.getQueueCapacity() < 1) {
+            throw new IllegalArgumentException("Queue capacity must be >= 1");
+        }
+        if (params.getHttpPort() < 0 && params.getSocketPath() == null) {
+            throw new IllegalArgumentException("Enable HTTP, a Unix socket, or both");
+        }
+        if (params.getHttpPort() >= 0 && (params.getHttpToken() == null || params.getHttpToken().isBlank())) {
+            throw new IllegalArgumentException("HTTP requires a bearer token; the Unix socket needs none");
+        }
+        this.workers = new ThreadPoolExecutor(params.getWorkers(), params.getWorkers(), 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(params.getQueueCapacity()), daemonThreads("sign-worker"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.workers.prestartAllCoreThreads();
+        // Transport threads only parse requests and wait on the worker pool, so their number is bounded by
+        // workers + queue in practice; overflow is answered with 503 right away. They are virtual threads where the
+        // runtime has them. Workers stay platform threads: they are CPU-bound and --workers is their limit anyway.
+        this.io = Executors.newCachedThreadPool(JobScope.threadFactory("sign-io-"));
+        this.service = new SigningService(workers, params);
+    }
+
+    public void start() throws Exception {
+        DemoKeystoreUtil.ensureProvider();
+        preload();
+        // KeyMaterialCache only evicts on access; without this sweep an idle daemon would hold decrypted keys forever.
+        housekeeping.scheduleWithFixedDelay(KeyMaterialCache::evictIdle, KEY_SWEEP_SECONDS, KEY_SWEEP_SECONDS,
+                TimeUnit.SECONDS);
+        if (params.getHttpPort() >= 0) {
+            http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), params.getHttpPort()),
+                    params.getWorkers() + params.getQueueCapacity());
+            http.createContext("/", this::handleHttp);
+            http.setExecutor(io);
+            http.start();
+            log.info("[serve] HTTP listening on {}", http.getAddress());
+        }
+        if (params.getSocketPath() != null) {
+            unix = new UnixSocketListener(params.getSocketPath(), service, io);
+            unix.start();
+            log.info("[serve] Unix socket listening on {}", params.getSocketPath());
+        }
+        if (params.getTimestampQueue() != null) {
+            long delay = Math.max(0L, params.getTimestampDelaySeconds());
+            timestampWorker = new TimestampQueue(params.getTimestampQueue()).start(Duration.ofSeconds(delay),
+                    Duration.ofSeconds(Math.max(1L, Math.min(5L, delay))));
+        }
+    }
+
+    /**
+     * Address of the HTTP listener, or {@code null} when HTTP is disabled or the server is not started.
+     */
+    public InetSocketAddress getHttpAddress() {
+        return http != null ? http.getAddress() : null;
+    }
+
+    public void awaitShutdown() throws InterruptedException {
+        stopped.await();
+    }
+
+    @Override
+    public void close() {
+        if (http != null) {
+            http.stop(1);
+            http = null;
+        }
+        if (unix != null) {
+            unix.close();
+            unix = null;
+        }
+        if (timestampWorker != null) {
+            try {
+                timestampWorker.close();
+            } catch (Exception e) {
+                log.warn("[serve] timestamp worker did not stop cleanly: {}", e.toString());
+            }
+            timestampWorker = null;
+        }
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(params.getRequestTimeoutSeconds(), TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        io.shutdownNow();
+        housekeeping.shutdownNow();
+        KeyMaterialCache.clear();
+        stopped.countDown();
+    }
+
+    private void handleHttp(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            SigningService.Response response;
+            if (!authorized(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+                response = UNAUTHORIZED;
+            } else {
+                // One byte past the limit tells an oversized body apart without buffering it, chunked or not.
+                byte[] body;
+                try (InputStream in = exchange.getRequestBody()) {
+                    body = in.readNBytes(SigningService.MAX_BODY_BYTES + 1);
+                }
+                response = body.length > SigningService.MAX_BODY_BYTES
+                        ? TOO_LARGE
+                        : service.handle(exchange.getRequestMethod(), exchange.getRequestURI().getPath(), body);
+            }
+            exchange.getResponseHeaders().set("Content-Type", response.contentType());
+            exchange.sendResponseHeaders(response.status(), response.body().length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response.body());
+            }
+        }
+    }
+
+    private boolean authorized(String header) {
+        String prefix = "Bearer ";
+        if (header == null || !header.regionMatches(true, 0, prefix, 0, prefix.length())) {
+            return false;
+        }
+        byte[] presented = header.substring(prefix.length()).trim().getBytes(StandardCharsets.UTF_8);
+        return MessageDigest.isEqual(presented, params.getHttpToken().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Loads the default keystore and CJK font into the process caches and optionally signs a scratch template a few
+     * times so the first real request does not pay for class loading and interpretation. Without a default keystore
+     * the warmup signs with a throwaway identity generated in the scratch directory.
+     */
+    private void preload() throws Exception {
+        if (params.getPkcs12Path() != null) {
+            char[] pwd = params.getPassword() != null ? params.getPassword().toCharArray() : new char[0];
+            try {
+                KeyMaterialCache.get(params.getPkcs12Path(), pwd);
+            } finally {
+                KeyMaterialCache.zeroize(pwd);
+            }
+        }
+        if (params.getCjkFontPath() != null) {
+            FontRegistry.fromFile(Path.of(params.getCjkFontPath()));
+        }
+        if (params.getWarmupRounds() <= 0) {
+            return;
+        }
+        Path scratch = Files.createTempDirectory("sign-warmup");
+        try {
+            String template = scratch.resolve("template.pdf").toString();
+            NursingRecordTemplate.createTemplate(template, 1);
+            String pkcs12 = params.getPkcs12Path();
+            String password = params.getPassword();
+            if (pkcs12 == null) {
+                Path demo = scratch.resolve("warmup.p12");
+                password = "warmup";
+                DemoKeystoreUtil.createDemoP12(demo, password.toCharArray(), "Warmup");
+                pkcs12 = demo.toString();
+            }
+            NursingRecordSigner signer = new NursingRecordSigner();
+            long started = System.nanoTime();
+            for (int i = 0; i < params.getWarmupRounds(); i++) {
+                NursingRecordSigner.SignParams warmup = new NursingRecordSigner.SignParams();
+                warmup.setSource(template);
+                warmup.setDestination(scratch.resolve("warmup-" + i + ".pdf").toString());
+                warmup.setRow(1);
+                warmup.setTimeValue("00:00");
+                warmup.setTextValue("warmup");
+                warmup.setNurse("warmup");
+                warmup.setPkcs12Path(pkcs12);
+                warmup.setPassword(password);
+                warmup.setCjkFontPath(params.getCjkFontPath());
+                signer.signRow(warmup);
+            }
+            log.info("[serve] warmup rounds={} took {}ms", params.getWarmupRounds(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        } catch (Exception e) {
+            log.warn("[serve] warmup skipped: {}", e.toString());
+        } finally {
+            try (Stream<Path> files = Files.walk(scratch)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,429 @@
+package com.demo.server;
+
+import com.demo.crypto.CertPathCache;
+import com.demo.crypto.KeyMaterialCache;
+import com.demo.metrics.Metrics;
+import com.demo.pdf.ElectronicSignatureSigner;
+import com.demo.pdf.FontRegistry;
+import com.demo.pdf.NursingRecordSigner;
+import com.demo.pdf.SignatureVerifier;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transport-independent request handling for the signing daemon.
+ *
+ * <p>Each request body is JSON of at most {@link #MAX_BODY_BYTES} bound onto a small request record
+ * ({@link RowRequest}, {@link ElectronicRequest}, {@link VerifyRequest}), which the service then copies onto the
+ * signer's parameters. Keystores, fonts and the timestamp queue are the daemon's own and cannot be named by a request;
+ * unknown properties are refused with 400. Every path is resolved against {@link SigningServer.Params#getDataRoot()}
+ * and must stay inside it, symbolic links included. The work itself runs on the bounded worker pool handed in by
+ * {@link SigningServer}; when both the workers and the queue are busy the request is refused with 503 instead of
+ * piling up. Two in-flight requests may not write the same destination.</p>
+ *
+ * <ul>
+ *     <li>{@code GET  /health}</li>
+ *     <li>{@code GET  /metrics} &ndash; Prometheus text format</li>
+ *     <li>{@code POST /sign-row} &ndash; body: {@link RowRequest} properties</li>
+ *     <li>{@code POST /sign-electronic} &ndash; body: {@link ElectronicRequest} properties</li>
+ *     <li>{@code POST /verify} &ndash; body: {@code {"pdf": "<path>"}}</li>
+ * </ul>
+ */
+final class SigningService {
+
+    /** Largest request body either transport accepts; larger ones are answered with 413. */
+    static final int MAX_BODY_BYTES = 1024 * 1024;
+
+    private static final Logger log = LoggerFactory.getLogger(SigningService.class);
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ThreadPoolExecutor workers;
+    private final SigningServer.Params defaults;
+    private final Path dataRoot;
+    private final NursingRecordSigner rowSigner = new NursingRecordSigner();
+    private final Map<String, Boolean> busyDestinations = new ConcurrentHashMap<>();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    SigningService(ThreadPoolExecutor workers, SigningServer.Params defaults) {
+        this.workers = Objects.requireNonNull(workers, "workers");
+        this.defaults = Objects.requireNonNull(defaults, "defaults");
+        Path root = defaults.getDataRoot() != null ? defaults.getDataRoot() : Path.of("");
+        try {
+            this.dataRoot = root.toRealPath();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Data root " + root.toAbsolutePath() + " does not exist", e);
+        }
+        if (!Files.isDirectory(dataRoot)) {
+            throw new IllegalArgumentException("Data root " + dataRoot + " is not a directory");
+        }
+    }
+
+    /**
+     * HTTP-style reply: status code, content type and body. Replies are UTF-8 JSON unless stated otherwise.
+     */
+    record Response(int status, String contentType, byte[] body) {
+        static final String JSON = "application/json; charset=utf-8";
+        static final String PROMETHEUS = "text/plain; version=0.0.4; charset=utf-8";
+
+        Response(int status, byte[] body) {
+            this(status, JSON, body);
+        }
+    }
+
+    Response handle(String method, String path, byte[] body) {
+        long received = System.nanoTime();
+        try {
+            switch (path) {
+                case "/health":
+                    requireMethod(method, "GET");
+                    return json(200, health());
+                case "/metrics":
+                    requireMethod(method, "GET");
+                    return metrics();
+                case "/sign-row":
+                    requireMethod(method, "POST");
+                    return json(200, signRow(read(body, RowRequest.class), received));
+                case "/sign-electronic":
+                    requireMethod(method, "POST");
+                    return json(200, signElectronic(read(body, ElectronicRequest.class), received));
+                case "/verify":
+                    requireMethod(method, "POST");
+                    return json(200, verify(read(body, VerifyRequest.class), received));
+                default:
+                    return error(404, "Unknown endpoint: " + path);
+            }
+        } catch (MethodNotAllowed e) {
+            return error(405, e.getMessage());
+        } catch (JsonProcessingException e) {
+            return error(400, "Malformed request body: " + e.getOriginalMessage());
+        } catch (IllegalArgumentException e) {
+            return error(400, e.getMessage());
+        } catch (DestinationBusy e) {
+            return error(409, e.getMessage());
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            return error(503, "Signing queue is full, retry later");
+        } catch (TimeoutException e) {
+            failed.incrementAndGet();
+            return error(504, "Request did not finish within " + defaults.getRequestTimeoutSeconds() + "s");
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            log.warn("[serve] {} {} failed", method, path, e);
+            return error(500, e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+    }
+
+    private ObjectNode signRow(RowRequest request, long received) throws Exception {
+        NursingRecordSigner.SignParams params = new NursingRecordSigner.SignParams();
+        params.setSource(resolve("source", request.source(), true));
+        params.setDestination(resolve("destination", request.destination(), false));
+        if (request.row() == null) {
+            throw new IllegalArgumentException("'row' is required");
+        }
+        params.setRow(request.row());
+        params.setTimeValue(request.timeValue());
+        params.setTextValue(request.textValue());
+        params.setNurse(request.nurse());
+        if (request.reason() != null) {
+            params.setReason(request.reason());
+        }
+        if (request.location() != null) {
+            params.setLocation(request.location());
+        }
+        if (request.contact() != null) {
+            params.setContact(request.contact());
+        }
+        params.setTsaUrl(request.tsaUrl());
+        params.setPkcs12Path(defaults.getPkcs12Path());
+        params.setPassword(defaults.getPassword());
+        params.setCjkFontPath(defaults.getCjkFontPath());
+        // Only the daemon's queue directory is used, and only with a TSA.
+        boolean queueTimestamp = defaults.getTimestampQueue() != null
+                && params.getTsaUrl() != null && !params.getTsaUrl().isBlank();
+        params.setTimestampQueue(queueTimestamp ? defaults.getTimestampQueue().toString() : null);
+        long started = runExclusive(params.getDestination(), () -> {
+            long begin = System.nanoTime();
+            rowSigner.signRow(params);
+            return begin;
+        });
+        ObjectNode reply = timings(received, started);
+        reply.put("destination", params.getDestination());
+        reply.put("row", params.getRow());
+        return reply;
+    }
+
+    private ObjectNode signElectronic(ElectronicRequest request, long received) throws Exception {
+        ElectronicSignatureSigner.Params params = new ElectronicSignatureSigner.Params();
+        params.setSource(resolve("source", request.source(), true));
+        params.setDestination(resolve("destination", request.destination(), false));
+        if (request.fieldName() != null) {
+            params.setFieldName(request.fieldName());
+        }
+        if (request.page() != null) {
+            params.setPage(request.page());
+        }
+        if (request.x() != null) {
+            params.setX(request.x());
+        }
+        if (request.y() != null) {
+            params.setY(request.y());
+        }
+        if (request.width() != null) {
+            params.setWidth(request.width());
+        }
+        if (request.height() != null) {
+            params.setHeight(request.height());
+        }
+        params.setSignerName(request.signerName());
+        if (request.reason() != null) {
+            params.setReason(request.reason());
+        }
+        if (request.location() != null) {
+            params.setLocation(request.location());
+        }
+        if (request.contact() != null) {
+            params.setContact(request.contact());
+        }
+        params.setTsaUrl(request.tsaUrl());
+        params.setPkcs12Path(defaults.getPkcs12Path());
+        params.setPassword(defaults.getPassword());
+        long started = runExclusive(params.getDestination(), () -> {
+            long begin = System.nanoTime();
+            ElectronicSignatureSigner.sign(params);
+            return begin;
+        });
+        ObjectNode reply = timings(received, started);
+        reply.put("destination", params.getDestination());
+        reply.put("field", params.getFieldName());
+        return reply;
+    }
+
+    private ObjectNode verify(VerifyRequest request, long received) throws Exception {
+        String pdf = resolve("pdf", request.getPdf(), true);
+        long[] started = new long[1];
+        List<SignatureVerifier.Result> results = await(workers.submit(() -> {
+            started[0] = System.nanoTime();
+            return SignatureVerifier.inspect(pdf);
+        }));
+        ObjectNode reply = timings(received, started[0]);
+        boolean allValid = !results.isEmpty();
+        ArrayNode signatures = reply.putArray("signatures");
+        for (SignatureVerifier.Result result : results) {
+            ObjectNode node = signatures.addObject();
+            node.put("name", result.getName());
+            node.put("valid", result.isValid());
+            node.put("coversWholeDocument", result.isCoversWholeDocument());
+            node.put("algorithm", result.getAlgorithm());
+            node.put("subject", result.getSubject());
+            if (result.getChain() != null) {
+                node.put("trusted", result.getChain().isTrusted());
+                node.put("chain", result.getChain().toString());
+            }
+            allValid &= result.isAccepted();
+        }
+        reply.put("valid", allValid);
+        return reply;
+    }
+
+    private Response metrics() throws IOException {
+        StringWriter text = new StringWriter();
+        Metrics.registry().writePrometheus(text);
+        return new Response(200, Response.PROMETHEUS, text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private ObjectNode health() {
+        ObjectNode reply = mapper.createObjectNode();
+        reply.put("status", "ok");
+        reply.put("workers", workers.getMaximumPoolSize());
+        reply.put("active", workers.getActiveCount());
+        reply.put("queued", workers.getQueue().size());
+        reply.put("queueCapacity", workers.getQueue().size() + workers.getQueue().remainingCapacity());
+        reply.put("completed", completed.get());
+        reply.put("failed", failed.get());
+        reply.put("rejected", rejected.get());
+        reply.put("keyCacheEntries", KeyMaterialCache.size());
+        reply.put("certPathCacheEntries", CertPathCache.size());
+        reply.put("fontCache", FontRegistry.describeStats());
+        return reply;
+    }
+
+    /**
+     * Runs {@code task} on the worker pool while holding the destination, returning the task's start timestamp.
+     *
+     * <p>The destination is released by the task itself when it ends, not when the caller stops waiting: a timed-out
+     * worker cannot be interrupted out of file I/O, and a retry must not write the same file next to it. Only a task
+     * that never started is released by the caller.</p>
+     */
+    private long runExclusive(String destination, Callable<Long> task) throws Exception {
+        String key = Path.of(destination).toAbsolutePath().normalize().toString();
+        if (busyDestinations.putIfAbsent(key, Boolean.TRUE) != null) {
+            throw new DestinationBusy("Another request is already writing " + key);
+        }
+        AtomicBoolean claimed = new AtomicBoolean();
+        Callable<Long> guarded = () -> {
+            if (!claimed.compareAndSet(false, true)) {
+                throw new CancellationException("Request for " + key + " was abandoned before it started");
+            }
+            try {
+                return task.call();
+            } finally {
+                busyDestinations.remove(key);
+            }
+        };
+        Future<Long> future;
+        try {
+            future = workers.submit(guarded);
+        } catch (RejectedExecutionException e) {
+            busyDestinations.remove(key);
+            throw e;
+        }
+        try {
+            return await(future);
+        } finally {
+            if (claimed.compareAndSet(false, true)) {
+                busyDestinations.remove(key);
+            }
+        }
+    }
+
+    private <T> T await(Future<T> future) throws Exception {
+        try {
+            T value = future.get(defaults.getRequestTimeoutSeconds(), TimeUnit.SECONDS);
+            completed.incrementAndGet();
+            return value;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    private ObjectNode timings(long received, long started) {
+        long finished = System.nanoTime();
+        ObjectNode reply = mapper.createObjectNode();
+        reply.put("status", "ok");
+        reply.put("queueMillis", TimeUnit.NANOSECONDS.toMillis(started - received));
+        reply.put("millis", TimeUnit.NANOSECONDS.toMillis(finished - started));
+        return reply;
+    }
+
+    private <T> T read(byte[] body, Class<T> type) throws JsonProcessingException {
+        if (body == null || body.length == 0) {
+            throw new IllegalArgumentException("Request body is required");
+        }
+        return mapper.readValue(new String(body, StandardCharsets.UTF_8), type);
+    }
+
+    /**
+     * Resolves a request path against the data root and refuses anything that ends up outside it, through {@code ..}
+     * or an absolute path as well as through a symbolic link. Paths to be written only need an existing parent.
+     */
+    private String resolve(String property, String requested, boolean mustExist) throws IOException {
+        if (requested == null || requested.isBlank()) {
+            throw new IllegalArgumentException("'" + property + "' is required");
+        }
+        Path resolved = dataRoot.resolve(requested).normalize();
+        Path existing = mustExist || Files.exists(resolved) ? resolved : resolved.getParent();
+        if (!resolved.startsWith(dataRoot) || existing == null || !Files.exists(existing)
+                || !existing.toRealPath().startsWith(dataRoot)) {
+            throw new IllegalArgumentException("'" + property + "' must name "
+                    + (mustExist ? "an existing file" : "a file in an existing directory") + " under the data root: "
+                    + requested);
+        }
+        return resolved.toString();
+    }
+
+    private static void requireMethod(String actual, String expected) throws MethodNotAllowed {
+        if (!expected.equalsIgnoreCase(actual)) {
+            throw new MethodNotAllowed(expected + " required");
+        }
+    }
+
+    private Response json(int status, ObjectNode node) throws JsonProcessingException {
+        return new Response(status, mapper.writeValueAsBytes(node));
+    }
+
+    private Response error(int status, String message) {
+        ObjectNode node = mapper.createObjectNode();
+        node.put("status", "error");
+        node.put("error", message);
+        try {
+            return json(status, node);
+        } catch (JsonProcessingException e) {
+            return new Response(status, "{\"status\":\"error\"}".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Body of {@code POST /sign-row}. Properties left out keep the {@code sign-row} defaults.
+     */
+    record RowRequest(String source, String destination, Integer row, String timeValue, String textValue,
+            String nurse, String reason, String location, String contact, String tsaUrl) {
+    }
+
+    /**
+     * Body of {@code POST /sign-electronic}. Properties left out keep the {@code sign-electronic} defaults.
+     */
+    record ElectronicRequest(String source, String destination, String fieldName, Integer page, Float x, Float y,
+            Float width, Float height, String signerName, String reason, String location, String contact,
+            String tsaUrl) {
+    }
+
+    /**
+     * Body of {@code POST /verify}.
+     */
+    static final class VerifyRequest {
+        private String pdf;
+
+        public String getPdf() {
+            return pdf;
+        }
+
+        public void setPdf(String pdf) {
+            this.pdf = pdf;
+        }
+    }
+
+    private static final class MethodNotAllowed extends Exception {
+        MethodNotAllowed(String message) {
+            super(message);
+        }
+    }
+
+    private static final class DestinationBusy extends Exception {
+        DestinationBusy(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.demo.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Serves {@link SigningService} over a Unix domain socket using a minimal HTTP/1.1 framing, so the same requests work
+ * with {@code curl --unix-socket}. One request is read per connection and the connection is closed after the reply.
+ * The socket file is restricted to its owner where the file system supports POSIX permissions.
+ */
+final class UnixSocketListener {
+
+    private static final Logger log = LoggerFactory.getLogger(UnixSocketListener.class);
+    private static final int MAX_HEADER_BYTES = 16 * 1024;
+
+    private final Path socketPath;
+    private final SigningService service;
+    private final ExecutorService io;
+    private ServerSocketChannel channel;
+    private Thread acceptor;
+
+    UnixSocketListener(Path socketPath, SigningService service, ExecutorService io) {
+        this.socketPath = socketPath.toAbsolutePath();
+        this.service = service;
+        this.io = io;
+    }
+
+    void start() throws IOException {
+        Files.deleteIfExists(socketPath);
+        channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.bind(UnixDomainSocketAddress.of(socketPath));
+        try {
+            Files.setPosixFilePermissions(socketPath, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException ignore) {
+        }
+        acceptor = new Thread(this::acceptLoop, "sign-unix-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    void close() {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException ignore) {
+        }
+        try {
+            Files.deleteIfExists(socketPath);
+        } catch (IOException ignore) {
+        }
+    }
+
+    private void acceptLoop() {
+        while (channel.isOpen()) {
+            SocketChannel client;
+            try {
+                client = channel.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                log.warn("[serve] unix accept failed: {}", e.toString());
+                continue;
+            }
+            try {
+                io.execute(() -> serve(client));
+            } catch (RejectedExecutionException e) {
+                closeQuietly(client);
+            }
+        }
+    }
+
+    private void serve(SocketChannel client) {
+        try (client;
+             InputStream in = new BufferedInputStream(Channels.newInputStream(client));
+             OutputStream out = Channels.newOutputStream(client)) {
+            SigningService.Response response;
+            String requestLine = readLine(in);
+            String[] parts = requestLine != null ? requestLine.split(" ") : new String[0];
+            if (parts.length < 2) {
+                response = new SigningService.Response(400, "{\"status\":\"error\",\"error\":\"Bad request line\"}"
+                        .getBytes(StandardCharsets.UTF_8));
+            } else {
+                int contentLength = 0;
+                String header;
+                while ((header = readLine(in)) != null && !header.isEmpty()) {
+                    int colon = header.indexOf(':');
+                    if (colon > 0 && header.substring(0, colon).trim().equalsIgnoreCase("Content-Length")) {
+                        contentLength = Integer.parseInt(header.substring(colon + 1).trim());
+                    }
+                }
+                if (contentLength < 0) {
+                    throw new IOException("Invalid Content-Length: " + contentLength);
+                }
+                if (contentLength > SigningService.MAX_BODY_BYTES) {
+                    response = SigningServer.TOO_LARGE;
+                } else {
+                    byte[] body = in.readNBytes(contentLength);
+                    String target = parts[1];
+                    int query = target.indexOf('?');
+                    response = service.handle(parts[0], query >= 0 ? target.substring(0, query) : target, body);
+                }
+            }
+            String head = "HTTP/1.1 " + response.status() + " " + reason(response.status()) + "\r\n"
+                    + "Content-Type: " + response.contentType() + "\r\n"
+                    + "Content-Length: " + response.body().length + "\r\n"
+                    + "Connection: close\r\n\r\n";
+            out.write(head.getBytes(StandardCharsets.US_ASCII));
+            out.write(response.body());
+            out.flush();
+        } catch (IOException | RuntimeException e) {
+            log.warn("[serve] unix request failed: {}", e.toString());
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                break;
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+            if (line.size() > MAX_HEADER_BYTES) {
+                throw new IOException("Header line too long");
+            }
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        return line.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    private static String reason(int status) {
+        switch (status) {
+            case 200:
+                return "OK";
+            case 400:
+                return "Bad Request";
+            case 404:
+                return "Not Found";
+            case 405:
+                return "Method Not Allowed";
+            case 409:
+                return "Conflict";
+            case 413:
+                return "Payload Too Large";
+            case 500:
+                return "Internal Server Error";
+            case 503:
+                return "Service Unavailable";
+            case 504:
+                return "Gateway Timeout";
+            default:
+                return String.format(Locale.ROOT, "Status %d", status);
+        }
+    }
+
+    private static void closeQuietly(SocketChannel client) {
+        try {
+            client.close();
+        } catch (IOException ignore) {
+        }
+    }
+}
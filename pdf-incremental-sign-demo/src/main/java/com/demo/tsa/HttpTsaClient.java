@@ -0,0 +1,163 @@
+package com.demo.tsa;
+
+import com.demo.metrics.Metrics;
+import com.itextpdf.text.pdf.security.TSAClient;
+import org.bouncycastle.tsp.TSPException;
+import org.bouncycastle.tsp.TimeStampRequest;
+import org.bouncycastle.tsp.TimeStampResponse;
+import org.bouncycastle.tsp.TimeStampToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * RFC 3161 client over a shared, keep-alive {@link HttpClient}.
+ *
+ * <p>One instance per TSA URL is kept by {@link TsaClients}, so consecutive signatures reuse the pooled connections
+ * instead of opening one per token as {@code TSAClientBouncyCastle} does. Every request is bounded by
+ * {@link #TIMEOUT_PROPERTY}. After {@link #FAILURE_THRESHOLD_PROPERTY} consecutive failures the circuit opens and
+ * requests fail at once for {@link #OPEN_SECONDS_PROPERTY} seconds; the first request after that is let through as a
+ * probe and closes the circuit again if it succeeds.</p>
+ *
+ * <p>Each round trip is recorded as a {@link Metrics#TSA_REQUEST} operation with a {@link Metrics#TSA} phase, and
+ * each request refused by the open circuit as a {@link Metrics#CIRCUIT_OPEN} phase.</p>
+ */
+public final class HttpTsaClient implements TSAClient {
+
+    public static final String TIMEOUT_PROPERTY = "demo.tsa.timeoutMillis";
+    public static final String FAILURE_THRESHOLD_PROPERTY = "demo.tsa.failureThreshold";
+    public static final String OPEN_SECONDS_PROPERTY = "demo.tsa.openSeconds";
+
+    private static final Logger log = LoggerFactory.getLogger(HttpTsaClient.class);
+
+    private static final HttpClient HTTP = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofMillis(Long.getLong(TIMEOUT_PROPERTY, 10_000L)))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+
+    private final URI uri;
+    private final Duration timeout;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final TokenSizeEstimate estimate = new TokenSizeEstimate();
+
+    private final Object lock = new Object();
+    private int consecutiveFailures;
+    private long openUntil;
+    private boolean probing;
+
+    HttpTsaClient(URI uri) {
+        this.uri = Objects.requireNonNull(uri, "uri");
+        this.timeout = Duration.ofMillis(Long.getLong(TIMEOUT_PROPERTY, 10_000L));
+        this.failureThreshold = Math.max(1, Integer.getInteger(FAILURE_THRESHOLD_PROPERTY, 5));
+        this.openNanos = Duration.ofSeconds(Long.getLong(OPEN_SECONDS_PROPERTY, 30L)).toNanos();
+    }
+
+    @Override
+    public int getTokenSizeEstimate() {
+        return estimate.get();
+    }
+
+    @Override
+    public MessageDigest getMessageDigest() throws GeneralSecurityException {
+        return MessageDigest.getInstance(TsaClients.DIGEST_ALGORITHM);
+    }
+
+    @Override
+    public byte[] getTimeStampToken(byte[] imprint) throws Exception {
+        admit();
+        TimeStampRequest request = TsaClients.newRequest(imprint);
+        boolean success = false;
+        try (Metrics.Operation op = Metrics.start(Metrics.TSA_REQUEST)) {
+            byte[] token;
+            try (Metrics.Phase ignored = op.phase(Metrics.TSA)) {
+                token = exchange(request);
+            }
+            op.succeeded();
+            success = true;
+            estimate.observe(token.length);
+            return token;
+        } finally {
+            record(success);
+        }
+    }
+
+    private byte[] exchange(TimeStampRequest request) throws IOException, InterruptedException, TSPException {
+        HttpRequest http = HttpRequest.newBuilder(uri)
+                .timeout(timeout)
+                .header("Content-Type", "application/timestamp-query")
+                .header("Accept", "application/timestamp-reply")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(request.getEncoded()))
+                .build();
+        HttpResponse<byte[]> response;
+        try {
+            response = HTTP.send(http, HttpResponse.BodyHandlers.ofByteArray());
+        } catch (HttpTimeoutException e) {
+            throw new IOException("TSA " + uri + " did not answer within " + timeout.toMillis() + " ms", e);
+        } catch (IOException e) {
+            throw new IOException("TSA " + uri + " is unreachable: " + e, e);
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException("TSA " + uri + " answered HTTP " + response.statusCode());
+        }
+        TimeStampResponse reply = new TimeStampResponse(response.body());
+        reply.validate(request);
+        TimeStampToken token = reply.getTimeStampToken();
+        if (token == null) {
+            throw new IOException("TSA " + uri + " refused the request: status " + reply.getStatus() + ", "
+                    + reply.getStatusString());
+        }
+        return token.getEncoded();
+    }
+
+    private void admit() throws IOException {
+        synchronized (lock) {
+            if (consecutiveFailures < failureThreshold) {
+                return;
+            }
+            if (!probing && System.nanoTime() - openUntil >= 0) {
+                probing = true;
+                log.info("[tsa] {} circuit half-open, probing", uri);
+                return;
+            }
+        }
+        Metrics.registry().recordPhase(Metrics.TSA_REQUEST, Metrics.CIRCUIT_OPEN, 0L, -1L);
+        throw new IOException("TSA " + uri + " is unavailable (circuit open after " + failureThreshold
+                + " consecutive failures)");
+    }
+
+    private void record(boolean success) {
+        synchronized (lock) {
+            probing = false;
+            if (success) {
+                if (consecutiveFailures >= failureThreshold) {
+                    log.info("[tsa] {} circuit closed", uri);
+                }
+                consecutiveFailures = 0;
+                return;
+            }
+            consecutiveFailures++;
+            if (consecutiveFailures >= failureThreshold) {
+                openUntil = System.nanoTime() + openNanos;
+                log.warn("[tsa] {} circuit open for {} s after {} consecutive failures", uri,
+                        Duration.ofNanos(openNanos).toSeconds(), consecutiveFailures);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HttpTsaClient[" + uri + "]";
+    }
+}
@@ -0,0 +1,153 @@
+package com.demo.tsa;
+
+import com.demo.crypto.DemoKeystoreUtil;
+import com.demo.metrics.Metrics;
+import com.itextpdf.text.pdf.security.TSAClient;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.nist.NISTObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaCertStore;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoGeneratorBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.bouncycastle.tsp.TSPAlgorithms;
+import org.bouncycastle.tsp.TimeStampRequest;
+import org.bouncycastle.tsp.TimeStampResponse;
+import org.bouncycastle.tsp.TimeStampResponseGenerator;
+import org.bouncycastle.tsp.TimeStampToken;
+import org.bouncycastle.tsp.TimeStampTokenGenerator;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for a time-stamping authority, selected with the TSA URL {@code local:} or
+ * {@code local:<millis>}.
+ *
+ * <p>Tokens are issued by BouncyCastle's {@link TimeStampResponseGenerator} under a self-signed P-256 certificate that
+ * is created once per JVM, so they have the same structure and size as a real TSA's but no verifier will trust them.
+ * The optional {@code <millis>} delays every token to stand in for the network round trip. Meant for load tests and
+ * demos where no TSA is reachable, never for records that have to hold up.</p>
+ */
+public final class LocalTsa implements TSAClient {
+
+    /** Policy of the issued tokens, from the arc reserved for examples. */
+    static final ASN1ObjectIdentifier POLICY = new ASN1ObjectIdentifier("1.3.6.1.4.1.99999.1");
+
+    private static final AtomicLong SERIAL = new AtomicLong(System.currentTimeMillis());
+
+    private static volatile TimeStampResponseGenerator generator;
+
+    private final long delayMillis;
+    private final TokenSizeEstimate estimate = new TokenSizeEstimate();
+
+    LocalTsa(long delayMillis) {
+        if (delayMillis < 0) {
+            throw new IllegalArgumentException("Local TSA delay must be >= 0");
+        }
+        this.delayMillis = delayMillis;
+    }
+
+    @Override
+    public int getTokenSizeEstimate() {
+        return estimate.get();
+    }
+
+    @Override
+    public MessageDigest getMessageDigest() throws GeneralSecurityException {
+        return MessageDigest.getInstance(TsaClients.DIGEST_ALGORITHM);
+    }
+
+    @Override
+    public byte[] getTimeStampToken(byte[] imprint) throws Exception {
+        TimeStampRequest request = TsaClients.newRequest(imprint);
+        try (Metrics.Operation op = Metrics.start(Metrics.TSA_REQUEST)) {
+            byte[] token;
+            try (Metrics.Phase ignored = op.phase(Metrics.TSA)) {
+                if (delayMillis > 0) {
+                    Thread.sleep(delayMillis);
+                }
+                TimeStampResponseGenerator tsa = generator();
+                TimeStampResponse response;
+                // The generator signs with a single ContentSigner, which is not thread-safe.
+                synchronized (tsa) {
+                    response = tsa.generate(request, BigInteger.valueOf(SERIAL.incrementAndGet()), new Date());
+                }
+                response.validate(request);
+                TimeStampToken issued = response.getTimeStampToken();
+                if (issued == null) {
+                    throw new IOException("Local TSA refused the request: " + response.getStatusString());
+                }
+                token = issued.getEncoded();
+            }
+            op.succeeded();
+            estimate.observe(token.length);
+            return token;
+        }
+    }
+
+    private static TimeStampResponseGenerator generator() throws Exception {
+        TimeStampResponseGenerator current = generator;
+        if (current == null) {
+            synchronized (LocalTsa.class) {
+                current = generator;
+                if (current == null) {
+                    current = newGenerator();
+                    generator = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static TimeStampResponseGenerator newGenerator() throws Exception {
+        DemoKeystoreUtil.ensureProvider();
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("EC");
+        kpg.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair kp = kpg.generateKeyPair();
+
+        X500Name subject = new X500Name("CN=Local Demo TSA");
+        long now = System.currentTimeMillis();
+        JcaX509v3CertificateBuilder certBuilder = new JcaX509v3CertificateBuilder(subject, BigInteger.valueOf(now),
+                new Date(now - 3600_000L), new Date(now + 365L * 24 * 3600_000L), subject, kp.getPublic());
+        certBuilder.addExtension(Extension.basicConstraints, true, new BasicConstraints(false));
+        certBuilder.addExtension(Extension.keyUsage, true, new KeyUsage(KeyUsage.digitalSignature));
+        certBuilder.addExtension(Extension.extendedKeyUsage, true,
+                new ExtendedKeyUsage(KeyPurposeId.id_kp_timeStamping));
+        X509CertificateHolder cert = certBuilder.build(new JcaContentSignerBuilder("SHA256withECDSA")
+                .setProvider(BouncyCastleProvider.PROVIDER_NAME)
+                .build(kp.getPrivate()));
+
+        TimeStampTokenGenerator tokens = new TimeStampTokenGenerator(
+                new JcaSimpleSignerInfoGeneratorBuilder()
+                        .setProvider(BouncyCastleProvider.PROVIDER_NAME)
+                        .build("SHA256withECDSA", kp.getPrivate(), cert),
+                new JcaDigestCalculatorProviderBuilder().build()
+                        .get(new AlgorithmIdentifier(NISTObjectIdentifiers.id_sha256)),
+                POLICY);
+        tokens.addCertificates(new JcaCertStore(List.of(cert)));
+        return new TimeStampResponseGenerator(tokens, TSPAlgorithms.ALLOWED);
+    }
+
+    @Override
+    public String toString() {
+        return delayMillis > 0 ? "LocalTsa[" + delayMillis + " ms]" : "LocalTsa";
+    }
+}
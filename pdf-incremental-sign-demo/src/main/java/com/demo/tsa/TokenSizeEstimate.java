@@ -0,0 +1,30 @@
+package com.demo.tsa;
+
+/**
+ * Token size estimate that starts generous and then follows the largest token actually received.
+ *
+ * <p>The estimate sizes the {@code /Contents} placeholder, so a tight one saves hex padding in every revision. Before
+ * the first token the size is unknown, and a token that carries the TSA's certificate chain easily exceeds 4 KB, so
+ * {@link #DEFAULT} leaves room for one. After that the estimate only grows: a TSA's tokens differ by a few bytes at
+ * most (serial number, nonce, time), which {@link #SLACK} covers.</p>
+ */
+final class TokenSizeEstimate {
+
+    static final int DEFAULT = 8192;
+    static final int SLACK = 512;
+
+    private volatile int largest;
+
+    int get() {
+        int seen = largest;
+        return seen > 0 ? seen + SLACK : DEFAULT;
+    }
+
+    void observe(int tokenLength) {
+        synchronized (this) {
+            if (tokenLength > largest) {
+                largest = tokenLength;
+            }
+        }
+    }
+}
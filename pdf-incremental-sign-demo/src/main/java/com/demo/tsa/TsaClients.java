@@ -0,0 +1,67 @@
+package com.demo.tsa;
+
+import com.itextpdf.text.pdf.security.TSAClient;
+import org.bouncycastle.tsp.TSPAlgorithms;
+import org.bouncycastle.tsp.TimeStampRequest;
+import org.bouncycastle.tsp.TimeStampRequestGenerator;
+
+import java.math.BigInteger;
+import java.net.URI;
+import java.security.SecureRandom;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves the {@code --tsaUrl} of the signing commands to a {@link TSAClient}.
+ *
+ * <p>{@code http} and {@code https} URLs get an {@link HttpTsaClient}; {@code local:} or {@code local:<millis>} gets
+ * the in-process {@link LocalTsa}. Clients are kept per URL for the life of the JVM, so the connection pool, the
+ * circuit breaker state and the learned token size carry over from one signature to the next.</p>
+ */
+public final class TsaClients {
+
+    public static final String LOCAL_SCHEME = "local:";
+
+    /** Imprint algorithm of every token request. */
+    static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private static final Map<String, TSAClient> CLIENTS = new ConcurrentHashMap<>();
+    private static final SecureRandom NONCES = new SecureRandom();
+
+    private TsaClients() {
+    }
+
+    /**
+     * Returns the shared client for {@code url}, or {@code null} when no timestamp is requested.
+     */
+    public static TSAClient forUrl(String url) {
+        if (url == null || url.isBlank()) {
+            return null;
+        }
+        return CLIENTS.computeIfAbsent(url.trim(), TsaClients::create);
+    }
+
+    private static TSAClient create(String url) {
+        if (url.toLowerCase(Locale.ROOT).startsWith(LOCAL_SCHEME)) {
+            String delay = url.substring(LOCAL_SCHEME.length());
+            try {
+                return new LocalTsa(delay.isEmpty() ? 0L : Long.parseLong(delay));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Expected local: or local:<millis>, got " + url, e);
+            }
+        }
+        URI uri = URI.create(url);
+        String scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase(Locale.ROOT) : "";
+        if (!scheme.equals("http") && !scheme.equals("https")) {
+            throw new IllegalArgumentException("Unsupported TSA URL " + url + " (expected http, https or local:)");
+        }
+        return new HttpTsaClient(uri);
+    }
+
+    static TimeStampRequest newRequest(byte[] imprint) {
+        TimeStampRequestGenerator generator = new TimeStampRequestGenerator();
+        generator.setCertReq(true);
+        return generator.generate(TSPAlgorithms.SHA256, imprint, new BigInteger(64, NONCES));
+    }
+}
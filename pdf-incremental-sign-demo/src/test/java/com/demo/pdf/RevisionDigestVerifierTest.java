@@ -0,0 +1,188 @@
+package com.demo.pdf;
+
+import com.demo.crypto.DemoKeystoreUtil;
+import com.demo.metrics.Metrics;
+import com.itextpdf.text.Rectangle;
+import com.itextpdf.text.pdf.AcroFields;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfSignatureAppearance;
+import com.itextpdf.text.pdf.PdfStamper;
+import com.itextpdf.text.pdf.security.BouncyCastleDigest;
+import com.itextpdf.text.pdf.security.DigestAlgorithms;
+import com.itextpdf.text.pdf.security.MakeSignature;
+import com.itextpdf.text.pdf.security.PrivateKeySignature;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks {@link RevisionDigestVerifier} against iText's own {@link AcroFields#verifySignature(String)} on intact and
+ * damaged documents.
+ */
+class RevisionDigestVerifierTest {
+
+    private static final char[] PASSWORD = "123456".toCharArray();
+
+    @TempDir
+    Path dir;
+
+    @BeforeAll
+    static void provider() {
+        DemoKeystoreUtil.ensureProvider();
+    }
+
+    @Test
+    void intactSignatureIsAccepted() throws Exception {
+        KeyStore.PrivateKeyEntry nurse = identity("nurse", "Demo Nurse");
+        Path pdf = sign(template(), nurse, nurse);
+
+        assertAgreesWithItext(pdf, true);
+    }
+
+    @Test
+    void tamperedPrefixIsRejected() throws Exception {
+        KeyStore.PrivateKeyEntry nurse = identity("nurse", "Demo Nurse");
+        Path pdf = sign(template(), nurse, nurse);
+
+        byte[] bytes = Files.readAllBytes(pdf);
+        int headerEnd = indexOf(bytes, "\n".getBytes(StandardCharsets.US_ASCII), 0);
+        assertEquals('%', bytes[headerEnd + 1], "expected the binary comment line after the header");
+        bytes[headerEnd + 2] ^= 0x01;
+        Files.write(pdf, bytes);
+
+        assertAgreesWithItext(pdf, false);
+    }
+
+    @Test
+    void signatureByAnotherKeyIsRejected() throws Exception {
+        KeyStore.PrivateKeyEntry nurse = identity("nurse", "Demo Nurse");
+        KeyStore.PrivateKeyEntry impostor = identity("impostor", "Demo Nurse");
+        Path pdf = sign(template(), impostor, nurse);
+
+        assertAgreesWithItext(pdf, false);
+    }
+
+    @Test
+    void shortenedByteRangeIsRejected() throws Exception {
+        KeyStore.PrivateKeyEntry nurse = identity("nurse", "Demo Nurse");
+        Path pdf = sign(template(), nurse, nurse);
+
+        byte[] bytes = Files.readAllBytes(pdf);
+        int key = lastIndexOf(bytes, "/ByteRange".getBytes(StandardCharsets.US_ASCII));
+        int open = indexOf(bytes, "[".getBytes(StandardCharsets.US_ASCII), key);
+        int close = indexOf(bytes, "]".getBytes(StandardCharsets.US_ASCII), open);
+        String[] parts = new String(bytes, open + 1, close - open - 1, StandardCharsets.US_ASCII).trim().split("\\s+");
+        assertEquals(4, parts.length);
+        String shortened = parts[0] + " " + parts[1] + " " + parts[2] + " " + (Long.parseLong(parts[3]) - 1);
+        byte[] replacement = String.format("%-" + (close - open - 1) + "s", shortened)
+                .getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(replacement, 0, bytes, open + 1, replacement.length);
+        Files.write(pdf, bytes);
+
+        assertAgreesWithItext(pdf, false);
+    }
+
+    /**
+     * Verifies every signature of {@code pdf} both ways and requires the same verdict, which must be {@code expected}.
+     */
+    private static void assertAgreesWithItext(Path pdf, boolean expected) throws Exception {
+        PdfReader reader = new PdfReader(pdf.toString());
+        try {
+            AcroFields fields = reader.getAcroFields();
+            List<String> names = fields.getSignatureNames();
+            assertTrue(!names.isEmpty(), "no signatures in " + pdf);
+            List<SignatureVerifier.Result> results = RevisionDigestVerifier.verify(pdf, reader, fields, names,
+                    Metrics.untracked());
+            boolean allValid = true;
+            for (int i = 0; i < names.size(); i++) {
+                String name = names.get(i);
+                boolean itext = verifiedByItext(fields, name);
+                assertEquals(itext, results.get(i).isValid(), "verdict for '" + name + "'");
+                allValid &= itext;
+            }
+            assertEquals(expected, allValid);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static boolean verifiedByItext(AcroFields fields, String name) {
+        try {
+            return fields.verifySignature(name).verify();
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private Path template() throws Exception {
+        Path template = dir.resolve("template.pdf");
+        NursingRecordTemplate.createTemplate(template.toString(), 2);
+        return template;
+    }
+
+    private KeyStore.PrivateKeyEntry identity(String file, String commonName) throws Exception {
+        Path p12 = dir.resolve(file + ".p12");
+        DemoKeystoreUtil.createDemoP12(p12, PASSWORD, commonName);
+        KeyStore ks = DemoKeystoreUtil.loadKeyStore(p12.toString(), PASSWORD);
+        return DemoKeystoreUtil.firstPrivateKey(ks, PASSWORD);
+    }
+
+    /**
+     * Signs {@code source} with {@code signer}'s key while embedding {@code claimed}'s certificate chain.
+     */
+    private Path sign(Path source, KeyStore.PrivateKeyEntry signer, KeyStore.PrivateKeyEntry claimed)
+            throws Exception {
+        Path dest = dir.resolve("signed.pdf");
+        PdfReader reader = new PdfReader(source.toString());
+        try (OutputStream out = Files.newOutputStream(dest)) {
+            PdfStamper stamper = PdfStamper.createSignature(reader, out, '\0', null, true);
+            PdfSignatureAppearance appearance = stamper.getSignatureAppearance();
+            appearance.setVisibleSignature(new Rectangle(36, 36, 180, 72), 1, "sig_test");
+            MakeSignature.signDetached(appearance, new BouncyCastleDigest(),
+                    new PrivateKeySignature(signer.getPrivateKey(), DigestAlgorithms.SHA256,
+                            BouncyCastleProvider.PROVIDER_NAME),
+                    claimed.getCertificateChain(), null, null, null, 0, MakeSignature.CryptoStandard.CMS);
+        } finally {
+            reader.close();
+        }
+        return dest;
+    }
+
+    private static int indexOf(byte[] haystack, byte[] needle, int from) {
+        for (int i = from; i <= haystack.length - needle.length; i++) {
+            if (regionMatches(haystack, i, needle)) {
+                return i;
+            }
+        }
+        throw new AssertionError("'" + new String(needle, StandardCharsets.US_ASCII) + "' not found");
+    }
+
+    private static int lastIndexOf(byte[] haystack, byte[] needle) {
+        for (int i = haystack.length - needle.length; i >= 0; i--) {
+            if (regionMatches(haystack, i, needle)) {
+                return i;
+            }
+        }
+        throw new AssertionError("'" + new String(needle, StandardCharsets.US_ASCII) + "' not found");
+    }
+
+    private static boolean regionMatches(byte[] haystack, int offset, byte[] needle) {
+        for (int j = 0; j < needle.length; j++) {
+            if (haystack[offset + j] != needle[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,184 @@
+package com.demo.pdf;
+
+import com.demo.crypto.DemoKeystoreUtil;
+import com.demo.metrics.Metrics;
+import com.demo.tsa.TsaClients;
+import com.itextpdf.text.Rectangle;
+import com.itextpdf.text.pdf.AcroFields;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfSignatureAppearance;
+import com.itextpdf.text.pdf.PdfStamper;
+import com.itextpdf.text.pdf.security.BouncyCastleDigest;
+import com.itextpdf.text.pdf.security.DigestAlgorithms;
+import com.itextpdf.text.pdf.security.MakeSignature;
+import com.itextpdf.text.pdf.security.PrivateKeySignature;
+import com.itextpdf.text.pdf.security.TSAClient;
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.DERSet;
+import org.bouncycastle.asn1.cms.Attribute;
+import org.bouncycastle.asn1.cms.AttributeTable;
+import org.bouncycastle.asn1.ess.ESSCertIDv2;
+import org.bouncycastle.asn1.ess.SigningCertificateV2;
+import org.bouncycastle.asn1.nist.NISTObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.tsp.MessageImprint;
+import org.bouncycastle.asn1.tsp.TSTInfo;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.cert.jcajce.JcaCertStore;
+import org.bouncycastle.cms.CMSProcessableByteArray;
+import org.bouncycastle.cms.CMSSignedDataGenerator;
+import org.bouncycastle.cms.DefaultSignedAttributeTableGenerator;
+import org.bouncycastle.cms.jcajce.JcaSignerInfoGeneratorBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Appends document timestamps through {@link TimestampQueue#timestamp} and checks how they verify.
+ */
+class TimestampQueueTest {
+
+    private static final char[] PASSWORD = "123456".toCharArray();
+
+    @TempDir
+    Path dir;
+
+    @BeforeAll
+    static void provider() {
+        DemoKeystoreUtil.ensureProvider();
+    }
+
+    @Test
+    void documentTimestampIsAccepted() throws Exception {
+        KeyStore.PrivateKeyEntry nurse = identity("nurse", "Demo Nurse");
+        Path pdf = sign(template(), nurse);
+        TimestampQueue.timestamp(pdf, TsaClients.forUrl(TsaClients.LOCAL_SCHEME));
+
+        assertAllValid(pdf);
+    }
+
+    @Test
+    void documentTimestampWithoutTimeStampingUsageIsRejected() throws Exception {
+        KeyStore.PrivateKeyEntry nurse = identity("nurse", "Demo Nurse");
+        KeyStore.PrivateKeyEntry notATsa = identity("tsa", "Not A TSA");
+        Path pdf = sign(template(), nurse);
+        byte[] before = Files.readAllBytes(pdf);
+
+        assertThrows(IllegalStateException.class, () -> TimestampQueue.timestamp(pdf, new UnrestrictedTsa(notATsa)));
+        assertArrayEquals(before, Files.readAllBytes(pdf));
+    }
+
+    /**
+     * Requires every signature of {@code pdf}, the document timestamp included, to verify both with
+     * {@link RevisionDigestVerifier} and with iText.
+     */
+    private static void assertAllValid(Path pdf) throws Exception {
+        PdfReader reader = new PdfReader(pdf.toString());
+        try {
+            AcroFields fields = reader.getAcroFields();
+            List<String> names = fields.getSignatureNames();
+            assertTrue(!names.isEmpty(), "no signatures in " + pdf);
+            List<SignatureVerifier.Result> results = RevisionDigestVerifier.verify(pdf, reader, fields, names,
+                    Metrics.untracked());
+            for (int i = 0; i < names.size(); i++) {
+                String name = names.get(i);
+                assertTrue(results.get(i).isValid(), "'" + name + "' rejected by RevisionDigestVerifier");
+                assertTrue(fields.verifySignature(name).verify(), "'" + name + "' rejected by iText");
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private Path template() throws Exception {
+        Path template = dir.resolve("template.pdf");
+        NursingRecordTemplate.createTemplate(template.toString(), 2);
+        return template;
+    }
+
+    private KeyStore.PrivateKeyEntry identity(String file, String commonName) throws Exception {
+        Path p12 = dir.resolve(file + ".p12");
+        DemoKeystoreUtil.createDemoP12(p12, PASSWORD, commonName);
+        KeyStore ks = DemoKeystoreUtil.loadKeyStore(p12.toString(), PASSWORD);
+        return DemoKeystoreUtil.firstPrivateKey(ks, PASSWORD);
+    }
+
+    private Path sign(Path source, KeyStore.PrivateKeyEntry signer) throws Exception {
+        Path dest = dir.resolve("signed.pdf");
+        PdfReader reader = new PdfReader(source.toString());
+        try (OutputStream out = Files.newOutputStream(dest)) {
+            PdfStamper stamper = PdfStamper.createSignature(reader, out, '\0', null, true);
+            PdfSignatureAppearance appearance = stamper.getSignatureAppearance();
+            appearance.setVisibleSignature(new Rectangle(36, 36, 180, 72), 1, "sig_test");
+            MakeSignature.signDetached(appearance, new BouncyCastleDigest(),
+                    new PrivateKeySignature(signer.getPrivateKey(), DigestAlgorithms.SHA256,
+                            BouncyCastleProvider.PROVIDER_NAME),
+                    signer.getCertificateChain(), null, null, null, 0, MakeSignature.CryptoStandard.CMS);
+        } finally {
+            reader.close();
+        }
+        return dest;
+    }
+
+    /**
+     * Issues well-formed RFC 3161 tokens under a certificate that lacks the {@code id-kp-timeStamping} usage.
+     * BouncyCastle's own token generator refuses such a certificate, so the token is assembled by hand.
+     */
+    private static final class UnrestrictedTsa implements TSAClient {
+        private final KeyStore.PrivateKeyEntry identity;
+
+        UnrestrictedTsa(KeyStore.PrivateKeyEntry identity) {
+            this.identity = identity;
+        }
+
+        @Override
+        public int getTokenSizeEstimate() {
+            return 8192;
+        }
+
+        @Override
+        public MessageDigest getMessageDigest() throws GeneralSecurityException {
+            return MessageDigest.getInstance("SHA-256");
+        }
+
+        @Override
+        public byte[] getTimeStampToken(byte[] imprint) throws Exception {
+            X509Certificate cert = (X509Certificate) identity.getCertificate();
+            TSTInfo info = new TSTInfo(new ASN1ObjectIdentifier("1.3.6.1.4.1.99999.2"),
+                    new MessageImprint(new AlgorithmIdentifier(NISTObjectIdentifiers.id_sha256), imprint),
+                    new ASN1Integer(1), new ASN1GeneralizedTime(new Date()), null, null, null, null, null);
+            byte[] certHash = MessageDigest.getInstance("SHA-256").digest(cert.getEncoded());
+            Attribute signingCertificate = new Attribute(PKCSObjectIdentifiers.id_aa_signingCertificateV2,
+                    new DERSet(new SigningCertificateV2(new ESSCertIDv2(certHash))));
+            CMSSignedDataGenerator generator = new CMSSignedDataGenerator();
+            generator.addSignerInfoGenerator(new JcaSignerInfoGeneratorBuilder(
+                    new JcaDigestCalculatorProviderBuilder().setProvider(BouncyCastleProvider.PROVIDER_NAME).build())
+                    .setSignedAttributeGenerator(new DefaultSignedAttributeTableGenerator(
+                            new AttributeTable(signingCertificate)))
+                    .build(new JcaContentSignerBuilder("SHA256withRSA")
+                            .setProvider(BouncyCastleProvider.PROVIDER_NAME).build(identity.getPrivateKey()), cert));
+            generator.addCertificates(new JcaCertStore(List.of(cert)));
+            return generator.generate(new CMSProcessableByteArray(PKCSObjectIdentifiers.id_ct_TSTInfo,
+                    info.getEncoded()), true).getEncoded();
+        }
+    }
+}